@@ -22,6 +22,8 @@ import java.io.IOException;
 import java.io.FileInputStream;
 import java.io.FileDescriptor;
 import java.io.FileOutputStream;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 
@@ -48,6 +50,34 @@ public class DirectIOLinuxDirectory extends FSDirectory {
 
   private final int forcedBufferSize;
 
+  private static final Field ADDRESS_FIELD;
+  static {
+    try {
+      ADDRESS_FIELD = Buffer.class.getDeclaredField("address");
+      ADDRESS_FIELD.setAccessible(true);
+    } catch (Exception e) {
+      throw new RuntimeException("cannot access the address of direct buffers", e);
+    }
+  }
+
+  /** O_DIRECT requires the memory the bytes are read into
+   *  or written from to be aligned, just like the file
+   *  positions, which {@link ByteBuffer#allocateDirect}
+   *  does not guarantee. */
+  static ByteBuffer allocateAligned(int size) {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(size + (int) ALIGN - 1);
+    final long address;
+    try {
+      address = ADDRESS_FIELD.getLong(buffer);
+    } catch (IllegalAccessException iae) {
+      throw new RuntimeException(iae);
+    }
+    final int offset = (int) ((ALIGN - (address & (ALIGN-1))) & (ALIGN-1));
+    buffer.position(offset);
+    buffer.limit(offset + size);
+    return buffer.slice();
+  }
+
   /** Create a new NIOFSDirectory for the named location.
    * 
    * @param path the path of the directory
@@ -97,7 +127,7 @@ public class DirectIOLinuxDirectory extends FSDirectory {
       fos = new FileOutputStream(fd);
       //fos = new FileOutputStream(path);
       channel = fos.getChannel();
-      buffer = ByteBuffer.allocateDirect(bufferSize);
+      buffer = allocateAligned(bufferSize);
       this.bufferSize = bufferSize;
       isOpen = true;
     }
@@ -239,7 +269,7 @@ public class DirectIOLinuxDirectory extends FSDirectory {
       fis = new FileInputStream(fd);
       channel = fis.getChannel();
       this.bufferSize = bufferSize;
-      buffer = ByteBuffer.allocateDirect(bufferSize);
+      buffer = allocateAligned(bufferSize);
       isOpen = true;
       isClone = false;
       filePos = -bufferSize;
@@ -252,7 +282,7 @@ public class DirectIOLinuxDirectory extends FSDirectory {
       this.fis = null;
       channel = other.channel;
       this.bufferSize = other.bufferSize;
-      buffer = ByteBuffer.allocateDirect(bufferSize);
+      buffer = allocateAligned(bufferSize);
       filePos = -bufferSize;
       bufferPos = bufferSize;
       isOpen = true;
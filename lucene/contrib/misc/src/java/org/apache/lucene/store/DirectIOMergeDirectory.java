@@ -0,0 +1,321 @@
+package org.apache.lucene.store;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A {@link Directory} that wraps an {@link FSDirectory}
+ * for all normal IO, but writes the segments produced by
+ * big merges with {@link DirectIOLinuxDirectory}, ie with
+ * the Linux-specific O_DIRECT flag.  Searches keep using
+ * the OS cache, while big merges no longer evict the files
+ * searches use from it.
+ *
+ * <p>{@link org.apache.lucene.index.IndexWriter} asks the
+ * directory which directory to use for each merge (see
+ * {@link Directory#getMergeDirectory}); merges of at least
+ * <code>minMergeBytesDirect</code> bytes get the O_DIRECT
+ * view, smaller ones the wrapped directory.  The merged
+ * segment's files are read back (for example to build the
+ * compound file) through the same view.  The segments
+ * being merged are read through the wrapped directory,
+ * since their readers may be shared with searches.</p>
+ *
+ * <p>Files written with O_DIRECT do not go through the
+ * wrapped directory, so this class tracks them and syncs
+ * them itself on {@link #sync}.</p>
+ *
+ * <p>To use this you must compile NativePosixUtil.cpp for
+ * your platform, see {@link DirectIOLinuxDirectory}.</p>
+ *
+ * @lucene.experimental
+ */
+public class DirectIOMergeDirectory extends Directory {
+
+  /** Default minimum merge size for O_DIRECT: 10 MB */
+  public static final long DEFAULT_MIN_MERGE_BYTES_DIRECT = 10*1024*1024;
+
+  /** Default buffer size for O_DIRECT: 1 MB */
+  public static final int DEFAULT_MERGE_BUFFER_SIZE = 1024*1024;
+
+  private final FSDirectory delegate;
+  private final long minMergeBytesDirect;
+  private final Directory mergeDirectory;
+
+  // Files written with O_DIRECT, but not yet sync'ed
+  private final Set<String> directFiles = Collections.synchronizedSet(new HashSet<String>());
+
+  /** Create a new DirectIOMergeDirectory with the default
+   *  minimum merge size and buffer size. */
+  public DirectIOMergeDirectory(FSDirectory delegate) throws IOException {
+    this(delegate, DEFAULT_MIN_MERGE_BYTES_DIRECT, DEFAULT_MERGE_BUFFER_SIZE);
+  }
+
+  /** Create a new DirectIOMergeDirectory.
+   *
+   * @param delegate the directory used for everything but
+   *    big merges
+   * @param minMergeBytesDirect merges of at least this many
+   *    bytes are written with O_DIRECT
+   * @param mergeBufferSize the buffer size of the O_DIRECT
+   *    inputs and outputs; must be a multiple of 512
+   * @throws IOException
+   */
+  public DirectIOMergeDirectory(FSDirectory delegate, long minMergeBytesDirect, int mergeBufferSize) throws IOException {
+    if (mergeBufferSize <= 0 || (mergeBufferSize & 511) != 0) {
+      throw new IllegalArgumentException("mergeBufferSize must be a positive multiple of 512 (got " + mergeBufferSize + ")");
+    }
+    this.delegate = delegate;
+    this.minMergeBytesDirect = minMergeBytesDirect;
+    this.mergeDirectory = new DirectMergeDirectory(new DirectIOLinuxDirectory(delegate.getDirectory(), NoLockFactory.getNoLockFactory(), mergeBufferSize));
+  }
+
+  /** Return the wrapped directory */
+  public FSDirectory getDelegate() {
+    return delegate;
+  }
+
+  /** Return the minimum merge size, in bytes, for O_DIRECT */
+  public long getMinMergeBytesDirect() {
+    return minMergeBytesDirect;
+  }
+
+  @Override
+  public Directory getMergeDirectory(long mergeBytes) {
+    return mergeBytes >= minMergeBytesDirect ? mergeDirectory : this;
+  }
+
+  @Override
+  public String[] listAll() throws IOException {
+    return delegate.listAll();
+  }
+
+  @Override
+  public boolean fileExists(String name) throws IOException {
+    return delegate.fileExists(name);
+  }
+
+  @Override
+  public long fileModified(String name) throws IOException {
+    return delegate.fileModified(name);
+  }
+
+  @Override
+  public void touchFile(String name) throws IOException {
+    delegate.touchFile(name);
+  }
+
+  @Override
+  public void deleteFile(String name) throws IOException {
+    directFiles.remove(name);
+    delegate.deleteFile(name);
+  }
+
+  @Override
+  public long fileLength(String name) throws IOException {
+    return delegate.fileLength(name);
+  }
+
+  @Override
+  public IndexOutput createOutput(String name) throws IOException {
+    directFiles.remove(name);
+    return delegate.createOutput(name);
+  }
+
+  @Deprecated
+  @Override
+  public void sync(String name) throws IOException {
+    sync(Collections.singleton(name));
+  }
+
+  @Override
+  public void sync(Collection<String> names) throws IOException {
+    final List<String> delegateNames = new ArrayList<String>();
+    for (String name : names) {
+      if (directFiles.contains(name)) {
+        fsync(name);
+        directFiles.remove(name);
+      } else {
+        delegateNames.add(name);
+      }
+    }
+    delegate.sync(delegateNames);
+  }
+
+  private void fsync(String name) throws IOException {
+    final RandomAccessFile file = new RandomAccessFile(new File(delegate.getDirectory(), name), "rw");
+    try {
+      file.getFD().sync();
+    } finally {
+      file.close();
+    }
+  }
+
+  @Override
+  public IndexInput openInput(String name) throws IOException {
+    return delegate.openInput(name);
+  }
+
+  @Override
+  public IndexInput openInput(String name, int bufferSize) throws IOException {
+    return delegate.openInput(name, bufferSize);
+  }
+
+  @Override
+  public Lock makeLock(String name) {
+    return delegate.makeLock(name);
+  }
+
+  @Override
+  public void clearLock(String name) throws IOException {
+    delegate.clearLock(name);
+  }
+
+  @Override
+  public void setLockFactory(LockFactory lockFactory) {
+    delegate.setLockFactory(lockFactory);
+  }
+
+  @Override
+  public LockFactory getLockFactory() {
+    return delegate.getLockFactory();
+  }
+
+  @Override
+  public String getLockID() {
+    return delegate.getLockID();
+  }
+
+  @Override
+  public void close() throws IOException {
+    delegate.close();
+  }
+
+  @Override
+  public String toString() {
+    return "DirectIOMergeDirectory(" + delegate.toString() + ")";
+  }
+
+  /** The view of this directory used by big merges: new
+   *  files are written, and read, with O_DIRECT; all other
+   *  operations go to the outer directory. */
+  private final class DirectMergeDirectory extends Directory {
+    private final DirectIOLinuxDirectory direct;
+
+    DirectMergeDirectory(DirectIOLinuxDirectory direct) {
+      this.direct = direct;
+    }
+
+    @Override
+    public String[] listAll() throws IOException {
+      return DirectIOMergeDirectory.this.listAll();
+    }
+
+    @Override
+    public boolean fileExists(String name) throws IOException {
+      return DirectIOMergeDirectory.this.fileExists(name);
+    }
+
+    @Override
+    public long fileModified(String name) throws IOException {
+      return DirectIOMergeDirectory.this.fileModified(name);
+    }
+
+    @Override
+    public void touchFile(String name) throws IOException {
+      DirectIOMergeDirectory.this.touchFile(name);
+    }
+
+    @Override
+    public void deleteFile(String name) throws IOException {
+      DirectIOMergeDirectory.this.deleteFile(name);
+    }
+
+    @Override
+    public long fileLength(String name) throws IOException {
+      return DirectIOMergeDirectory.this.fileLength(name);
+    }
+
+    @Override
+    public IndexOutput createOutput(String name) throws IOException {
+      final IndexOutput output = direct.createOutput(name);
+      directFiles.add(name);
+      return output;
+    }
+
+    @Deprecated
+    @Override
+    public void sync(String name) throws IOException {
+      DirectIOMergeDirectory.this.sync(name);
+    }
+
+    @Override
+    public void sync(Collection<String> names) throws IOException {
+      DirectIOMergeDirectory.this.sync(names);
+    }
+
+    @Override
+    public IndexInput openInput(String name) throws IOException {
+      return direct.openInput(name);
+    }
+
+    @Override
+    public IndexInput openInput(String name, int bufferSize) throws IOException {
+      return direct.openInput(name, bufferSize);
+    }
+
+    @Override
+    public Lock makeLock(String name) {
+      return DirectIOMergeDirectory.this.makeLock(name);
+    }
+
+    @Override
+    public void clearLock(String name) throws IOException {
+      DirectIOMergeDirectory.this.clearLock(name);
+    }
+
+    @Override
+    public LockFactory getLockFactory() {
+      return DirectIOMergeDirectory.this.getLockFactory();
+    }
+
+    @Override
+    public String getLockID() {
+      return DirectIOMergeDirectory.this.getLockID();
+    }
+
+    @Override
+    public void close() throws IOException {
+      // closed by the outer directory
+    }
+
+    @Override
+    public String toString() {
+      return "DirectMergeDirectory(" + delegate.toString() + ")";
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package org.apache.lucene.store;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LogDocMergePolicy;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestDirectIOMergeDirectory extends LuceneTestCase {
+
+  private static boolean nativeLibraryLoaded() {
+    try {
+      System.loadLibrary("NativePosixUtil");
+      return true;
+    } catch (UnsatisfiedLinkError ule) {
+      return false;
+    }
+  }
+
+  private void doTestIndexing(long minMergeBytesDirect) throws Exception {
+    File path = new File(TEMP_DIR, "testDirectIOMerge");
+    _TestUtil.rmDir(path);
+    DirectIOMergeDirectory dir = new DirectIOMergeDirectory(FSDirectory.open(path), minMergeBytesDirect, 4096);
+    IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer())
+                                         .setOpenMode(OpenMode.CREATE).setMaxBufferedDocs(10).setMergePolicy(new LogDocMergePolicy()));
+    for(int i=0;i<200;i++) {
+      Document doc = new Document();
+      doc.add(new Field("id", Integer.toString(i), Field.Store.YES, Field.Index.NOT_ANALYZED));
+      doc.add(new Field("content", "aaa bbb " + i, Field.Store.NO, Field.Index.ANALYZED));
+      writer.addDocument(doc);
+    }
+    writer.optimize();
+    writer.close();
+
+    _TestUtil.checkIndex(dir);
+    IndexReader reader = IndexReader.open(dir, true);
+    assertEquals(200, reader.numDocs());
+    for(int i=0;i<200;i+=17) {
+      assertEquals(Integer.toString(i), reader.document(i).get("id"));
+    }
+    reader.close();
+    dir.close();
+    _TestUtil.rmDir(path);
+  }
+
+  public void testSmallMergesUseDelegate() throws Exception {
+    File path = new File(TEMP_DIR, "testDirectIOMergeSmall");
+    DirectIOMergeDirectory dir = new DirectIOMergeDirectory(FSDirectory.open(path), 1024, 4096);
+    assertSame(dir, dir.getMergeDirectory(1023));
+    assertNotSame(dir, dir.getMergeDirectory(1024));
+    dir.close();
+
+    // never uses O_DIRECT, so works without the native library
+    doTestIndexing(Long.MAX_VALUE);
+  }
+
+  public void testDirectMerges() throws Exception {
+    if (!nativeLibraryLoaded()) {
+      if (VERBOSE) {
+        System.out.println("NOTE: NativePosixUtil library is not available; skipping " + getName());
+      }
+      return;
+    }
+    doTestIndexing(0);
+  }
+
+  public void testIllegalBufferSize() throws Exception {
+    File path = new File(TEMP_DIR, "testDirectIOMergeSmall");
+    try {
+      new DirectIOMergeDirectory(FSDirectory.open(path), 1024, 1000);
+      fail("did not hit exception");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package org.apache.lucene.document;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Reader;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.index.values.IndexDocValues;
+import org.apache.lucene.index.values.IndexDocValues.Type;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * <p>A field holding a per-document value that is written
+ * column-stride into the index, see {@link IndexDocValues}.
+ * Such values can be used for sorting and function queries
+ * without un-inverting the field into the {@link
+ * org.apache.lucene.search.FieldCache}.</p>
+ *
+ * <p>The field is neither indexed nor stored; add a
+ * separate {@link Field} of the same name if you also need
+ * to search on or retrieve the value.  A document holds at
+ * most one value per field: if the same field is added
+ * several times, the last value wins.  All documents must
+ * use the same {@link Type} for a given field; mixing ints
+ * and bytes for a field fails when segments are merged.</p>
+ *
+ * <pre>
+ *  IndexDocValuesField price = new IndexDocValuesField("price");
+ *  price.setInt(1999L);
+ *  document.add(price);
+ * </pre>
+ *
+ * @lucene.experimental
+ */
+public final class IndexDocValuesField extends AbstractField {
+
+  private Type type;
+  private long intValue;
+  private BytesRef bytesValue;
+
+  /** Creates a new field without a value; set one with
+   *  {@link #setInt} or {@link #setBytes} before adding
+   *  the document. */
+  public IndexDocValuesField(String name) {
+    super(name, Field.Store.NO, Field.Index.NO, Field.TermVector.NO);
+  }
+
+  /** Sets an {@link Type#INTS} value. */
+  public IndexDocValuesField setInt(long value) {
+    type = Type.INTS;
+    intValue = value;
+    bytesValue = null;
+    return this;
+  }
+
+  /** Sets a bytes value of the given type.  The bytes are
+   *  not copied, so they must not be changed before the
+   *  document was added. */
+  public IndexDocValuesField setBytes(BytesRef value, Type type) {
+    if (!type.isBytes()) {
+      throw new IllegalArgumentException("type must be a bytes type; got " + type);
+    }
+    if (value == null) {
+      throw new NullPointerException("value must not be null");
+    }
+    this.type = type;
+    bytesValue = value;
+    return this;
+  }
+
+  /** Returns the type of the current value, or
+   *  <code>null</code> if no value was set yet. */
+  public Type getType() {
+    return type;
+  }
+
+  /** Returns the current {@link Type#INTS} value. */
+  public long getInt() {
+    return intValue;
+  }
+
+  /** Returns the current bytes value, or <code>null</code>
+   *  for {@link Type#INTS}. */
+  public BytesRef getBytes() {
+    return bytesValue;
+  }
+
+  /** Returns always <code>null</code>, as the field is not indexed */
+  public TokenStream tokenStreamValue() {
+    return null;
+  }
+
+  /** Returns always <code>null</code>, as the field is not indexed */
+  public Reader readerValue() {
+    return null;
+  }
+
+  /** Returns always <code>null</code>, as the field is not stored */
+  public String stringValue() {
+    return null;
+  }
+
+  /** Returns always <code>null</code>, as the field is not stored */
+  @Override
+  public byte[] getBinaryValue(byte[] result) {
+    return null;
+  }
+}
@@ -18,6 +18,7 @@ package org.apache.lucene.index;
  */
 
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RateLimiter;
 import org.apache.lucene.util.ThreadInterruptedException;
 
 import java.io.IOException;
@@ -42,6 +43,12 @@ import java.util.Collections;
  *  requested then this class will forcefully throttle the
  *  incoming threads by pausing until one more more merges
  *  complete.</p>
+ *
+ *  <p>The bytes written by each merge may be throttled with
+ *  {@link #setMaxMergeWriteMBPerSec}, so that big merges do
+ *  not saturate the IO system that searches also use.
+ *  Merges smaller than {@link #setMinThrottledMergeMB} are
+ *  never throttled.</p>
  */ 
 public class ConcurrentMergeScheduler extends MergeScheduler {
 
@@ -63,6 +70,16 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
   // throttling the incoming threads
   private int maxMergeCount = maxThreadCount+2;
 
+  // Max MB/sec each merge may write; 0.0 means unlimited
+  private volatile double maxMergeWriteMBPerSec;
+
+  // Merges of less than this many MB (summed over the
+  // segments being merged) are not throttled
+  private volatile double minThrottledMergeMB = 5.0;
+
+  // Total time merges were throttled, across all merges
+  private long totalThrottledTimeMS;
+
   protected Directory dir;
 
   private boolean closed;
@@ -137,6 +154,80 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
     updateMergeThreads();
   }
 
+  /** Sets the maximum rate, in MB/sec, at which each merge
+   *  may write its files.  The rate is applied separately
+   *  to each running merge, and changes take effect on
+   *  running merges too.  0.0 (the default) means merges
+   *  write at full speed. */
+  public synchronized void setMaxMergeWriteMBPerSec(double mbPerSec) {
+    if (mbPerSec < 0.0) {
+      throw new IllegalArgumentException("mbPerSec must be >= 0.0 (got " + mbPerSec + ")");
+    }
+    maxMergeWriteMBPerSec = mbPerSec;
+    for(MergeThread mergeThread : mergeThreads) {
+      final MergePolicy.OneMerge merge = mergeThread.getCurrentMerge();
+      if (merge != null && merge.getRateLimiter() != null) {
+        merge.getRateLimiter().setMbPerSec(mbPerSec);
+      }
+    }
+  }
+
+  /** @see #setMaxMergeWriteMBPerSec */
+  public double getMaxMergeWriteMBPerSec() {
+    return maxMergeWriteMBPerSec;
+  }
+
+  /** Merges whose segments add up to less than this many
+   *  MB are never throttled by {@link
+   *  #setMaxMergeWriteMBPerSec}, since they finish quickly
+   *  and holding them up would only let small segments
+   *  accumulate.  Default is 5.0 MB. */
+  public void setMinThrottledMergeMB(double mb) {
+    if (mb < 0.0) {
+      throw new IllegalArgumentException("mb must be >= 0.0 (got " + mb + ")");
+    }
+    minThrottledMergeMB = mb;
+  }
+
+  /** @see #setMinThrottledMergeMB */
+  public double getMinThrottledMergeMB() {
+    return minThrottledMergeMB;
+  }
+
+  /** Returns the total time, in milliseconds, that the
+   *  merges completed by this scheduler were throttled by
+   *  {@link #setMaxMergeWriteMBPerSec}.  See {@link
+   *  MergePolicy.OneMerge#getThrottledTimeMS} for the time
+   *  of a single merge. */
+  public synchronized long getTotalThrottledTimeMS() {
+    return totalThrottledTimeMS;
+  }
+
+  /** Gives the merge a {@link RateLimiter} unless it is
+   *  smaller than {@link #setMinThrottledMergeMB}.  The
+   *  limiter is installed even when throttling is off, so
+   *  that the rate can be lowered while the merge runs. */
+  protected synchronized void initRateLimiter(MergePolicy.OneMerge merge) throws IOException {
+    long mergeBytes = 0;
+    final int numSegments = merge.segments.size();
+    for(int i=0;i<numSegments;i++) {
+      mergeBytes += merge.segments.info(i).sizeInBytes();
+    }
+    if (mergeBytes >= minThrottledMergeMB*1024*1024) {
+      merge.setRateLimiter(new RateLimiter(maxMergeWriteMBPerSec));
+    } else if (verbose()) {
+      message("  merge " + merge.segString(dir) + " is too small to throttle");
+    }
+  }
+
+  private synchronized void mergeDone(MergePolicy.OneMerge merge) {
+    final long throttledTimeMS = merge.getThrottledTimeMS();
+    totalThrottledTimeMS += throttledTimeMS;
+    if (verbose() && merge.getRateLimiter() != null) {
+      message("  merge " + merge.segString(dir) + " was throttled for " + throttledTimeMS + " msec");
+    }
+  }
+
   // Larger merges come first
   protected static class CompareByMergeDocCount implements Comparator<MergeThread> {
     public int compare(MergeThread t1, MergeThread t2) {
@@ -314,6 +405,8 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
 
           assert mergeThreadCount() < maxMergeCount;
 
+          initRateLimiter(merge);
+
           // OK to spawn a new merge thread to handle this
           // merge:
           merger = getMergeThread(writer, merge);
@@ -404,13 +497,18 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
 
         while(true) {
           setRunningMerge(merge);
-          doMerge(merge);
+          try {
+            doMerge(merge);
+          } finally {
+            mergeDone(merge);
+          }
 
           // Subsequent times through the loop we do any new
           // merge that writer says is necessary:
           merge = tWriter.getNextMerge();
           if (merge != null) {
             tWriter.mergeInit(merge);
+            initRateLimiter(merge);
             updateMergeThreads();
             if (verbose())
               message("  merge thread: do another merge " + merge.segString(dir));
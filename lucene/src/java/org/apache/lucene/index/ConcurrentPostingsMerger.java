@@ -0,0 +1,347 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+
+import org.apache.lucene.index.codecs.FieldsConsumer;
+import org.apache.lucene.index.codecs.MergeState;
+import org.apache.lucene.index.codecs.PostingsConsumer;
+import org.apache.lucene.index.codecs.TermsConsumer;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/**
+ * Merges the postings of each field as a concurrent task of
+ * an executor.
+ *
+ * <p>The codec's terms dict and postings files are shared
+ * by all fields and address each other by absolute file
+ * pointer, so only one thread may write them, in field
+ * order.  Instead each task does the costly part of the
+ * merge, ie the merge sort of the terms of all readers and
+ * the re-mapping of their docs around deletions, and
+ * buffers the resulting terms, docs, positions and payloads
+ * of its field in RAM.  The calling thread then replays the
+ * buffered fields, in field order, into the {@link
+ * FieldsConsumer}, making the same calls as {@link
+ * FieldsConsumer#merge}, so the merged segment is
+ * identical.
+ *
+ * <p>At most {@link #MAX_BUFFERED_FIELDS} fields are
+ * buffered ahead of the field being written, to bound the
+ * RAM used.  If the executor has no idle thread for the
+ * next field, the calling thread merges it itself, so this
+ * never deadlocks on a pool that is busy with other merges.
+ */
+final class ConcurrentPostingsMerger {
+
+  /** Maximum number of fields buffered ahead of the field
+   *  being written */
+  static final int MAX_BUFFERED_FIELDS = 8;
+
+  // Codes of the buffered calls:
+  private static final int END = 0;
+  private static final int START_TERM = 1;
+  private static final int START_DOC = 2;
+  private static final int ADD_POSITION = 3;
+  private static final int FINISH_DOC = 4;
+  private static final int FINISH_TERM = 5;
+
+  private final ExecutorService executor;
+  private final MergeState mergeState;
+  private final Fields fields;
+  private final RAMDirectory buffers = new RAMDirectory();
+  private volatile boolean aborted;
+
+  /** Sum of the time spent by all tasks buffering fields */
+  long bufferMS;
+  /** Time spent writing the buffered fields */
+  long writeMS;
+  int numFields;
+
+  ConcurrentPostingsMerger(ExecutorService executor, MergeState mergeState, Fields fields) {
+    this.executor = executor;
+    this.mergeState = mergeState;
+    this.fields = fields;
+  }
+
+  /** Merges all fields into the consumer; the caller must
+   *  close the consumer. */
+  void merge(FieldsConsumer consumer) throws IOException {
+    final List<String> fieldNames = new ArrayList<String>();
+    final FieldsEnum fieldsEnum = fields.iterator();
+    String field;
+    while((field = fieldsEnum.next()) != null) {
+      fieldNames.add(field);
+    }
+    numFields = fieldNames.size();
+
+    final List<FutureTask<FieldBuffer>> tasks = new ArrayList<FutureTask<FieldBuffer>>();
+    boolean success = false;
+    try {
+      for(int i=0;i<numFields;i++) {
+        // Keep up to MAX_BUFFERED_FIELDS fields ahead in flight:
+        while(tasks.size() < numFields && tasks.size() <= i + MAX_BUFFERED_FIELDS) {
+          final String name = fieldNames.get(tasks.size());
+          final FutureTask<FieldBuffer> task = new FutureTask<FieldBuffer>(new BufferField(tasks.size(), name, fields.terms(name)));
+          tasks.add(task);
+          executor.execute(task);
+        }
+
+        final FutureTask<FieldBuffer> task = tasks.get(i);
+        // Merge the field ourselves if no thread took it yet:
+        task.run();
+        final FieldBuffer buffer = get(task);
+        final long t0 = System.currentTimeMillis();
+        mergeState.fieldInfo = mergeState.fieldInfos.fieldInfo(buffer.field);
+        final TermsConsumer termsConsumer = consumer.addField(mergeState.fieldInfo);
+        final IndexInput in = buffers.openInput(buffer.fileName);
+        try {
+          replay(in, termsConsumer);
+        } finally {
+          in.close();
+        }
+        buffers.deleteFile(buffer.fileName);
+        writeMS += System.currentTimeMillis() - t0;
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        // Don't leave tasks reading the readers after we
+        // return: tasks that did not start yet return
+        // immediately, and we wait for the running ones
+        aborted = true;
+        for (FutureTask<FieldBuffer> task : tasks) {
+          task.run();
+          try {
+            get(task);
+          } catch (Throwable t) {
+            // ignore: the first exception is propagated
+          }
+        }
+      }
+      buffers.close();
+    }
+  }
+
+  private static FieldBuffer get(FutureTask<FieldBuffer> task) throws IOException {
+    try {
+      return task.get();
+    } catch (InterruptedException ie) {
+      throw new ThreadInterruptedException(ie);
+    } catch (ExecutionException ee) {
+      final Throwable th = ee.getCause();
+      if (th instanceof IOException) {
+        throw (IOException) th;
+      } else if (th instanceof RuntimeException) {
+        throw (RuntimeException) th;
+      } else if (th instanceof Error) {
+        throw (Error) th;
+      } else {
+        throw new RuntimeException(th);
+      }
+    }
+  }
+
+  private static void replay(IndexInput in, TermsConsumer termsConsumer) throws IOException {
+    final BytesRef term = new BytesRef();
+    final BytesRef payload = new BytesRef();
+    PostingsConsumer postingsConsumer = null;
+    while (true) {
+      switch(in.readVInt()) {
+      case END:
+        termsConsumer.finish();
+        return;
+      case START_TERM:
+        read(in, term);
+        postingsConsumer = termsConsumer.startTerm(term);
+        break;
+      case START_DOC:
+        final int docID = in.readVInt();
+        postingsConsumer.startDoc(docID, in.readVInt());
+        break;
+      case ADD_POSITION:
+        final int position = in.readVInt();
+        final int payloadLength = in.readVInt();
+        if (payloadLength == 0) {
+          postingsConsumer.addPosition(position, null);
+        } else {
+          payload.length = payloadLength-1;
+          payload.offset = 0;
+          if (payload.bytes.length < payload.length) {
+            payload.grow(payload.length);
+          }
+          in.readBytes(payload.bytes, 0, payload.length);
+          postingsConsumer.addPosition(position, payload);
+        }
+        break;
+      case FINISH_DOC:
+        postingsConsumer.finishDoc();
+        break;
+      case FINISH_TERM:
+        termsConsumer.finishTerm(term, in.readVInt());
+        break;
+      default:
+        throw new IllegalStateException("corrupt postings buffer");
+      }
+    }
+  }
+
+  private static void read(IndexInput in, BytesRef bytes) throws IOException {
+    bytes.length = in.readVInt();
+    bytes.offset = 0;
+    if (bytes.bytes.length < bytes.length) {
+      bytes.grow(bytes.length);
+    }
+    in.readBytes(bytes.bytes, 0, bytes.length);
+  }
+
+  private static final class FieldBuffer {
+    final String field;
+    final String fileName;
+
+    FieldBuffer(String field, String fileName) {
+      this.field = field;
+      this.fileName = fileName;
+    }
+  }
+
+  /** Merges one field into its RAM buffer. */
+  private final class BufferField implements Callable<FieldBuffer> {
+    private final int ord;
+    private final String field;
+    private final Terms terms;
+
+    BufferField(int ord, String field, Terms terms) {
+      this.ord = ord;
+      this.field = field;
+      this.terms = terms;
+    }
+
+    public FieldBuffer call() throws IOException {
+      final FieldBuffer buffer = new FieldBuffer(field, Integer.toString(ord));
+      if (aborted) {
+        return buffer;
+      }
+      final long t0 = System.currentTimeMillis();
+
+      // Each task has its own per field state:
+      final MergeState state = new MergeState();
+      state.fieldInfos = mergeState.fieldInfos;
+      state.readers = mergeState.readers;
+      state.readerCount = mergeState.readerCount;
+      state.docMaps = mergeState.docMaps;
+      state.delCounts = mergeState.delCounts;
+      state.docBase = mergeState.docBase;
+      state.mergedDocCount = mergeState.mergedDocCount;
+      state.multiDeletedDocs = mergeState.multiDeletedDocs;
+      state.hasPayloadProcessorProvider = false;
+      state.dirPayloadProcessor = mergeState.dirPayloadProcessor;
+      state.currentPayloadProcessor = new PayloadProcessorProvider.PayloadProcessor[mergeState.readerCount];
+      state.fieldInfo = mergeState.fieldInfos.fieldInfo(field);
+
+      final IndexOutput out = buffers.createOutput(buffer.fileName);
+      try {
+        final TermsConsumer recorder = new BufferingTermsConsumer(out);
+        if (terms == null) {
+          recorder.finish();
+        } else {
+          recorder.merge(state, terms.iterator());
+        }
+      } finally {
+        out.close();
+      }
+
+      final long elapsedMS = System.currentTimeMillis() - t0;
+      synchronized(ConcurrentPostingsMerger.this) {
+        bufferMS += elapsedMS;
+      }
+      return buffer;
+    }
+  }
+
+  /** Writes the calls it receives to the buffer, for {@link
+   *  #replay}. */
+  private static final class BufferingTermsConsumer extends TermsConsumer {
+    private final IndexOutput out;
+    private final PostingsConsumer postingsConsumer = new PostingsConsumer() {
+        @Override
+        public void startDoc(int docID, int termDocFreq) throws IOException {
+          out.writeVInt(START_DOC);
+          out.writeVInt(docID);
+          out.writeVInt(termDocFreq);
+        }
+
+        @Override
+        public void addPosition(int position, BytesRef payload) throws IOException {
+          out.writeVInt(ADD_POSITION);
+          out.writeVInt(position);
+          if (payload == null) {
+            out.writeVInt(0);
+          } else {
+            out.writeVInt(payload.length+1);
+            out.writeBytes(payload.bytes, payload.offset, payload.length);
+          }
+        }
+
+        @Override
+        public void finishDoc() throws IOException {
+          out.writeVInt(FINISH_DOC);
+        }
+      };
+
+    BufferingTermsConsumer(IndexOutput out) {
+      this.out = out;
+    }
+
+    @Override
+    public PostingsConsumer startTerm(BytesRef text) throws IOException {
+      out.writeVInt(START_TERM);
+      out.writeVInt(text.length);
+      out.writeBytes(text.bytes, text.offset, text.length);
+      return postingsConsumer;
+    }
+
+    @Override
+    public void finishTerm(BytesRef text, int numDocs) throws IOException {
+      out.writeVInt(FINISH_TERM);
+      out.writeVInt(numDocs);
+    }
+
+    @Override
+    public void finish() throws IOException {
+      out.writeVInt(END);
+    }
+
+    @Override
+    public Comparator<BytesRef> getComparator() {
+      return BytesRef.getUTF8SortedAsUnicodeComparator();
+    }
+  }
+}
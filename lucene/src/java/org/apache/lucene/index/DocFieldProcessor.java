@@ -37,12 +37,14 @@ final class DocFieldProcessor extends DocConsumer {
   final FieldInfos fieldInfos = new FieldInfos();
   final DocFieldConsumer consumer;
   final StoredFieldsWriter fieldsWriter;
+  final DocValuesWriter docValuesWriter;
 
   public DocFieldProcessor(DocumentsWriter docWriter, DocFieldConsumer consumer) {
     this.docWriter = docWriter;
     this.consumer = consumer;
     consumer.setFieldInfos(fieldInfos);
     fieldsWriter = new StoredFieldsWriter(docWriter, fieldInfos);
+    docValuesWriter = new DocValuesWriter(docWriter);
   }
 
   @Override
@@ -61,6 +63,7 @@ final class DocFieldProcessor extends DocConsumer {
       perThread.trimFields(state);
     }
     fieldsWriter.flush(state);
+    docValuesWriter.flush(state);
     consumer.flush(childThreadsAndFields, state);
 
     // Important to save after asking consumer to flush so
@@ -75,6 +78,7 @@ final class DocFieldProcessor extends DocConsumer {
   @Override
   public void abort() {
     fieldsWriter.abort();
+    docValuesWriter.abort();
     consumer.abort();
   }
 
@@ -23,6 +23,7 @@ import java.util.List;
 import java.io.IOException;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.document.IndexDocValuesField;
 import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.RamUsageEstimator;
 
@@ -234,6 +235,9 @@ final class DocFieldProcessorPerThread extends DocConsumerPerThread {
       if (field.isStored()) {
         fieldsWriter.addField(field, fp.fieldInfo);
       }
+      if (field instanceof IndexDocValuesField) {
+        docFieldProcessor.docValuesWriter.add(docState.docID, (IndexDocValuesField) field);
+      }
     }
 
     // If we are writing vectors then we must visit
@@ -0,0 +1,201 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.lucene.document.IndexDocValuesField;
+import org.apache.lucene.index.values.IndexDocValues;
+import org.apache.lucene.index.values.ValuesWriter;
+import org.apache.lucene.index.values.IndexDocValues.Type;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * Buffers the values of {@link IndexDocValuesField}s in RAM,
+ * by docID, and writes them column-stride when the segment
+ * is flushed.  Documents are added by all indexing threads
+ * concurrently and not necessarily in docID order.
+ */
+final class DocValuesWriter {
+
+  private final DocumentsWriter docWriter;
+  private final Map<String,PerField> fields = new HashMap<String,PerField>();
+  private long bytesUsed;
+
+  DocValuesWriter(DocumentsWriter docWriter) {
+    this.docWriter = docWriter;
+  }
+
+  void add(int docID, IndexDocValuesField field) {
+    final Type type = field.getType();
+    if (type == null) {
+      throw new IllegalArgumentException("field \"" + field.name() + "\" has no value");
+    }
+    final long delta;
+    synchronized(this) {
+      PerField perField = fields.get(field.name());
+      if (perField == null) {
+        perField = type == Type.INTS ? new IntsPerField(type) : new BytesPerField(type);
+        fields.put(field.name(), perField);
+      } else if (perField.type != type) {
+        throw new IllegalArgumentException("field \"" + field.name() + "\" was indexed as " + perField.type + " but got " + type);
+      }
+      delta = perField.add(docID, field);
+      bytesUsed += delta;
+    }
+    // outside of our lock, as DocumentsWriter calls flush
+    // while holding its own lock
+    if (delta != 0) {
+      docWriter.bytesUsed(delta);
+    }
+  }
+
+  synchronized void flush(SegmentWriteState state) throws IOException {
+    if (fields.isEmpty()) {
+      return;
+    }
+    final String fileName = IndexFileNames.segmentFileName(state.segmentName, "", IndexFileNames.DOC_VALUES_EXTENSION);
+    final ValuesWriter writer = new ValuesWriter(state.directory, fileName);
+    state.flushedFiles.add(fileName);
+    try {
+      // sorted, so the file does not depend on hash order
+      for (Map.Entry<String,PerField> entry : new TreeMap<String,PerField>(fields).entrySet()) {
+        final PerField perField = entry.getValue();
+        writer.addField(entry.getKey(), perField.type, perField, state.numDocs);
+      }
+    } finally {
+      writer.close();
+    }
+    reset();
+  }
+
+  synchronized void abort() {
+    reset();
+  }
+
+  private void reset() {
+    fields.clear();
+    if (bytesUsed != 0) {
+      docWriter.bytesUsed(-bytesUsed);
+      bytesUsed = 0;
+    }
+  }
+
+  /** Values of one field; reads back as a {@link
+   *  IndexDocValues.Source} when flushing. */
+  private static abstract class PerField extends IndexDocValues.Source {
+    final Type type;
+
+    PerField(Type type) {
+      this.type = type;
+    }
+
+    /** Records the value and returns the number of bytes
+     *  newly allocated. */
+    abstract long add(int docID, IndexDocValuesField field);
+  }
+
+  private static final class IntsPerField extends PerField {
+    private long[] values = new long[0];
+
+    IntsPerField(Type type) {
+      super(type);
+    }
+
+    @Override
+    long add(int docID, IndexDocValuesField field) {
+      long delta = 0;
+      if (docID >= values.length) {
+        final int oldLength = values.length;
+        values = ArrayUtil.grow(values, docID+1);
+        delta = (long) (values.length - oldLength) * RamUsageEstimator.NUM_BYTES_LONG;
+      }
+      values[docID] = field.getInt();
+      return delta;
+    }
+
+    @Override
+    public long getInt(int docID) {
+      return docID < values.length ? values[docID] : 0;
+    }
+  }
+
+  private static final class BytesPerField extends PerField {
+    private byte[] bytes = new byte[0];
+    private int bytesUpto;
+    // start of each document's value in bytes, or -1
+    private int[] starts = new int[0];
+    private int[] lengths = new int[0];
+    private int fixedLength = -1;
+
+    BytesPerField(Type type) {
+      super(type);
+    }
+
+    @Override
+    long add(int docID, IndexDocValuesField field) {
+      final BytesRef value = field.getBytes();
+      if (type == Type.BYTES_FIXED_STRAIGHT) {
+        if (fixedLength == -1) {
+          fixedLength = value.length;
+        } else if (value.length != fixedLength) {
+          throw new IllegalArgumentException("field \"" + field.name() + "\" was indexed as " + type
+                                             + " with length " + fixedLength + " but got length " + value.length);
+        }
+      }
+      long delta = 0;
+      if (docID >= starts.length) {
+        final int oldLength = starts.length;
+        starts = ArrayUtil.grow(starts, docID+1);
+        Arrays.fill(starts, oldLength, starts.length, -1);
+        lengths = ArrayUtil.grow(lengths, starts.length);
+        delta += (long) (starts.length - oldLength) * 2 * RamUsageEstimator.NUM_BYTES_INT;
+      }
+      if (bytesUpto + value.length > bytes.length) {
+        final int oldLength = bytes.length;
+        bytes = ArrayUtil.grow(bytes, bytesUpto + value.length);
+        delta += bytes.length - oldLength;
+      }
+      System.arraycopy(value.bytes, value.offset, bytes, bytesUpto, value.length);
+      starts[docID] = bytesUpto;
+      lengths[docID] = value.length;
+      bytesUpto += value.length;
+      return delta;
+    }
+
+    @Override
+    public BytesRef getBytes(int docID, BytesRef ref) {
+      ref.bytes = bytes;
+      if (docID < starts.length && starts[docID] != -1) {
+        ref.offset = starts[docID];
+        ref.length = lengths[docID];
+      } else {
+        // missing
+        ref.offset = 0;
+        ref.length = 0;
+      }
+      return ref;
+    }
+  }
+}
@@ -309,11 +309,20 @@ final class DocumentsWriter {
   private boolean closed;
 
   DocumentsWriter(Directory directory, IndexWriter writer, IndexingChain indexingChain, int maxThreadStates) throws IOException {
+    this(directory, writer, indexingChain, maxThreadStates, writer.maxDoc());
+  }
+
+  /** Creates a DocumentsWriter whose buffered deletes are
+   *  numbered from <code>flushedDocCount</code>; the
+   *  private segments of {@link DocumentsWriterPerThreadPool}
+   *  pass 0 so that their deletes only address their own
+   *  documents. */
+  DocumentsWriter(Directory directory, IndexWriter writer, IndexingChain indexingChain, int maxThreadStates, int flushedDocCount) throws IOException {
     this.directory = directory;
     this.writer = writer;
     this.similarity = writer.getConfig().getSimilarity();
     this.maxThreadStates = maxThreadStates;
-    flushedDocCount = writer.maxDoc();
+    this.flushedDocCount = flushedDocCount;
 
     consumer = indexingChain.getChain(this);
     if (consumer instanceof DocFieldProcessor) {
@@ -900,12 +909,24 @@ final class DocumentsWriter {
     return deletesInRAM.terms;
   }
 
-  /** Called whenever a merge has completed and the merged segments had deletions */
-  synchronized void remapDeletes(SegmentInfos infos, int[][] docMaps, int[] delCounts, MergePolicy.OneMerge merge, int mergeDocCount) {
+  /** Remaps the buffered deletes after a merge.  If the
+   *  merged segments were not contiguous, the deletes
+   *  against flushed docs must have been applied, so that
+   *  the remaining ones only address buffered docs. */
+  synchronized void remapDeletes(SegmentInfos infos, int[][] docMaps, int[] delCounts, MergePolicy.OneMerge merge, int mergeDocCount, boolean contiguous) {
     if (docMaps == null)
       // The merged segments had no deletes so docIDs did not change and we have nothing to do
       return;
-    MergeDocIDRemapper mapper = new MergeDocIDRemapper(infos, docMaps, delCounts, merge, mergeDocCount);
+    MergeDocIDRemapper mapper;
+    if (contiguous) {
+      mapper = new MergeDocIDRemapper(infos, docMaps, delCounts, merge, mergeDocCount);
+    } else {
+      assert !deletesFlushed.any();
+      int numDocs = 0;
+      for(int i=0;i<merge.segments.size();i++)
+        numDocs += merge.segments.info(i).docCount;
+      mapper = new MergeDocIDRemapper(flushedDocCount, numDocs - mergeDocCount);
+    }
     deletesInRAM.remap(mapper, infos, docMaps, delCounts, merge, mergeDocCount);
     deletesFlushed.remap(mapper, infos, docMaps, delCounts, merge, mergeDocCount);
     flushedDocCount -= mapper.docShift;
@@ -959,6 +980,27 @@ final class DocumentsWriter {
     return timeToFlushDeletes();
   }
 
+  /** Buffers deletes that apply to all documents flushed
+   *  so far.  Unlike {@link #bufferDeleteTerms}, this does
+   *  not wait for a pending flush: {@link
+   *  DocumentsWriterPerThreadPool} calls it while holding
+   *  its own lock, so that the same deletes are recorded
+   *  atomically against every in-memory segment as well.
+   *  Either array may be null. */
+  synchronized void bufferFlushedDeletes(Term[] terms, Query[] queries) {
+    if (closed)
+      throw new AlreadyClosedException("this IndexWriter is closed");
+    assert numDocsInRAM == 0;
+    if (terms != null) {
+      for (int i = 0; i < terms.length; i++)
+        addDeleteTerm(terms[i], 0);
+    }
+    if (queries != null) {
+      for (int i = 0; i < queries.length; i++)
+        addDeleteQuery(queries[i], 0);
+    }
+  }
+
   synchronized boolean deletesFull() {
     return (ramBufferSize != IndexWriterConfig.DISABLE_AUTO_FLUSH &&
             (deletesInRAM.bytesUsed + deletesFlushed.bytesUsed + numBytesUsed) >= ramBufferSize) ||
@@ -981,7 +1023,7 @@ final class DocumentsWriter {
        ((deletesInRAM.size() + deletesFlushed.size()) >= maxBufferedDeleteTerms));
   }
 
-  private boolean timeToFlushDeletes() {
+  boolean timeToFlushDeletes() {
     balanceRAM();
     synchronized(this) {
       return (bufferIsFull || deletesFull()) && setFlushPending();
@@ -1040,6 +1082,37 @@ final class DocumentsWriter {
     return any;
   }
 
+  /** Applies the deletes buffered against this writer's
+   *  own documents (docs that hit a non-aborting exception)
+   *  plus the provided <code>deletes</code> to the segment
+   *  it just flushed.  Used by {@link
+   *  DocumentsWriterPerThreadPool}, whose segments are
+   *  numbered from 0. */
+  synchronized boolean applyDeletes(SegmentInfo info, BufferedDeletes deletes) throws IOException {
+    assert flushedDocCount == info.docCount;
+
+    pushDeletes();
+    deletesFlushed.update(deletes);
+
+    if (!hasDeletes())
+      return false;
+
+    if (infoStream != null)
+      message("apply " + deletesFlushed.numTerms + " buffered deleted terms and " +
+              deletesFlushed.docIDs.size() + " deleted docIDs and " +
+              deletesFlushed.queries.size() + " deleted queries on new segment " + info.name);
+
+    final boolean any;
+    SegmentReader reader = writer.readerPool.get(info, false);
+    try {
+      any = applyDeletes(reader, 0);
+    } finally {
+      writer.readerPool.release(reader);
+    }
+    deletesFlushed.clear();
+    return any;
+  }
+
   // used only by assert
   private Term lastDeleteTerm;
 
@@ -0,0 +1,566 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Similarity;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/**
+ * Used by IndexWriter, when {@link
+ * IndexWriterConfig#setFlushPerThread} is enabled, to
+ * buffer added documents in a number of private in-memory
+ * segments instead of the single shared buffer of {@link
+ * DocumentsWriter}.
+ *
+ * Each of the (up to maxThreadStates) {@link ThreadState}s
+ * holds its own {@link DocumentsWriter} with exactly one
+ * thread state, ie its own indexing chain, field infos,
+ * byte block pools and doc stores.  A thread adding a
+ * document takes an idle ThreadState (preferring the one it
+ * used last time), indexes the document without any shared
+ * lock, and hands it back.
+ *
+ * Flushing:
+ *
+ * When a ThreadState's segment must be flushed, it is
+ * detached (the ThreadState starts over with a fresh
+ * segment) and written by the thread that detached it,
+ * without holding any lock; only that thread is blocked,
+ * all other threads keep indexing.  The flushed segment is
+ * then registered with IndexWriter.  A segment is flushed
+ * once it holds maxBufferedDocs documents, or, if the RAM
+ * buffer is enabled, once the RAM used by all in-memory
+ * segments together exceeds it: then the largest in-memory
+ * segment is flushed, either right away if it is idle, or
+ * by its owner as soon as that thread finished its current
+ * document.
+ *
+ * Deletes:
+ *
+ * A delete applies to the documents added before it.  We
+ * record each delete, under this pool's lock, against the
+ * main DocumentsWriter (with a docID limit covering all
+ * segments registered so far) and against each private
+ * segment that is still in memory or being flushed (with a
+ * limit equal to its current number of documents).  A
+ * private segment's deletes are applied to it when it is
+ * registered, again under this lock, at which point the
+ * main DocumentsWriter's limit starts to cover it.
+ */
+
+final class DocumentsWriterPerThreadPool {
+
+  /** One private in-memory segment */
+  static final class PerThread {
+    final DocumentsWriter docWriter;
+
+    // Deletes buffered against this segment's docs, by
+    // local docID
+    final BufferedDeletes deletes = new BufferedDeletes(false);
+
+    // # docs handed out, including the one(s) currently
+    // being indexed
+    int numDocs;
+
+    // Incremented by abort(); a segment detached before
+    // that must not be registered afterwards
+    final int generation;
+
+    PerThread(DocumentsWriter docWriter, int generation) {
+      this.docWriter = docWriter;
+      this.generation = generation;
+    }
+
+    long bytesUsed() {
+      return docWriter.getRAMUsed() + deletes.bytesUsed;
+    }
+  }
+
+  /** A slot used by one indexing thread at a time */
+  static final class ThreadState {
+    PerThread perThread;                  // null until the first doc
+    boolean isIdle = true;                // false while a thread is indexing a doc
+    boolean flushPending;                 // true if the owner must flush after the current doc
+  }
+
+  private final IndexWriter writer;
+  private final Directory directory;
+  private final DocumentsWriter docWriter;  // holds deletes against flushed segments
+  private final DocumentsWriter.IndexingChain indexingChain;
+  private final int maxThreadStates;
+
+  private ThreadState[] threadStates = new ThreadState[0];
+  private final HashMap<Thread,ThreadState> threadBindings = new HashMap<Thread,ThreadState>();
+
+  // Detached segments that are being written by some thread
+  private final List<PerThread> flushing = new ArrayList<PerThread>();
+
+  private int pauseThreads;
+  private int generation;
+  private boolean closed;
+
+  private PrintStream infoStream;
+  private int maxFieldLength = IndexWriterConfig.UNLIMITED_FIELD_LENGTH;
+  private Similarity similarity;
+
+  DocumentsWriterPerThreadPool(Directory directory, IndexWriter writer, DocumentsWriter docWriter,
+                               DocumentsWriter.IndexingChain indexingChain, int maxThreadStates) {
+    this.directory = directory;
+    this.writer = writer;
+    this.docWriter = docWriter;
+    this.indexingChain = indexingChain;
+    this.maxThreadStates = maxThreadStates;
+    this.similarity = writer.getConfig().getSimilarity();
+  }
+
+  synchronized void setInfoStream(PrintStream infoStream) {
+    this.infoStream = infoStream;
+    for(int i=0;i<threadStates.length;i++)
+      if (threadStates[i].perThread != null)
+        threadStates[i].perThread.docWriter.setInfoStream(infoStream);
+  }
+
+  synchronized void setMaxFieldLength(int maxFieldLength) {
+    this.maxFieldLength = maxFieldLength;
+    for(int i=0;i<threadStates.length;i++)
+      if (threadStates[i].perThread != null)
+        threadStates[i].perThread.docWriter.setMaxFieldLength(maxFieldLength);
+  }
+
+  synchronized void setSimilarity(Similarity similarity) {
+    this.similarity = similarity;
+    for(int i=0;i<threadStates.length;i++)
+      if (threadStates[i].perThread != null)
+        threadStates[i].perThread.docWriter.setSimilarity(similarity);
+  }
+
+  void message(String message) {
+    if (infoStream != null)
+      writer.message("DWPool: " + message);
+  }
+
+  private PerThread newPerThread() throws IOException {
+    // NOTE: must not call synchronized IndexWriter methods
+    // here, since we hold our own lock
+    final DocumentsWriter dw = new DocumentsWriter(directory, writer, indexingChain, 1, 0);
+    dw.setInfoStream(infoStream);
+    dw.setMaxFieldLength(maxFieldLength);
+    dw.setSimilarity(similarity);
+    // We decide when to flush:
+    dw.setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    dw.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    dw.setMaxBufferedDeleteTerms(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    return new PerThread(dw, generation);
+  }
+
+  /** Returns an idle ThreadState, marked as in use by the
+   *  current thread.  Waits if all ThreadStates are busy or
+   *  if threads are paused. */
+  private ThreadState getThreadState() throws IOException {
+    while(true) {
+      if (closed)
+        throw new AlreadyClosedException("this IndexWriter is closed");
+
+      if (pauseThreads == 0) {
+        // First try the ThreadState this thread used last
+        // time, so that consistent patterns (eg each thread
+        // indexing a different content source) end up in
+        // the same segment:
+        ThreadState state = threadBindings.get(Thread.currentThread());
+        if (state == null || !state.isIdle) {
+          state = null;
+          for(int i=0;i<threadStates.length;i++) {
+            if (threadStates[i].isIdle) {
+              state = threadStates[i];
+              break;
+            }
+          }
+          if (state == null && threadStates.length < maxThreadStates) {
+            ThreadState[] newArray = new ThreadState[1+threadStates.length];
+            System.arraycopy(threadStates, 0, newArray, 0, threadStates.length);
+            state = newArray[threadStates.length] = new ThreadState();
+            threadStates = newArray;
+          }
+          if (state != null)
+            threadBindings.put(Thread.currentThread(), state);
+        }
+        if (state != null) {
+          if (state.perThread == null)
+            state.perThread = newPerThread();
+          state.isIdle = false;
+          return state;
+        }
+      }
+
+      doWait();
+    }
+  }
+
+  private void doWait() {
+    try {
+      wait();
+    } catch (InterruptedException ie) {
+      throw new ThreadInterruptedException(ie);
+    }
+  }
+
+  /** Adds a document, after deleting all docs containing
+   *  <code>delTerm</code> if it is non-null.  Returns true
+   *  if a segment was flushed, in which case the caller
+   *  should check for merges. */
+  boolean updateDocument(Document doc, Analyzer analyzer, Term delTerm)
+    throws CorruptIndexException, IOException {
+
+    final ThreadState state;
+    final PerThread perThread;
+    synchronized(this) {
+      state = getThreadState();
+      perThread = state.perThread;
+      if (delTerm != null)
+        bufferDeletes(new Term[] {delTerm}, null);
+      // Reserve the docID, so that deletes buffered while
+      // we index it cover this doc as well:
+      perThread.numDocs++;
+    }
+
+    boolean success = false;
+    PerThread toFlush = null;
+    try {
+      perThread.docWriter.addDocument(doc, analyzer);
+      success = true;
+    } finally {
+      Collection<String> abortedFiles = null;
+      synchronized(this) {
+        if (perThread.docWriter.getNumDocsInRAM() != perThread.numDocs) {
+          // An aborting exception discarded all docs
+          // buffered in this segment; start over with a
+          // fresh one
+          assert !success;
+          abortedFiles = perThread.docWriter.abortedFiles();
+          state.perThread = null;
+          state.flushPending = false;
+        } else if (success) {
+          toFlush = checkFlush(state);
+        }
+        state.isIdle = true;
+        notifyAll();
+      }
+
+      if (abortedFiles != null)
+        writer.deleteNewFiles(abortedFiles);
+    }
+
+    if (toFlush != null) {
+      flush(toFlush);
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  /** Decides, after a doc was added to the segment of the
+   *  given (not yet released) state, which segment, if
+   *  any, the calling thread must flush, and detaches it. */
+  private PerThread checkFlush(ThreadState state) throws IOException {
+    assert Thread.holdsLock(this);
+
+    final PerThread perThread = state.perThread;
+
+    final int maxBufferedDocs = docWriter.getMaxBufferedDocs();
+    if (state.flushPending ||
+        (maxBufferedDocs != IndexWriterConfig.DISABLE_AUTO_FLUSH && perThread.numDocs >= maxBufferedDocs)) {
+      return detach(state);
+    }
+
+    final double ramBufferSizeMB = docWriter.getRAMBufferSizeMB();
+    if (ramBufferSizeMB != IndexWriterConfig.DISABLE_AUTO_FLUSH) {
+      // Global accounting: sum the RAM of all in-memory
+      // segments, plus the deletes buffered against the
+      // flushed segments.  Segments that are being flushed,
+      // or will be once their owner finished its current
+      // doc, are about to free their RAM so we don't count
+      // them.
+      long bytesUsed = docWriter.getRAMUsed();
+      ThreadState largest = null;
+      long largestBytes = -1;
+      for(int i=0;i<threadStates.length;i++) {
+        final ThreadState ts = threadStates[i];
+        if (ts.perThread != null && ts.perThread.numDocs > 0 && !ts.flushPending) {
+          final long bytes = ts.perThread.bytesUsed();
+          bytesUsed += bytes;
+          if (bytes > largestBytes) {
+            largest = ts;
+            largestBytes = bytes;
+          }
+        }
+      }
+
+      if (largest != null && bytesUsed >= (long) (ramBufferSizeMB*1024*1024)) {
+        if (infoStream != null)
+          message("RAM: usedMB=" + docWriter.toMB(bytesUsed) + " vs trigger=" + ramBufferSizeMB +
+                  "; flush largest segment usedMB=" + docWriter.toMB(largestBytes));
+        if (largest == state || largest.isIdle) {
+          return detach(largest);
+        } else {
+          // Its owner will flush it once it finished the
+          // current doc
+          largest.flushPending = true;
+        }
+      }
+    }
+    return null;
+  }
+
+  private PerThread detach(ThreadState state) {
+    final PerThread perThread = state.perThread;
+    state.perThread = null;
+    state.flushPending = false;
+    flushing.add(perThread);
+    return perThread;
+  }
+
+  /** Writes a detached segment and registers it with
+   *  IndexWriter. */
+  private void flush(PerThread perThread) throws IOException {
+    boolean success = false;
+    try {
+      writer.flushPerThread(this, perThread);
+      success = true;
+    } finally {
+      if (!success) {
+        synchronized(this) {
+          flushing.remove(perThread);
+          notifyAll();
+        }
+      }
+    }
+  }
+
+  /** Called by IndexWriter, while it holds its own lock,
+   *  once the segment of <code>perThread</code> was
+   *  written.  Returns false if the segment must be
+   *  discarded instead because we were aborted meanwhile.
+   *  Else, no more deletes will be buffered against this
+   *  segment, and, atomically, the deletes against the
+   *  flushed segments start to cover its docs. */
+  synchronized boolean finishFlush(PerThread perThread) {
+    assert Thread.holdsLock(writer);
+    final boolean removed = flushing.remove(perThread);
+    assert removed;
+    notifyAll();
+    if (perThread.generation != generation)
+      return false;
+    docWriter.updateFlushedDocCount(perThread.numDocs);
+    return true;
+  }
+
+  /** Flushes all in-memory segments that have docs, and
+   *  waits for segments that other threads are currently
+   *  flushing.  Returns true if any segment was flushed. */
+  boolean flushAll() throws IOException {
+    assert !Thread.holdsLock(writer);
+
+    final List<PerThread> toFlush = new ArrayList<PerThread>();
+    final List<PerThread> others;
+    synchronized(this) {
+      others = new ArrayList<PerThread>(flushing);
+      for(int i=0;i<threadStates.length;i++) {
+        final ThreadState state = threadStates[i];
+        while(!state.isIdle)
+          doWait();
+        if (state.perThread != null && state.perThread.numDocs > 0) {
+          toFlush.add(detach(state));
+        }
+      }
+      threadBindings.clear();
+    }
+
+    if (infoStream != null && toFlush.size() > 0)
+      message("flush all: " + toFlush.size() + " segments; " + others.size() + " being flushed by other threads");
+
+    Throwable th = null;
+    for(PerThread perThread : toFlush) {
+      try {
+        flush(perThread);
+      } catch (Throwable t) {
+        if (th == null)
+          th = t;
+      }
+    }
+
+    synchronized(this) {
+      for(PerThread perThread : others)
+        while(flushing.contains(perThread))
+          doWait();
+    }
+
+    if (th != null) {
+      if (th instanceof IOException) throw (IOException) th;
+      if (th instanceof RuntimeException) throw (RuntimeException) th;
+      if (th instanceof Error) throw (Error) th;
+      throw new RuntimeException(th);
+    }
+
+    return toFlush.size() > 0 || others.size() > 0;
+  }
+
+  /** Buffers deletes against all flushed and in-memory
+   *  segments.  Returns true if the caller should flush
+   *  because too many deletes are buffered. */
+  boolean bufferDeleteTerms(Term[] terms) {
+    synchronized(this) {
+      bufferDeletes(terms, null);
+    }
+    return docWriter.timeToFlushDeletes();
+  }
+
+  boolean bufferDeleteQueries(Query[] queries) {
+    synchronized(this) {
+      bufferDeletes(null, queries);
+    }
+    return docWriter.timeToFlushDeletes();
+  }
+
+  private void bufferDeletes(Term[] terms, Query[] queries) {
+    assert Thread.holdsLock(this);
+    if (closed)
+      throw new AlreadyClosedException("this IndexWriter is closed");
+    docWriter.bufferFlushedDeletes(terms, queries);
+    for(int i=0;i<threadStates.length;i++) {
+      final PerThread perThread = threadStates[i].perThread;
+      if (perThread != null && perThread.numDocs > 0)
+        bufferDeletes(perThread, terms, queries);
+    }
+    for(PerThread perThread : flushing)
+      bufferDeletes(perThread, terms, queries);
+  }
+
+  private static void bufferDeletes(PerThread perThread, Term[] terms, Query[] queries) {
+    final BufferedDeletes deletes = perThread.deletes;
+    final int docIDUpto = perThread.numDocs;
+    if (terms != null) {
+      for(int i=0;i<terms.length;i++) {
+        final Term term = terms[i];
+        BufferedDeletes.Num num = deletes.terms.get(term);
+        if (num == null)
+          deletes.terms.put(term, new BufferedDeletes.Num(docIDUpto));
+        else
+          num.setNum(docIDUpto);
+        deletes.numTerms++;
+        deletes.addBytesUsed(DocumentsWriter.BYTES_PER_DEL_TERM + term.bytes.length);
+      }
+    }
+    if (queries != null) {
+      for(int i=0;i<queries.length;i++) {
+        deletes.queries.put(queries[i], Integer.valueOf(docIDUpto));
+        deletes.addBytesUsed(DocumentsWriter.BYTES_PER_DEL_QUERY);
+      }
+    }
+  }
+
+  /** Waits until no thread is indexing a document, and
+   *  prevents threads from starting new ones until {@link
+   *  #resumeAllThreads} is called. */
+  synchronized void pauseAllThreads() {
+    pauseThreads++;
+    while(!allThreadsIdle())
+      doWait();
+  }
+
+  synchronized void resumeAllThreads() {
+    pauseThreads--;
+    assert pauseThreads >= 0;
+    if (0 == pauseThreads)
+      notifyAll();
+  }
+
+  private boolean allThreadsIdle() {
+    for(int i=0;i<threadStates.length;i++)
+      if (!threadStates[i].isIdle)
+        return false;
+    return true;
+  }
+
+  /** Discards all docs buffered in memory, including the
+   *  segments currently being flushed.  Threads must be
+   *  paused. */
+  synchronized void abort() {
+    assert pauseThreads > 0;
+    if (infoStream != null)
+      message("now abort");
+    generation++;
+    for(int i=0;i<threadStates.length;i++) {
+      final ThreadState state = threadStates[i];
+      if (state.perThread != null) {
+        try {
+          state.perThread.docWriter.abort();
+        } catch (Throwable t) {
+        }
+        state.perThread = null;
+      }
+      state.flushPending = false;
+    }
+    threadBindings.clear();
+  }
+
+  /** Prevents any further documents from being added, and
+   *  waits for segments still being flushed. */
+  synchronized void close() {
+    assert !Thread.holdsLock(writer);
+    closed = true;
+    notifyAll();
+    while(flushing.size() > 0)
+      doWait();
+  }
+
+  synchronized int getNumDocsInRAM() {
+    int count = 0;
+    for(int i=0;i<threadStates.length;i++)
+      if (threadStates[i].perThread != null)
+        count += threadStates[i].perThread.numDocs;
+    for(PerThread perThread : flushing)
+      count += perThread.numDocs;
+    return count;
+  }
+
+  synchronized long getRAMUsed() {
+    long bytes = 0;
+    for(int i=0;i<threadStates.length;i++)
+      if (threadStates[i].perThread != null)
+        bytes += threadStates[i].perThread.bytesUsed();
+    for(PerThread perThread : flushing)
+      bytes += perThread.bytesUsed();
+    return bytes;
+  }
+
+  synchronized boolean anyChanges() {
+    return getNumDocsInRAM() > 0;
+  }
+}
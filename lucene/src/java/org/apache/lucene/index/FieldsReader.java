@@ -28,7 +28,9 @@ import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.BufferedIndexInput;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.CloseableThreadLocal;
+import org.apache.lucene.util.LZ4;
 
 import java.io.IOException;
 import java.io.Reader;
@@ -37,10 +39,19 @@ import java.io.Reader;
  * Class responsible for access to stored document fields.
  * <p/>
  * It uses &lt;segment&gt;.fdt and &lt;segment&gt;.fdx; files.
+ * Since {@link FieldsWriter#FORMAT_LUCENE_4_0_COMPRESSED_BLOCKS}
+ * documents are compressed in blocks; each FieldsReader
+ * keeps the last few blocks it decompressed, so loading
+ * documents that are close to each other only reads and
+ * decompresses their block once.
  */
 final class FieldsReader implements Cloneable {
   private final static int FORMAT_SIZE = 4;
 
+  // Number of decompressed blocks kept by each
+  // FieldsReader (ie, by each thread of a SegmentReader)
+  final static int BLOCK_CACHE_SIZE = 4;
+
   private final FieldInfos fieldInfos;
 
   // The main fieldStream, used only for cloning.
@@ -64,6 +75,13 @@ final class FieldsReader implements Cloneable {
   private CloseableThreadLocal<IndexInput> fieldsStreamTL = new CloseableThreadLocal<IndexInput>();
   private boolean isOriginal = false;
 
+  // Only used for compressed blocks
+  private final BlockCache blockCache;
+
+  // Holds the values passed to visitors of uncompressed docs
+  private byte[] scratch = new byte[0];
+  private CloseableThreadLocal<BlockCache> blockCacheTL = new CloseableThreadLocal<BlockCache>();
+
   /** Returns a cloned FieldsReader that shares open
    *  IndexInputs with the original one.  It is the caller's
    *  job not to close the original FieldsReader until all
@@ -87,6 +105,7 @@ final class FieldsReader implements Cloneable {
     this.cloneableIndexStream = cloneableIndexStream;
     fieldsStream = (IndexInput) cloneableFieldsStream.clone();
     indexStream = (IndexInput) cloneableIndexStream.clone();
+    blockCache = isCompressed() ? new BlockCache(fieldsStream) : null;
   }
   
   FieldsReader(Directory d, String segment, FieldInfos fn) throws IOException {
@@ -111,6 +130,7 @@ final class FieldsReader implements Cloneable {
         throw new IndexFormatTooNewException(indexStreamFN, format, FieldsWriter.FORMAT_MINIMUM, FieldsWriter.FORMAT_CURRENT);
 
       fieldsStream = (IndexInput) cloneableFieldsStream.clone();
+      blockCache = isCompressed() ? new BlockCache(fieldsStream) : null;
 
       final long indexSize = cloneableIndexStream.length() - FORMAT_SIZE;
       
@@ -174,6 +194,7 @@ final class FieldsReader implements Cloneable {
         indexStream.close();
       }
       fieldsStreamTL.close();
+      blockCacheTL.close();
       closed = true;
     }
   }
@@ -182,6 +203,10 @@ final class FieldsReader implements Cloneable {
     return size;
   }
 
+  private boolean isCompressed() {
+    return format >= FieldsWriter.FORMAT_LUCENE_4_0_COMPRESSED_BLOCKS;
+  }
+
   private void seekIndex(int docID) throws IOException {
     indexStream.seek(FORMAT_SIZE + (docID + docStoreOffset) * 8L);
   }
@@ -189,7 +214,19 @@ final class FieldsReader implements Cloneable {
   final Document doc(int n, FieldSelector fieldSelector) throws CorruptIndexException, IOException {
     seekIndex(n);
     long position = indexStream.readLong();
-    fieldsStream.seek(position);
+
+    // For compressed blocks, fieldsStream reads the
+    // decompressed block, and pointers are relative to it
+    final IndexInput fieldsStream;
+    final long blockPointer;
+    if (blockCache != null) {
+      blockPointer = position >>> FieldsWriter.BLOCK_DOC_BITS;
+      fieldsStream = blockCache.seek(blockPointer, (int) (position & FieldsWriter.BLOCK_DOC_MASK));
+    } else {
+      blockPointer = -1;
+      fieldsStream = this.fieldsStream;
+      fieldsStream.seek(position);
+    }
 
     Document doc = new Document();
     int numFields = fieldsStream.readVInt();
@@ -206,40 +243,105 @@ final class FieldsReader implements Cloneable {
       //TODO: Find an alternative approach here if this list continues to grow beyond the
       //list of 5 or 6 currently here.  See Lucene 762 for discussion
       if (acceptField.equals(FieldSelectorResult.LOAD)) {
-        addField(doc, fi, binary, tokenize);
+        addField(fieldsStream, doc, fi, binary, tokenize);
       }
       else if (acceptField.equals(FieldSelectorResult.LOAD_AND_BREAK)){
-        addField(doc, fi, binary, tokenize);
+        addField(fieldsStream, doc, fi, binary, tokenize);
         break;//Get out of this loop
       }
       else if (acceptField.equals(FieldSelectorResult.LAZY_LOAD)) {
-        addFieldLazy(doc, fi, binary, tokenize, true);
+        addFieldLazy(fieldsStream, blockPointer, doc, fi, binary, tokenize, true);
       }
       else if (acceptField.equals(FieldSelectorResult.LATENT)) {
-        addFieldLazy(doc, fi, binary, tokenize, false);
+        addFieldLazy(fieldsStream, blockPointer, doc, fi, binary, tokenize, false);
       }
       else if (acceptField.equals(FieldSelectorResult.SIZE)){
-        skipField(addFieldSize(doc, fi, binary));
+        skipField(fieldsStream, addFieldSize(fieldsStream, doc, fi, binary));
       }
       else if (acceptField.equals(FieldSelectorResult.SIZE_AND_BREAK)){
-        addFieldSize(doc, fi, binary);
+        addFieldSize(fieldsStream, doc, fi, binary);
         break;
       }
       else {
-        skipField();
+        skipField(fieldsStream);
       }
     }
 
     return doc;
   }
 
+  /** Visits the stored fields of document n, see {@link
+   *  IndexReader#document(int, StoredFieldVisitor)}.  Values
+   *  of compressed blocks are passed straight from the
+   *  decompressed block; otherwise they are read into a
+   *  scratch buffer. */
+  final void visitDocument(int n, StoredFieldVisitor visitor) throws CorruptIndexException, IOException {
+    seekIndex(n);
+    final long position = indexStream.readLong();
+
+    final IndexInput fieldsStream;
+    final BlockInput blockInput;
+    if (blockCache != null) {
+      fieldsStream = blockInput = blockCache.seek(position >>> FieldsWriter.BLOCK_DOC_BITS, (int) (position & FieldsWriter.BLOCK_DOC_MASK));
+    } else {
+      blockInput = null;
+      fieldsStream = this.fieldsStream;
+      fieldsStream.seek(position);
+    }
+
+    final int numFields = fieldsStream.readVInt();
+    for (int i = 0; i < numFields; i++) {
+      final FieldInfo fi = fieldInfos.fieldInfo(fieldsStream.readVInt());
+      final byte bits = fieldsStream.readByte();
+      assert bits <= FieldsWriter.FIELD_IS_TOKENIZED + FieldsWriter.FIELD_IS_BINARY;
+      // Binary values and strings are both written as a
+      // VInt length followed by the (UTF-8) bytes
+      final int length = fieldsStream.readVInt();
+
+      final StoredFieldVisitor.Status status = visitor.needsField(fi.name);
+      if (status == StoredFieldVisitor.Status.STOP) {
+        break;
+      } else if (status == StoredFieldVisitor.Status.NO) {
+        skipField(fieldsStream, length);
+        continue;
+      }
+
+      final byte[] bytes;
+      final int offset;
+      if (blockInput != null) {
+        bytes = blockInput.bytes;
+        offset = (int) blockInput.getFilePointer();
+        skipField(fieldsStream, length);
+      } else {
+        if (scratch.length < length) {
+          scratch = new byte[ArrayUtil.oversize(length, 1)];
+        }
+        fieldsStream.readBytes(scratch, 0, length);
+        bytes = scratch;
+        offset = 0;
+      }
+
+      if ((bits & FieldsWriter.FIELD_IS_BINARY) != 0) {
+        visitor.binaryField(fi.name, bytes, offset, length);
+      } else {
+        visitor.stringField(fi.name, bytes, offset, length, (bits & FieldsWriter.FIELD_IS_TOKENIZED) != 0);
+      }
+    }
+  }
+
   /** Returns the length in bytes of each raw document in a
    *  contiguous range of length numDocs starting with
    *  startDocID.  Returns the IndexInput (the fieldStream),
-   *  already seeked to the starting point for startDocID.*/
+   *  already seeked to the starting point for startDocID.
+   *  For compressed blocks the lengths are uncompressed,
+   *  and the returned IndexInput decompresses the blocks
+   *  as they are read; it cannot seek. */
   final IndexInput rawDocs(int[] lengths, int startDocID, int numDocs) throws IOException {
     seekIndex(startDocID);
     long startOffset = indexStream.readLong();
+    if (blockCache != null) {
+      return rawBlockDocs(lengths, startOffset, numDocs);
+    }
     long lastOffset = startOffset;
     int count = 0;
     while (count < numDocs) {
@@ -259,24 +361,45 @@ final class FieldsReader implements Cloneable {
     return fieldsStream;
   }
 
+  private IndexInput rawBlockDocs(int[] lengths, long startOffset, int numDocs) throws IOException {
+    final long blockPointer = startOffset >>> FieldsWriter.BLOCK_DOC_BITS;
+    final int startDoc = (int) (startOffset & FieldsWriter.BLOCK_DOC_MASK);
+
+    // Read the doc lengths from the block headers
+    final Block block = new Block();
+    fieldsStream.seek(blockPointer);
+    int doc = startDoc;
+    int count = 0;
+    while (count < numDocs) {
+      block.readHeader(fieldsStream);
+      for (; doc < block.numDocs && count < numDocs; doc++) {
+        lengths[count++] = block.docStarts[doc+1] - block.docStarts[doc];
+      }
+      fieldsStream.seek(fieldsStream.getFilePointer() + block.compressedLength);
+      doc = 0;
+    }
+
+    return new RawBlockDocsInput(fieldsStream, block, blockPointer, startDoc);
+  }
+
   /**
    * Skip the field.  We still have to read some of the information about the field, but can skip past the actual content.
    * This will have the most payoff on large fields.
    */
-  private void skipField() throws IOException {
-    skipField(fieldsStream.readVInt());
+  private void skipField(IndexInput fieldsStream) throws IOException {
+    skipField(fieldsStream, fieldsStream.readVInt());
   }
   
-  private void skipField(int toRead) throws IOException {
+  private void skipField(IndexInput fieldsStream, int toRead) throws IOException {
     fieldsStream.seek(fieldsStream.getFilePointer() + toRead);
   }
 
-  private void addFieldLazy(Document doc, FieldInfo fi, boolean binary, boolean tokenize, boolean cacheResult) throws IOException {
+  private void addFieldLazy(IndexInput fieldsStream, long blockPointer, Document doc, FieldInfo fi, boolean binary, boolean tokenize, boolean cacheResult) throws IOException {
     if (binary) {
       int toRead = fieldsStream.readVInt();
       long pointer = fieldsStream.getFilePointer();
       //was: doc.add(new Fieldable(fi.name, b, Fieldable.Store.YES));
-      doc.add(new LazyField(fi.name, Field.Store.YES, toRead, pointer, binary, cacheResult));
+      doc.add(new LazyField(fi.name, Field.Store.YES, toRead, blockPointer, pointer, binary, cacheResult));
       //Need to move the pointer ahead by toRead positions
       fieldsStream.seek(pointer + toRead);
     } else {
@@ -289,7 +412,7 @@ final class FieldsReader implements Cloneable {
       long pointer = fieldsStream.getFilePointer();
       //Skip ahead of where we are by the length of what is stored
       fieldsStream.seek(pointer+length);
-      f = new LazyField(fi.name, store, index, termVector, length, pointer, binary, cacheResult);
+      f = new LazyField(fi.name, store, index, termVector, length, blockPointer, pointer, binary, cacheResult);
       f.setOmitNorms(fi.omitNorms);
       f.setOmitTermFreqAndPositions(fi.omitTermFreqAndPositions);
 
@@ -298,7 +421,7 @@ final class FieldsReader implements Cloneable {
 
   }
 
-  private void addField(Document doc, FieldInfo fi, boolean binary, boolean tokenize) throws CorruptIndexException, IOException {
+  private void addField(IndexInput fieldsStream, Document doc, FieldInfo fi, boolean binary, boolean tokenize) throws CorruptIndexException, IOException {
 
     if (binary) {
       int toRead = fieldsStream.readVInt();
@@ -327,7 +450,7 @@ final class FieldsReader implements Cloneable {
   // Add the size of field as a byte[] containing the 4 bytes of the integer byte size (high order byte first; char = 2 bytes)
   // Read just the size -- caller must skip the field content to continue reading fields
   // Return the size in bytes or chars, depending on field type
-  private int addFieldSize(Document doc, FieldInfo fi, boolean binary) throws IOException {
+  private int addFieldSize(IndexInput fieldsStream, Document doc, FieldInfo fi, boolean binary) throws IOException {
     int size = fieldsStream.readVInt(), bytesize = binary ? size : 2*size;
     byte[] sizebytes = new byte[4];
     sizebytes[0] = (byte) (bytesize>>>24);
@@ -344,12 +467,15 @@ final class FieldsReader implements Cloneable {
    */
   private class LazyField extends AbstractField implements Fieldable {
     private int toRead;
+    // -1 if the document is not in a compressed block
+    private long blockPointer;
     private long pointer;
     private final boolean cacheResult;
 
-    public LazyField(String name, Field.Store store, int toRead, long pointer, boolean isBinary, boolean cacheResult) {
+    public LazyField(String name, Field.Store store, int toRead, long blockPointer, long pointer, boolean isBinary, boolean cacheResult) {
       super(name, store, Field.Index.NO, Field.TermVector.NO);
       this.toRead = toRead;
+      this.blockPointer = blockPointer;
       this.pointer = pointer;
       this.isBinary = isBinary;
       this.cacheResult = cacheResult;
@@ -358,9 +484,10 @@ final class FieldsReader implements Cloneable {
       lazy = true;
     }
 
-    public LazyField(String name, Field.Store store, Field.Index index, Field.TermVector termVector, int toRead, long pointer, boolean isBinary, boolean cacheResult) {
+    public LazyField(String name, Field.Store store, Field.Index index, Field.TermVector termVector, int toRead, long blockPointer, long pointer, boolean isBinary, boolean cacheResult) {
       super(name, store, index, termVector);
       this.toRead = toRead;
+      this.blockPointer = blockPointer;
       this.pointer = pointer;
       this.isBinary = isBinary;
       this.cacheResult = cacheResult;
@@ -369,7 +496,15 @@ final class FieldsReader implements Cloneable {
       lazy = true;
     }
 
-    private IndexInput getFieldStream() {
+    private IndexInput getFieldStream() throws IOException {
+      if (blockPointer != -1) {
+        BlockCache localBlockCache = blockCacheTL.get();
+        if (localBlockCache == null) {
+          localBlockCache = new BlockCache((IndexInput) cloneableFieldsStream.clone());
+          blockCacheTL.set(localBlockCache);
+        }
+        return localBlockCache.seek(blockPointer);
+      }
       IndexInput localFieldsStream = fieldsStreamTL.get();
       if (localFieldsStream == null) {
         localFieldsStream = (IndexInput) cloneableFieldsStream.clone();
@@ -404,8 +539,8 @@ final class FieldsReader implements Cloneable {
       else {
         if (fieldsData == null) {
           String result = null;
-          IndexInput localFieldsStream = getFieldStream();
           try {
+            IndexInput localFieldsStream = getFieldStream();
             localFieldsStream.seek(pointer);
             byte[] bytes = new byte[toRead];
             localFieldsStream.readBytes(bytes, 0, toRead);
@@ -436,11 +571,10 @@ final class FieldsReader implements Cloneable {
           else
             b = result;
    
-          IndexInput localFieldsStream = getFieldStream();
-
           // Throw this IOException since IndexReader.document does so anyway, so probably not that big of a change for people
           // since they are already handling this exception when getting the document
           try {
+            IndexInput localFieldsStream = getFieldStream();
             localFieldsStream.seek(pointer);
             localFieldsStream.readBytes(b, 0, toRead);
           } catch (IOException e) {
@@ -460,4 +594,215 @@ final class FieldsReader implements Cloneable {
         return null;     
     }
   }
+
+  /** One decompressed block of documents. */
+  private static final class Block {
+    long pointer = -1;
+    int numDocs;
+    final int[] docStarts = new int[FieldsWriter.MAX_BLOCK_DOCS+1];
+    int compressedLength;
+    byte[] bytes = new byte[0];
+
+    /** Reads the header of the block starting at the
+     *  current position of the input */
+    void readHeader(IndexInput in) throws IOException {
+      numDocs = in.readVInt();
+      if (numDocs <= 0 || numDocs > FieldsWriter.MAX_BLOCK_DOCS) {
+        throw new CorruptIndexException("invalid number of documents in stored fields block: " + numDocs);
+      }
+      for (int i = 0; i < numDocs; i++) {
+        docStarts[i+1] = docStarts[i] + in.readVInt();
+      }
+      compressedLength = in.readVInt();
+    }
+
+    /** Reads and decompresses the block starting at the
+     *  current position of the input */
+    void read(IndexInput in) throws IOException {
+      pointer = in.getFilePointer();
+      readHeader(in);
+      final int length = docStarts[numDocs];
+      if (bytes.length < length + LZ4.COPY_OVERRUN) {
+        bytes = new byte[ArrayUtil.oversize(length + LZ4.COPY_OVERRUN, 1)];
+      }
+      LZ4.decompress(in, length, bytes);
+    }
+  }
+
+  /** Keeps the last {@link #BLOCK_CACHE_SIZE} blocks read
+   *  from the fields stream. */
+  private static final class BlockCache {
+    private final IndexInput fieldsStream;
+    // Most recently used first
+    private final Block[] blocks = new Block[BLOCK_CACHE_SIZE];
+    private int numBlocks;
+    private final BlockInput input = new BlockInput();
+
+    BlockCache(IndexInput fieldsStream) {
+      this.fieldsStream = fieldsStream;
+    }
+
+    private Block get(long blockPointer) throws IOException {
+      int i = 0;
+      while (i < numBlocks && blocks[i].pointer != blockPointer) {
+        i++;
+      }
+      final Block block;
+      if (i < numBlocks) {
+        block = blocks[i];
+      } else {
+        // Miss: reuse the least recently used block if the
+        // cache is full
+        if (numBlocks < blocks.length) {
+          block = new Block();
+        } else {
+          i = numBlocks - 1;
+          block = blocks[i];
+          block.pointer = -1;
+        }
+        fieldsStream.seek(blockPointer);
+        block.read(fieldsStream);
+        if (i == numBlocks) {
+          numBlocks++;
+        }
+      }
+      System.arraycopy(blocks, 0, blocks, 1, i);
+      blocks[0] = block;
+      return block;
+    }
+
+    /** Returns an input over the whole decompressed block */
+    BlockInput seek(long blockPointer) throws IOException {
+      final Block block = get(blockPointer);
+      input.reset(block.bytes, 0, block.docStarts[block.numDocs]);
+      return input;
+    }
+
+    /** Returns an input positioned at the start of the
+     *  given document of the block */
+    BlockInput seek(long blockPointer, int doc) throws IOException {
+      final Block block = get(blockPointer);
+      if (doc >= block.numDocs) {
+        throw new CorruptIndexException("document " + doc + " is out of bounds of stored fields block at " + blockPointer + " with " + block.numDocs + " docs");
+      }
+      input.reset(block.bytes, block.docStarts[doc], block.docStarts[block.numDocs]);
+      return input;
+    }
+  }
+
+  /** Reads from a decompressed block; file pointers are
+   *  offsets in the block. */
+  private static final class BlockInput extends IndexInput {
+    private byte[] bytes;
+    private int pos;
+    private int end;
+
+    void reset(byte[] bytes, int pos, int end) {
+      this.bytes = bytes;
+      this.pos = pos;
+      this.end = end;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+      if (pos >= end) {
+        throw new IOException("read past EOF");
+      }
+      return bytes[pos++];
+    }
+
+    @Override
+    public void readBytes(byte[] b, int offset, int len) throws IOException {
+      if (pos + len > end) {
+        throw new IOException("read past EOF");
+      }
+      System.arraycopy(bytes, pos, b, offset, len);
+      pos += len;
+    }
+
+    @Override
+    public long getFilePointer() {
+      return pos;
+    }
+
+    @Override
+    public void seek(long pos) {
+      this.pos = (int) pos;
+    }
+
+    @Override
+    public long length() {
+      return end;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  /** Sequentially reads the uncompressed documents of
+   *  consecutive blocks, starting with a given document.
+   *  Used to bulk-copy documents when merging. */
+  private static final class RawBlockDocsInput extends IndexInput {
+    private final IndexInput fieldsStream;
+    private final Block block;
+    private int pos;
+    private int end;
+
+    RawBlockDocsInput(IndexInput fieldsStream, Block block, long blockPointer, int startDoc) throws IOException {
+      this.fieldsStream = fieldsStream;
+      this.block = block;
+      fieldsStream.seek(blockPointer);
+      nextBlock();
+      pos = block.docStarts[startDoc];
+    }
+
+    private void nextBlock() throws IOException {
+      // Blocks are written one after the other
+      block.read(fieldsStream);
+      pos = 0;
+      end = block.docStarts[block.numDocs];
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+      if (pos == end) {
+        nextBlock();
+      }
+      return block.bytes[pos++];
+    }
+
+    @Override
+    public void readBytes(byte[] b, int offset, int len) throws IOException {
+      while (len > 0) {
+        if (pos == end) {
+          nextBlock();
+        }
+        final int chunk = Math.min(len, end - pos);
+        System.arraycopy(block.bytes, pos, b, offset, chunk);
+        pos += chunk;
+        offset += chunk;
+        len -= chunk;
+      }
+    }
+
+    @Override
+    public long getFilePointer() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void seek(long pos) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long length() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+    }
+  }
 }
@@ -25,6 +25,9 @@ import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.RAMOutputStream;
 import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.LZ4;
 
 final class FieldsWriter
 {
@@ -34,13 +37,27 @@ final class FieldsWriter
   // Lucene 3.0: Removal of compressed fields
   static final int FORMAT_LUCENE_3_0_NO_COMPRESSED_FIELDS = 2;
 
+  // Lucene 4.0: consecutive documents are compressed
+  // together in blocks, see writeBlock
+  static final int FORMAT_LUCENE_4_0_COMPRESSED_BLOCKS = 3;
+
   // NOTE: if you introduce a new format, make it 1 higher
   // than the current one, and always change this if you
   // switch to a new format!
-  static final int FORMAT_CURRENT = FORMAT_LUCENE_3_0_NO_COMPRESSED_FIELDS;
+  static final int FORMAT_CURRENT = FORMAT_LUCENE_4_0_COMPRESSED_BLOCKS;
   
   // when removing support for old versions, leave the last supported version here
   static final int FORMAT_MINIMUM = FORMAT_LUCENE_3_0_NO_COMPRESSED_FIELDS;
+
+  // A block is written once it holds at least BLOCK_SIZE
+  // bytes of (uncompressed) documents, or MAX_BLOCK_DOCS
+  // documents.  The index entry of each document is the
+  // file pointer of its block, shifted left by
+  // BLOCK_DOC_BITS, plus its position in the block.
+  static final int BLOCK_SIZE = 1 << 14;
+  static final int BLOCK_DOC_BITS = 8;
+  static final int MAX_BLOCK_DOCS = 1 << BLOCK_DOC_BITS;
+  static final int BLOCK_DOC_MASK = MAX_BLOCK_DOCS - 1;
   
     private FieldInfos fieldInfos;
 
@@ -50,6 +67,15 @@ final class FieldsWriter
 
     private boolean doClose;
 
+    // Documents of the pending block; only used when we
+    // write to a real doc store (doClose is true)
+    private BlockBuffer block;
+    private BlockBuffer compressed;
+    private LZ4.HashTable hashTable;
+    private int[] blockDocLengths;
+    private int blockDocs;
+    private int docStart;
+
     FieldsWriter(Directory d, String segment, FieldInfos fn) throws IOException {
         fieldInfos = fn;
 
@@ -99,6 +125,10 @@ final class FieldsWriter
           }
         }
 
+        block = new BlockBuffer();
+        compressed = new BlockBuffer();
+        hashTable = new LZ4.HashTable();
+        blockDocLengths = new int[MAX_BLOCK_DOCS];
         doClose = true;
     }
 
@@ -113,22 +143,63 @@ final class FieldsWriter
       this.fieldsStream = stream;
     }
 
-    // Writes the contents of buffer into the fields stream
+    // Adds the index entry of the next document, which
+    // must then be written to the pending block
+    private void startDocument() throws IOException {
+      indexStream.writeLong((fieldsStream.getFilePointer() << BLOCK_DOC_BITS) | blockDocs);
+      docStart = block.length;
+    }
+
+    private void endDocument() throws IOException {
+      blockDocLengths[blockDocs++] = block.length - docStart;
+      if (blockDocs == MAX_BLOCK_DOCS || block.length >= BLOCK_SIZE) {
+        writeBlock();
+      }
+    }
+
+    // Writes the pending block to the fields stream:
+    //   NumDocs, DocLength^NumDocs, CompressedLength, CompressedDocs
+    // where CompressedDocs are the docs (in the format
+    // written by addDocument) compressed together with LZ4
+    private void writeBlock() throws IOException {
+      if (blockDocs == 0) {
+        return;
+      }
+      compressed.length = 0;
+      LZ4.compress(block.bytes, 0, block.length, compressed, hashTable);
+
+      fieldsStream.writeVInt(blockDocs);
+      for (int i = 0; i < blockDocs; i++) {
+        fieldsStream.writeVInt(blockDocLengths[i]);
+      }
+      fieldsStream.writeVInt(compressed.length);
+      fieldsStream.writeBytes(compressed.bytes, 0, compressed.length);
+
+      block.length = 0;
+      blockDocs = 0;
+    }
+
+    // Writes the contents of buffer into the pending block
     // and adds a new entry for this document into the index
     // stream.  This assumes the buffer was already written
     // in the correct fields format.
     void flushDocument(int numStoredFields, RAMOutputStream buffer) throws IOException {
-      indexStream.writeLong(fieldsStream.getFilePointer());
-      fieldsStream.writeVInt(numStoredFields);
-      buffer.writeTo(fieldsStream);
+      startDocument();
+      block.writeVInt(numStoredFields);
+      buffer.writeTo(block);
+      endDocument();
     }
 
     void skipDocument() throws IOException {
-      indexStream.writeLong(fieldsStream.getFilePointer());
-      fieldsStream.writeVInt(0);
+      startDocument();
+      block.writeVInt(0);
+      endDocument();
     }
 
+    // Also writes the pending block, so that all documents
+    // added so far can be read back
     void flush() throws IOException {
+      writeBlock();
       indexStream.flush();
       fieldsStream.flush();
     }
@@ -138,6 +209,7 @@ final class FieldsWriter
         try {
           if (fieldsStream != null) {
             try {
+              writeBlock();
               fieldsStream.close();
             } finally {
               fieldsStream = null;
@@ -169,14 +241,18 @@ final class FieldsWriter
     }
 
     final void writeField(FieldInfo fi, Fieldable field) throws IOException {
-      fieldsStream.writeVInt(fi.number);
+      writeField(fieldsStream, fi, field);
+    }
+
+    private static void writeField(DataOutput out, FieldInfo fi, Fieldable field) throws IOException {
+      out.writeVInt(fi.number);
       byte bits = 0;
       if (field.isTokenized())
         bits |= FieldsWriter.FIELD_IS_TOKENIZED;
       if (field.isBinary())
         bits |= FieldsWriter.FIELD_IS_BINARY;
                 
-      fieldsStream.writeByte(bits);
+      out.writeByte(bits);
                 
       if (field.isBinary()) {
         final byte[] data;
@@ -186,32 +262,29 @@ final class FieldsWriter
         len = field.getBinaryLength();
         offset =  field.getBinaryOffset();
 
-        fieldsStream.writeVInt(len);
-        fieldsStream.writeBytes(data, offset, len);
+        out.writeVInt(len);
+        out.writeBytes(data, offset, len);
       }
       else {
-        fieldsStream.writeString(field.stringValue());
+        out.writeString(field.stringValue());
       }
     }
 
     /** Bulk write a contiguous series of documents.  The
      *  lengths array is the length (in bytes) of each raw
-     *  document.  The stream IndexInput is the
-     *  fieldsStream from which we should bulk-copy all
-     *  bytes. */
+     *  (uncompressed) document.  The stream IndexInput is
+     *  the stream from which we should bulk-copy all
+     *  bytes, see {@link FieldsReader#rawDocs}. */
     final void addRawDocuments(IndexInput stream, int[] lengths, int numDocs) throws IOException {
-      long position = fieldsStream.getFilePointer();
-      long start = position;
       for(int i=0;i<numDocs;i++) {
-        indexStream.writeLong(position);
-        position += lengths[i];
+        startDocument();
+        block.copyBytes(stream, lengths[i]);
+        endDocument();
       }
-      fieldsStream.copyBytes(stream, position-start);
-      assert fieldsStream.getFilePointer() == position;
     }
 
     final void addDocument(Document doc) throws IOException {
-        indexStream.writeLong(fieldsStream.getFilePointer());
+        startDocument();
 
         int storedCount = 0;
         List<Fieldable> fields = doc.getFields();
@@ -219,13 +292,62 @@ final class FieldsWriter
             if (field.isStored())
                 storedCount++;
         }
-        fieldsStream.writeVInt(storedCount);
+        block.writeVInt(storedCount);
 
         
 
         for (Fieldable field : fields) {
             if (field.isStored())
-              writeField(fieldInfos.fieldInfo(field.name()), field);
+              writeField(block, fieldInfos.fieldInfo(field.name()), field);
         }
+
+        endDocument();
+    }
+
+    /** Growable in-memory output holding the documents of
+     *  the pending block, or the compressed block. */
+    private static final class BlockBuffer extends IndexOutput {
+      byte[] bytes = new byte[BLOCK_SIZE];
+      int length;
+
+      @Override
+      public void writeByte(byte b) {
+        if (length == bytes.length) {
+          bytes = ArrayUtil.grow(bytes, length+1);
+        }
+        bytes[length++] = b;
+      }
+
+      @Override
+      public void writeBytes(byte[] b, int offset, int len) {
+        if (length + len > bytes.length) {
+          bytes = ArrayUtil.grow(bytes, length+len);
+        }
+        System.arraycopy(b, offset, bytes, length, len);
+        length += len;
+      }
+
+      @Override
+      public long getFilePointer() {
+        return length;
+      }
+
+      @Override
+      public long length() {
+        return length;
+      }
+
+      @Override
+      public void seek(long pos) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
     }
 }
@@ -19,6 +19,7 @@ package org.apache.lucene.index;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.index.values.IndexDocValues;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.search.FieldCache; // not great (circular); used only to purge FieldCache entry on close
@@ -154,6 +155,11 @@ public class FilterIndexReader extends IndexReader {
       return in.docFreq();
     }
 
+    @Override
+    public int maxTermFreq() throws IOException {
+      return in.maxTermFreq();
+    }
+
     @Override
       public DocsEnum docs(Bits skipDocs, DocsEnum reuse) throws IOException {
       return in.docs(skipDocs, reuse);
@@ -276,6 +282,12 @@ public class FilterIndexReader extends IndexReader {
   public Bits getDeletedDocs() {
     return MultiFields.getDeletedDocs(in);
   }
+
+  @Override
+  public IndexDocValues docValues(String field) throws IOException {
+    ensureOpen();
+    return MultiDocValues.getDocValues(in, field);
+  }
   
   @Override
   public TermFreqVector[] getTermFreqVectors(int docNumber)
@@ -323,6 +335,12 @@ public class FilterIndexReader extends IndexReader {
     return in.document(n, fieldSelector);
   }
 
+  @Override
+  public void document(int n, StoredFieldVisitor visitor) throws CorruptIndexException, IOException {
+    ensureOpen();
+    in.document(n, visitor);
+  }
+
   @Override
   public boolean hasDeletions() {
     // Don't call ensureOpen() here (it could affect performance)
@@ -350,6 +368,12 @@ public class FilterIndexReader extends IndexReader {
     in.norms(f, bytes, offset);
   }
 
+  @Override
+  public Bits normValues(String f) throws IOException {
+    ensureOpen();
+    return in.normValues(f);
+  }
+
   @Override
   protected void doSetNorm(int d, String f, byte b) throws CorruptIndexException, IOException {
     in.setNorm(d, f, b);
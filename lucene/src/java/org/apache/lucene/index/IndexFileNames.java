@@ -79,6 +79,9 @@ public final class IndexFileNames {
   /** Extension of separate norms */
   public static final String SEPARATE_NORMS_EXTENSION = "s";
 
+  /** Extension of per-document values file */
+  public static final String DOC_VALUES_EXTENSION = "dv";
+
   /**
    * This array contains all filename extensions used by
    * Lucene's index files, with one exception, namely the
@@ -98,6 +101,7 @@ public final class IndexFileNames {
     GEN_EXTENSION,
     NORMS_EXTENSION,
     COMPOUND_FILE_STORE_EXTENSION,
+    DOC_VALUES_EXTENSION,
   };
 
   public static final String[] STORE_INDEX_EXTENSIONS = new String[] {
@@ -110,7 +114,8 @@ public final class IndexFileNames {
 
   public static final String[] NON_STORE_INDEX_EXTENSIONS = new String[] {
     FIELD_INFOS_EXTENSION,
-    NORMS_EXTENSION
+    NORMS_EXTENSION,
+    DOC_VALUES_EXTENSION
   };
   
   static final String COMPOUND_EXTENSIONS_NOT_CODEC[] = new String[] {
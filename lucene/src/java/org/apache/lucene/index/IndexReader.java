@@ -21,9 +21,11 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.document.FieldSelector;
 import org.apache.lucene.search.Similarity;
 import org.apache.lucene.index.codecs.CodecProvider;
+import org.apache.lucene.index.values.IndexDocValues;
 import org.apache.lucene.store.*;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.OpenBitSet;
 import org.apache.lucene.util.ReaderUtil;         // for javadocs
 
 import java.io.File;
@@ -751,7 +753,7 @@ public abstract class IndexReader implements Cloneable,Closeable {
    */
   public Document document(int n) throws CorruptIndexException, IOException {
     ensureOpen();
-    return document(n, null);
+    return document(n, (FieldSelector) null);
   }
 
   /**
@@ -786,6 +788,29 @@ public abstract class IndexReader implements Cloneable,Closeable {
    */
   // TODO (1.5): When we convert to JDK 1.5 make this Set<String>
   public abstract Document document(int n, FieldSelector fieldSelector) throws CorruptIndexException, IOException;
+
+  /**
+   * Expert: visits the stored fields of the <code>n</code><sup>th</sup>
+   * document, passing their values as raw bytes to the
+   * {@link StoredFieldVisitor}, instead of building a {@link Document}.
+   * Use this when the values are only copied somewhere else, for
+   * example to a response.
+   * <p>
+   * The default implementation loads the {@link Document} and
+   * replays its fields; readers over segments visit the stored
+   * bytes directly.
+   * <p>
+   * <b>NOTE:</b> like {@link #document(int)}, this method does not
+   * check if the requested document is deleted.
+   *
+   * @throws CorruptIndexException if the index is corrupt
+   * @throws IOException if there is a low-level IO error
+   * @lucene.experimental
+   */
+  public void document(int n, StoredFieldVisitor visitor) throws CorruptIndexException, IOException {
+    ensureOpen();
+    visitor.visitDocument(document(n));
+  }
   
   /** Returns true if any documents have been deleted */
   public abstract boolean hasDeletions();
@@ -813,6 +838,32 @@ public abstract class IndexReader implements Cloneable,Closeable {
   public abstract void norms(String field, byte[] bytes, int offset)
     throws IOException;
 
+  /** Returns the distinct byte-encoded norms of the named
+   *  field: the returned {@link Bits} has length 256, and
+   *  bit <code>b</code> is set if a document has norm
+   *  <code>(byte) b</code>.  Returns null if the field has
+   *  no norms.  This is used to bound the scores of the
+   *  field's terms, see {@link
+   *  org.apache.lucene.search.Scorer#maxScore}.  The default
+   *  implementation scans {@link #norms(String)} on each
+   *  call; {@link SegmentReader} computes it once.
+   *
+   * @lucene.experimental
+   */
+  public Bits normValues(String field) throws IOException {
+    ensureOpen();
+    final byte[] norms = norms(field);
+    return norms == null ? null : getNormValues(norms);
+  }
+
+  static Bits getNormValues(byte[] norms) {
+    final OpenBitSet values = new OpenBitSet(256);
+    for (byte norm : norms) {
+      values.fastSet(norm & 0xFF);
+    }
+    return values;
+  }
+
   /** Expert: Resets the normalization factor for the named field of the named
    * document.  The norm represents the product of the field's {@link
    * org.apache.lucene.document.Fieldable#setBoost(float) boost} and its {@link Similarity#lengthNorm(String,
@@ -1118,6 +1169,24 @@ public abstract class IndexReader implements Cloneable,Closeable {
    * @lucene.experimental */
   public abstract Bits getDeletedDocs();
 
+  /** Returns the per-document values written for the
+   *  field through {@link
+   *  org.apache.lucene.document.IndexDocValuesField}, or
+   *  null if this reader has no values for the field.
+   *  Values are stored per segment, so this is only
+   *  supported by atomic readers; composite readers throw
+   *  {@link UnsupportedOperationException}, use {@link
+   *  #getSequentialSubReaders} instead.
+   *
+   * @lucene.experimental */
+  public IndexDocValues docValues(String field) throws IOException {
+    ensureOpen();
+    if (getSequentialSubReaders() != null) {
+      throw new UnsupportedOperationException("doc values are per segment; please call docValues on each of getSequentialSubReaders()");
+    }
+    return null;
+  }
+
   /**
    * Expert: return the IndexCommit that this reader has
    * opened.  This method is only implemented by those
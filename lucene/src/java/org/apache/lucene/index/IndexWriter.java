@@ -28,6 +28,8 @@ import org.apache.lucene.store.Lock;
 import org.apache.lucene.store.LockObtainFailedException;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.BufferedIndexInput;
+import org.apache.lucene.store.RateLimitedDirectoryWrapper;
+import org.apache.lucene.store.RateLimiter;
 import org.apache.lucene.util.Constants;
 import org.apache.lucene.index.codecs.CodecProvider;
 import org.apache.lucene.util.ThreadInterruptedException;
@@ -275,6 +277,7 @@ public class IndexWriter implements Closeable {
   private SegmentInfos segmentInfos = new SegmentInfos();       // the segments
 
   private DocumentsWriter docWriter;
+  private DocumentsWriterPerThreadPool perThreadPool;  // non-null if each thread flushes its own segment
   private IndexFileDeleter deleter;
 
   private Set<SegmentInfo> segmentsToOptimize = new HashSet<SegmentInfo>();           // used by optimize to note those needing optimization
@@ -788,6 +791,8 @@ public class IndexWriter implements Closeable {
     ensureOpen();
     this.similarity = similarity;
     docWriter.setSimilarity(similarity);
+    if (perThreadPool != null)
+      perThreadPool.setSimilarity(similarity);
     // Required so config.getSimilarity returns the right value. But this will
     // go away together with the method in 4.0.
     config.setSimilarity(similarity);
@@ -1110,6 +1115,14 @@ public class IndexWriter implements Closeable {
       docWriter.setInfoStream(infoStream);
       docWriter.setMaxFieldLength(maxFieldLength);
 
+      if (conf.getFlushPerThread()) {
+        // docWriter then only buffers deletes against the
+        // flushed segments
+        perThreadPool = new DocumentsWriterPerThreadPool(directory, this, docWriter, conf.getIndexingChain(), conf.getMaxThreadStates());
+        perThreadPool.setInfoStream(infoStream);
+        perThreadPool.setMaxFieldLength(maxFieldLength);
+      }
+
       // Default deleter (for backwards compatibility) is
       // KeepOnlyLastCommitDeleter:
       deleter = new IndexFileDeleter(directory,
@@ -1296,6 +1309,8 @@ public class IndexWriter implements Closeable {
     ensureOpen();
     this.maxFieldLength = maxFieldLength;
     docWriter.setMaxFieldLength(maxFieldLength);
+    if (perThreadPool != null)
+      perThreadPool.setMaxFieldLength(maxFieldLength);
     if (infoStream != null)
       message("setMaxFieldLength " + maxFieldLength);
     // Required so config.getMaxFieldLength returns the right value. But this
@@ -1548,6 +1563,8 @@ public class IndexWriter implements Closeable {
     ensureOpen();
     setMessageID(infoStream);
     docWriter.setInfoStream(infoStream);
+    if (perThreadPool != null)
+      perThreadPool.setInfoStream(infoStream);
     deleter.setInfoStream(infoStream);
     if (infoStream != null)
       messageState();
@@ -1722,12 +1739,16 @@ public class IndexWriter implements Closeable {
   private void closeInternal(boolean waitForMerges) throws CorruptIndexException, IOException {
 
     docWriter.pauseAllThreads();
+    if (perThreadPool != null)
+      perThreadPool.pauseAllThreads();
 
     try {
       if (infoStream != null)
         message("now flush at close");
 
       docWriter.close();
+      if (perThreadPool != null)
+        perThreadPool.close();
 
       // Only allow a new merge to be triggered if we are
       // going to wait for merges:
@@ -1779,6 +1800,8 @@ public class IndexWriter implements Closeable {
         if (!closed) {
           if (docWriter != null)
             docWriter.resumeAllThreads();
+          if (perThreadPool != null)
+            perThreadPool.resumeAllThreads();
           if (infoStream != null)
             message("hit exception while closing");
         }
@@ -1876,7 +1899,7 @@ public class IndexWriter implements Closeable {
   public synchronized int maxDoc() {
     int count;
     if (docWriter != null)
-      count = docWriter.getNumDocsInRAM();
+      count = getNumDocsInRAM();
     else
       count = 0;
 
@@ -1894,7 +1917,7 @@ public class IndexWriter implements Closeable {
   public synchronized int numDocs() throws IOException {
     int count;
     if (docWriter != null)
-      count = docWriter.getNumDocsInRAM();
+      count = getNumDocsInRAM();
     else
       count = 0;
 
@@ -2002,7 +2025,12 @@ public class IndexWriter implements Closeable {
     boolean success = false;
     try {
       try {
-        doFlush = docWriter.addDocument(doc, analyzer);
+        if (perThreadPool != null) {
+          if (perThreadPool.updateDocument(doc, analyzer, null))
+            maybeMerge();
+        } else {
+          doFlush = docWriter.addDocument(doc, analyzer);
+        }
         success = true;
       } finally {
         if (!success) {
@@ -2042,7 +2070,8 @@ public class IndexWriter implements Closeable {
   public void deleteDocuments(Term term) throws CorruptIndexException, IOException {
     ensureOpen();
     try {
-      boolean doFlush = docWriter.bufferDeleteTerm(term);
+      boolean doFlush = perThreadPool != null ? perThreadPool.bufferDeleteTerms(new Term[] {term})
+                                              : docWriter.bufferDeleteTerm(term);
       if (doFlush)
         flush(true, false, false);
     } catch (OutOfMemoryError oom) {
@@ -2066,7 +2095,8 @@ public class IndexWriter implements Closeable {
   public void deleteDocuments(Term... terms) throws CorruptIndexException, IOException {
     ensureOpen();
     try {
-      boolean doFlush = docWriter.bufferDeleteTerms(terms);
+      boolean doFlush = perThreadPool != null ? perThreadPool.bufferDeleteTerms(terms)
+                                              : docWriter.bufferDeleteTerms(terms);
       if (doFlush)
         flush(true, false, false);
     } catch (OutOfMemoryError oom) {
@@ -2087,7 +2117,8 @@ public class IndexWriter implements Closeable {
    */
   public void deleteDocuments(Query query) throws CorruptIndexException, IOException {
     ensureOpen();
-    boolean doFlush = docWriter.bufferDeleteQuery(query);
+    boolean doFlush = perThreadPool != null ? perThreadPool.bufferDeleteQueries(new Query[] {query})
+                                            : docWriter.bufferDeleteQuery(query);
     if (doFlush)
       flush(true, false, false);
   }
@@ -2107,7 +2138,8 @@ public class IndexWriter implements Closeable {
    */
   public void deleteDocuments(Query... queries) throws CorruptIndexException, IOException {
     ensureOpen();
-    boolean doFlush = docWriter.bufferDeleteQueries(queries);
+    boolean doFlush = perThreadPool != null ? perThreadPool.bufferDeleteQueries(queries)
+                                            : docWriter.bufferDeleteQueries(queries);
     if (doFlush)
       flush(true, false, false);
   }
@@ -2159,7 +2191,13 @@ public class IndexWriter implements Closeable {
       boolean doFlush = false;
       boolean success = false;
       try {
-        doFlush = docWriter.updateDocument(term, doc, analyzer);
+        if (perThreadPool != null) {
+          if (perThreadPool.updateDocument(doc, analyzer, term))
+            maybeMerge();
+          doFlush = docWriter.timeToFlushDeletes();
+        } else {
+          doFlush = docWriter.updateDocument(term, doc, analyzer);
+        }
         success = true;
       } finally {
         if (!success) {
@@ -2190,7 +2228,14 @@ public class IndexWriter implements Closeable {
 
   // for test purpose
   final synchronized int getNumBufferedDocuments(){
-    return docWriter.getNumDocsInRAM();
+    return getNumDocsInRAM();
+  }
+
+  private synchronized int getNumDocsInRAM() {
+    int count = docWriter.getNumDocsInRAM();
+    if (perThreadPool != null)
+      count += perThreadPool.getNumDocsInRAM();
+    return count;
   }
 
   // for test purpose
@@ -2616,6 +2661,8 @@ public class IndexWriter implements Closeable {
     boolean success = false;
 
     docWriter.pauseAllThreads();
+    if (perThreadPool != null)
+      perThreadPool.pauseAllThreads();
 
     try {
       finishMerges(false);
@@ -2644,6 +2691,8 @@ public class IndexWriter implements Closeable {
         segmentInfos.addAll(rollbackSegmentInfos);
 
         docWriter.abort();
+        if (perThreadPool != null)
+          perThreadPool.abort();
 
         assert testPoint("rollback before checkpoint");
 
@@ -2665,6 +2714,8 @@ public class IndexWriter implements Closeable {
       synchronized(this) {
         if (!success) {
           docWriter.resumeAllThreads();
+          if (perThreadPool != null)
+            perThreadPool.resumeAllThreads();
           closing = false;
           notifyAll();
           if (infoStream != null)
@@ -2693,6 +2744,8 @@ public class IndexWriter implements Closeable {
    */
   public synchronized void deleteAll() throws IOException {
     docWriter.pauseAllThreads();
+    if (perThreadPool != null)
+      perThreadPool.pauseAllThreads();
     try {
 
       // Abort any running merges
@@ -2701,6 +2754,8 @@ public class IndexWriter implements Closeable {
       // Remove any buffered docs
       docWriter.abort();
       docWriter.setFlushedDocCount(0);
+      if (perThreadPool != null)
+        perThreadPool.abort();
 
       // Remove all segments
       segmentInfos.clear();
@@ -2718,6 +2773,8 @@ public class IndexWriter implements Closeable {
       handleOOM(oom, "deleteAll");
     } finally {
       docWriter.resumeAllThreads();
+      if (perThreadPool != null)
+        perThreadPool.resumeAllThreads();
       if (infoStream != null) {
         message("hit exception during deleteAll");
       }
@@ -2965,6 +3022,8 @@ public class IndexWriter implements Closeable {
       String mergedName = newSegmentName();
       SegmentMerger merger = new SegmentMerger(directory, termIndexInterval,
           mergedName, null, codecs, payloadProcessorProvider);
+      merger.setExecutor(config.getMergeExecutor());
+      merger.setInfoStream(infoStream);
       
       for (IndexReader reader : readers)      // add new indexes
         merger.add(reader);
@@ -3208,10 +3267,88 @@ public class IndexWriter implements Closeable {
   protected final void flush(boolean triggerMerge, boolean flushDocStores, boolean flushDeletes) throws CorruptIndexException, IOException {
     // We can be called during close, when closing==true, so we must pass false to ensureOpen:
     ensureOpen(false);
-    if (doFlush(flushDocStores, flushDeletes) && triggerMerge)
+    boolean flushed = false;
+    if (perThreadPool != null)
+      flushed = perThreadPool.flushAll();
+    if ((doFlush(flushDocStores, flushDeletes) || flushed) && triggerMerge)
       maybeMerge();
   }
 
+  /** Writes a private segment detached from the {@link
+   *  DocumentsWriterPerThreadPool} and adds it to the
+   *  index, applying the deletes buffered against it.  Only
+   *  the registration holds our lock, so that other threads
+   *  keep indexing (and flushing) meanwhile. */
+  void flushPerThread(DocumentsWriterPerThreadPool pool, DocumentsWriterPerThreadPool.PerThread perThread) throws IOException {
+
+    if (hitOOM) {
+      throw new IllegalStateException("this writer hit an OutOfMemoryError; cannot flush");
+    }
+
+    final DocumentsWriter dw = perThread.docWriter;
+    final String segment = dw.getSegment();
+    assert segment != null;
+
+    if (infoStream != null)
+      message("flush per-thread segment=" + segment + " numDocs=" + perThread.numDocs);
+
+    SegmentInfo newSegment = null;
+    Collection<String> nonCFSFiles = null;
+    boolean success = false;
+    try {
+      final int flushedDocCount = dw.flush(true);
+      assert flushedDocCount == perThread.numDocs;
+
+      // Private doc stores
+      newSegment = new SegmentInfo(segment, flushedDocCount, directory, false, -1,
+                                   null, false, dw.hasProx(), dw.getCodec());
+      setDiagnostics(newSegment, "flush");
+
+      final boolean useCompoundFile;
+      synchronized(this) {
+        useCompoundFile = mergePolicy.useCompoundFile(segmentInfos, newSegment);
+      }
+      if (useCompoundFile) {
+        nonCFSFiles = newSegment.files();
+        dw.createCompoundFile(segment);
+        newSegment.setUseCompoundFile(true);
+      }
+      success = true;
+    } catch (OutOfMemoryError oom) {
+      handleOOM(oom, "flushPerThread");
+    } finally {
+      if (!success) {
+        if (infoStream != null)
+          message("hit exception flushing segment " + segment);
+        synchronized(this) {
+          deleter.refresh(segment);
+        }
+      }
+    }
+
+    synchronized(this) {
+      if (!pool.finishFlush(perThread)) {
+        // We were rolled back or deleteAll was called
+        // while this segment was being written
+        if (infoStream != null)
+          message("discard flushed segment " + segment + " after abort");
+        deleter.refresh(segment);
+        return;
+      }
+
+      flushCount++;
+      segmentInfos.add(newSegment);
+      dw.applyDeletes(newSegment, perThread.deletes);
+      checkpoint();
+      if (nonCFSFiles != null)
+        deleter.deleteNewFiles(nonCFSFiles);
+    }
+  }
+
+  synchronized void deleteNewFiles(Collection<String> files) throws IOException {
+    deleter.deleteNewFiles(files);
+  }
+
   // TODO: this method should not have to be entirely
   // synchronized, ie, merges should be allowed to commit
   // even while a flush is happening
@@ -3403,17 +3540,22 @@ public class IndexWriter implements Closeable {
    */
   public final long ramSizeInBytes() {
     ensureOpen();
-    return docWriter.getRAMUsed();
+    long bytes = docWriter.getRAMUsed();
+    if (perThreadPool != null)
+      bytes += perThreadPool.getRAMUsed();
+    return bytes;
   }
 
   /** Expert:  Return the number of documents currently
    *  buffered in RAM. */
   public final synchronized int numRamDocs() {
     ensureOpen();
-    return docWriter.getNumDocsInRAM();
+    return getNumDocsInRAM();
   }
 
-  private int ensureContiguousMerge(MergePolicy.OneMerge merge) {
+  /** Returns true if the segments of this merge are
+   *  adjacent, and in the same order, in the index. */
+  private boolean isContiguousMerge(MergePolicy.OneMerge merge) {
 
     int first = segmentInfos.indexOf(merge.segments.info(0));
     if (first == -1)
@@ -3422,19 +3564,18 @@ public class IndexWriter implements Closeable {
     final int numSegments = segmentInfos.size();
     
     final int numSegmentsToMerge = merge.segments.size();
+    boolean contiguous = true;
     for(int i=0;i<numSegmentsToMerge;i++) {
       final SegmentInfo info = merge.segments.info(i);
 
       if (first + i >= numSegments || !segmentInfos.info(first+i).equals(info)) {
         if (segmentInfos.indexOf(info) == -1)
           throw new MergePolicy.MergeException("MergePolicy selected a segment (" + info.name + ") that is not in the current index " + segString(), directory);
-        else
-          throw new MergePolicy.MergeException("MergePolicy selected non-contiguous segments to merge (" + merge.segString(directory) + " vs " + segString() + "), which IndexWriter (currently) cannot handle",
-                                               directory);
+        contiguous = false;
       }
     }
 
-    return first;
+    return contiguous;
   }
 
   /** Carefully merges deletes for the segments we just
@@ -3514,7 +3655,6 @@ public class IndexWriter implements Closeable {
     mergeReader.hasChanges = delCount >= 0;
   }
 
-  /* FIXME if we want to support non-contiguous segment merges */
   synchronized private boolean commitMerge(MergePolicy.OneMerge merge, SegmentMerger merger, int mergedDocCount, SegmentReader mergedReader) throws IOException {
 
     assert testPoint("startCommitMerge");
@@ -3542,15 +3682,28 @@ public class IndexWriter implements Closeable {
       return false;
     }
 
-    final int start = ensureContiguousMerge(merge);
+    final boolean contiguous = isContiguousMerge(merge);
+    if (!contiguous) {
+      // The merged segment replaces the first of the merged
+      // segments, so the docIDs of the segments in between
+      // change order and can no longer be remapped: apply
+      // the buffered deletes that address flushed docs now
+      if (docWriter.getNumDocsInRAM() == 0)
+        docWriter.pushDeletes();
+      applyDeletes();
+    }
 
     commitMergedDeletes(merge, mergedReader);
-    docWriter.remapDeletes(segmentInfos, merger.getDocMaps(), merger.getDelCounts(), merge, mergedDocCount);
+    docWriter.remapDeletes(segmentInfos, merger.getDocMaps(), merger.getDelCounts(), merge, mergedDocCount, contiguous);
       
     setMergeDocStoreIsCompoundFile(merge);
     merge.info.setHasProx(merger.hasProx());
 
-    segmentInfos.subList(start, start + merge.segments.size()).clear();
+    int start = segmentInfos.size();
+    final int numSegmentsToMerge = merge.segments.size();
+    for(int i=0;i<numSegmentsToMerge;i++)
+      start = Math.min(start, segmentInfos.indexOf(merge.segments.info(i)));
+    segmentInfos.removeAll(merge.segments);
     assert !segmentInfos.contains(merge.info);
     segmentInfos.add(start, merge.info);
 
@@ -3653,7 +3806,8 @@ public class IndexWriter implements Closeable {
       handleOOM(oom, "merge");
     }
     if (infoStream != null && merge.info != null) {
-      message("merge time " + (System.currentTimeMillis()-t0) + " msec for " + merge.info.docCount + " docs");
+      message("merge time " + (System.currentTimeMillis()-t0) + " msec for " + merge.info.docCount + " docs" +
+              (merge.getRateLimiter() != null ? "; throttled " + merge.getThrottledTimeMS() + " msec" : ""));
     }
   }
 
@@ -3661,6 +3815,16 @@ public class IndexWriter implements Closeable {
   void mergeSuccess(MergePolicy.OneMerge merge) {
   }
   
+  /** Expert: to be used by a {@link MergePolicy} to avoid
+   *  selecting merges for segments already being merged.
+   *  The returned collection is not cloned, and thus is
+   *  only safe to access if you hold IndexWriter's lock
+   *  (which you do when IndexWriter invokes the
+   *  MergePolicy). */
+  synchronized Collection<SegmentInfo> getMergingSegments() {
+    return mergingSegments;
+  }
+
   /** Checks whether this merge involves any segments
    *  already participating in a merge.  If not, this merge
    *  is "registered", meaning we record that its segments
@@ -3689,8 +3853,6 @@ public class IndexWriter implements Closeable {
         isExternal = true;
     }
 
-    ensureContiguousMerge(merge);
-
     pendingMerges.add(merge);
 
     if (infoStream != null)
@@ -3952,7 +4114,22 @@ public class IndexWriter implements Closeable {
     if (infoStream != null)
       message("merging " + merge.segString(directory));
 
-    merger = new SegmentMerger(directory, termIndexInterval, mergedName, merge, codecs, payloadProcessorProvider);
+    // Let the directory pick how the merged files are
+    // written, and throttle the bytes written by this
+    // merge, if the merge scheduler asked for it:
+    long mergeBytes = 0;
+    for(int i=0;i<numSegments;i++) {
+      mergeBytes += sourceSegments.info(i).sizeInBytes();
+    }
+    Directory mergeDirectory = directory.getMergeDirectory(mergeBytes);
+    final RateLimiter rateLimiter = merge.getRateLimiter();
+    if (rateLimiter != null) {
+      mergeDirectory = new RateLimitedDirectoryWrapper(mergeDirectory, rateLimiter);
+    }
+
+    merger = new SegmentMerger(mergeDirectory, termIndexInterval, mergedName, merge, codecs, payloadProcessorProvider);
+    merger.setExecutor(config.getMergeExecutor());
+    merger.setInfoStream(infoStream);
 
     merge.readers = new SegmentReader[numSegments];
     merge.readersClone = new SegmentReader[numSegments];
@@ -4242,7 +4419,7 @@ public class IndexWriter implements Closeable {
     return segString(segmentInfos);
   }
 
-  private synchronized String segString(SegmentInfos infos) {
+  synchronized String segString(SegmentInfos infos) {
     StringBuilder buffer = new StringBuilder();
     final int count = infos.size();
     for(int i = 0; i < count; i++) {
@@ -4543,7 +4720,7 @@ public class IndexWriter implements Closeable {
       // stale
       return false;
     } else {
-      return !docWriter.anyChanges();
+      return !docWriter.anyChanges() && (perThreadPool == null || !perThreadPool.anyChanges());
     }
   }
 
@@ -24,6 +24,8 @@ import org.apache.lucene.index.codecs.CodecProvider;
 import org.apache.lucene.search.Similarity;
 import org.apache.lucene.util.Version;
 
+import java.util.concurrent.ExecutorService;
+
 /**
  * Holds all the configuration of {@link IndexWriter}. This object is only used
  * while constructing a new IndexWriter. Those settings cannot be changed
@@ -88,6 +90,9 @@ public final class IndexWriterConfig implements Cloneable {
    *  others to finish. */
   public final static int DEFAULT_MAX_THREAD_STATES = 8;
 
+  /** Default setting for {@link #setFlushPerThread}. */
+  public final static boolean DEFAULT_FLUSH_PER_THREAD = false;
+
   /** Default setting for {@link #setReaderPooling}. */
   public final static boolean DEFAULT_READER_POOLING = false;
 
@@ -129,8 +134,10 @@ public final class IndexWriterConfig implements Cloneable {
   private CodecProvider codecProvider;
   private MergePolicy mergePolicy;
   private int maxThreadStates;
+  private boolean flushPerThread;
   private boolean readerPooling;
   private int readerTermsIndexDivisor;
+  private ExecutorService mergeExecutor;
   
   // required for clone
   private Version matchVersion;
@@ -161,8 +168,10 @@ public final class IndexWriterConfig implements Cloneable {
     codecProvider = DEFAULT_CODEC_PROVIDER;
     mergePolicy = new LogByteSizeMergePolicy();
     maxThreadStates = DEFAULT_MAX_THREAD_STATES;
+    flushPerThread = DEFAULT_FLUSH_PER_THREAD;
     readerPooling = DEFAULT_READER_POOLING;
     readerTermsIndexDivisor = DEFAULT_READER_TERMS_INDEX_DIVISOR;
+    mergeExecutor = null;
   }
   
   @Override
@@ -559,6 +568,32 @@ public final class IndexWriterConfig implements Cloneable {
     return maxThreadStates;
   }
 
+  /** Expert: if true, each of the (up to {@link
+   *  #getMaxThreadStates}) indexing threads buffers its
+   *  documents in its own private in-memory segment and
+   *  flushes that segment on its own, so that the other
+   *  threads keep indexing while it is written.  The RAM
+   *  buffer ({@link #setRAMBufferSizeMB}) is then accounted
+   *  globally across all per-thread segments: once the
+   *  total is exceeded the largest one is flushed.  {@link
+   *  #setMaxBufferedDocs} applies to each per-thread
+   *  segment.  Note that with this setting doc stores are
+   *  never shared between segments, and the order of
+   *  documents across segments reflects the order in which
+   *  the per-thread segments were flushed.  Default is
+   *  {@link #DEFAULT_FLUSH_PER_THREAD}. */
+  public IndexWriterConfig setFlushPerThread(boolean flushPerThread) {
+    this.flushPerThread = flushPerThread;
+    return this;
+  }
+
+  /** Returns true if each indexing thread flushes its own
+   *  private segment.
+   *  @see #setFlushPerThread(boolean) */
+  public boolean getFlushPerThread() {
+    return flushPerThread;
+  }
+
   /** By default, IndexWriter does not pool the
    *  SegmentReaders it must open for deletions and
    *  merging, unless a near-real-time reader has been
@@ -605,6 +640,31 @@ public final class IndexWriterConfig implements Cloneable {
   public int getReaderTermsIndexDivisor() {
     return readerTermsIndexDivisor;
   }
+
+  /** Expert: if non-null, each merge runs its independent
+   *  phases (stored fields, term vectors, postings, norms
+   *  and doc values) as concurrent tasks of this executor,
+   *  instead of one after another on the merge thread, and
+   *  merges the postings of each field as a separate task.
+   *  The merged segment is identical either way.  Use a
+   *  bounded pool, eg {@link
+   *  java.util.concurrent.Executors#newFixedThreadPool},
+   *  to cap the number of cores merges may use; the pool
+   *  may be shared by all concurrent merges.  IndexWriter
+   *  will not shutdown this ExecutorService on close; you
+   *  must do so, eventually, on your own.  Default is
+   *  null.
+   *
+   * @lucene.experimental */
+  public IndexWriterConfig setMergeExecutor(ExecutorService mergeExecutor) {
+    this.mergeExecutor = mergeExecutor;
+    return this;
+  }
+
+  /** @see #setMergeExecutor(ExecutorService) */
+  public ExecutorService getMergeExecutor() {
+    return mergeExecutor;
+  }
   
   @Override
   public String toString() {
@@ -627,8 +687,10 @@ public final class IndexWriterConfig implements Cloneable {
     sb.append("codecProvider=").append(codecProvider).append("\n");
     sb.append("mergePolicy=").append(mergePolicy).append("\n");
     sb.append("maxThreadStates=").append(maxThreadStates).append("\n");
+    sb.append("flushPerThread=").append(flushPerThread).append("\n");
     sb.append("readerPooling=").append(readerPooling).append("\n");
     sb.append("readerTermsIndexDivisor=").append(readerTermsIndexDivisor).append("\n");
+    sb.append("mergeExecutor=").append(mergeExecutor).append("\n");
     return sb.toString();
   }
 }
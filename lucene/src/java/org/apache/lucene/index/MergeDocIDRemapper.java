@@ -72,7 +72,18 @@ final class MergeDocIDRemapper {
     assert docShift == maxDocID - (newStarts[docMaps.length-1] + merge.segments.info(docMaps.length-1).docCount - delCounts[docMaps.length-1]);
   }
 
+  /** Remaps docIDs after a merge of segments that were not
+   *  contiguous.  Only docIDs of buffered docs, which follow
+   *  the <code>flushedDocCount</code> docs of all segments,
+   *  can be remapped: they are shifted by
+   *  <code>docShift</code>. */
+  public MergeDocIDRemapper(int flushedDocCount, int docShift) {
+    minDocID = maxDocID = flushedDocCount;
+    this.docShift = docShift;
+  }
+
   public int remap(int oldDocID) {
+    assert docMaps != null || oldDocID >= minDocID: "docID " + oldDocID + " of a flushed doc cannot be remapped";
     if (oldDocID < minDocID)
       // Unaffected by merge
       return oldDocID;
@@ -18,6 +18,7 @@ package org.apache.lucene.index;
  */
 
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RateLimiter;
 import org.apache.lucene.util.SetOnce;
 import org.apache.lucene.util.SetOnce.AlreadySetException;
 
@@ -82,6 +83,7 @@ public abstract class MergePolicy implements java.io.Closeable {
     boolean aborted;
     Throwable error;
     boolean paused;
+    private volatile RateLimiter rateLimiter;
 
     public OneMerge(SegmentInfos segments, boolean useCompoundFile) {
       if (0 == segments.size())
@@ -146,6 +148,28 @@ public abstract class MergePolicy implements java.io.Closeable {
       return paused;
     }
 
+    /** Sets the {@link RateLimiter} that throttles the bytes
+     *  written by this merge, or null (the default) to write
+     *  at full speed.  This must be set before the merge
+     *  starts; the limiter's rate may be changed while the
+     *  merge is running. */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+      this.rateLimiter = rateLimiter;
+    }
+
+    /** @see #setRateLimiter */
+    public RateLimiter getRateLimiter() {
+      return rateLimiter;
+    }
+
+    /** Returns the time, in milliseconds, this merge was
+     *  throttled by its {@link RateLimiter}, or 0 if it
+     *  has none. */
+    public long getThrottledTimeMS() {
+      final RateLimiter rateLimiter = this.rateLimiter;
+      return rateLimiter == null ? 0 : rateLimiter.getTotalPausedNS()/1000000;
+    }
+
     String segString(Directory dir) {
       StringBuilder b = new StringBuilder();
       final int numSegments = segments.size();
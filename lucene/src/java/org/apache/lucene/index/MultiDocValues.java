@@ -0,0 +1,188 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.index.values.IndexDocValues;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.ReaderUtil;
+
+/**
+ * Exposes {@link IndexDocValues}, merged from the values of
+ * sub-segments.  This is useful when you're interacting
+ * with an {@link IndexReader} implementation that consists
+ * of sequential sub-readers (eg DirectoryReader or {@link
+ * MultiReader}).
+ *
+ * <p><b>NOTE</b>: ords are per segment, so the sources of
+ * a multi-segment {@link IndexDocValues.Type#BYTES_SORTED}
+ * field are not {@link IndexDocValues.SortedSource}s.  For
+ * sorting and function queries, it's better to gather the
+ * sub readers (using {@link ReaderUtil#gatherSubReaders})
+ * and operate per-reader instead of using this class.
+ *
+ * @lucene.experimental
+ */
+public final class MultiDocValues extends IndexDocValues {
+  private final IndexDocValues[] subs;
+  private final int[] starts;
+  private final Type type;
+
+  /** Returns a single {@link IndexDocValues} instance for
+   *  the field of this reader, or null if no sub-reader
+   *  has values for it.
+   *
+   * @throws IllegalArgumentException if segments use
+   * incompatible types for the field */
+  public static IndexDocValues getDocValues(IndexReader r, final String field) throws IOException {
+    final IndexReader[] subReaders = r.getSequentialSubReaders();
+    if (subReaders == null) {
+      // already an atomic reader
+      return r.docValues(field);
+    } else if (subReaders.length == 0) {
+      // no values
+      return null;
+    } else if (subReaders.length == 1) {
+      return getDocValues(subReaders[0], field);
+    }
+
+    final List<IndexDocValues> values = new ArrayList<IndexDocValues>();
+    final List<Integer> starts = new ArrayList<Integer>();
+    final Type[] type = new Type[1];
+    new ReaderUtil.Gather(r) {
+      @Override
+      protected void add(int base, IndexReader r) throws IOException {
+        final IndexDocValues v = r.docValues(field);
+        if (v != null) {
+          type[0] = type[0] == null ? v.type() : mergeTypes(field, type[0], v.type());
+        }
+        values.add(v);
+        starts.add(Integer.valueOf(base));
+      }
+    }.run();
+
+    if (type[0] == null) {
+      return null;
+    }
+    final int[] startsArray = new int[starts.size()];
+    for (int i = 0; i < startsArray.length; i++) {
+      startsArray[i] = starts.get(i).intValue();
+    }
+    return new MultiDocValues(values.toArray(new IndexDocValues[values.size()]), startsArray, type[0]);
+  }
+
+  /** Returns the type that can hold the values of both
+   *  types: bytes types widen to {@link
+   *  Type#BYTES_SORTED} if either is sorted, else to
+   *  {@link Type#BYTES_VAR_STRAIGHT}.  Ints and bytes
+   *  cannot be combined. */
+  static Type mergeTypes(String field, Type type1, Type type2) {
+    if (type1 == type2) {
+      return type1;
+    } else if (!type1.isBytes() || !type2.isBytes()) {
+      throw new IllegalArgumentException("field \"" + field + "\" has incompatible doc values types " + type1 + " and " + type2);
+    } else if (type1 == Type.BYTES_SORTED || type2 == Type.BYTES_SORTED) {
+      return Type.BYTES_SORTED;
+    } else {
+      return Type.BYTES_VAR_STRAIGHT;
+    }
+  }
+
+  private MultiDocValues(IndexDocValues[] subs, int[] starts, Type type) {
+    this.subs = subs;
+    this.starts = starts;
+    this.type = type;
+  }
+
+  @Override
+  public Type type() {
+    return type;
+  }
+
+  @Override
+  public Source load() throws IOException {
+    final Source[] sources = new Source[subs.length];
+    for (int i = 0; i < subs.length; i++) {
+      sources[i] = subs[i] == null ? null : subs[i].load();
+    }
+    return new MultiSource(sources, starts, null);
+  }
+
+  @Override
+  public Source getDirectSource() throws IOException {
+    final Source[] sources = new Source[subs.length];
+    for (int i = 0; i < subs.length; i++) {
+      sources[i] = subs[i] == null ? null : subs[i].getDirectSource();
+    }
+    return new MultiSource(sources, starts, null);
+  }
+
+  /** Returns a {@link Source} over the shared sources of
+   *  the sub-readers. */
+  @Override
+  public Source getSource() throws IOException {
+    final Source[] sources = new Source[subs.length];
+    for (int i = 0; i < subs.length; i++) {
+      sources[i] = subs[i] == null ? null : subs[i].getSource();
+    }
+    return new MultiSource(sources, starts, null);
+  }
+
+  /** Maps docIDs to the sub source holding them.
+   *  Missing sub sources read as missing values.  If
+   *  docMaps is non-null, docMaps[i] (when non-null) maps
+   *  the i-th sub's docIDs, relative to its start, to
+   *  the docIDs of its source; SegmentMerger uses this to
+   *  skip deleted documents. */
+  static final class MultiSource extends Source {
+    private final Source[] subs;
+    private final int[] starts;
+    private final int[][] docMaps;
+
+    MultiSource(Source[] subs, int[] starts, int[][] docMaps) {
+      this.subs = subs;
+      this.starts = starts;
+      this.docMaps = docMaps;
+    }
+
+    private int subDoc(int sub, int docID) {
+      final int doc = docID - starts[sub];
+      return docMaps == null || docMaps[sub] == null ? doc : docMaps[sub][doc];
+    }
+
+    @Override
+    public long getInt(int docID) {
+      final int sub = ReaderUtil.subIndex(docID, starts);
+      return subs[sub] == null ? 0 : subs[sub].getInt(subDoc(sub, docID));
+    }
+
+    @Override
+    public BytesRef getBytes(int docID, BytesRef ref) {
+      final int sub = ReaderUtil.subIndex(docID, starts);
+      if (subs[sub] == null) {
+        // missing
+        ref.length = 0;
+        return ref;
+      }
+      return subs[sub].getBytes(subDoc(sub, docID), ref);
+    }
+  }
+}
@@ -278,6 +278,13 @@ public class MultiReader extends IndexReader implements Cloneable {
     return subReaders[i].document(n - starts[i], fieldSelector);    // dispatch to segment reader
   }
 
+  @Override
+  public void document(int n, StoredFieldVisitor visitor) throws CorruptIndexException, IOException {
+    ensureOpen();
+    int i = readerIndex(n);                          // find segment num
+    subReaders[i].document(n - starts[i], visitor);  // dispatch to segment reader
+  }
+
   @Override
   public boolean hasDeletions() {
     // Don't call ensureOpen() here (it could affect performance)
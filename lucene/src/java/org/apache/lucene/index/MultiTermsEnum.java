@@ -265,6 +265,19 @@ public final class MultiTermsEnum extends TermsEnum {
     return sum;
   }
 
+  @Override
+  public int maxTermFreq() throws IOException {
+    int max = 0;
+    for(int i=0;i<numTop;i++) {
+      final int maxFreq = top[i].terms.maxTermFreq();
+      if (maxFreq == -1) {
+        return -1;
+      }
+      max = Math.max(max, maxFreq);
+    }
+    return max;
+  }
+
   @Override
   public DocsEnum docs(Bits skipDocs, DocsEnum reuse) throws IOException {
     final MultiDocsEnum docsEnum;
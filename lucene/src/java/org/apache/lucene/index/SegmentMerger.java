@@ -18,11 +18,18 @@ package org.apache.lucene.index;
  */
 
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexReader.FieldOption;
@@ -31,12 +38,16 @@ import org.apache.lucene.index.codecs.CodecProvider;
 import org.apache.lucene.index.codecs.Codec;
 import org.apache.lucene.index.codecs.MergeState;
 import org.apache.lucene.index.codecs.FieldsConsumer;
+import org.apache.lucene.index.values.IndexDocValues;
+import org.apache.lucene.index.values.ValuesWriter;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.ReaderUtil;
 import org.apache.lucene.util.MultiBits;
+import org.apache.lucene.util.ThreadInterruptedException;
 
 /**
  * The SegmentMerger class combines two or more Segments, represented by an IndexReader ({@link #add},
@@ -44,6 +55,12 @@ import org.apache.lucene.util.MultiBits;
  * segments.
  *<P> 
  * If the compoundFile flag is set, then the segments will be merged into a compound file.
+ *<P>
+ * The stored fields, term vectors, postings, norms and doc values are
+ * each written to their own files, so once the merged field infos are
+ * known these phases may run concurrently, see {@link #setExecutor}.
+ * The postings of the fields are then merged concurrently too, see
+ * {@link ConcurrentPostingsMerger}.
  *   
  * 
  * @see #merge
@@ -63,6 +80,9 @@ final class SegmentMerger {
   
   private int mergedDocs;
 
+  // True if any of the merged readers had doc values
+  private boolean hasDocValues;
+
   private final CheckAbort checkAbort;
 
   // Whether we should merge doc stores (stored fields and
@@ -80,6 +100,9 @@ final class SegmentMerger {
   private SegmentWriteState segmentWriteState;
 
   private PayloadProcessorProvider payloadProcessorProvider;
+
+  private ExecutorService executor;
+  private PrintStream infoStream;
   
   SegmentMerger(Directory dir, int termIndexInterval, String name, MergePolicy.OneMerge merge, CodecProvider codecs, PayloadProcessorProvider payloadProcessorProvider) {
     this.payloadProcessorProvider = payloadProcessorProvider;
@@ -120,6 +143,28 @@ final class SegmentMerger {
     return readers.get(i);
   }
 
+  /**
+   * If non-null, the merge phases run as concurrent tasks
+   * of this executor, and {@link #merge} waits for all of
+   * them; otherwise they run sequentially on the calling
+   * thread.  The postings of each field are merged by
+   * tasks of this executor too, unless payloads are
+   * processed.
+   */
+  void setExecutor(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /** If non-null, the time spent in each merge phase is
+   *  reported to this stream. */
+  void setInfoStream(PrintStream infoStream) {
+    this.infoStream = infoStream;
+  }
+
+  private void message(String message) {
+    infoStream.println("SM " + segment + " [" + Thread.currentThread().getName() + "]: " + message);
+  }
+
   /**
    * Merges the readers specified by the {@link #add} method into the directory passed to the constructor
    * @return The number of documents that were merged
@@ -150,16 +195,132 @@ final class SegmentMerger {
     // IndexWriter.close(false) takes to actually stop the
     // threads.
 
-    mergedDocs = mergeFields();
-    mergeTerms();
-    mergeNorms();
+    mergedDocs = mergeFieldInfos();
 
-    if (mergeDocStores && fieldInfos.hasVectors())
-      mergeVectors();
+    // Each phase writes its own files and only reads from
+    // the readers, so they are independent of each other:
+    final List<MergePhase> phases = new ArrayList<MergePhase>();
+    if (mergeDocStores) {
+      phases.add(new MergePhase("stored fields") {
+          @Override
+          void run() throws IOException {
+            mergeFields();
+          }
+        });
+    }
+    phases.add(new MergePhase("postings") {
+        @Override
+        void run() throws IOException {
+          mergeTerms();
+        }
+      });
+    phases.add(new MergePhase("norms") {
+        @Override
+        void run() throws IOException {
+          mergeNorms();
+        }
+      });
+    phases.add(new MergePhase("doc values") {
+        @Override
+        void run() throws IOException {
+          mergeDocValues();
+        }
+      });
+    if (mergeDocStores && fieldInfos.hasVectors()) {
+      phases.add(new MergePhase("term vectors") {
+          @Override
+          void run() throws IOException {
+            mergeVectors();
+          }
+        });
+    }
+
+    runPhases(phases);
 
     return mergedDocs;
   }
 
+  /** One step of {@link #merge}, timed. */
+  private abstract class MergePhase implements Callable<Object> {
+    final String name;
+    long elapsedMS;
+
+    MergePhase(String name) {
+      this.name = name;
+    }
+
+    abstract void run() throws IOException;
+
+    public Object call() throws IOException {
+      final long t0 = System.currentTimeMillis();
+      run();
+      elapsedMS = System.currentTimeMillis() - t0;
+      return null;
+    }
+  }
+
+  private void runPhases(List<MergePhase> phases) throws IOException {
+    final long t0 = System.currentTimeMillis();
+    final boolean concurrent = executor != null && phases.size() > 1;
+    if (!concurrent) {
+      for (MergePhase phase : phases) {
+        phase.call();
+      }
+    } else {
+      final List<Future<Object>> futures = new ArrayList<Future<Object>>();
+      for (MergePhase phase : phases) {
+        futures.add(executor.submit(phase));
+      }
+      // Always wait for all phases, even if one failed, so
+      // that no phase is still writing when IndexWriter
+      // cleans up the files of a failed merge
+      Throwable th = null;
+      boolean interrupted = false;
+      for (Future<Object> future : futures) {
+        while (true) {
+          try {
+            future.get();
+          } catch (InterruptedException ie) {
+            interrupted = true;
+            continue;
+          } catch (ExecutionException ee) {
+            if (th == null) {
+              th = ee.getCause();
+            }
+          }
+          break;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+        if (th == null) {
+          th = new ThreadInterruptedException(new InterruptedException());
+        }
+      }
+      if (th != null) {
+        if (th instanceof IOException) {
+          throw (IOException) th;
+        } else if (th instanceof RuntimeException) {
+          throw (RuntimeException) th;
+        } else if (th instanceof Error) {
+          throw (Error) th;
+        } else {
+          throw new RuntimeException(th);
+        }
+      }
+    }
+
+    if (infoStream != null) {
+      final StringBuilder sb = new StringBuilder();
+      sb.append("merged ").append(mergedDocs).append(" docs in ").append(System.currentTimeMillis() - t0).append(" msec");
+      sb.append(concurrent ? " concurrently" : " sequentially").append(':');
+      for (MergePhase phase : phases) {
+        sb.append(' ').append(phase.name).append('=').append(phase.elapsedMS).append(" msec");
+      }
+      message(sb.toString());
+    }
+  }
+
   /**
    * close all IndexReaders that have been added.
    * Should not be called before merge().
@@ -196,6 +357,11 @@ final class SegmentMerger {
       }
     }
 
+    // Doc values file
+    if (hasDocValues) {
+      fileSet.add(IndexFileNames.segmentFileName(segment, "", IndexFileNames.DOC_VALUES_EXTENSION));
+    }
+
     // Vector files
     if (fieldInfos.hasVectors() && mergeDocStores) {
       for (String ext : IndexFileNames.VECTOR_EXTENSIONS) {
@@ -227,8 +393,11 @@ final class SegmentMerger {
   }
 
   private SegmentReader[] matchingSegmentReaders;
+  // Used by mergeVectors
   private int[] rawDocLengths;
   private int[] rawDocLengths2;
+  // Used by mergeFields, which may run concurrently
+  private int[] rawFieldsDocLengths;
 
   private void setMatchingSegmentReaders() {
     // If the i'th reader is a SegmentReader and has
@@ -258,17 +427,20 @@ final class SegmentMerger {
     }
 
     // Used for bulk-reading raw bytes for stored fields
+    // and vectors
     rawDocLengths = new int[MAX_RAW_MERGE_DOCS];
     rawDocLengths2 = new int[MAX_RAW_MERGE_DOCS];
+    rawFieldsDocLengths = new int[MAX_RAW_MERGE_DOCS];
   }
 
   /**
-   * 
+   * Merges and writes the field infos, which all merge
+   * phases need.
    * @return The number of documents in all of the readers
    * @throws CorruptIndexException if the index is corrupt
    * @throws IOException if there is a low-level IO error
    */
-  private final int mergeFields() throws CorruptIndexException, IOException {
+  private final int mergeFieldInfos() throws CorruptIndexException, IOException {
 
     if (!mergeDocStores) {
       // When we are not merging by doc stores, their field
@@ -306,60 +478,63 @@ final class SegmentMerger {
     }
     fieldInfos.write(directory, segment + ".fnm");
 
+    // The merged segment has all non-deleted docs, whether
+    // or not we merge the doc stores (if we skip them, none
+    // of these segments has deletions)
     int docCount = 0;
+    for (final IndexReader reader : readers) {
+      docCount += reader.numDocs();
+    }
 
     setMatchingSegmentReaders();
 
-    if (mergeDocStores) {
-      // merge field values
-      final FieldsWriter fieldsWriter = new FieldsWriter(directory, segment, fieldInfos);
-
-      try {
-        int idx = 0;
-        for (IndexReader reader : readers) {
-          final SegmentReader matchingSegmentReader = matchingSegmentReaders[idx++];
-          FieldsReader matchingFieldsReader = null;
-          if (matchingSegmentReader != null) {
-            final FieldsReader fieldsReader = matchingSegmentReader.getFieldsReader();
-            if (fieldsReader != null) {
-              matchingFieldsReader = fieldsReader;
-            }
-          }
-          if (reader.hasDeletions()) {
-            docCount += copyFieldsWithDeletions(fieldsWriter,
-                                                reader, matchingFieldsReader);
-          } else {
-            docCount += copyFieldsNoDeletions(fieldsWriter,
-                                              reader, matchingFieldsReader);
-          }
-        }
-      } finally {
-        fieldsWriter.close();
-      }
+    segmentWriteState = new SegmentWriteState(null, directory, segment, fieldInfos, null, docCount, 0, termIndexInterval, codecs);
 
-      final String fileName = IndexFileNames.segmentFileName(segment, "", IndexFileNames.FIELDS_INDEX_EXTENSION);
-      final long fdxFileLength = directory.fileLength(fileName);
+    return docCount;
+  }
 
-      if (4+((long) docCount)*8 != fdxFileLength)
-        // This is most likely a bug in Sun JRE 1.6.0_04/_05;
-        // we detect that the bug has struck, here, and
-        // throw an exception to prevent the corruption from
-        // entering the index.  See LUCENE-1282 for
-        // details.
-        throw new RuntimeException("mergeFields produced an invalid result: docCount is " + docCount + " but fdx file size is " + fdxFileLength + " file=" + fileName + " file exists?=" + directory.fileExists(fileName) + "; now aborting this merge to prevent index corruption");
+  /**
+   * Merge the stored fields from each of the segments into the new one.
+   * @throws CorruptIndexException if the index is corrupt
+   * @throws IOException if there is a low-level IO error
+   */
+  private final void mergeFields() throws CorruptIndexException, IOException {
+    int docCount = 0;
+    final FieldsWriter fieldsWriter = new FieldsWriter(directory, segment, fieldInfos);
 
-    } else {
-      // If we are skipping the doc stores, that means there
-      // are no deletions in any of these segments, so we
-      // just sum numDocs() of each segment to get total docCount
-      for (final IndexReader reader : readers) {
-        docCount += reader.numDocs();
+    try {
+      int idx = 0;
+      for (IndexReader reader : readers) {
+        final SegmentReader matchingSegmentReader = matchingSegmentReaders[idx++];
+        FieldsReader matchingFieldsReader = null;
+        if (matchingSegmentReader != null) {
+          final FieldsReader fieldsReader = matchingSegmentReader.getFieldsReader();
+          if (fieldsReader != null) {
+            matchingFieldsReader = fieldsReader;
+          }
+        }
+        if (reader.hasDeletions()) {
+          docCount += copyFieldsWithDeletions(fieldsWriter,
+                                              reader, matchingFieldsReader);
+        } else {
+          docCount += copyFieldsNoDeletions(fieldsWriter,
+                                            reader, matchingFieldsReader);
+        }
       }
+    } finally {
+      fieldsWriter.close();
     }
 
-    segmentWriteState = new SegmentWriteState(null, directory, segment, fieldInfos, null, docCount, 0, termIndexInterval, codecs);
+    final String fileName = IndexFileNames.segmentFileName(segment, "", IndexFileNames.FIELDS_INDEX_EXTENSION);
+    final long fdxFileLength = directory.fileLength(fileName);
 
-    return docCount;
+    if (docCount != mergedDocs || 4+((long) docCount)*8 != fdxFileLength)
+      // This is most likely a bug in Sun JRE 1.6.0_04/_05;
+      // we detect that the bug has struck, here, and
+      // throw an exception to prevent the corruption from
+      // entering the index.  See LUCENE-1282 for
+      // details.
+      throw new RuntimeException("mergeFields produced an invalid result: docCount is " + docCount + " (expected " + mergedDocs + ") but fdx file size is " + fdxFileLength + " file=" + fileName + " file exists?=" + directory.fileExists(fileName) + "; now aborting this merge to prevent index corruption");
   }
 
   private int copyFieldsWithDeletions(final FieldsWriter fieldsWriter, final IndexReader reader,
@@ -389,8 +564,8 @@ final class SegmentMerger {
           }
         } while(numDocs < MAX_RAW_MERGE_DOCS);
         
-        IndexInput stream = matchingFieldsReader.rawDocs(rawDocLengths, start, numDocs);
-        fieldsWriter.addRawDocuments(stream, rawDocLengths, numDocs);
+        IndexInput stream = matchingFieldsReader.rawDocs(rawFieldsDocLengths, start, numDocs);
+        fieldsWriter.addRawDocuments(stream, rawFieldsDocLengths, numDocs);
         docCount += numDocs;
         checkAbort.work(300 * numDocs);
       }
@@ -420,8 +595,8 @@ final class SegmentMerger {
       // We can bulk-copy because the fieldInfos are "congruent"
       while (docCount < maxDoc) {
         int len = Math.min(MAX_RAW_MERGE_DOCS, maxDoc - docCount);
-        IndexInput stream = matchingFieldsReader.rawDocs(rawDocLengths, docCount, len);
-        fieldsWriter.addRawDocuments(stream, rawDocLengths, len);
+        IndexInput stream = matchingFieldsReader.rawDocs(rawFieldsDocLengths, docCount, len);
+        fieldsWriter.addRawDocuments(stream, rawFieldsDocLengths, len);
         docCount += len;
         checkAbort.work(300 * len);
       }
@@ -654,9 +829,21 @@ final class SegmentMerger {
     mergeState.multiDeletedDocs = new MultiBits(bits, bitsStarts);
     
     try {
-      consumer.merge(mergeState,
-                     new MultiFields(fields.toArray(Fields.EMPTY_ARRAY),
-                                     slices.toArray(ReaderUtil.Slice.EMPTY_ARRAY)));
+      final Fields mergedFields = new MultiFields(fields.toArray(Fields.EMPTY_ARRAY),
+                                                  slices.toArray(ReaderUtil.Slice.EMPTY_ARRAY));
+      // Payload processors may not be thread safe, so they
+      // force the fields to be merged one after another:
+      if (executor != null && payloadProcessorProvider == null) {
+        final long t0 = System.currentTimeMillis();
+        final ConcurrentPostingsMerger postingsMerger = new ConcurrentPostingsMerger(executor, mergeState, mergedFields);
+        postingsMerger.merge(consumer);
+        if (infoStream != null) {
+          message("merged postings of " + postingsMerger.numFields + " fields concurrently in " + (System.currentTimeMillis() - t0) +
+                  " msec: buffer=" + postingsMerger.bufferMS + " msec (all threads) write=" + postingsMerger.writeMS + " msec");
+        }
+      } else {
+        consumer.merge(mergeState, mergedFields);
+      }
     } finally {
       consumer.close();
     }
@@ -715,6 +902,91 @@ final class SegmentMerger {
     }
   }
 
+  private void mergeDocValues() throws IOException {
+    // Find the fields with values and their merged types,
+    // sorted by name
+    final Map<String,IndexDocValues.Type> types = new TreeMap<String,IndexDocValues.Type>();
+    for (IndexReader reader : readers) {
+      for (String field : reader.getFieldNames(FieldOption.ALL)) {
+        final IndexDocValues values = MultiDocValues.getDocValues(reader, field);
+        if (values != null) {
+          final IndexDocValues.Type type = types.get(field);
+          types.put(field, type == null ? values.type() : MultiDocValues.mergeTypes(field, type, values.type()));
+        }
+      }
+    }
+    if (types.isEmpty()) {
+      return;
+    }
+
+    // Map the merged docIDs back to each reader's docIDs,
+    // skipping deleted documents
+    final int numReaders = readers.size();
+    final int[] starts = new int[numReaders];
+    final int[][] docMaps = new int[numReaders][];
+    int docBase = 0;
+    for (int i = 0; i < numReaders; i++) {
+      final IndexReader reader = readers.get(i);
+      starts[i] = docBase;
+      final Bits delDocs = MultiFields.getDeletedDocs(reader);
+      final int maxDoc = reader.maxDoc();
+      if (delDocs == null) {
+        docBase += maxDoc;
+      } else {
+        final int[] docMap = new int[reader.numDocs()];
+        int upto = 0;
+        for (int j = 0; j < maxDoc; j++) {
+          if (!delDocs.get(j)) {
+            docMap[upto++] = j;
+          }
+        }
+        assert upto == docMap.length;
+        docMaps[i] = docMap;
+        docBase += upto;
+      }
+    }
+    assert docBase == mergedDocs;
+
+    final ValuesWriter writer = new ValuesWriter(directory, IndexFileNames.segmentFileName(segment, "", IndexFileNames.DOC_VALUES_EXTENSION));
+    hasDocValues = true;
+    try {
+      for (Map.Entry<String,IndexDocValues.Type> entry : types.entrySet()) {
+        final String field = entry.getKey();
+        final IndexDocValues.Source[] sources = new IndexDocValues.Source[numReaders];
+        for (int i = 0; i < numReaders; i++) {
+          final IndexDocValues values = MultiDocValues.getDocValues(readers.get(i), field);
+          sources[i] = values == null ? null : values.load();
+        }
+        final IndexDocValues.Source merged = new MultiDocValues.MultiSource(sources, starts, docMaps);
+        IndexDocValues.Type type = entry.getValue();
+        if (type == IndexDocValues.Type.BYTES_FIXED_STRAIGHT && !isFixedLength(merged, docBase)) {
+          // segments used different lengths
+          type = IndexDocValues.Type.BYTES_VAR_STRAIGHT;
+        }
+        writer.addField(field, type, merged, docBase);
+        checkAbort.work(docBase);
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  private static boolean isFixedLength(IndexDocValues.Source source, int maxDoc) {
+    final BytesRef spare = new BytesRef();
+    int fixedLength = -1;
+    for (int doc = 0; doc < maxDoc; doc++) {
+      final int length = source.getBytes(doc, spare).length;
+      if (length != 0) {
+        if (fixedLength == -1) {
+          fixedLength = length;
+        } else if (length != fixedLength) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
   static class CheckAbort {
     private double workCount;
     private MergePolicy.OneMerge merge;
@@ -730,9 +1002,10 @@ final class SegmentMerger {
      * When adding time-consuming code into SegmentMerger,
      * you should test different values for units to ensure
      * that the time in between calls to merge.checkAborted
-     * is up to ~ 1 second.
+     * is up to ~ 1 second.  Merge phases running
+     * concurrently share this instance.
      */
-    public void work(double units) throws MergePolicy.MergeAbortedException {
+    public synchronized void work(double units) throws MergePolicy.MergeAbortedException {
       workCount += units;
       if (workCount >= 10000.0) {
         merge.checkAborted(dir);
@@ -41,6 +41,8 @@ import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.CloseableThreadLocal;
 import org.apache.lucene.index.codecs.CodecProvider;
 import org.apache.lucene.index.codecs.FieldsProducer;
+import org.apache.lucene.index.values.IndexDocValues;
+import org.apache.lucene.index.values.ValuesReader;
 import org.apache.lucene.search.FieldCache; // not great (circular); used only to purge FieldCache entry on close
 import org.apache.lucene.util.BytesRef;
 
@@ -101,6 +103,7 @@ public class SegmentReader extends IndexReader implements Cloneable {
 
     FieldsReader fieldsReaderOrig;
     TermVectorsReader termVectorsReaderOrig;
+    ValuesReader valuesReader;
     CompoundFileReader cfsReader;
     CompoundFileReader storeCFSReader;
 
@@ -136,6 +139,11 @@ public class SegmentReader extends IndexReader implements Cloneable {
         fields = si.getCodec().fieldsProducer(new SegmentReadState(cfsDir, si, fieldInfos, readBufferSize, termsIndexDivisor));
         assert fields != null;
 
+        final String valuesFileName = IndexFileNames.segmentFileName(segment, "", IndexFileNames.DOC_VALUES_EXTENSION);
+        if (cfsDir.fileExists(valuesFileName)) {
+          valuesReader = new ValuesReader(cfsDir, valuesFileName, readBufferSize);
+        }
+
         success = true;
       } finally {
         if (!success) {
@@ -174,6 +182,10 @@ public class SegmentReader extends IndexReader implements Cloneable {
           fields.close();
         }
 
+        if (valuesReader != null) {
+          valuesReader.close();
+        }
+
         if (termVectorsReaderOrig != null) {
           termVectorsReaderOrig.close();
         }
@@ -290,6 +302,8 @@ public class SegmentReader extends IndexReader implements Cloneable {
     private boolean dirty;
     private int number;
     private boolean rollbackDirty;
+    // distinct values of bytes, computed on demand
+    private Bits normValues;
     
     public Norm(IndexInput in, int number, long normSeek) {
       this.in = in;
@@ -406,6 +420,19 @@ public class SegmentReader extends IndexReader implements Cloneable {
       return bytes;
     }
 
+    // Returns the distinct values of bytes
+    public synchronized Bits normValues() throws IOException {
+      if (normValues == null) {
+        normValues = getNormValues(bytes());
+      }
+      return normValues;
+    }
+
+    // Called after a norm value was changed
+    synchronized void clearNormValues() {
+      normValues = null;
+    }
+
     // Only for testing
     AtomicInteger bytesRef() {
       return bytesRef;
@@ -882,11 +909,23 @@ public class SegmentReader extends IndexReader implements Cloneable {
     return getFieldsReader().doc(n, fieldSelector);
   }
 
+  @Override
+  public void document(int n, StoredFieldVisitor visitor) throws CorruptIndexException, IOException {
+    ensureOpen();
+    getFieldsReader().visitDocument(n, visitor);
+  }
+
   @Override
   public Fields fields() throws IOException {
     return core.fields;
   }
 
+  @Override
+  public IndexDocValues docValues(String field) throws IOException {
+    ensureOpen();
+    return core.valuesReader == null ? null : core.valuesReader.docValues(field);
+  }
+
   @Override
   public int docFreq(String field, BytesRef term) throws IOException {
     ensureOpen();
@@ -996,6 +1035,14 @@ public class SegmentReader extends IndexReader implements Cloneable {
 
     normsDirty = true;
     norm.copyOnWrite()[doc] = value;                    // set the value
+    norm.clearNormValues();
+  }
+
+  @Override
+  public synchronized Bits normValues(String field) throws IOException {
+    ensureOpen();
+    Norm norm = norms.get(field);
+    return norm == null ? null : norm.normValues();
   }
 
   /** Read norms into a pre-allocated array. */
@@ -0,0 +1,96 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.UnicodeUtil;
+
+/**
+ * Expert: visits the stored fields of a document, without
+ * building a {@link org.apache.lucene.document.Document}.
+ * See {@link IndexReader#document(int, StoredFieldVisitor)}.
+ *
+ * <p>For each stored field, in the order the fields were
+ * added to the document, {@link #needsField} is asked
+ * whether the value should be visited; if so, either {@link
+ * #stringField} or {@link #binaryField} is called with the
+ * stored bytes.  String values are passed as UTF-8 bytes,
+ * exactly as they were stored.</p>
+ *
+ * <p><b>NOTE</b>: the byte arrays passed to the visitor are
+ * owned by the reader, and only valid for the duration of
+ * the call; copy the slice if you need to keep it.</p>
+ *
+ * @lucene.experimental
+ */
+public abstract class StoredFieldVisitor {
+
+  /** What to do with the value of a field, see {@link #needsField}. */
+  public static enum Status {
+    /** Visit the value of this field */
+    YES,
+    /** Skip this field */
+    NO,
+    /** Skip this field, and stop visiting the document */
+    STOP
+  }
+
+  /** Called before visiting each stored field.  The field
+   *  name is always interned, so it may be compared with
+   *  <code>==</code>. */
+  public abstract Status needsField(String field) throws IOException;
+
+  /** Visit a string field, as <code>length</code> UTF-8
+   *  bytes starting at <code>utf8[offset]</code>.
+   *  @param tokenized whether the field was tokenized when
+   *  it was indexed */
+  public void stringField(String field, byte[] utf8, int offset, int length, boolean tokenized) throws IOException {
+  }
+
+  /** Visit a binary field, as <code>length</code> bytes
+   *  starting at <code>value[offset]</code>. */
+  public void binaryField(String field, byte[] value, int offset, int length) throws IOException {
+  }
+
+  /** Visits the stored fields of an already loaded
+   *  document; string values are encoded to UTF-8 first. */
+  public void visitDocument(Document doc) throws IOException {
+    final BytesRef utf8 = new BytesRef();
+    for (Fieldable field : doc.getFields()) {
+      if (!field.isStored()) {
+        continue;
+      }
+      final Status status = needsField(field.name());
+      if (status == Status.STOP) {
+        break;
+      } else if (status == Status.YES) {
+        if (field.isBinary()) {
+          binaryField(field.name(), field.getBinaryValue(), field.getBinaryOffset(), field.getBinaryLength());
+        } else {
+          final String value = field.stringValue();
+          UnicodeUtil.UTF16toUTF8(value, 0, value.length(), utf8);
+          stringField(field.name(), utf8.bytes, utf8.offset, utf8.length, field.isTokenized());
+        }
+      }
+    }
+  }
+}
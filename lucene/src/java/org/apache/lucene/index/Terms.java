@@ -19,9 +19,11 @@ package org.apache.lucene.index;
 
 import java.io.IOException;
 import java.util.Comparator;
+import org.apache.lucene.search.AutomatonTermsEnum;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.CloseableThreadLocal;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
 
 /**
  * Access to the terms in a specific field.  See {@link Fields}.
@@ -38,6 +40,24 @@ public abstract class Terms {
    *  terms. This method will not return null.*/
   public abstract TermsEnum iterator() throws IOException;
   
+  /** Returns a TermsEnum that iterates over all terms
+   *  accepted by the provided {@link CompiledAutomaton},
+   *  in the same order as {@link #iterator}.  If
+   *  <code>startTerm</code> is non-null, only terms after
+   *  it are returned.  The returned enum does not support
+   *  seeking.
+   *
+   *  <p>The default implementation filters the terms of
+   *  {@link #iterator} with an {@link AutomatonTermsEnum},
+   *  which seeks to each next string the automaton may
+   *  accept.  Codecs should override this if they can walk
+   *  their terms dictionary along with the automaton.
+   *
+   *  @lucene.experimental */
+  public TermsEnum intersect(CompiledAutomaton compiled, BytesRef startTerm) throws IOException {
+    return new AutomatonTermsEnum(iterator(), compiled, startTerm);
+  }
+
   /** Return the BytesRef Comparator used to sort terms
    *  provided by the iterator.  This method may return null
    *  if there are no terms.  This method may be invoked
@@ -84,7 +104,15 @@ public abstract class Terms {
     throw new UnsupportedOperationException("this reader does not implement getUniqueTermCount()");
   }
 
-  protected TermsEnum getThreadTermsEnum() throws IOException {
+  /** Returns a {@link TermsEnum} private to the calling
+   *  thread, which is shared by this thread's calls to
+   *  {@link #docFreq}, {@link #docs} and {@link
+   *  #docsAndPositions}.  Use it to seek to a term once and
+   *  then read both its stats and postings; it is
+   *  repositioned by the next call from the same thread.
+   *
+   * @lucene.internal */
+  public TermsEnum getThreadTermsEnum() throws IOException {
     TermsEnum termsEnum = (TermsEnum) threadEnums.get();
     if (termsEnum == null) {
       termsEnum = iterator();
@@ -99,6 +99,17 @@ public abstract class TermsEnum {
    *  {@link SeekStatus#END}.*/
   public abstract int docFreq();
 
+  /** Returns an upper bound of the frequency of the
+   *  current term in any single document, or -1 if the
+   *  codec does not record it.  Fields that omit term
+   *  frequencies return 1.  Do not call this before calling
+   *  next() for the first time, after next() returns null or
+   *  seek returns {@link SeekStatus#END}.
+   *  @lucene.experimental */
+  public int maxTermFreq() throws IOException {
+    return -1;
+  }
+
   /** Get {@link DocsEnum} for the current term.  Do not
    *  call this before calling {@link #next} or {@link
    *  #seek} for the first time.  This method will not
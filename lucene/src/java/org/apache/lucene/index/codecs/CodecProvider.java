@@ -23,6 +23,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 import org.apache.lucene.index.SegmentWriteState;
+import org.apache.lucene.index.codecs.pfordelta.PForDeltaCodec;
 import org.apache.lucene.index.codecs.preflex.PreFlexCodec;
 import org.apache.lucene.index.codecs.pulsing.PulsingCodec;
 import org.apache.lucene.index.codecs.standard.StandardCodec;
@@ -45,7 +46,7 @@ public abstract class CodecProvider {
 
   private static String defaultCodec = "Standard";
 
-  public final static String[] CORE_CODECS = new String[] {"Standard", "Pulsing", "PreFlex"};
+  public final static String[] CORE_CODECS = new String[] {"Standard", "Pulsing", "PreFlex", "PForDelta"};
 
   public synchronized void register(Codec codec) {
     if (codec.name == null) {
@@ -116,6 +117,7 @@ class DefaultCodecProvider extends CodecProvider {
     register(new StandardCodec());
     register(new PreFlexCodec());
     register(new PulsingCodec(1));
+    register(new PForDeltaCodec());
   }
 
   @Override
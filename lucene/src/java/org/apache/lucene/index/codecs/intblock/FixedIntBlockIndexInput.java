@@ -128,6 +128,7 @@ public abstract class FixedIntBlockIndexInput extends IntIndexInput {
     public IntsRef read(final int count) throws IOException {
       this.maybeSeek();
       if (upto == blockSize) {
+        lastBlockFP = in.getFilePointer();
         blockReader.readBlock();
         upto = 0;
       }
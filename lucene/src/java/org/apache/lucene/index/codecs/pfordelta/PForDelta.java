@@ -0,0 +1,194 @@
+package org.apache.lucene.index.codecs.pfordelta;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+
+/** Encodes and decodes fixed size blocks of ints using
+ *  patched frame of reference (PFOR): every value in the
+ *  block is bit-packed with the same number of bits, chosen
+ *  so that the few values that do not fit (the exceptions)
+ *  cost less than widening the whole block.  The high bits
+ *  of each exception are written after the packed bytes and
+ *  patched back in after decoding.
+ *
+ *  <p>A block is written as:
+ *  <ul>
+ *    <li>numBits, as a byte (0-32)</li>
+ *    <li>numExceptions, as a vInt</li>
+ *    <li>the low numBits of every value, packed LSB first
+ *        into ceil(count*numBits/8) bytes</li>
+ *    <li>for each exception, its index in the block and its
+ *        remaining high bits, both as vInts</li>
+ *  </ul>
+ *
+ *  <p>All 32 bits of each int are preserved, so negative
+ *  values round-trip (they just always need 32 bits).
+ *
+ * @lucene.experimental */
+final class PForDelta {
+
+  private PForDelta() {}
+
+  /** Returns the number of bytes needed to pack count
+   *  values with numBits each. */
+  static int numBytes(int count, int numBits) {
+    return (int) (((long) count * numBits + 7) >>> 3);
+  }
+
+  /** Number of bits required to represent v as an unsigned
+   *  int. */
+  static int bitsRequired(int v) {
+    return 32 - Integer.numberOfLeadingZeros(v);
+  }
+
+  /** Picks the number of bits per value that minimizes the
+   *  encoded size of the block, accounting for exceptions. */
+  static int pickNumBits(int[] values, int count, int[] histogram) {
+    for(int i=0;i<histogram.length;i++) {
+      histogram[i] = 0;
+    }
+    for(int i=0;i<count;i++) {
+      histogram[bitsRequired(values[i])]++;
+    }
+
+    int maxBits = 32;
+    while(maxBits > 0 && histogram[maxBits] == 0) {
+      maxBits--;
+    }
+
+    int bestBits = maxBits;
+    long bestSize = numBytes(count, maxBits);
+    for(int numBits=maxBits-1;numBits>=0;numBits--) {
+      long size = numBytes(count, numBits);
+      for(int w=numBits+1;w<=maxBits;w++) {
+        final int c = histogram[w];
+        if (c != 0) {
+          // index vInt (assume 1 byte) + vInt for the high bits
+          size += c * (1 + (w - numBits + 6) / 7);
+        }
+      }
+      if (size < bestSize) {
+        bestSize = size;
+        bestBits = numBits;
+      }
+    }
+    return bestBits;
+  }
+
+  /** Writes the first count values as one block.  The scratch
+   *  arrays must hold at least 4*count bytes, count ints and
+   *  33 ints respectively. */
+  static void encode(int[] values, int count, IndexOutput out,
+                     byte[] packed, int[] exceptions, int[] histogram) throws IOException {
+    final int numBits = pickNumBits(values, count, histogram);
+    final long mask = numBits == 32 ? 0xFFFFFFFFL : (1L << numBits) - 1;
+
+    int numExceptions = 0;
+    int bytesUpto = 0;
+    long acc = 0;
+    int accBits = 0;
+    for(int i=0;i<count;i++) {
+      final long v = values[i] & 0xFFFFFFFFL;
+      if ((v & ~mask) != 0) {
+        exceptions[numExceptions++] = i;
+      }
+      acc |= (v & mask) << accBits;
+      accBits += numBits;
+      while(accBits >= 8) {
+        packed[bytesUpto++] = (byte) acc;
+        acc >>>= 8;
+        accBits -= 8;
+      }
+    }
+    if (accBits > 0) {
+      packed[bytesUpto++] = (byte) acc;
+    }
+    assert bytesUpto == numBytes(count, numBits);
+
+    out.writeByte((byte) numBits);
+    out.writeVInt(numExceptions);
+    out.writeBytes(packed, bytesUpto);
+    for(int i=0;i<numExceptions;i++) {
+      final int idx = exceptions[i];
+      out.writeVInt(idx);
+      out.writeVInt(values[idx] >>> numBits);
+    }
+  }
+
+  /** Reads one block of count values into values.  The
+   *  scratch array must hold at least 4*count bytes. */
+  static void decode(IndexInput in, int[] values, int count, byte[] packed) throws IOException {
+    final int numBits = in.readByte() & 0xFF;
+    if (numBits > 32) {
+      throw new IOException("invalid numBits=" + numBits + " in PForDelta block (resource: " + in + ")");
+    }
+    final int numExceptions = in.readVInt();
+    final int numBytes = numBytes(count, numBits);
+    in.readBytes(packed, 0, numBytes);
+    unpack(packed, values, count, numBits);
+    for(int i=0;i<numExceptions;i++) {
+      final int idx = in.readVInt();
+      values[idx] |= in.readVInt() << numBits;
+    }
+  }
+
+  /** Unpacks count values of numBits each, stored LSB first. */
+  static void unpack(byte[] packed, int[] values, int count, int numBits) {
+    switch(numBits) {
+    case 0:
+      for(int i=0;i<count;i++) {
+        values[i] = 0;
+      }
+      break;
+    case 8:
+      for(int i=0;i<count;i++) {
+        values[i] = packed[i] & 0xFF;
+      }
+      break;
+    case 16:
+      for(int i=0,p=0;i<count;i++,p+=2) {
+        values[i] = (packed[p] & 0xFF) | ((packed[p+1] & 0xFF) << 8);
+      }
+      break;
+    case 32:
+      for(int i=0,p=0;i<count;i++,p+=4) {
+        values[i] = (packed[p] & 0xFF) | ((packed[p+1] & 0xFF) << 8) |
+          ((packed[p+2] & 0xFF) << 16) | ((packed[p+3] & 0xFF) << 24);
+      }
+      break;
+    default:
+      final long mask = (1L << numBits) - 1;
+      long acc = 0;
+      int accBits = 0;
+      int p = 0;
+      for(int i=0;i<count;i++) {
+        while(accBits < numBits) {
+          acc |= (packed[p++] & 0xFFL) << accBits;
+          accBits += 8;
+        }
+        values[i] = (int) (acc & mask);
+        acc >>>= numBits;
+        accBits -= numBits;
+      }
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package org.apache.lucene.index.codecs.pfordelta;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.index.codecs.intblock.FixedIntBlockIndexInput;
+import org.apache.lucene.index.codecs.intblock.FixedIntBlockIndexOutput;
+import org.apache.lucene.index.codecs.sep.IntIndexInput;
+import org.apache.lucene.index.codecs.sep.IntIndexOutput;
+import org.apache.lucene.index.codecs.sep.IntStreamFactory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
+
+/** Creates int streams that write fixed size blocks
+ *  encoded with {@link PForDelta}.
+ *
+ * @lucene.experimental */
+public class PForDeltaIntStreamFactory extends IntStreamFactory {
+
+  private final int blockSize;
+
+  public PForDeltaIntStreamFactory(int blockSize) {
+    if (blockSize < 1) {
+      throw new IllegalArgumentException("blockSize must be >= 1 (got " + blockSize + ")");
+    }
+    this.blockSize = blockSize;
+  }
+
+  @Override
+  public IntIndexInput openInput(Directory dir, String fileName, int readBufferSize) throws IOException {
+    return new FixedIntBlockIndexInput(dir.openInput(fileName, readBufferSize)) {
+
+      @Override
+      protected BlockReader getBlockReader(final IndexInput in, final int[] buffer) throws IOException {
+        final byte[] packed = new byte[4*buffer.length];
+        return new BlockReader() {
+          public void readBlock() throws IOException {
+            PForDelta.decode(in, buffer, buffer.length, packed);
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  public IntIndexOutput createOutput(Directory dir, String fileName) throws IOException {
+    return new FixedIntBlockIndexOutput(dir.createOutput(fileName), blockSize) {
+      private final byte[] packed = new byte[4*blockSize];
+      private final int[] exceptions = new int[blockSize];
+      private final int[] histogram = new int[33];
+
+      @Override
+      protected void flushBlock() throws IOException {
+        PForDelta.encode(buffer, buffer.length, out, packed, exceptions, histogram);
+      }
+    };
+  }
+}
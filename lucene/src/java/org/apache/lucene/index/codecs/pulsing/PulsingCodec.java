@@ -30,8 +30,8 @@ import org.apache.lucene.index.codecs.standard.StandardPostingsReader;
 import org.apache.lucene.index.codecs.standard.StandardPostingsReaderImpl;
 import org.apache.lucene.index.codecs.FieldsConsumer;
 import org.apache.lucene.index.codecs.FieldsProducer;
-import org.apache.lucene.index.codecs.standard.SimpleStandardTermsIndexReader;
-import org.apache.lucene.index.codecs.standard.SimpleStandardTermsIndexWriter;
+import org.apache.lucene.index.codecs.standard.FSTStandardTermsIndexReader;
+import org.apache.lucene.index.codecs.standard.FSTStandardTermsIndexWriter;
 import org.apache.lucene.index.codecs.standard.StandardTermsDictReader;
 import org.apache.lucene.index.codecs.standard.StandardTermsDictWriter;
 import org.apache.lucene.index.codecs.standard.StandardTermsIndexReader;
@@ -78,7 +78,7 @@ public class PulsingCodec extends Codec {
     StandardTermsIndexWriter indexWriter;
     boolean success = false;
     try {
-      indexWriter = new SimpleStandardTermsIndexWriter(state);
+      indexWriter = new FSTStandardTermsIndexWriter(state);
       success = true;
     } finally {
       if (!success) {
@@ -116,11 +116,10 @@ public class PulsingCodec extends Codec {
 
     boolean success = false;
     try {
-      indexReader = new SimpleStandardTermsIndexReader(state.dir,
-                                                       state.fieldInfos,
-                                                       state.segmentInfo.name,
-                                                       state.termsIndexDivisor,
-                                                       BytesRef.getUTF8SortedAsUnicodeComparator());
+      indexReader = new FSTStandardTermsIndexReader(state.dir,
+                                                    state.fieldInfos,
+                                                    state.segmentInfo.name,
+                                                    state.termsIndexDivisor);
       success = true;
     } finally {
       if (!success) {
@@ -154,7 +153,7 @@ public class PulsingCodec extends Codec {
   public void files(Directory dir, SegmentInfo segmentInfo, Set<String> files) throws IOException {
     StandardPostingsReaderImpl.files(dir, segmentInfo, files);
     StandardTermsDictReader.files(dir, segmentInfo, files);
-    SimpleStandardTermsIndexReader.files(dir, segmentInfo, files);
+    FSTStandardTermsIndexReader.files(dir, segmentInfo, files);
   }
 
   @Override
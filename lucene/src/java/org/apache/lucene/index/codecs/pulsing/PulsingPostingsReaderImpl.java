@@ -179,6 +179,20 @@ public class PulsingPostingsReaderImpl extends StandardPostingsReader {
     }
   }
 
+  @Override
+  public int maxTermFreq(FieldInfo fieldInfo, TermState _termState) throws IOException {
+    PulsingTermState termState = (PulsingTermState) _termState;
+    if (termState.docFreq <= maxPulsingDocFreq) {
+      int maxFreq = 0;
+      for(int i=0;i<termState.docFreq;i++) {
+        maxFreq = Math.max(maxFreq, termState.docs[i].numPositions);
+      }
+      return maxFreq;
+    } else {
+      return wrappedPostingsReader.maxTermFreq(fieldInfo, termState.wrappedTermState);
+    }
+  }
+
   // TODO: we could actually reuse, by having TL that
   // holds the last wrapped reuse, and vice-versa
   @Override
@@ -32,6 +32,7 @@ import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.CodecUtil;
+import org.apache.lucene.util.IntsRef;
 
 /** Concrete class that reads the current doc/freq/skip
  *  postings format.    
@@ -354,24 +355,50 @@ public class SepPostingsReaderImpl extends StandardPostingsReader {
 
     @Override
     public int read() throws IOException {
-      // TODO: -- switch to bulk read api in IntIndexInput
       final int[] docs = bulkResult.docs.ints;
       final int[] freqs = bulkResult.freqs.ints;
       int i = 0;
       final int length = docs.length;
       while (i < length && count < docFreq) {
-        count++;
-        // manually inlined call to next() for speed
-        doc += docReader.next();
-        if (!omitTF) {
-          freq = freqReader.next();
-        }
-
-        if (skipDocs == null || !skipDocs.get(doc)) {
-          docs[i] = doc;
-          freqs[i] = freq;
-          i++;
+        // Pull a chunk of doc deltas straight from the int
+        // stream; block based impls return the rest of the
+        // currently decoded block
+        final IntsRef docDeltas = docReader.read(Math.min(length - i, docFreq - count));
+        final int[] deltas = docDeltas.ints;
+        final int chunk = docDeltas.length;
+        int deltaUpto = docDeltas.offset;
+        final int deltaEnd = deltaUpto + chunk;
+
+        if (omitTF) {
+          while (deltaUpto < deltaEnd) {
+            doc += deltas[deltaUpto++];
+            if (skipDocs == null || !skipDocs.get(doc)) {
+              docs[i] = doc;
+              freqs[i] = 1;
+              i++;
+            }
+          }
+        } else {
+          // The freq stream is blocked independently of the
+          // doc stream, so it may take several reads to cover
+          // the same chunk
+          while (deltaUpto < deltaEnd) {
+            final IntsRef freqsRef = freqReader.read(deltaEnd - deltaUpto);
+            final int[] freqInts = freqsRef.ints;
+            int freqUpto = freqsRef.offset;
+            final int freqEnd = freqUpto + freqsRef.length;
+            while (freqUpto < freqEnd) {
+              doc += deltas[deltaUpto++];
+              freq = freqInts[freqUpto++];
+              if (skipDocs == null || !skipDocs.get(doc)) {
+                docs[i] = doc;
+                freqs[i] = freq;
+                i++;
+              }
+            }
+          }
         }
+        count += chunk;
       }
       return i;
     }
@@ -26,6 +26,9 @@ import java.io.IOException;
 final class DeltaBytesReader {
   final BytesRef term = new BytesRef();
   final IndexInput in;
+  // number of leading bytes the current term shares with
+  // the previously read one
+  int prefix;
 
   DeltaBytesReader(IndexInput in) {
     this.in = in;
@@ -34,6 +37,7 @@ final class DeltaBytesReader {
 
   void reset(BytesRef text) {
     term.copy(text);
+    prefix = 0;
   }
 
   void read() throws IOException {
@@ -44,5 +48,6 @@ final class DeltaBytesReader {
     term.grow(newLength);
     in.readBytes(term.bytes, start, suffix);
     term.length = newLength;
+    prefix = start;
   }
 }
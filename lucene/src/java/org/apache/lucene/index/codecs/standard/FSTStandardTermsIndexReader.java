@@ -0,0 +1,401 @@
+package org.apache.lucene.index.codecs.standard;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.SegmentInfo;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CodecUtil;
+import org.apache.lucene.util.automaton.fst.Builder;
+import org.apache.lucene.util.automaton.fst.BytesRefFSTEnum;
+import org.apache.lucene.util.automaton.fst.FST;
+import org.apache.lucene.util.automaton.fst.PositiveIntOutputs;
+import org.apache.lucene.util.automaton.fst.Util;
+import org.apache.lucene.util.packed.PackedInts;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Collection;
+import java.io.IOException;
+
+/**
+ * Reads the terms index written by {@link
+ * FSTStandardTermsIndexWriter}.  Each field's index terms
+ * are held in an {@link FST}, which shares common prefixes
+ * and suffixes of the index terms and so takes far less
+ * RAM than {@link SimpleStandardTermsIndexReader}'s
+ * expanded term bytes.  Seeking by term is a floor lookup
+ * in the FST; seeking by ord maps the index term's ordinal
+ * back to its bytes.
+ *
+ * <p>The index for all fields is loaded entirely into RAM
+ * up front, unless an indexDivisor of -1 was passed.
+ *
+ * @lucene.experimental */
+public class FSTStandardTermsIndexReader extends StandardTermsIndexReader {
+
+  // NOTE: long is overkill here, since this number is 128
+  // by default and only indexDivisor * 128 if you change
+  // the indexDivisor at search time.  But, we use this in a
+  // number of places to multiply out the actual ord, and we
+  // will overflow int during those multiplies.  So to avoid
+  // having to upgrade each multiple to long in multiple
+  // places (error proned), we use long here:
+  private long totalIndexInterval;
+
+  private int indexDivisor;
+  final private int indexInterval;
+
+  // Closed if indexLoaded is true:
+  final private IndexInput in;
+  private volatile boolean indexLoaded;
+
+  private final PositiveIntOutputs fstOutputs = PositiveIntOutputs.getSingleton();
+
+  final HashMap<FieldInfo,FieldIndexReader> fields = new HashMap<FieldInfo,FieldIndexReader>();
+  
+  // start of the field info data
+  protected long dirOffset;
+
+  public FSTStandardTermsIndexReader(Directory dir, FieldInfos fieldInfos, String segment, int indexDivisor)
+    throws IOException {
+
+    IndexInput in = dir.openInput(IndexFileNames.segmentFileName(segment, "", StandardCodec.TERMS_INDEX_EXTENSION));
+    
+    boolean success = false;
+
+    try {
+      
+      readHeader(in);
+      indexInterval = in.readInt();
+      this.indexDivisor = indexDivisor;
+
+      if (indexDivisor < 0) {
+        totalIndexInterval = indexInterval;
+      } else {
+        // In case terms index gets loaded, later, on demand
+        totalIndexInterval = indexInterval * indexDivisor;
+      }
+      assert totalIndexInterval > 0;
+      
+      seekDir(in, dirOffset);
+
+      // Read directory
+      final int numFields = in.readInt();
+
+      for(int i=0;i<numFields;i++) {
+        final int field = in.readInt();
+        final int numIndexTerms = in.readInt();
+        final long termsStart = in.readLong();
+        final long indexStart = in.readLong();
+        final long packedIndexStart = in.readLong();
+        assert packedIndexStart >= indexStart: "packedStart=" + packedIndexStart + " indexStart=" + indexStart + " numIndexTerms=" + numIndexTerms + " seg=" + segment;
+        if (numIndexTerms > 0) {
+          final FieldInfo fieldInfo = fieldInfos.fieldInfo(field);
+          fields.put(fieldInfo, new FieldIndexReader(in, numIndexTerms, indexStart, termsStart, packedIndexStart));
+        }
+      }
+      success = true;
+    } finally {
+      if (indexDivisor > 0) {
+        in.close();
+        this.in = null;
+        if (success) {
+          indexLoaded = true;
+        }
+      } else {
+        this.in = in;
+      }
+    }
+  }
+  
+  protected void readHeader(IndexInput input) throws IOException {
+    CodecUtil.checkHeader(input, FSTStandardTermsIndexWriter.CODEC_NAME,
+      FSTStandardTermsIndexWriter.VERSION_START, FSTStandardTermsIndexWriter.VERSION_START);
+    dirOffset = input.readLong();
+  }
+
+  private final class FieldIndexReader extends FieldReader {
+
+    private volatile CoreFieldIndex coreIndex;
+
+    private final IndexInput in;
+
+    private final long indexStart;
+    private final long termsStart;
+    private final long packedIndexStart;
+
+    private final int numIndexTerms;
+
+    public FieldIndexReader(IndexInput in, int numIndexTerms, long indexStart, long termsStart, long packedIndexStart) throws IOException {
+
+      this.in = in;
+      this.termsStart = termsStart;
+      this.indexStart = indexStart;
+      this.packedIndexStart = packedIndexStart;
+      this.numIndexTerms = numIndexTerms;
+
+      // We still create the indexReader when indexDivisor
+      // is -1, so that StandardTermsDictReader can call
+      // isIndexTerm for each field:
+      if (indexDivisor > 0) {
+        coreIndex = new CoreFieldIndex(indexStart,
+                                       termsStart,
+                                       packedIndexStart,
+                                       numIndexTerms);
+      
+      }
+    }
+
+    public void loadTermsIndex() throws IOException {
+      if (coreIndex == null) {
+        coreIndex = new CoreFieldIndex(indexStart, termsStart, packedIndexStart, numIndexTerms);
+      }
+    }
+
+    @Override
+    public boolean isIndexTerm(long ord, int docFreq, boolean onlyLoaded) {
+      if (onlyLoaded) {
+        return ord % totalIndexInterval == 0;
+      } else {
+        return ord % indexInterval == 0;
+      }
+    }
+
+    @Override
+    public boolean nextIndexTerm(long ord, TermsIndexResult result) throws IOException {
+      if (coreIndex == null) {
+        throw new IllegalStateException("terms index was not loaded");
+      } else {
+        return coreIndex.nextIndexTerm(ord, result);
+      }
+    }
+
+    @Override
+    public void getIndexOffset(BytesRef term, TermsIndexResult result) throws IOException {
+      // You must call loadTermsIndex if you had specified -1 for indexDivisor
+      if (coreIndex == null) {
+        throw new IllegalStateException("terms index was not loaded");
+      }
+      coreIndex.getIndexOffset(term, result);
+    }
+
+    @Override
+    public void getIndexOffset(long ord, TermsIndexResult result) throws IOException {
+      // You must call loadTermsIndex if you had specified
+      // indexDivisor < 0 to ctor
+      if (coreIndex == null) {
+        throw new IllegalStateException("terms index was not loaded");
+      }
+      coreIndex.getIndexOffset(ord, result);
+    }
+
+    private final class CoreFieldIndex {
+
+      // maps each index term to its ordinal
+      final FST<Long> fst;
+
+      // index pointers into main terms dict
+      final PackedInts.Reader termsDictOffsets;
+
+      final int numIndexTerms;
+
+      final long termsStart;
+
+      public CoreFieldIndex(long indexStart, long termsStart, long packedIndexStart, int numIndexTerms) throws IOException {
+
+        this.termsStart = termsStart;
+
+        IndexInput clone = (IndexInput) in.clone();
+
+        // -1 is passed to mean "don't load term index", but
+        // if we are then later loaded it's overwritten with
+        // a real value
+        assert indexDivisor > 0;
+
+        this.numIndexTerms = 1+(numIndexTerms-1) / indexDivisor;
+
+        assert this.numIndexTerms  > 0: "numIndexTerms=" + numIndexTerms + " indexDivisor=" + indexDivisor;
+
+        try {
+          clone.seek(indexStart);
+          final FST<Long> allTerms = new FST<Long>(clone, fstOutputs);
+
+          if (indexDivisor == 1) {
+            // Default (load all index terms) is fast -- slurp in the images from disk:
+            fst = allTerms;
+
+            // records offsets into main terms dict file
+            clone.seek(packedIndexStart);
+            termsDictOffsets = PackedInts.getReader(clone);
+            assert termsDictOffsets.size() == numIndexTerms;
+          } else {
+            // Subsample the index terms: rebuild the FST
+            // with every indexDivisor'th term
+            final Builder<Long> builder = new Builder<Long>(fstOutputs);
+            final BytesRefFSTEnum<Long> fstEnum = new BytesRefFSTEnum<Long>(allTerms);
+            BytesRefFSTEnum.InputOutput<Long> io;
+            while((io = fstEnum.next()) != null) {
+              final long ord = io.output.longValue();
+              if (ord % indexDivisor == 0) {
+                builder.add(io.input, fstOutputs.get(ord / indexDivisor));
+              }
+            }
+            fst = builder.finish();
+
+            clone.seek(packedIndexStart);
+            final PackedInts.ReaderIterator termsDictOffsetsIter = PackedInts.getReaderIterator(clone);
+            final PackedInts.Mutable termsDictOffsetsM = PackedInts.getMutable(this.numIndexTerms, termsDictOffsetsIter.getBitsPerValue());
+            for(int upto=0;upto<this.numIndexTerms;upto++) {
+              // main file offset copies straight over
+              termsDictOffsetsM.set(upto, termsDictOffsetsIter.next());
+              // skip terms:
+              if (upto < this.numIndexTerms-1) {
+                for(int i=0;i<indexDivisor-1;i++) {
+                  termsDictOffsetsIter.next();
+                }
+              }
+            }
+            termsDictOffsets = termsDictOffsetsM;
+          }
+        } finally {
+          clone.close();
+        }
+      }
+
+      public boolean nextIndexTerm(long ord, TermsIndexResult result) throws IOException {
+        int idx = 1 + (int) (ord / totalIndexInterval);
+        if (idx < numIndexTerms) {
+          fillResult(idx, result);
+          return true;
+        } else {
+          return false;
+        }
+      }
+
+      private void fillResult(int idx, TermsIndexResult result) throws IOException {
+        final BytesRef term = Util.getByOutput(fst, idx);
+        assert term != null: "idx=" + idx + " numIndexTerms=" + numIndexTerms;
+        result.term.copy(term);
+        result.position = idx * totalIndexInterval;
+        result.offset = termsStart + termsDictOffsets.get(idx);
+      }
+
+      public void getIndexOffset(BytesRef term, TermsIndexResult result) throws IOException {
+        final BytesRefFSTEnum<Long> fstEnum = getFSTEnum(result);
+        BytesRefFSTEnum.InputOutput<Long> io = fstEnum.seekFloor(term);
+        if (io == null) {
+          // term sorts before the first index term; the enum
+          // is now positioned before it
+          io = fstEnum.next();
+        }
+        result.term.copy(io.input);
+        final int idx = (int) io.output.longValue();
+        result.position = idx * totalIndexInterval;
+        result.offset = termsStart + termsDictOffsets.get(idx);
+      }
+
+      // Returns the FST enum kept in the result, creating it
+      // on the first lookup of this TermsEnum
+      private BytesRefFSTEnum<Long> getFSTEnum(TermsIndexResult result) {
+        if (result.indexState instanceof FSTEnumState) {
+          final FSTEnumState state = (FSTEnumState) result.indexState;
+          if (state.fst == fst) {
+            return state.fstEnum;
+          }
+        }
+        final FSTEnumState state = new FSTEnumState(fst);
+        result.indexState = state;
+        return state.fstEnum;
+      }
+
+      public void getIndexOffset(long ord, TermsIndexResult result) throws IOException {
+        int idx = (int) (ord / totalIndexInterval);
+        // caller must ensure ord is in bounds
+        assert idx < numIndexTerms;
+        fillResult(idx, result);
+      }
+    }
+  }
+
+  // Enum over one field's index FST, held by a
+  // TermsIndexResult so that seeks don't allocate one
+  private static final class FSTEnumState {
+    final FST<Long> fst;
+    final BytesRefFSTEnum<Long> fstEnum;
+
+    FSTEnumState(FST<Long> fst) {
+      this.fst = fst;
+      fstEnum = new BytesRefFSTEnum<Long>(fst);
+    }
+  }
+
+  @Override
+  public void loadTermsIndex(int indexDivisor) throws IOException {
+    if (!indexLoaded) {
+
+      if (indexDivisor < 0) {
+        this.indexDivisor = -indexDivisor;
+      } else {
+        this.indexDivisor = indexDivisor;
+      }
+      this.totalIndexInterval = indexInterval * this.indexDivisor;
+
+      Iterator<FieldIndexReader> it = fields.values().iterator();
+      while(it.hasNext()) {
+        it.next().loadTermsIndex();
+      }
+
+      indexLoaded = true;
+      in.close();
+    }
+  }
+
+  @Override
+  public FieldReader getField(FieldInfo fieldInfo) {
+    return fields.get(fieldInfo);
+  }
+
+  public static void files(Directory dir, SegmentInfo info, Collection<String> files) {
+    files.add(IndexFileNames.segmentFileName(info.name, "", StandardCodec.TERMS_INDEX_EXTENSION));
+  }
+
+  public static void getIndexExtensions(Collection<String> extensions) {
+    extensions.add(StandardCodec.TERMS_INDEX_EXTENSION);
+  }
+
+  @Override
+  public void getExtensions(Collection<String> extensions) {
+    getIndexExtensions(extensions);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (in != null && !indexLoaded) {
+      in.close();
+    }
+  }
+
+  protected void seekDir(IndexInput input, long dirOffset) throws IOException {
+    input.seek(dirOffset);
+  }
+}
@@ -0,0 +1,206 @@
+package org.apache.lucene.index.codecs.standard;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.SegmentWriteState;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CodecUtil;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.automaton.fst.Builder;
+import org.apache.lucene.util.automaton.fst.FST;
+import org.apache.lucene.util.automaton.fst.PositiveIntOutputs;
+import org.apache.lucene.util.packed.PackedInts;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.io.IOException;
+
+/**
+ * Writes the terms index as an FST per field.  Like
+ * {@link SimpleStandardTermsIndexWriter}, every
+ * termIndexInterval'th term is indexed, stripped to the
+ * prefix that distinguishes it from the term before it.
+ * The FST maps each such prefix to the ordinal of the
+ * index term, and a packed array maps that ordinal to
+ * the term's pointer in the terms dict.
+ *
+ * @lucene.experimental */
+public class FSTStandardTermsIndexWriter extends StandardTermsIndexWriter {
+  protected final IndexOutput out;
+
+  final static String CODEC_NAME = "FST_STANDARD_TERMS_INDEX";
+  final static int VERSION_START = 0;
+  final static int VERSION_CURRENT = VERSION_START;
+
+  final private int termIndexInterval;
+
+  private final List<FSTFieldWriter> fields = new ArrayList<FSTFieldWriter>();
+  private IndexOutput termsOut;
+
+  public FSTStandardTermsIndexWriter(SegmentWriteState state) throws IOException {
+    final String indexFileName = IndexFileNames.segmentFileName(state.segmentName, "", StandardCodec.TERMS_INDEX_EXTENSION);
+    state.flushedFiles.add(indexFileName);
+    termIndexInterval = state.termIndexInterval;
+    out = state.directory.createOutput(indexFileName);
+    writeHeader(out);
+    out.writeInt(termIndexInterval);
+  }
+  
+  protected void writeHeader(IndexOutput out) throws IOException {
+    CodecUtil.writeHeader(out, CODEC_NAME, VERSION_CURRENT);
+    // Placeholder for dir offset
+    out.writeLong(0);
+  }
+
+  @Override
+  public void setTermsOutput(IndexOutput termsOut) {
+    this.termsOut = termsOut;
+  }
+  
+  @Override
+  public FieldWriter addField(FieldInfo field) {
+    FSTFieldWriter writer = new FSTFieldWriter(field);
+    fields.add(writer);
+    return writer;
+  }
+
+  private class FSTFieldWriter extends FieldWriter {
+    final FieldInfo fieldInfo;
+    int numIndexTerms;
+    final long termsStart;
+    long indexStart;
+    long packedIndexStart;
+    private long numTerms;
+
+    private Builder<Long> fstBuilder;
+    private final PositiveIntOutputs fstOutputs = PositiveIntOutputs.getSingleton();
+
+    private int[] termsPointerDeltas;
+    private long lastTermsPointer;
+
+    private final BytesRef lastTerm = new BytesRef();
+    private final BytesRef indexTerm = new BytesRef();
+
+    FSTFieldWriter(FieldInfo fieldInfo) {
+      this.fieldInfo = fieldInfo;
+      termsStart = lastTermsPointer = termsOut.getFilePointer();
+      termsPointerDeltas = new int[0];
+      fstBuilder = new Builder<Long>(fstOutputs);
+    }
+
+    @Override
+    public boolean checkIndexTerm(BytesRef text, int docFreq) throws IOException {
+      // First term is first indexed term:
+      if (0 == (numTerms++ % termIndexInterval)) {
+
+        // we can safely strip off the non-distinguishing
+        // suffix to save RAM in the loaded terms index.
+        final int limit = Math.min(lastTerm.length, text.length);
+        int minPrefixDiff = Math.min(1+lastTerm.length, text.length);
+        for(int byteIdx=0;byteIdx<limit;byteIdx++) {
+          if (lastTerm.bytes[lastTerm.offset+byteIdx] != text.bytes[text.offset+byteIdx]) {
+            minPrefixDiff = byteIdx+1;
+            break;
+          }
+        }
+
+        // the prefix still sorts after the term before it,
+        // so index terms are added to the FST in order
+        indexTerm.bytes = text.bytes;
+        indexTerm.offset = text.offset;
+        indexTerm.length = minPrefixDiff;
+        fstBuilder.add(indexTerm, fstOutputs.get(numIndexTerms));
+
+        if (termsPointerDeltas.length == numIndexTerms) {
+          termsPointerDeltas = ArrayUtil.grow(termsPointerDeltas);
+        }
+
+        // save delta terms pointer
+        final long fp = termsOut.getFilePointer();
+        termsPointerDeltas[numIndexTerms] = (int) (fp - lastTermsPointer);
+        lastTermsPointer = fp;
+
+        lastTerm.copy(text);
+        numIndexTerms++;
+        return true;
+      } else {
+        if (0 == numTerms % termIndexInterval) {
+          // save last term just before next index term so we
+          // can compute wasted suffix
+          lastTerm.copy(text);
+        }
+        return false;
+      }
+    }
+
+    @Override
+    public void finish() throws IOException {
+      final FST<Long> fst = fstBuilder.finish();
+      fstBuilder = null;
+
+      indexStart = out.getFilePointer();
+      if (fst != null) {
+        fst.save(out);
+      }
+
+      // write primary terms dict offsets
+      packedIndexStart = out.getFilePointer();
+
+      final long maxValue = termsOut.getFilePointer();
+      PackedInts.Writer w = PackedInts.getWriter(out, numIndexTerms, PackedInts.bitsRequired(maxValue));
+
+      // relative to our termsStart
+      long upto = 0;
+      for(int i=0;i<numIndexTerms;i++) {
+        upto += termsPointerDeltas[i];
+        w.add(upto);
+      }
+      w.finish();
+
+      // our referrer holds onto us, while other fields are
+      // being written, so don't tie up this RAM:
+      termsPointerDeltas = null;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    final long dirStart = out.getFilePointer();
+    final int fieldCount = fields.size();
+
+    out.writeInt(fieldCount);
+    for(int i=0;i<fieldCount;i++) {
+      FSTFieldWriter field = fields.get(i);
+      out.writeInt(field.fieldInfo.number);
+      out.writeInt(field.numIndexTerms);
+      out.writeLong(field.termsStart);
+      out.writeLong(field.indexStart);
+      out.writeLong(field.packedIndexStart);
+    }
+    writeTrailer(dirStart);
+    out.close();
+  }
+
+  protected void writeTrailer(long dirStart) throws IOException {
+    out.seek(CodecUtil.headerLength(CODEC_NAME));
+    out.writeLong(dirStart);
+  }
+}
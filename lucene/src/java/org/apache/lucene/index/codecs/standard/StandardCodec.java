@@ -33,8 +33,17 @@ import org.apache.lucene.store.Directory;
  *  @lucene.experimental */
 public class StandardCodec extends Codec {
 
+  private final int termsCacheSize;
+
   public StandardCodec() {
+    this(TERMS_CACHE_SIZE);
+  }
+
+  /** Creates the codec with a terms cache of the given
+   *  size per segment, see {@link TermStateCache}. */
+  public StandardCodec(int termsCacheSize) {
     name = "Standard";
+    this.termsCacheSize = termsCacheSize;
   }
 
   @Override
@@ -48,7 +57,7 @@ public class StandardCodec extends Codec {
     StandardTermsIndexWriter indexWriter;
     boolean success = false;
     try {
-      indexWriter = new SimpleStandardTermsIndexWriter(state);
+      indexWriter = new FSTStandardTermsIndexWriter(state);
       success = true;
     } finally {
       if (!success) {
@@ -81,11 +90,10 @@ public class StandardCodec extends Codec {
 
     boolean success = false;
     try {
-      indexReader = new SimpleStandardTermsIndexReader(state.dir,
-                                                       state.fieldInfos,
-                                                       state.segmentInfo.name,
-                                                       state.termsIndexDivisor,
-                                                       BytesRef.getUTF8SortedAsUnicodeComparator());
+      indexReader = new FSTStandardTermsIndexReader(state.dir,
+                                                    state.fieldInfos,
+                                                    state.segmentInfo.name,
+                                                    state.termsIndexDivisor);
       success = true;
     } finally {
       if (!success) {
@@ -102,7 +110,7 @@ public class StandardCodec extends Codec {
                                                        postings,
                                                        state.readBufferSize,
                                                        BytesRef.getUTF8SortedAsUnicodeComparator(),
-                                                       TERMS_CACHE_SIZE);
+                                                       termsCacheSize);
       success = true;
       return ret;
     } finally {
@@ -132,7 +140,7 @@ public class StandardCodec extends Codec {
   public void files(Directory dir, SegmentInfo segmentInfo, Set<String> files) throws IOException {
     StandardPostingsReaderImpl.files(dir, segmentInfo, files);
     StandardTermsDictReader.files(dir, segmentInfo, files);
-    SimpleStandardTermsIndexReader.files(dir, segmentInfo, files);
+    FSTStandardTermsIndexReader.files(dir, segmentInfo, files);
   }
 
   @Override
@@ -144,6 +152,6 @@ public class StandardCodec extends Codec {
     extensions.add(FREQ_EXTENSION);
     extensions.add(PROX_EXTENSION);
     StandardTermsDictReader.getExtensions(extensions);
-    SimpleStandardTermsIndexReader.getIndexExtensions(extensions);
+    FSTStandardTermsIndexReader.getIndexExtensions(extensions);
   }
 }
@@ -44,6 +44,12 @@ public abstract class StandardPostingsReader implements Closeable {
 
   public abstract void readTerm(IndexInput termsIn, FieldInfo fieldInfo, TermState state, boolean isIndexTerm) throws IOException;
 
+  /** Returns an upper bound of the term's frequency in any
+   *  single document, or -1 if it was not recorded. */
+  public int maxTermFreq(FieldInfo fieldInfo, TermState state) throws IOException {
+    return -1;
+  }
+
   /** Must fully consume state, since after this call that
    *  TermState may be reused. */
   public abstract DocsEnum docs(FieldInfo fieldInfo, TermState state, Bits skipDocs, DocsEnum reuse) throws IOException;
@@ -42,6 +42,7 @@ public class StandardPostingsReaderImpl extends StandardPostingsReader {
 
   int skipInterval;
   int maxSkipLevels;
+  int version;
 
   public StandardPostingsReaderImpl(Directory dir, SegmentInfo segmentInfo, int readBufferSize) throws IOException {
     freqIn = dir.openInput(IndexFileNames.segmentFileName(segmentInfo.name, "", StandardCodec.FREQ_EXTENSION),
@@ -73,8 +74,8 @@ public class StandardPostingsReaderImpl extends StandardPostingsReader {
   public void init(IndexInput termsIn) throws IOException {
 
     // Make sure we are talking to the matching past writer
-    CodecUtil.checkHeader(termsIn, StandardPostingsWriterImpl.CODEC,
-      StandardPostingsWriterImpl.VERSION_START, StandardPostingsWriterImpl.VERSION_START);
+    version = CodecUtil.checkHeader(termsIn, StandardPostingsWriterImpl.CODEC,
+      StandardPostingsWriterImpl.VERSION_START, StandardPostingsWriterImpl.VERSION_CURRENT);
 
     skipInterval = termsIn.readInt();
     maxSkipLevels = termsIn.readInt();
@@ -84,12 +85,15 @@ public class StandardPostingsReaderImpl extends StandardPostingsReader {
     long freqOffset;
     long proxOffset;
     int skipOffset;
+    // -1 if the index predates VERSION_MAX_FREQ
+    int maxFreq;
 
     public Object clone() {
       DocTermState other = (DocTermState) super.clone();
       other.freqOffset = freqOffset;
       other.proxOffset = proxOffset;
       other.skipOffset = skipOffset;
+      other.maxFreq = maxFreq;
       return other;
     }
 
@@ -99,10 +103,11 @@ public class StandardPostingsReaderImpl extends StandardPostingsReader {
       freqOffset = other.freqOffset;
       proxOffset = other.proxOffset;
       skipOffset = other.skipOffset;
+      maxFreq = other.maxFreq;
     }
 
     public String toString() {
-      return super.toString() + " freqFP=" + freqOffset + " proxFP=" + proxOffset + " skipOffset=" + skipOffset;
+      return super.toString() + " freqFP=" + freqOffset + " proxFP=" + proxOffset + " skipOffset=" + skipOffset + " maxFreq=" + maxFreq;
     }
   }
 
@@ -148,8 +153,20 @@ public class StandardPostingsReaderImpl extends StandardPostingsReader {
       } else {
         docTermState.proxOffset += termsIn.readVLong();
       }
+      if (version >= StandardPostingsWriterImpl.VERSION_MAX_FREQ) {
+        docTermState.maxFreq = termsIn.readVInt();
+      } else {
+        docTermState.maxFreq = -1;
+      }
+    } else {
+      docTermState.maxFreq = 1;
     }
   }
+
+  @Override
+  public int maxTermFreq(FieldInfo fieldInfo, TermState termState) {
+    return ((DocTermState) termState).maxFreq;
+  }
     
   @Override
   public DocsEnum docs(FieldInfo fieldInfo, TermState termState, Bits skipDocs, DocsEnum reuse) throws IOException {
@@ -36,7 +36,9 @@ public final class StandardPostingsWriterImpl extends StandardPostingsWriter {
   
   // Increment version to change it:
   final static int VERSION_START = 0;
-  final static int VERSION_CURRENT = VERSION_START;
+  // Each term also records its max freq in a single doc
+  final static int VERSION_MAX_FREQ = 1;
+  final static int VERSION_CURRENT = VERSION_MAX_FREQ;
 
   final IndexOutput freqOut;
   final IndexOutput proxOut;
@@ -116,6 +118,7 @@ public final class StandardPostingsWriterImpl extends StandardPostingsWriter {
 
   int lastDocID;
   int df;
+  int maxFreq;
   
   /** Adds a new doc in this term.  If this returns null
    *  then we just skip consuming positions/payloads. */
@@ -136,6 +139,9 @@ public final class StandardPostingsWriterImpl extends StandardPostingsWriter {
     assert docID < totalNumDocs: "docID=" + docID + " totalNumDocs=" + totalNumDocs;
 
     lastDocID = docID;
+    if (termDocFreq > maxFreq) {
+      maxFreq = termDocFreq;
+    }
     if (omitTermFreqAndPositions) {
       freqOut.writeVInt(delta);
     } else if (1 == termDocFreq) {
@@ -215,10 +221,12 @@ public final class StandardPostingsWriterImpl extends StandardPostingsWriter {
         termsOut.writeVLong(proxStart - lastProxStart);
       }
       lastProxStart = proxStart;
+      termsOut.writeVInt(maxFreq);
     }
 
     lastDocID = 0;
     df = 0;
+    maxFreq = 0;
   }
 
   @Override
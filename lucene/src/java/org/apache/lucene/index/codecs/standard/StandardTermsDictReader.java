@@ -37,9 +37,12 @@ import org.apache.lucene.index.codecs.FieldsProducer;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.util.Bits;
-import org.apache.lucene.util.DoubleBarrelLRUCache;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.CodecUtil;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.automaton.ByteRunAutomaton;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
 
 /** Handles a terms dict, but decouples all details of
  *  doc/freqs/positions reading to an instance of {@link
@@ -67,7 +70,7 @@ public class StandardTermsDictReader extends FieldsProducer {
   private final Comparator<BytesRef> termComp;
 
   // Caches the most recently looked-up field + terms:
-  private final DoubleBarrelLRUCache<FieldAndTerm,TermState> termsCache;
+  private final TermStateCache termsCache;
 
   // Reads the terms index
   private StandardTermsIndexReader indexReader;
@@ -75,42 +78,12 @@ public class StandardTermsDictReader extends FieldsProducer {
   // keeps the dirStart offset
   protected long dirOffset;
 
-  // Used as key for the terms cache
-  private static class FieldAndTerm extends DoubleBarrelLRUCache.CloneableKey {
-    String field;
-    BytesRef term;
-
-    public FieldAndTerm() {
-    }
-
-    public FieldAndTerm(FieldAndTerm other) {
-      field = other.field;
-      term = new BytesRef(other.term);
-    }
-
-    @Override
-    public boolean equals(Object _other) {
-      FieldAndTerm other = (FieldAndTerm) _other;
-      return other.field == field && term.bytesEquals(other.term);
-    }
-
-    @Override
-    public Object clone() {
-      return new FieldAndTerm(this);
-    }
-
-    @Override
-    public int hashCode() {
-      return field.hashCode() * 31 + term.hashCode();
-    }
-  }
-  
   public StandardTermsDictReader(StandardTermsIndexReader indexReader, Directory dir, FieldInfos fieldInfos, String segment, StandardPostingsReader postingsReader, int readBufferSize,
                                  Comparator<BytesRef> termComp, int termsCacheSize)
     throws IOException {
     
     this.postingsReader = postingsReader;
-    termsCache = new DoubleBarrelLRUCache<FieldAndTerm,TermState>(termsCacheSize);
+    termsCache = new TermStateCache(termsCacheSize);
 
     this.termComp = termComp;
     
@@ -197,6 +170,13 @@ public class StandardTermsDictReader extends FieldsProducer {
     }
   }
 
+  /** Returns the cache of recently looked-up terms, shared
+   *  by all TermsEnums of this segment, eg to check its hit
+   *  rate. */
+  public TermStateCache getTermsCache() {
+    return termsCache;
+  }
+
   public static void files(Directory dir, SegmentInfo segmentInfo, Collection<String> files) {
     files.add(IndexFileNames.segmentFileName(segmentInfo.name, "", StandardCodec.TERMS_EXTENSION));
   }
@@ -270,6 +250,11 @@ public class StandardTermsDictReader extends FieldsProducer {
       return new SegmentTermsEnum();
     }
 
+    @Override
+    public TermsEnum intersect(CompiledAutomaton compiled, BytesRef startTerm) throws IOException {
+      return new IntersectTermsEnum(compiled, startTerm);
+    }
+
     @Override
     public long getUniqueTermCount() {
       return numTerms;
@@ -282,13 +267,11 @@ public class StandardTermsDictReader extends FieldsProducer {
       private final TermState state;
       private boolean seekPending;
       private final StandardTermsIndexReader.TermsIndexResult indexResult = new StandardTermsIndexReader.TermsIndexResult();
-      private final FieldAndTerm fieldTerm = new FieldAndTerm();
 
       SegmentTermsEnum() throws IOException {
         in = (IndexInput) StandardTermsDictReader.this.in.clone();
         in.seek(termsStartPointer);
         bytesReader = new DeltaBytesReader(in);
-        fieldTerm.field = fieldInfo.name;
         state = postingsReader.newTermState();
         state.ord = -1;
       }
@@ -305,10 +288,9 @@ public class StandardTermsDictReader extends FieldsProducer {
       @Override
       public SeekStatus seek(BytesRef term, boolean useCache) throws IOException {
         // Check cache
-        fieldTerm.term = term;
         TermState cachedState;
         if (useCache) {
-          cachedState = termsCache.get(fieldTerm);
+          cachedState = termsCache.get(fieldInfo.name, term);
           if (cachedState != null) {
             state.copy(cachedState);
             seekPending = true;
@@ -376,11 +358,10 @@ public class StandardTermsDictReader extends FieldsProducer {
 
             if (doSeek && useCache) {
               // Store in cache
-              FieldAndTerm entryKey = new FieldAndTerm(fieldTerm);
               cachedState = (TermState) state.clone();
               // this is fp after current term
               cachedState.filePointer = in.getFilePointer();
-              termsCache.put(entryKey, cachedState);
+              termsCache.put(fieldInfo.name, term, cachedState);
             }
               
             return SeekStatus.FOUND;
@@ -478,6 +459,11 @@ public class StandardTermsDictReader extends FieldsProducer {
         return state.docFreq;
       }
 
+      @Override
+      public int maxTermFreq() throws IOException {
+        return postingsReader.maxTermFreq(fieldInfo, state);
+      }
+
       @Override
       public DocsEnum docs(Bits skipDocs, DocsEnum reuse) throws IOException {
         DocsEnum docsEnum = postingsReader.docs(fieldInfo, state, skipDocs, reuse);
@@ -494,5 +480,188 @@ public class StandardTermsDictReader extends FieldsProducer {
         }
       }
     }
+
+    // Iterates through the terms in this field that are
+    // accepted by an automaton.  Each term is only run from
+    // the prefix it shares with the previous term, and once
+    // the automaton rejects a prefix the following terms
+    // starting with it are skipped, seeking through the
+    // terms index if they fill the rest of the block.
+    private final class IntersectTermsEnum extends TermsEnum {
+      private final SegmentTermsEnum termsEnum;
+      private final ByteRunAutomaton runAutomaton;
+      // seeking past a rejected prefix by incrementing its
+      // last byte requires that terms are sorted by byte
+      private final boolean canSkip;
+      // states[i] is the state after the first i bytes of
+      // the current term, for i <= validLength
+      private int[] states = new int[10];
+      private int validLength;
+      // position of the byte of the current term the
+      // automaton rejected, or -1
+      private int rejectedAt = -1;
+      private final BytesRef skipTerm = new BytesRef(10);
+      private final StandardTermsIndexReader.TermsIndexResult indexResult = new StandardTermsIndexReader.TermsIndexResult();
+      // pending until the first next()
+      private BytesRef startTerm;
+
+      IntersectTermsEnum(CompiledAutomaton compiled, BytesRef startTerm) throws IOException {
+        termsEnum = new SegmentTermsEnum();
+        runAutomaton = compiled.runAutomaton;
+        canSkip = termComp == BytesRef.getUTF8SortedAsUnicodeComparator();
+        states[0] = runAutomaton.getInitialState();
+        this.startTerm = startTerm;
+      }
+
+      @Override
+      public Comparator<BytesRef> getComparator() {
+        return termComp;
+      }
+
+      @Override
+      public BytesRef next() throws IOException {
+        if (startTerm != null) {
+          final SeekStatus status = termsEnum.seek(startTerm, false);
+          startTerm = null;
+          if (status == SeekStatus.END) {
+            return null;
+          }
+          validLength = 0;
+          rejectedAt = -1;
+          final BytesRef term = termsEnum.term();
+          if (accept(term, 0) && status == SeekStatus.NOT_FOUND) {
+            return term;
+          }
+        }
+
+        while(true) {
+          BytesRef term = termsEnum.next();
+          if (term == null) {
+            return null;
+          }
+          if (accept(term, termsEnum.bytesReader.prefix)) {
+            return term;
+          }
+          if (rejectedAt != -1 && canSkip && termsEnum.state.ord < numTerms-1) {
+            // all terms up to the next index term may start
+            // with the rejected prefix, only seek if the first
+            // one that does not is beyond
+            if (!nextPrefix(term)) {
+              return null;
+            }
+            if (fieldIndexReader.nextIndexTerm(termsEnum.state.ord, indexResult) &&
+                termComp.compare(indexResult.term, skipTerm) <= 0) {
+              if (termsEnum.seek(skipTerm, false) == SeekStatus.END) {
+                return null;
+              }
+              validLength = 0;
+              rejectedAt = -1;
+              term = termsEnum.term();
+              if (accept(term, 0)) {
+                return term;
+              }
+            }
+          }
+        }
+      }
+
+      // sets skipTerm to the smallest term greater than all
+      // terms starting with the rejected prefix of term;
+      // returns false if there is none
+      private boolean nextPrefix(BytesRef term) {
+        int length = rejectedAt + 1;
+        while (length > 0 && term.bytes[term.offset + length - 1] == (byte) 0xff) {
+          length--;
+        }
+        if (length == 0) {
+          return false;
+        }
+        skipTerm.copy(term);
+        skipTerm.length = length;
+        skipTerm.bytes[length - 1]++;
+        return true;
+      }
+
+      // runs the automaton over the bytes of term after its
+      // first prefix ones, which are shared with the
+      // previous term
+      private boolean accept(BytesRef term, int prefix) {
+        if (rejectedAt != -1) {
+          if (rejectedAt < prefix) {
+            // starts with the same rejected prefix
+            return false;
+          }
+          rejectedAt = -1;
+        }
+        if (validLength > prefix) {
+          validLength = prefix;
+        }
+        if (states.length <= term.length) {
+          final int[] newStates = new int[ArrayUtil.oversize(1+term.length, RamUsageEstimator.NUM_BYTES_INT)];
+          System.arraycopy(states, 0, newStates, 0, validLength+1);
+          states = newStates;
+        }
+        final byte[] bytes = term.bytes;
+        final int offset = term.offset;
+        int state = states[validLength];
+        for(int i=validLength;i<term.length;i++) {
+          state = runAutomaton.step(state, bytes[offset+i] & 0xff);
+          if (state == -1) {
+            validLength = i;
+            rejectedAt = i;
+            return false;
+          }
+          states[i+1] = state;
+        }
+        validLength = term.length;
+        return runAutomaton.isAccept(state);
+      }
+
+      @Override
+      public BytesRef term() {
+        return termsEnum.term();
+      }
+
+      @Override
+      public long ord() {
+        return termsEnum.ord();
+      }
+
+      @Override
+      public int docFreq() {
+        return termsEnum.docFreq();
+      }
+
+      @Override
+      public int maxTermFreq() throws IOException {
+        return termsEnum.maxTermFreq();
+      }
+
+      @Override
+      public DocsEnum docs(Bits skipDocs, DocsEnum reuse) throws IOException {
+        return termsEnum.docs(skipDocs, reuse);
+      }
+
+      @Override
+      public DocsAndPositionsEnum docsAndPositions(Bits skipDocs, DocsAndPositionsEnum reuse) throws IOException {
+        return termsEnum.docsAndPositions(skipDocs, reuse);
+      }
+
+      /** This enum does not support seeking!
+       * @throws UnsupportedOperationException
+       */
+      @Override
+      public SeekStatus seek(BytesRef term, boolean useCache) {
+        throw new UnsupportedOperationException(getClass().getName()+" does not support seeking");
+      }
+
+      /** This enum does not support seeking!
+       * @throws UnsupportedOperationException
+       */
+      @Override
+      public SeekStatus seek(long ord) {
+        throw new UnsupportedOperationException(getClass().getName()+" does not support seeking");
+      }
+    }
   }
 }
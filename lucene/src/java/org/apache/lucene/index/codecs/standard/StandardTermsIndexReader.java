@@ -44,6 +44,9 @@ public abstract class StandardTermsIndexReader {
     long position;
     final BytesRef term = new BytesRef();
     long offset;
+    // private state of the index reader, reused across the
+    // lookups of the same TermsEnum
+    Object indexState;
   };
 
   public abstract class FieldReader {
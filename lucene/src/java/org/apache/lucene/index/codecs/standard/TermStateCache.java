@@ -0,0 +1,169 @@
+package org.apache.lucene.index.codecs.standard;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Lock-free cache of the {@link TermState} of recently
+ * looked-up terms, shared by all {@link
+ * org.apache.lucene.index.TermsEnum}s of a segment so
+ * that popular terms are found without seeking the terms
+ * dict.
+ *
+ * <p>The cache is a two-way set associative hash table:
+ * each term may only live in one of two slots, and adding
+ * a term evicts the older entry of its slots if both are
+ * taken.  Entries are immutable, so readers and writers
+ * never lock and a lookup writes nothing but its hit or
+ * miss count; concurrent puts may lose an entry, which
+ * only costs a later miss.  The hit and miss counts are
+ * striped by thread, so that many threads looking up the
+ * same hot terms do not contend on one counter.</p>
+ *
+ * @lucene.experimental
+ */
+public final class TermStateCache {
+
+  // Must be a power of 2
+  private static final int COUNTER_STRIPES = 16;
+  // Counters of different stripes are 64 bytes apart, so
+  // they live in different cache lines
+  private static final int COUNTER_PAD = 8;
+
+  private static final class Entry {
+    final String field;
+    final BytesRef term;
+    final int hash;
+    final TermState state;
+
+    Entry(String field, BytesRef term, int hash, TermState state) {
+      this.field = field;
+      this.term = term;
+      this.hash = hash;
+      this.state = state;
+    }
+  }
+
+  // NOTE: not volatile nor atomic; since Entry only has
+  // final fields, a thread sees either null or a complete
+  // entry
+  private final Entry[] entries;
+  private final AtomicLongArray counts = new AtomicLongArray(COUNTER_STRIPES * COUNTER_PAD);
+
+  /** Creates a cache of at least <code>size</code>
+   *  entries (rounded up to a power of 2); 0 disables
+   *  caching. */
+  public TermStateCache(int size) {
+    if (size < 0) {
+      throw new IllegalArgumentException("size must be >= 0 (got " + size + ")");
+    }
+    int numEntries = size == 0 ? 0 : 2;
+    while (numEntries < size) {
+      numEntries <<= 1;
+    }
+    entries = new Entry[numEntries];
+  }
+
+  private static int hash(String field, BytesRef term) {
+    int h = field.hashCode() * 31 + term.hashCode();
+    // spread the bits, since we only use the low ones
+    h ^= (h >>> 20) ^ (h >>> 12);
+    return h ^ (h >>> 7) ^ (h >>> 4);
+  }
+
+  // index of the first slot of the entry's set
+  private int slot(int hash) {
+    return hash & (entries.length - 2);
+  }
+
+  private static boolean matches(Entry e, String field, BytesRef term, int hash) {
+    return e != null && e.hash == hash && e.field == field && e.term.bytesEquals(term);
+  }
+
+  private void count(int offset) {
+    final int stripe = (int) Thread.currentThread().getId() & (COUNTER_STRIPES-1);
+    counts.incrementAndGet(stripe * COUNTER_PAD + offset);
+  }
+
+  /** Returns the cached state for this term, or null.  The
+   *  returned state is shared and must not be modified.
+   *  @param field the interned field name */
+  public TermState get(String field, BytesRef term) {
+    if (entries.length != 0) {
+      final int hash = hash(field, term);
+      final int slot = slot(hash);
+      Entry e = entries[slot];
+      if (!matches(e, field, term, hash)) {
+        e = entries[slot+1];
+      }
+      if (matches(e, field, term, hash)) {
+        count(0);
+        return e.state;
+      }
+    }
+    count(1);
+    return null;
+  }
+
+  /** Caches the state of this term.  The term is copied,
+   *  but the cache takes ownership of the state.
+   *  @param field the interned field name */
+  public void put(String field, BytesRef term, TermState state) {
+    if (entries.length == 0) {
+      return;
+    }
+    final int hash = hash(field, term);
+    final int slot = slot(hash);
+    final Entry e = new Entry(field, new BytesRef(term), hash, state);
+    final Entry first = entries[slot];
+    if (first == null || matches(first, field, term, hash)) {
+      entries[slot] = e;
+    } else {
+      // keep the most recently added entry first, and
+      // evict the older one
+      entries[slot+1] = first;
+      entries[slot] = e;
+    }
+  }
+
+  /** Returns the number of entries this cache can hold. */
+  public int getSize() {
+    return entries.length;
+  }
+
+  private long sum(int offset) {
+    long sum = 0;
+    for (int i = 0; i < COUNTER_STRIPES; i++) {
+      sum += counts.get(i * COUNTER_PAD + offset);
+    }
+    return sum;
+  }
+
+  /** Returns how many lookups found their term. */
+  public long getHitCount() {
+    return sum(0);
+  }
+
+  /** Returns how many lookups did not find their term. */
+  public long getMissCount() {
+    return sum(1);
+  }
+}
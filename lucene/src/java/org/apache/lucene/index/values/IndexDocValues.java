@@ -0,0 +1,157 @@
+package org.apache.lucene.index.values;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Per-document values of a single field in a single
+ * segment, written by {@link org.apache.lucene.index.IndexWriter}
+ * from {@link org.apache.lucene.document.IndexDocValuesField}
+ * instances and obtained through {@link
+ * org.apache.lucene.index.IndexReader#docValues}.  Unlike
+ * the {@link org.apache.lucene.search.FieldCache}, these
+ * values are stored column-stride in the index, so nothing
+ * needs to be un-inverted when a segment is opened.
+ *
+ * <p>Values are accessed through a {@link Source}.  {@link
+ * #getSource} loads the values into RAM once and shares
+ * them, {@link #load} loads a private copy and {@link
+ * #getDirectSource} reads them straight from the {@link
+ * org.apache.lucene.store.Directory} on every access.</p>
+ *
+ * <p>Documents that have no value for the field read back
+ * as <code>0</code> ({@link Type#INTS}), as zero-filled
+ * bytes ({@link Type#BYTES_FIXED_STRAIGHT}) or as an
+ * empty {@link BytesRef} (the other bytes types).</p>
+ *
+ * @lucene.experimental
+ */
+public abstract class IndexDocValues {
+
+  /** The type of values stored for a field. */
+  public static enum Type {
+    /** 64 bit signed integers, stored as packed ints
+     *  relative to the segment's minimum value. */
+    INTS,
+    /** Bytes of the same length for every document. */
+    BYTES_FIXED_STRAIGHT,
+    /** Bytes of varying length, stored back to back
+     *  with packed addresses. */
+    BYTES_VAR_STRAIGHT,
+    /** Bytes of varying length, de-duplicated and stored
+     *  in sorted order; every document refers to its value
+     *  by ord, see {@link SortedSource}. */
+    BYTES_SORTED;
+
+    /** Returns true if this type holds bytes. */
+    public boolean isBytes() {
+      return this != INTS;
+    }
+  }
+
+  private Source cached;
+
+  /** Returns the type of values stored for this field. */
+  public abstract Type type();
+
+  /** Returns a new, private {@link Source} holding all
+   *  values in RAM. */
+  public abstract Source load() throws IOException;
+
+  /** Returns a {@link Source} that reads every value from
+   *  the underlying {@link org.apache.lucene.store.Directory}
+   *  on access, without loading anything into RAM.  The
+   *  returned Source is not thread-safe; use one per
+   *  thread. */
+  public abstract Source getDirectSource() throws IOException;
+
+  /** Returns the {@link Source} shared by all users of
+   *  this instance, loading it on first access. The
+   *  returned Source is thread-safe. */
+  public synchronized Source getSource() throws IOException {
+    if (cached == null) {
+      cached = load();
+    }
+    return cached;
+  }
+
+  /** Random access to the values of one field, by docID.
+   *  Only the getters matching the field's {@link Type}
+   *  are supported; the others throw {@link
+   *  UnsupportedOperationException}. */
+  public static abstract class Source {
+
+    /** Returns the integer value of the document. */
+    public long getInt(int docID) {
+      throw new UnsupportedOperationException("ints are not supported by " + getClass().getSimpleName());
+    }
+
+    /** Fills and returns the bytes value of the
+     *  document.  The returned {@link BytesRef} may point
+     *  into shared storage and must not be modified. */
+    public BytesRef getBytes(int docID, BytesRef ref) {
+      throw new UnsupportedOperationException("bytes are not supported by " + getClass().getSimpleName());
+    }
+  }
+
+  /** A {@link Source} over {@link Type#BYTES_SORTED}
+   *  values, which additionally exposes each document's
+   *  ord.  Ords are in the range <code>0..getValueCount()-1</code>
+   *  and increase with the unsigned byte order of their
+   *  values; they are only comparable within one
+   *  segment. */
+  public static abstract class SortedSource extends Source {
+
+    /** Returns the ord of the document's value. */
+    public abstract int ord(int docID);
+
+    /** Fills and returns the value for the given ord. */
+    public abstract BytesRef getByOrd(int ord, BytesRef ref);
+
+    /** Returns the number of unique values. */
+    public abstract int getValueCount();
+
+    @Override
+    public BytesRef getBytes(int docID, BytesRef ref) {
+      return getByOrd(ord(docID), ref);
+    }
+
+    /** Returns the ord of the given value, or
+     *  <code>-insertionPoint-1</code> if it is not
+     *  present, like {@link java.util.Arrays#binarySearch}. */
+    public int getByValue(BytesRef value, BytesRef spare) {
+      int low = 0;
+      int high = getValueCount() - 1;
+      while (low <= high) {
+        final int mid = (low + high) >>> 1;
+        final int cmp = getByOrd(mid, spare).compareTo(value);
+        if (cmp < 0) {
+          low = mid + 1;
+        } else if (cmp > 0) {
+          high = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -(low + 1);
+    }
+  }
+}
@@ -0,0 +1,319 @@
+package org.apache.lucene.index.values;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CodecUtil;
+import org.apache.lucene.util.packed.PackedInts;
+
+/**
+ * Reads the per-document values written by {@link
+ * ValuesWriter}.  Opening only reads the field directory;
+ * the values of a field are read when one of its {@link
+ * IndexDocValues.Source}s is requested.
+ *
+ * @lucene.internal
+ */
+public final class ValuesReader implements Closeable {
+
+  private final IndexInput in;
+  private final Map<String,IndexDocValues> fields = new HashMap<String,IndexDocValues>();
+
+  public ValuesReader(Directory dir, String fileName, int readBufferSize) throws IOException {
+    in = dir.openInput(fileName, readBufferSize);
+    boolean success = false;
+    try {
+      CodecUtil.checkHeader(in, ValuesWriter.CODEC_NAME, ValuesWriter.VERSION_START, ValuesWriter.VERSION_CURRENT);
+      in.seek(in.length() - 8);
+      in.seek(in.readLong());
+      final int numFields = in.readVInt();
+      final IndexDocValues.Type[] types = IndexDocValues.Type.values();
+      for (int i = 0; i < numFields; i++) {
+        final String name = in.readString();
+        final int type = in.readByte();
+        if (type < 0 || type >= types.length) {
+          throw new CorruptIndexException("invalid doc values type " + type + " for field \"" + name + "\" in file " + fileName);
+        }
+        fields.put(name, new FieldValues(types[type], in.readVLong()));
+      }
+      success = true;
+    } finally {
+      if (!success) {
+        in.close();
+      }
+    }
+  }
+
+  /** Returns the values of the field, or null if this
+   *  segment has no values for it. */
+  public IndexDocValues docValues(String field) {
+    return fields.get(field);
+  }
+
+  /** Returns the names of all fields that have values. */
+  public Collection<String> fields() {
+    return Collections.unmodifiableCollection(fields.keySet());
+  }
+
+  public void close() throws IOException {
+    in.close();
+  }
+
+  private static byte[] readBytes(IndexInput input, long numBytes) throws IOException {
+    if (numBytes > Integer.MAX_VALUE) {
+      throw new IllegalStateException("cannot load " + numBytes + " bytes into RAM; use getDirectSource() instead");
+    }
+    final byte[] bytes = new byte[(int) numBytes];
+    input.readBytes(bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  private static BytesRef fill(BytesRef ref, IndexInput input, long fp, int length) throws IOException {
+    if (ref.bytes == null || ref.bytes.length < length) {
+      ref.bytes = new byte[length];
+    }
+    input.seek(fp);
+    input.readBytes(ref.bytes, 0, length);
+    ref.offset = 0;
+    ref.length = length;
+    return ref;
+  }
+
+  private final class FieldValues extends IndexDocValues {
+    private final Type type;
+    private final long pointer;
+
+    FieldValues(Type type, long pointer) {
+      this.type = type;
+      this.pointer = pointer;
+    }
+
+    @Override
+    public Type type() {
+      return type;
+    }
+
+    @Override
+    public Source load() throws IOException {
+      final IndexInput input = (IndexInput) in.clone();
+      try {
+        input.seek(pointer);
+        final int maxDoc = input.readVInt();
+        switch (type) {
+        case INTS:
+          if (input.readByte() == ValuesWriter.INTS_RAW) {
+            final long[] values = new long[maxDoc];
+            for (int i = 0; i < maxDoc; i++) {
+              values[i] = input.readLong();
+            }
+            return new Source() {
+              @Override
+              public long getInt(int docID) {
+                return values[docID];
+              }
+            };
+          } else {
+            final long minValue = input.readLong();
+            final PackedInts.Reader values = PackedInts.getReader(input);
+            return new Source() {
+              @Override
+              public long getInt(int docID) {
+                return minValue + values.get(docID);
+              }
+            };
+          }
+
+        case BYTES_FIXED_STRAIGHT: {
+          final int fixedLength = input.readVInt();
+          final byte[] data = readBytes(input, (long) fixedLength * maxDoc);
+          return new Source() {
+            @Override
+            public BytesRef getBytes(int docID, BytesRef ref) {
+              ref.bytes = data;
+              ref.offset = docID * fixedLength;
+              ref.length = fixedLength;
+              return ref;
+            }
+          };
+        }
+
+        case BYTES_VAR_STRAIGHT: {
+          final byte[] data = readBytes(input, input.readVLong());
+          final PackedInts.Reader addresses = PackedInts.getReader(input);
+          return new Source() {
+            @Override
+            public BytesRef getBytes(int docID, BytesRef ref) {
+              final int start = (int) addresses.get(docID);
+              ref.bytes = data;
+              ref.offset = start;
+              ref.length = (int) addresses.get(docID+1) - start;
+              return ref;
+            }
+          };
+        }
+
+        case BYTES_SORTED: {
+          final int valueCount = input.readVInt();
+          final byte[] data = readBytes(input, input.readVLong());
+          final PackedInts.Reader addresses = PackedInts.getReader(input);
+          final PackedInts.Reader ords = PackedInts.getReader(input);
+          return new SortedSource() {
+            @Override
+            public int ord(int docID) {
+              return (int) ords.get(docID);
+            }
+
+            @Override
+            public BytesRef getByOrd(int ord, BytesRef ref) {
+              final int start = (int) addresses.get(ord);
+              ref.bytes = data;
+              ref.offset = start;
+              ref.length = (int) addresses.get(ord+1) - start;
+              return ref;
+            }
+
+            @Override
+            public int getValueCount() {
+              return valueCount;
+            }
+          };
+        }
+
+        default:
+          throw new IllegalStateException("unknown type " + type);
+        }
+      } finally {
+        input.close();
+      }
+    }
+
+    @Override
+    public Source getDirectSource() throws IOException {
+      final IndexInput input = (IndexInput) in.clone();
+      input.seek(pointer);
+      final int maxDoc = input.readVInt();
+      switch (type) {
+      case INTS:
+        if (input.readByte() == ValuesWriter.INTS_RAW) {
+          final long start = input.getFilePointer();
+          return new Source() {
+            @Override
+            public long getInt(int docID) {
+              try {
+                input.seek(start + ((long) docID << 3));
+                return input.readLong();
+              } catch (IOException ioe) {
+                throw new IllegalStateException("failed to read value of doc " + docID, ioe);
+              }
+            }
+          };
+        } else {
+          final long minValue = input.readLong();
+          final PackedInts.Reader values = PackedInts.getDirectReader(input);
+          return new Source() {
+            @Override
+            public long getInt(int docID) {
+              return minValue + values.get(docID);
+            }
+          };
+        }
+
+      case BYTES_FIXED_STRAIGHT: {
+        final int fixedLength = input.readVInt();
+        final long start = input.getFilePointer();
+        return new Source() {
+          @Override
+          public BytesRef getBytes(int docID, BytesRef ref) {
+            try {
+              return fill(ref, input, start + (long) docID * fixedLength, fixedLength);
+            } catch (IOException ioe) {
+              throw new IllegalStateException("failed to read value of doc " + docID, ioe);
+            }
+          }
+        };
+      }
+
+      case BYTES_VAR_STRAIGHT: {
+        final long totalBytes = input.readVLong();
+        final long start = input.getFilePointer();
+        input.seek(start + totalBytes);
+        final PackedInts.Reader addresses = PackedInts.getDirectReader(input);
+        return new Source() {
+          @Override
+          public BytesRef getBytes(int docID, BytesRef ref) {
+            final long address = addresses.get(docID);
+            final int length = (int) (addresses.get(docID+1) - address);
+            try {
+              return fill(ref, input, start + address, length);
+            } catch (IOException ioe) {
+              throw new IllegalStateException("failed to read value of doc " + docID, ioe);
+            }
+          }
+        };
+      }
+
+      case BYTES_SORTED: {
+        final int valueCount = input.readVInt();
+        final long totalBytes = input.readVLong();
+        final long start = input.getFilePointer();
+        input.seek(start + totalBytes);
+        final PackedInts.Reader addresses = PackedInts.getDirectReader(input);
+        // skip to the ords, which follow the packed addresses
+        final long bitCount = (long) addresses.size() * addresses.getBitsPerValue();
+        input.seek(input.getFilePointer() + ((bitCount + 63) >>> 6 << 3));
+        final PackedInts.Reader ords = PackedInts.getDirectReader(input);
+        return new SortedSource() {
+          @Override
+          public int ord(int docID) {
+            return (int) ords.get(docID);
+          }
+
+          @Override
+          public BytesRef getByOrd(int ord, BytesRef ref) {
+            final long address = addresses.get(ord);
+            final int length = (int) (addresses.get(ord+1) - address);
+            try {
+              return fill(ref, input, start + address, length);
+            } catch (IOException ioe) {
+              throw new IllegalStateException("failed to read value of ord " + ord, ioe);
+            }
+          }
+
+          @Override
+          public int getValueCount() {
+            return valueCount;
+          }
+        };
+      }
+
+      default:
+        throw new IllegalStateException("unknown type " + type);
+      }
+    }
+  }
+}
@@ -0,0 +1,299 @@
+package org.apache.lucene.index.values;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.index.values.IndexDocValues.Source;
+import org.apache.lucene.index.values.IndexDocValues.Type;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CodecUtil;
+import org.apache.lucene.util.packed.PackedInts;
+
+/**
+ * Writes the per-document values of all fields of a
+ * segment into a single file.  Fields are written one
+ * after another, followed by a directory of field name,
+ * {@link Type} and file pointer, and finally the pointer
+ * to that directory.  {@link ValuesReader} reads the file
+ * back.
+ *
+ * @lucene.internal
+ */
+public final class ValuesWriter implements Closeable {
+
+  final static String CODEC_NAME = "IndexDocValues";
+  final static int VERSION_START = 0;
+  final static int VERSION_CURRENT = VERSION_START;
+
+  // How INTS are stored: packed relative to the minimum
+  // value, or as raw longs if the range does not fit in
+  // a positive long
+  final static byte INTS_PACKED = 0;
+  final static byte INTS_RAW = 1;
+
+  private final IndexOutput out;
+  private final List<String> names = new ArrayList<String>();
+  private final List<Type> types = new ArrayList<Type>();
+  private final List<Long> pointers = new ArrayList<Long>();
+
+  public ValuesWriter(Directory dir, String fileName) throws IOException {
+    out = dir.createOutput(fileName);
+    boolean success = false;
+    try {
+      CodecUtil.writeHeader(out, CODEC_NAME, VERSION_CURRENT);
+      success = true;
+    } finally {
+      if (!success) {
+        out.close();
+      }
+    }
+  }
+
+  /** Writes the values of documents <code>0..maxDoc-1</code>
+   *  of one field, read from the given {@link Source}. */
+  public void addField(String field, Type type, Source source, int maxDoc) throws IOException {
+    names.add(field);
+    types.add(type);
+    pointers.add(Long.valueOf(out.getFilePointer()));
+    out.writeVInt(maxDoc);
+    switch (type) {
+    case INTS:
+      writeInts(source, maxDoc);
+      break;
+    case BYTES_FIXED_STRAIGHT:
+      writeFixedStraight(field, source, maxDoc);
+      break;
+    case BYTES_VAR_STRAIGHT:
+      writeVarStraight(source, maxDoc);
+      break;
+    case BYTES_SORTED:
+      writeSorted(source, maxDoc);
+      break;
+    default:
+      throw new IllegalArgumentException("unknown type " + type);
+    }
+  }
+
+  private void writeInts(Source source, int maxDoc) throws IOException {
+    long minValue = 0;
+    long maxValue = 0;
+    for (int doc = 0; doc < maxDoc; doc++) {
+      final long v = source.getInt(doc);
+      if (doc == 0 || v < minValue) {
+        minValue = v;
+      }
+      if (doc == 0 || v > maxValue) {
+        maxValue = v;
+      }
+    }
+    final long delta = maxValue - minValue;
+    if (delta < 0) {
+      // range overflows a signed long
+      out.writeByte(INTS_RAW);
+      for (int doc = 0; doc < maxDoc; doc++) {
+        out.writeLong(source.getInt(doc));
+      }
+    } else {
+      out.writeByte(INTS_PACKED);
+      out.writeLong(minValue);
+      final PackedInts.Writer w = PackedInts.getWriter(out, maxDoc, PackedInts.bitsRequired(delta));
+      for (int doc = 0; doc < maxDoc; doc++) {
+        w.add(source.getInt(doc) - minValue);
+      }
+      w.finish();
+    }
+  }
+
+  private void writeFixedStraight(String field, Source source, int maxDoc) throws IOException {
+    final BytesRef spare = new BytesRef();
+    int fixedLength = -1;
+    for (int doc = 0; doc < maxDoc; doc++) {
+      final int length = source.getBytes(doc, spare).length;
+      if (length != 0) {
+        if (fixedLength == -1) {
+          fixedLength = length;
+        } else if (length != fixedLength) {
+          throw new IllegalArgumentException("field \"" + field + "\" was indexed as " + Type.BYTES_FIXED_STRAIGHT
+                                             + " but has values of length " + fixedLength + " and " + length);
+        }
+      }
+    }
+    if (fixedLength == -1) {
+      fixedLength = 0;
+    }
+    out.writeVInt(fixedLength);
+    final byte[] zeros = new byte[fixedLength];
+    for (int doc = 0; doc < maxDoc; doc++) {
+      final BytesRef value = source.getBytes(doc, spare);
+      if (value.length == 0) {
+        // missing
+        out.writeBytes(zeros, 0, fixedLength);
+      } else {
+        out.writeBytes(value.bytes, value.offset, value.length);
+      }
+    }
+  }
+
+  private void writeVarStraight(Source source, int maxDoc) throws IOException {
+    final BytesRef spare = new BytesRef();
+    long totalBytes = 0;
+    for (int doc = 0; doc < maxDoc; doc++) {
+      totalBytes += source.getBytes(doc, spare).length;
+    }
+    out.writeVLong(totalBytes);
+    for (int doc = 0; doc < maxDoc; doc++) {
+      final BytesRef value = source.getBytes(doc, spare);
+      out.writeBytes(value.bytes, value.offset, value.length);
+    }
+    final PackedInts.Writer w = PackedInts.getWriter(out, maxDoc+1, PackedInts.bitsRequired(totalBytes));
+    long address = 0;
+    for (int doc = 0; doc < maxDoc; doc++) {
+      w.add(address);
+      address += source.getBytes(doc, spare).length;
+    }
+    w.add(address);
+    w.finish();
+  }
+
+  private void writeSorted(Source source, int maxDoc) throws IOException {
+    final int[] docs = new int[maxDoc];
+    for (int doc = 0; doc < maxDoc; doc++) {
+      docs[doc] = doc;
+    }
+    new DocSorter(source, docs).sort();
+
+    // assign ords; firstDocs holds one document per unique value
+    final int[] ords = new int[maxDoc];
+    final int[] firstDocs = new int[maxDoc];
+    int valueCount = 0;
+    long totalBytes = 0;
+    final BytesRef last = new BytesRef();
+    final BytesRef spare = new BytesRef();
+    for (int i = 0; i < maxDoc; i++) {
+      final BytesRef value = source.getBytes(docs[i], spare);
+      if (valueCount == 0 || !value.bytesEquals(last)) {
+        firstDocs[valueCount++] = docs[i];
+        totalBytes += value.length;
+        last.copy(value);
+      }
+      ords[docs[i]] = valueCount-1;
+    }
+
+    out.writeVInt(valueCount);
+    out.writeVLong(totalBytes);
+    for (int ord = 0; ord < valueCount; ord++) {
+      final BytesRef value = source.getBytes(firstDocs[ord], spare);
+      out.writeBytes(value.bytes, value.offset, value.length);
+    }
+    PackedInts.Writer w = PackedInts.getWriter(out, valueCount+1, PackedInts.bitsRequired(totalBytes));
+    long address = 0;
+    for (int ord = 0; ord < valueCount; ord++) {
+      w.add(address);
+      address += source.getBytes(firstDocs[ord], spare).length;
+    }
+    w.add(address);
+    w.finish();
+    w = PackedInts.getWriter(out, maxDoc, PackedInts.bitsRequired(Math.max(0, valueCount-1)));
+    for (int doc = 0; doc < maxDoc; doc++) {
+      w.add(ords[doc]);
+    }
+    w.finish();
+  }
+
+  /** Writes the field directory and closes the file. */
+  public void close() throws IOException {
+    try {
+      final long dirStart = out.getFilePointer();
+      out.writeVInt(names.size());
+      for (int i = 0; i < names.size(); i++) {
+        out.writeString(names.get(i));
+        out.writeByte((byte) types.get(i).ordinal());
+        out.writeVLong(pointers.get(i).longValue());
+      }
+      out.writeLong(dirStart);
+    } finally {
+      out.close();
+    }
+  }
+
+  /** Stable merge sort of docIDs by their bytes value, so
+   *  that many equal values do not degrade the sort. */
+  private static final class DocSorter {
+    private final Source source;
+    private final int[] docs;
+    private final int[] tmp;
+    private final BytesRef scratch1 = new BytesRef();
+    private final BytesRef scratch2 = new BytesRef();
+
+    DocSorter(Source source, int[] docs) {
+      this.source = source;
+      this.docs = docs;
+      this.tmp = new int[docs.length];
+    }
+
+    void sort() {
+      mergeSort(0, docs.length);
+    }
+
+    private int compare(int doc1, int doc2) {
+      return source.getBytes(doc1, scratch1).compareTo(source.getBytes(doc2, scratch2));
+    }
+
+    private void mergeSort(int from, int to) {
+      if (to - from < 8) {
+        // insertion sort
+        for (int i = from + 1; i < to; i++) {
+          for (int j = i; j > from && compare(docs[j-1], docs[j]) > 0; j--) {
+            final int t = docs[j];
+            docs[j] = docs[j-1];
+            docs[j-1] = t;
+          }
+        }
+        return;
+      }
+      final int mid = (from + to) >>> 1;
+      mergeSort(from, mid);
+      mergeSort(mid, to);
+      if (compare(docs[mid-1], docs[mid]) <= 0) {
+        // already in order
+        return;
+      }
+      System.arraycopy(docs, from, tmp, from, to - from);
+      int i = from, j = mid, k = from;
+      while (i < mid && j < to) {
+        if (compare(tmp[j], tmp[i]) < 0) {
+          docs[k++] = tmp[j++];
+        } else {
+          docs[k++] = tmp[i++];
+        }
+      }
+      while (i < mid) {
+        docs[k++] = tmp[i++];
+      }
+      while (j < to) {
+        docs[k++] = tmp[j++];
+      }
+    }
+  }
+}
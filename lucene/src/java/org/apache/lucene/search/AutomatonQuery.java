@@ -21,14 +21,14 @@ import java.io.IOException;
 
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.index.MultiFields;
 import org.apache.lucene.util.ToStringUtils;
-import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.automaton.Automaton;
-import org.apache.lucene.util.automaton.ByteRunAutomaton;
 import org.apache.lucene.util.automaton.BasicAutomata;
 import org.apache.lucene.util.automaton.BasicOperations;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
 import org.apache.lucene.util.automaton.MinimizationOperations;
 import org.apache.lucene.util.automaton.SpecialOperations;
 
@@ -56,9 +56,7 @@ public class AutomatonQuery extends MultiTermQuery {
   /** term containing the field, and possibly some pattern structure */
   protected final Term term;
 
-  transient ByteRunAutomaton runAutomaton;
-  transient boolean isFinite;
-  transient BytesRef commonSuffixRef;
+  transient CompiledAutomaton compiled;
 
   /**
    * Create a new AutomatonQuery from an {@link Automaton}.
@@ -75,13 +73,28 @@ public class AutomatonQuery extends MultiTermQuery {
     MinimizationOperations.minimize(automaton);
   }
 
-  private synchronized void compileAutomaton() {
-    // this method must be synchronized, as setting the three transient fields is not atomic:
-    if (runAutomaton == null) {
-      runAutomaton = new ByteRunAutomaton(automaton);
-      isFinite = SpecialOperations.isFinite(automaton);
-      commonSuffixRef = isFinite ? null : SpecialOperations.getCommonSuffixBytesRef(runAutomaton.getAutomaton());
+  /**
+   * Create a new AutomatonQuery from an already {@link
+   * CompiledAutomaton compiled} minimal automaton, eg taken
+   * from the {@link
+   * org.apache.lucene.util.automaton.CompiledAutomatonCache}.
+   *
+   * @param term Term containing field and possibly some pattern structure. The
+   *        term text is ignored.
+   * @param compiled compiled form of a minimized automaton.
+   */
+  protected AutomatonQuery(Term term, CompiledAutomaton compiled) {
+    super(term.field());
+    this.term = term;
+    this.automaton = compiled.getAutomaton();
+    this.compiled = compiled;
+  }
+
+  private synchronized CompiledAutomaton compileAutomaton() {
+    if (compiled == null) {
+      compiled = new CompiledAutomaton(automaton);
     }
+    return compiled;
   }
 
   @Override
@@ -119,9 +132,11 @@ public class AutomatonQuery extends MultiTermQuery {
       }
     }
 
-    compileAutomaton();
-    
-    return new AutomatonTermsEnum(runAutomaton, term.field(), reader, isFinite, commonSuffixRef);
+    final Terms terms = MultiFields.getTerms(reader, getField());
+    if (terms == null) {
+      return TermsEnum.EMPTY;
+    }
+    return terms.intersect(compileAutomaton(), null);
   }
 
   @Override
@@ -21,11 +21,13 @@ import java.io.IOException;
 import java.util.Comparator;
 
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.automaton.Automaton;
 import org.apache.lucene.util.automaton.ByteRunAutomaton;
-import org.apache.lucene.util.automaton.SpecialOperations;
-import org.apache.lucene.util.automaton.State;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
 import org.apache.lucene.util.automaton.Transition;
 
 /**
@@ -46,8 +48,6 @@ import org.apache.lucene.util.automaton.Transition;
  * @lucene.experimental
  */
 public class AutomatonTermsEnum extends FilteredTermsEnum {
-  // the object-oriented form of the DFA
-  private final Automaton automaton;
   // a tableized array-based form of the DFA
   private final ByteRunAutomaton runAutomaton;
   // common suffix of the automaton
@@ -69,44 +69,30 @@ public class AutomatonTermsEnum extends FilteredTermsEnum {
   private boolean linear = false;
   private final BytesRef linearUpperBound = new BytesRef(10);
   private final Comparator<BytesRef> termComp;
+  // if non-null, terms are enumerated after this one
+  private final BytesRef startTerm;
 
   /**
-   * Expert ctor:
-   * Construct an enumerator based upon an automaton, enumerating the specified
-   * field, working on a supplied reader.
-   * <p>
-   * @lucene.internal Use the public ctor instead. 
+   * Construct an enumerator of the terms of <code>tenum</code>
+   * accepted by a compiled automaton.
    * <p>
-   * @param runAutomaton pre-compiled ByteRunAutomaton
-   * @param finite true if the automaton accepts a finite language
+   * This is the fallback for {@link
+   * org.apache.lucene.index.Terms#intersect}, use that
+   * instead, as codecs may implement it natively.
+   *
+   * @param tenum the terms to enumerate, if {@code null} this is the null iterator.
+   * @param compiled the automaton to match terms against
+   * @param startTerm if non-null, only terms after it are
+   *        enumerated
    */
-  AutomatonTermsEnum(ByteRunAutomaton runAutomaton,
-                     String field, IndexReader reader,
-                     boolean finite, BytesRef commonSuffixRef)
+  public AutomatonTermsEnum(TermsEnum tenum, CompiledAutomaton compiled, BytesRef startTerm)
       throws IOException {
-    super(reader, field);
-    this.automaton = runAutomaton.getAutomaton();
-    this.finite = finite;
-
-    this.runAutomaton = runAutomaton;
-    if (finite) {
-      // don't use suffix w/ finite DFAs
-      this.commonSuffixRef = null;
-    } else if (commonSuffixRef == null) {
-      // compute now
-      this.commonSuffixRef = SpecialOperations.getCommonSuffixBytesRef(automaton);
-    } else {
-      // precomputed
-      this.commonSuffixRef = commonSuffixRef;
-    }
-
-    // build a cache of sorted transitions for every state
-    allTransitions = new Transition[runAutomaton.getSize()][];
-    for (State state : this.automaton.getNumberedStates()) {
-      state.sortTransitions(Transition.CompareByMinMaxThenDest);
-      state.trimTransitionsArray();
-      allTransitions[state.getNumber()] = state.transitionsArray;
-    }
+    super(tenum);
+    this.finite = compiled.finite;
+    this.runAutomaton = compiled.runAutomaton;
+    this.commonSuffixRef = compiled.commonSuffixRef;
+    this.allTransitions = compiled.getSortedTransitions();
+    this.startTerm = startTerm;
     // used for path tracking, where each bit is a numbered state.
     visited = new long[runAutomaton.getSize()];
 
@@ -122,7 +108,12 @@ public class AutomatonTermsEnum extends FilteredTermsEnum {
    */
   public AutomatonTermsEnum(Automaton automaton, String field, IndexReader reader)
     throws IOException {
-    this(new ByteRunAutomaton(automaton), field, reader, SpecialOperations.isFinite(automaton), null);
+    this(termsEnum(reader, field), new CompiledAutomaton(automaton), null);
+  }
+
+  private static TermsEnum termsEnum(IndexReader reader, String field) throws IOException {
+    final Terms terms = MultiFields.getTerms(reader, field);
+    return terms == null ? null : terms.iterator();
   }
  
   /**
@@ -144,7 +135,10 @@ public class AutomatonTermsEnum extends FilteredTermsEnum {
   }
   
   @Override
-  protected BytesRef nextSeekTerm(final BytesRef term) throws IOException {
+  protected BytesRef nextSeekTerm(BytesRef term) throws IOException {
+    if (term == null) {
+      term = startTerm;
+    }
     if (term == null) {
       seekBytesRef.copy("");
       // return the empty term, as its valid
@@ -18,7 +18,9 @@ package org.apache.lucene.search;
  */
 
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.ToStringUtils;
 import org.apache.lucene.search.BooleanClause.Occur;
 
@@ -134,6 +136,32 @@ public class BooleanQuery extends Query implements Iterable<BooleanClause> {
     return minNrShouldMatch;
   }
 
+  private boolean maxScorePruning;
+
+  /**
+   * Expert: if true, and all clauses are optional, this
+   * query is scored in order by a scorer that can skip
+   * documents which cannot make the top hits, using an upper
+   * bound of each clause's score (see {@link
+   * Scorer#maxScore}).  Documents are only skipped when the
+   * collector asks for it, see {@link
+   * TopScoreDocCollector#create(int, boolean, boolean)};
+   * otherwise the same documents and scores are returned.
+   * This pays off for long disjunctions of {@link TermQuery}s
+   * and {@link DisjunctionMaxQuery}s, where the top hits
+   * match the rarer terms.
+   *
+   * @lucene.experimental
+   */
+  public void setMaxScorePruning(boolean maxScorePruning) {
+    this.maxScorePruning = maxScorePruning;
+  }
+
+  /** @see #setMaxScorePruning */
+  public boolean getMaxScorePruning() {
+    return maxScorePruning;
+  }
+
   /** Adds a clause to a boolean query.
    *
    * @throws TooManyClauses if the new number of clauses exceeds the maximum clause number
@@ -298,13 +326,22 @@ public class BooleanQuery extends Query implements Iterable<BooleanClause> {
     @Override
     public Scorer scorer(IndexReader reader, boolean scoreDocsInOrder, boolean topScorer)
         throws IOException {
+      return scorer(reader, MultiFields.getDeletedDocs(reader), scoreDocsInOrder, topScorer);
+    }
+
+    /** Passes <code>skipDocs</code> on to the clauses, also
+     * to the prohibited ones: they need not exclude
+     * documents that no other clause matches. */
+    @Override
+    public Scorer scorer(IndexReader reader, Bits skipDocs, boolean scoreDocsInOrder, boolean topScorer)
+        throws IOException {
       List<Scorer> required = new ArrayList<Scorer>();
       List<Scorer> prohibited = new ArrayList<Scorer>();
       List<Scorer> optional = new ArrayList<Scorer>();
       Iterator<BooleanClause> cIter = clauses.iterator();
       for (Weight w  : weights) {
         BooleanClause c =  cIter.next();
-        Scorer subScorer = w.scorer(reader, true, false);
+        Scorer subScorer = w.scorer(reader, skipDocs, true, false);
         if (subScorer == null) {
           if (c.isRequired()) {
             return null;
@@ -318,6 +355,15 @@ public class BooleanQuery extends Query implements Iterable<BooleanClause> {
         }
       }
       
+      if (maxScorePruning && required.size() == 0 && prohibited.size() == 0
+          && minNrShouldMatch <= 1 && optional.size() > 1) {
+        final float[] coordFactors = new float[optional.size() + 1];
+        for (int i = 0; i < coordFactors.length; i++) {
+          coordFactors[i] = similarity.coord(i, maxCoord);
+        }
+        return new MaxScoreDisjunctionScorer(this, similarity, optional, coordFactors);
+      }
+
       // Check if we can return a BooleanScorer
       if (!scoreDocsInOrder && topScorer && required.size() == 0 && prohibited.size() < 32) {
         return new BooleanScorer(this, similarity, minNrShouldMatch, optional, prohibited, maxCoord);
@@ -351,6 +397,10 @@ public class BooleanQuery extends Query implements Iterable<BooleanClause> {
       if (numProhibited > 32) { // cannot use BS
         return false;
       }
+
+      if (maxScorePruning && numProhibited == 0) {
+        return false; // MaxScoreDisjunctionScorer will be used by scorer()
+      }
       
       // scorer() will return an out-of-order scorer if requested.
       return true;
@@ -471,14 +521,15 @@ public class BooleanQuery extends Query implements Iterable<BooleanClause> {
     return (this.getBoost() == other.getBoost())
         && this.clauses.equals(other.clauses)
         && this.getMinimumNumberShouldMatch() == other.getMinimumNumberShouldMatch()
-        && this.disableCoord == other.disableCoord;
+        && this.disableCoord == other.disableCoord
+        && this.maxScorePruning == other.maxScorePruning;
   }
 
   /** Returns a hash code value for this object.*/
   @Override
   public int hashCode() {
     return Float.floatToIntBits(getBoost()) ^ clauses.hashCode()
-      + getMinimumNumberShouldMatch() + (disableCoord ? 17:0);
+      + getMinimumNumberShouldMatch() + (disableCoord ? 17:0) + (maxScorePruning ? 31:0);
   }
   
 }
@@ -140,6 +140,11 @@ class BooleanScorer2 extends Scorer {
     public int advance(int target) throws IOException {
       return scorer.advance(target);
     }
+
+    @Override
+    public long cost() throws IOException {
+      return scorer.cost();
+    }
   }
 
   private Scorer countingDisjunctionSumScorer(final List<Scorer> scorers,
@@ -313,6 +318,11 @@ class BooleanScorer2 extends Scorer {
     return doc = countingSumScorer.advance(target);
   }
 
+  @Override
+  public long cost() throws IOException {
+    return countingSumScorer.cost();
+  }
+
   @Override
   protected void visitSubScorers(Query parent, Occur relationship, ScorerVisitor<Query, Query, Scorer> visitor) {
     super.visitSubScorers(parent, relationship, visitor);
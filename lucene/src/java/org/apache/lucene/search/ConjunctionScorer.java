@@ -19,13 +19,16 @@ package org.apache.lucene.search;
 
 import java.io.IOException;
 import java.util.Collection;
-import java.util.Arrays;
-import java.util.Comparator;
 
-/** Scorer for conjunctions, sets of queries, all of which are required. */
+/** Scorer for conjunctions, sets of queries, all of which are required.
+ * The sub scorers are ordered by increasing {@link #cost()}: the
+ * cheapest one leads the iteration, and the others are only advanced to
+ * its documents. */
 class ConjunctionScorer extends Scorer {
   
   private final Scorer[] scorers;
+  private final Scorer lead;
+  private final long cost;
   private final float coord;
   private int lastDoc = -1;
 
@@ -37,77 +40,58 @@ class ConjunctionScorer extends Scorer {
     super(similarity);
     this.scorers = scorers;
     coord = similarity.coord(scorers.length, scorers.length);
-    
+
+    final long[] costs = new long[scorers.length];
     for (int i = 0; i < scorers.length; i++) {
-      if (scorers[i].nextDoc() == NO_MORE_DOCS) {
-        // If even one of the sub-scorers does not have any documents, this
-        // scorer should not attempt to do any more work.
-        lastDoc = NO_MORE_DOCS;
-        return;
-      }
+      costs[i] = scorers[i].cost();
     }
-
-    // Sort the array the first time...
-    // We don't need to sort the array in any future calls because we know
-    // it will already start off sorted (all scorers on same doc).
-    
-    // note that this comparator is not consistent with equals!
-    Arrays.sort(scorers, new Comparator<Scorer>() {         // sort the array
-      public int compare(Scorer o1, Scorer o2) {
-        return o1.docID() - o2.docID();
+    // Stable insertion sort by increasing cost, there are few
+    // scorers. Scorers of unknown cost keep their order, last.
+    for (int i = 1; i < scorers.length; i++) {
+      final Scorer scorer = scorers[i];
+      final long cost = costs[i];
+      int j = i;
+      while (j > 0 && costs[j-1] > cost) {
+        scorers[j] = scorers[j-1];
+        costs[j] = costs[j-1];
+        j--;
       }
-    });
-
-    // NOTE: doNext() must be called before the re-sorting of the array later on.
-    // The reason is this: assume there are 5 scorers, whose first docs are 1,
-    // 2, 3, 5, 5 respectively. Sorting (above) leaves the array as is. Calling
-    // doNext() here advances all the first scorers to 5 (or a larger doc ID
-    // they all agree on). 
-    // However, if we re-sort before doNext() is called, the order will be 5, 3,
-    // 2, 1, 5 and then doNext() will stop immediately, since the first scorer's
-    // docs equals the last one. So the invariant that after calling doNext() 
-    // all scorers are on the same doc ID is broken.
-    if (doNext() == NO_MORE_DOCS) {
-      // The scorers did not agree on any document.
-      lastDoc = NO_MORE_DOCS;
-      return;
-    }
-
-    // If first-time skip distance is any predictor of
-    // scorer sparseness, then we should always try to skip first on
-    // those scorers.
-    // Keep last scorer in it's last place (it will be the first
-    // to be skipped on), but reverse all of the others so that
-    // they will be skipped on in order of original high skip.
-    int end = scorers.length - 1;
-    int max = end >> 1;
-    for (int i = 0; i < max; i++) {
-      Scorer tmp = scorers[i];
-      int idx = end - i - 1;
-      scorers[i] = scorers[idx];
-      scorers[idx] = tmp;
+      scorers[j] = scorer;
+      costs[j] = cost;
     }
+    lead = scorers[0];
+    cost = costs[0];
   }
 
-  private int doNext() throws IOException {
-    int first = 0;
-    int doc = scorers[scorers.length - 1].docID();
-    Scorer firstScorer;
-    while ((firstScorer = scorers[first]).docID() < doc) {
-      doc = firstScorer.advance(doc);
-      first = first == scorers.length - 1 ? 0 : first + 1;
+  /** Returns the first doc at or after the lead's current doc
+   * that all scorers match. */
+  private int doNext(int doc) throws IOException {
+    advanceLead:
+    while (doc != NO_MORE_DOCS) {
+      for (int i = 1; i < scorers.length; i++) {
+        final Scorer scorer = scorers[i];
+        int other = scorer.docID();
+        if (other < doc) {
+          other = scorer.advance(doc);
+        }
+        if (other > doc) {
+          // doc is not a match, skip the lead to the next
+          // candidate
+          doc = lead.advance(other);
+          continue advanceLead;
+        }
+      }
+      return doc;
     }
-    return doc;
+    return NO_MORE_DOCS;
   }
   
   @Override
   public int advance(int target) throws IOException {
     if (lastDoc == NO_MORE_DOCS) {
       return lastDoc;
-    } else if (scorers[(scorers.length - 1)].docID() < target) {
-      scorers[(scorers.length - 1)].advance(target);
     }
-    return lastDoc = doNext();
+    return lastDoc = doNext(lead.advance(target));
   }
 
   @Override
@@ -119,11 +103,8 @@ class ConjunctionScorer extends Scorer {
   public int nextDoc() throws IOException {
     if (lastDoc == NO_MORE_DOCS) {
       return lastDoc;
-    } else if (lastDoc == -1) {
-      return lastDoc = scorers[scorers.length - 1].docID();
     }
-    scorers[(scorers.length - 1)].nextDoc();
-    return lastDoc = doNext();
+    return lastDoc = doNext(lead.nextDoc());
   }
   
   @Override
@@ -134,4 +115,11 @@ class ConjunctionScorer extends Scorer {
     }
     return sum * coord;
   }
+
+  /** Returns the cost of the cheapest scorer, since this can
+   * not match more documents. */
+  @Override
+  public long cost() {
+    return cost;
+  }
 }
@@ -157,6 +157,11 @@ public class ConstantScoreQuery extends Query {
     public int advance(int target) throws IOException {
       return docIdSetIterator.advance(target);
     }
+
+    @Override
+    public long cost() throws IOException {
+      return docIdSetIterator.cost();
+    }
   }
 
   @Override
@@ -32,6 +32,8 @@ class DisjunctionMaxScorer extends Scorer {
   /* Multiplier applied to non-maximum-scoring subqueries for a document as they are summed into the result. */
   private final float tieBreakerMultiplier;
   private int doc = -1;
+  private float maxScore = Float.NaN;
+  private long cost = -1;
 
   /**
    * Creates a new instance of DisjunctionMaxScorer
@@ -108,6 +110,48 @@ class DisjunctionMaxScorer extends Scorer {
     }
   }
 
+  /** Bounds the score with the max scores of the
+   *  remaining subscorers, if the tie breaker multiplier is
+   *  between 0 and 1. */
+  @Override
+  public float maxScore() throws IOException {
+    if (Float.isNaN(maxScore)) {
+      if (numScorers == 0) {
+        maxScore = 0.0f;
+      } else if (tieBreakerMultiplier < 0.0f || tieBreakerMultiplier > 1.0f) {
+        maxScore = Float.POSITIVE_INFINITY;
+      } else {
+        double max = Double.NEGATIVE_INFINITY;
+        double sum = 0.0;
+        for (int i = 0; i < numScorers; i++) {
+          final float sub = subScorers[i].maxScore();
+          max = Math.max(max, sub);
+          // a subscorer that does not match contributes 0
+          sum += Math.max(0.0f, sub);
+        }
+        maxScore = Double.isInfinite(sum) ? Float.POSITIVE_INFINITY :
+          MaxScoreDisjunctionScorer.roundUp(max + (sum - max) * tieBreakerMultiplier, numScorers);
+      }
+    }
+    return maxScore;
+  }
+
+  /** Returns the sum of the costs of the remaining
+   *  subscorers, or {@link Long#MAX_VALUE} if any is
+   *  unknown. */
+  @Override
+  public long cost() throws IOException {
+    if (cost == -1) {
+      long sum = 0;
+      for (int i = 0; i < numScorers && sum != Long.MAX_VALUE; i++) {
+        final long subCost = subScorers[i].cost();
+        sum = subCost == Long.MAX_VALUE ? subCost : sum + subCost;
+      }
+      cost = sum;
+    }
+    return cost;
+  }
+
   @Override
   public int advance(int target) throws IOException {
     if (numScorers == 0) return doc = NO_MORE_DOCS;
@@ -56,6 +56,8 @@ class DisjunctionSumScorer extends Scorer {
   protected int nrMatchers = -1;
 
   private float currentScore = Float.NaN;
+
+  private long cost = -1;
   
   /** Construct a <code>DisjunctionScorer</code>.
    * @param subScorers A collection of at least two subscorers.
@@ -205,6 +207,21 @@ class DisjunctionSumScorer extends Scorer {
     return nrMatchers;
   }
 
+  /** Returns the sum of the costs of the subscorers, or
+   * {@link Long#MAX_VALUE} if any is unknown. */
+  @Override
+  public long cost() throws IOException {
+    if (cost == -1) {
+      long sum = 0;
+      for (int i = 0; i < nrScorers && sum != Long.MAX_VALUE; i++) {
+        final long subCost = subScorers.get(i).cost();
+        sum = subCost == Long.MAX_VALUE ? subCost : sum + subCost;
+      }
+      cost = sum;
+    }
+    return cost;
+  }
+
   /**
    * Advances to the first match beyond the current whose document number is
    * greater than or equal to a given target. <br>
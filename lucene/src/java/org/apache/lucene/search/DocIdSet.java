@@ -19,6 +19,8 @@ package org.apache.lucene.search;
 
 import java.io.IOException;
 
+import org.apache.lucene.util.Bits;
+
 /**
  * A DocIdSet contains a set of doc ids. Implementing classes must
  * only implement {@link #iterator} to provide access to the set. 
@@ -35,6 +37,8 @@ public abstract class DocIdSet {
       public int docID() { return NO_MORE_DOCS; }
       @Override
       public int nextDoc() throws IOException { return NO_MORE_DOCS; }
+      @Override
+      public long cost() { return 0; }
     };
     
     @Override
@@ -54,6 +58,21 @@ public abstract class DocIdSet {
    * are no docs that match. */
   public abstract DocIdSetIterator iterator() throws IOException;
 
+  /** Optionally provides random access to the set: a
+   * {@link Bits} whose {@link Bits#get} returns true for the
+   * documents in the set.  This is used to apply dense
+   * filters like deleted documents while the query's
+   * postings are iterated, see {@link
+   * Weight#scorer(org.apache.lucene.index.IndexReader,Bits,boolean,boolean)}.  Only
+   * return non-null if random access is as fast as the
+   * iterator, eg for a bit set.  The default returns
+   * <code>null</code>.
+   *
+   * @lucene.experimental */
+  public Bits bits() throws IOException {
+    return null;
+  }
+
   /**
    * This method is a hint for {@link CachingWrapperFilter}, if this <code>DocIdSet</code>
    * should be cached without copying it into a BitSet. The default is to return
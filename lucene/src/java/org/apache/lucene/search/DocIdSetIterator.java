@@ -94,4 +94,20 @@ public abstract class DocIdSetIterator {
    */
   public abstract int advance(int target) throws IOException;
 
+  /**
+   * Returns an estimate of the number of documents this iterator will return,
+   * such as the docFreq of a term. Conjunctions use it to lead with their
+   * rarest iterator, and only {@link #advance(int)} the others to its
+   * documents. The estimate need not be exact, but it should be cheap to
+   * compute. The default, {@link Long#MAX_VALUE}, means the cost is unknown.
+   * <p>
+   * <b>NOTE:</b> this may be called before {@link #nextDoc()} or
+   * {@link #advance(int)}.
+   * 
+   * @lucene.experimental
+   */
+  public long cost() throws IOException {
+    return Long.MAX_VALUE;
+  }
+
 }
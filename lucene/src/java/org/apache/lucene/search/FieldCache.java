@@ -448,6 +448,92 @@ public interface FieldCache {
   public double[] getDoubles(IndexReader reader, String field, DoubleParser parser)
           throws IOException;
 
+  /** Returned by {@link #getPackedInts} and {@link
+   *  #getPackedLongs}: the numeric value of each document,
+   *  packed with only as many bits per document as needed.
+   *  Values are either stored as their offset from the
+   *  minimum value, or, if the field has few distinct values
+   *  spread over a wide range, as an index into a table of
+   *  the distinct values; whichever uses less RAM.
+   *
+   *  @lucene.experimental */
+  public abstract static class PackedValues {
+    /** Returns the value of this document, or 0 if the
+     *  document was deleted or did not have this field. */
+    public abstract long get(int docID);
+
+    /** Returns true if this doc has this field and is not
+     *  deleted. */
+    public abstract boolean exists(int docID);
+
+    /** Returns the smallest value of any document, or 0 if
+     *  no document has a value. */
+    public abstract long getMinValue();
+
+    /** Returns the largest value of any document, or 0 if
+     *  no document has a value. */
+    public abstract long getMaxValue();
+
+    /** Number of documents */
+    public abstract int size();
+
+    /** Returns the approximate RAM used by these values, in
+     *  bytes. */
+    public abstract long ramBytesUsed();
+  }
+
+  /** Checks the internal cache for an appropriate entry, and if none is
+   * found, reads the terms in <code>field</code> as integers and returns
+   * their values as {@link PackedValues}, which typically needs much less
+   * RAM than the <code>int[]</code> returned by {@link
+   * #getInts(IndexReader,String)}.
+   * @param reader  Used to get field values.
+   * @param field   Which field contains the integers.
+   * @return The values in the given field for each document.
+   * @throws IOException  If any error occurs.
+   * @lucene.experimental
+   */
+  public PackedValues getPackedInts(IndexReader reader, String field)
+  throws IOException;
+
+  /** Like {@link #getPackedInts(IndexReader,String)}, but
+   * with a custom parser.
+   * @param reader  Used to get field values.
+   * @param field   Which field contains the integers.
+   * @param parser  Computes integer for string values.
+   * @return The values in the given field for each document.
+   * @throws IOException  If any error occurs.
+   * @lucene.experimental
+   */
+  public PackedValues getPackedInts(IndexReader reader, String field, IntParser parser)
+  throws IOException;
+
+  /** Checks the internal cache for an appropriate entry, and if none is
+   * found, reads the terms in <code>field</code> as longs and returns
+   * their values as {@link PackedValues}, which typically needs much less
+   * RAM than the <code>long[]</code> returned by {@link
+   * #getLongs(IndexReader,String)}.
+   * @param reader  Used to get field values.
+   * @param field   Which field contains the longs.
+   * @return The values in the given field for each document.
+   * @throws IOException  If any error occurs.
+   * @lucene.experimental
+   */
+  public PackedValues getPackedLongs(IndexReader reader, String field)
+  throws IOException;
+
+  /** Like {@link #getPackedLongs(IndexReader,String)}, but
+   * with a custom parser.
+   * @param reader  Used to get field values.
+   * @param field   Which field contains the longs.
+   * @param parser  Computes long for string values.
+   * @return The values in the given field for each document.
+   * @throws IOException  If any error occurs.
+   * @lucene.experimental
+   */
+  public PackedValues getPackedLongs(IndexReader reader, String field, LongParser parser)
+  throws IOException;
+
   /** Returned by {@link #getTerms} */
   public abstract static class DocTerms {
     /** The BytesRef argument must not be null; the method
@@ -55,6 +55,8 @@ class FieldCacheImpl implements FieldCache {
     caches.put(Double.TYPE, new DoubleCache(this));
     caches.put(DocTermsIndex.class, new DocTermsIndexCache(this));
     caches.put(DocTerms.class, new DocTermsCache(this));
+    caches.put(PackedIntsCache.class, new PackedIntsCache(this));
+    caches.put(PackedLongsCache.class, new PackedLongsCache(this));
   }
 
   public synchronized void purgeAllCaches() {
@@ -634,6 +636,221 @@ class FieldCacheImpl implements FieldCache {
     }
   }
 
+  // inherit javadocs
+  public PackedValues getPackedInts(IndexReader reader, String field) throws IOException {
+    return getPackedInts(reader, field, null);
+  }
+
+  // inherit javadocs
+  public PackedValues getPackedInts(IndexReader reader, String field, IntParser parser)
+      throws IOException {
+    return (PackedValues) caches.get(PackedIntsCache.class).get(reader, new Entry(field, parser));
+  }
+
+  // inherit javadocs
+  public PackedValues getPackedLongs(IndexReader reader, String field) throws IOException {
+    return getPackedLongs(reader, field, null);
+  }
+
+  // inherit javadocs
+  public PackedValues getPackedLongs(IndexReader reader, String field, LongParser parser)
+      throws IOException {
+    return (PackedValues) caches.get(PackedLongsCache.class).get(reader, new Entry(field, parser));
+  }
+
+  static final class PackedIntsCache extends PackedValuesCache {
+    PackedIntsCache(FieldCache wrapper) {
+      super(wrapper);
+    }
+
+    @Override
+    protected Object createValue(IndexReader reader, Entry entry)
+        throws IOException {
+      final IntParser parser = (IntParser) entry.custom;
+      if (parser == null) {
+        try {
+          return wrapper.getPackedInts(reader, entry.field, DEFAULT_INT_PARSER);
+        } catch (NumberFormatException ne) {
+          return wrapper.getPackedInts(reader, entry.field, NUMERIC_UTILS_INT_PARSER);
+        }
+      }
+      return uninvert(reader, entry.field, parser);
+    }
+
+    @Override
+    protected long parse(Object parser, BytesRef term) {
+      return ((IntParser) parser).parseInt(term);
+    }
+  }
+
+  static final class PackedLongsCache extends PackedValuesCache {
+    PackedLongsCache(FieldCache wrapper) {
+      super(wrapper);
+    }
+
+    @Override
+    protected Object createValue(IndexReader reader, Entry entry)
+        throws IOException {
+      final LongParser parser = (LongParser) entry.custom;
+      if (parser == null) {
+        try {
+          return wrapper.getPackedLongs(reader, entry.field, DEFAULT_LONG_PARSER);
+        } catch (NumberFormatException ne) {
+          return wrapper.getPackedLongs(reader, entry.field, NUMERIC_UTILS_LONG_PARSER);
+        }
+      }
+      return uninvert(reader, entry.field, parser);
+    }
+
+    @Override
+    protected long parse(Object parser, BytesRef term) {
+      return ((LongParser) parser).parseLong(term);
+    }
+  }
+
+  /** Un-inverts a numeric field into {@link PackedValues}:
+   *  while walking the terms, each document records the
+   *  index of its term's value (0 for no value) in a
+   *  {@link GrowableWriter}; at the end, the cheaper of
+   *  that table and the values' offsets from the minimum
+   *  is kept. */
+  abstract static class PackedValuesCache extends Cache {
+    PackedValuesCache(FieldCache wrapper) {
+      super(wrapper);
+    }
+
+    protected abstract long parse(Object parser, BytesRef term);
+
+    protected PackedValues uninvert(IndexReader reader, String field, Object parser)
+        throws IOException {
+      final int maxDoc = reader.maxDoc();
+      final GrowableWriter docToOrd = new GrowableWriter(1, maxDoc, false);
+      long[] values = new long[16];
+      int numValues = 0;
+      long minValue = Long.MAX_VALUE;
+      long maxValue = Long.MIN_VALUE;
+
+      Terms terms = MultiFields.getTerms(reader, field);
+      if (terms != null) {
+        final TermsEnum termsEnum = terms.iterator();
+        final Bits delDocs = MultiFields.getDeletedDocs(reader);
+        DocsEnum docs = null;
+        try {
+          while(true) {
+            final BytesRef term = termsEnum.next();
+            if (term == null) {
+              break;
+            }
+            final long termval = parse(parser, term);
+            if (numValues == values.length) {
+              values = ArrayUtil.grow(values);
+            }
+            values[numValues++] = termval;
+            minValue = Math.min(minValue, termval);
+            maxValue = Math.max(maxValue, termval);
+
+            docs = termsEnum.docs(delDocs, docs);
+            while (true) {
+              final int docID = docs.nextDoc();
+              if (docID == DocsEnum.NO_MORE_DOCS) {
+                break;
+              }
+              docToOrd.set(docID, numValues);
+            }
+          }
+        } catch (StopFillCacheException stop) {
+        }
+      }
+
+      if (numValues == 0) {
+        return new PackedValuesImpl(docToOrd.getMutable(), null, 0, 0, 0);
+      }
+
+      // Offsets from the minimum are stored +1, so that 0
+      // means no value; the range may not fit in 63 bits
+      final long range = maxValue - minValue;
+      final long tableBits = (long) maxDoc * PackedInts.bitsRequired(numValues) + 64L * numValues;
+      if (range < 0 || range == Long.MAX_VALUE || tableBits < (long) maxDoc * PackedInts.bitsRequired(range + 1)) {
+        final long[] table = new long[numValues];
+        System.arraycopy(values, 0, table, 0, numValues);
+        return new PackedValuesImpl(docToOrd.getMutable(), table, 0, minValue, maxValue);
+      } else {
+        final PackedInts.Mutable offsets = PackedInts.getMutable(maxDoc, PackedInts.bitsRequired(range + 1));
+        for (int doc = 0; doc < maxDoc; doc++) {
+          final int ord = (int) docToOrd.get(doc);
+          if (ord != 0) {
+            offsets.set(doc, values[ord-1] - minValue + 1);
+          }
+        }
+        return new PackedValuesImpl(offsets, null, minValue - 1, minValue, maxValue);
+      }
+    }
+  }
+
+  static final class PackedValuesImpl extends PackedValues {
+    // Per document, either the index+1 into the table, or
+    // the value minus base; 0 is no value
+    private final PackedInts.Reader docValues;
+    private final long[] table;
+    private final long base;
+    private final long minValue;
+    private final long maxValue;
+
+    PackedValuesImpl(PackedInts.Reader docValues, long[] table, long base, long minValue, long maxValue) {
+      this.docValues = docValues;
+      this.table = table;
+      this.base = base;
+      this.minValue = minValue;
+      this.maxValue = maxValue;
+    }
+
+    @Override
+    public long get(int docID) {
+      final long v = docValues.get(docID);
+      if (v == 0) {
+        return 0;
+      } else if (table != null) {
+        return table[(int) v - 1];
+      } else {
+        return base + v;
+      }
+    }
+
+    @Override
+    public boolean exists(int docID) {
+      return docValues.get(docID) != 0;
+    }
+
+    @Override
+    public long getMinValue() {
+      return minValue;
+    }
+
+    @Override
+    public long getMaxValue() {
+      return maxValue;
+    }
+
+    @Override
+    public int size() {
+      return docValues.size();
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      long bytes = (long) docValues.size() * docValues.getBitsPerValue() / 8;
+      if (table != null) {
+        bytes += 8L * table.length;
+      }
+      return bytes;
+    }
+
+    @Override
+    public String toString() {
+      return "PackedValues(size=" + size() + " bitsPerValue=" + docValues.getBitsPerValue() + (table == null ? "" : " tableSize=" + table.length) + ")";
+    }
+  }
+
   public static class DocTermsIndexImpl extends DocTermsIndex {
     private final PagedBytes.Reader bytes;
     private final PackedInts.Reader termOrdToBytesOffset;
@@ -22,6 +22,9 @@ import java.text.Collator;
 import java.util.Locale;
 
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.values.IndexDocValues;
+import org.apache.lucene.index.values.IndexDocValues.Source;
+import org.apache.lucene.index.values.IndexDocValues.SortedSource;
 import org.apache.lucene.search.FieldCache.DoubleParser;
 import org.apache.lucene.search.FieldCache.LongParser;
 import org.apache.lucene.search.FieldCache.ByteParser;
@@ -517,6 +520,79 @@ public abstract class FieldComparator {
     }
   }
 
+  /** Parses field's values as int or long (using {@link
+   *  FieldCache#getPackedInts} or {@link
+   *  FieldCache#getPackedLongs}) and sorts by ascending
+   *  value; documents without a value sort as 0. */
+  public static final class PackedValuesComparator extends FieldComparator {
+    private final long[] values;
+    private FieldCache.PackedValues currentReaderValues;
+    private final String field;
+    private final FieldCache.Parser parser;
+    private final boolean ints;
+    private long bottom;
+
+    PackedValuesComparator(int numHits, String field, FieldCache.Parser parser, boolean ints) {
+      values = new long[numHits];
+      this.field = field;
+      this.parser = parser;
+      this.ints = ints;
+    }
+
+    @Override
+    public int compare(int slot1, int slot2) {
+      final long v1 = values[slot1];
+      final long v2 = values[slot2];
+      if (v1 > v2) {
+        return 1;
+      } else if (v1 < v2) {
+        return -1;
+      } else {
+        return 0;
+      }
+    }
+
+    @Override
+    public int compareBottom(int doc) {
+      final long v2 = currentReaderValues.get(doc);
+      if (bottom > v2) {
+        return 1;
+      } else if (bottom < v2) {
+        return -1;
+      } else {
+        return 0;
+      }
+    }
+
+    @Override
+    public void copy(int slot, int doc) {
+      values[slot] = currentReaderValues.get(doc);
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+      if (ints) {
+        currentReaderValues = FieldCache.DEFAULT.getPackedInts(reader, field, (IntParser) parser);
+      } else {
+        currentReaderValues = FieldCache.DEFAULT.getPackedLongs(reader, field, (LongParser) parser);
+      }
+    }
+    
+    @Override
+    public void setBottom(final int bottom) {
+      this.bottom = values[bottom];
+    }
+
+    @Override
+    public Comparable<?> value(int slot) {
+      if (ints) {
+        return Integer.valueOf((int) values[slot]);
+      } else {
+        return Long.valueOf(values[slot]);
+      }
+    }
+  }
+
   /** Sorts by descending relevance.  NOTE: if you are
    *  sorting only by descending relevance and then
    *  secondarily by ascending docID, performance is faster
@@ -916,6 +992,162 @@ public abstract class FieldComparator {
     }
   }
 
+  /** Sorts by the long values of a field's {@link
+   *  IndexDocValues}; documents without a value, or
+   *  segments without values for the field, sort as 0.
+   *
+   *  @lucene.experimental */
+  public static final class IndexDocValuesLongComparator extends FieldComparator {
+    private final long[] values;
+    private Source currentReaderValues;
+    private final String field;
+    private long bottom;
+
+    IndexDocValuesLongComparator(int numHits, String field) {
+      values = new long[numHits];
+      this.field = field;
+    }
+
+    @Override
+    public int compare(int slot1, int slot2) {
+      final long v1 = values[slot1];
+      final long v2 = values[slot2];
+      if (v1 > v2) {
+        return 1;
+      } else if (v1 < v2) {
+        return -1;
+      } else {
+        return 0;
+      }
+    }
+
+    @Override
+    public int compareBottom(int doc) {
+      final long v2 = currentReaderValues == null ? 0 : currentReaderValues.getInt(doc);
+      if (bottom > v2) {
+        return 1;
+      } else if (bottom < v2) {
+        return -1;
+      } else {
+        return 0;
+      }
+    }
+
+    @Override
+    public void copy(int slot, int doc) {
+      values[slot] = currentReaderValues == null ? 0 : currentReaderValues.getInt(doc);
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+      final IndexDocValues docValues = reader.docValues(field);
+      currentReaderValues = docValues == null ? null : docValues.getSource();
+    }
+    
+    @Override
+    public void setBottom(final int bottom) {
+      this.bottom = values[bottom];
+    }
+
+    @Override
+    public Comparable<?> value(int slot) {
+      return Long.valueOf(values[slot]);
+    }
+  }
+
+  /** Sorts by the bytes values of a field's {@link
+   *  IndexDocValues}, in unsigned byte order; missing values
+   *  sort as the empty value.  When the segment's values
+   *  are {@link IndexDocValues.Type#BYTES_SORTED}, competitive
+   *  hits are checked against the bottom of the queue by ord,
+   *  without touching the bytes.
+   *
+   *  @lucene.experimental */
+  public static final class IndexDocValuesBytesComparator extends FieldComparator {
+
+    private final BytesRef[] values;
+    private final String field;
+    private Source source;
+    private SortedSource sortedSource;
+    private BytesRef bottom;
+    // Position of the bottom value among the current
+    // segment's ords: 2*ord+1 if present, else
+    // 2*insertionPoint, so it compares directly against
+    // 2*ord+1 of a document:
+    private int bottomKey;
+    private final BytesRef tempBR = new BytesRef();
+    private final BytesRef spare = new BytesRef();
+
+    IndexDocValuesBytesComparator(int numHits, String field) {
+      values = new BytesRef[numHits];
+      this.field = field;
+    }
+
+    @Override
+    public int compare(int slot1, int slot2) {
+      return values[slot1].compareTo(values[slot2]);
+    }
+
+    @Override
+    public int compareBottom(int doc) {
+      if (sortedSource != null) {
+        final int docKey = 2*sortedSource.ord(doc)+1;
+        if (bottomKey > docKey) {
+          return 1;
+        } else if (bottomKey < docKey) {
+          return -1;
+        } else {
+          return 0;
+        }
+      }
+      return bottom.compareTo(getBytes(doc, tempBR));
+    }
+
+    @Override
+    public void copy(int slot, int doc) {
+      if (values[slot] == null) {
+        values[slot] = new BytesRef();
+      }
+      values[slot].copy(getBytes(doc, tempBR));
+    }
+
+    private BytesRef getBytes(int doc, BytesRef ref) {
+      if (source == null) {
+        ref.length = 0;
+        return ref;
+      }
+      return source.getBytes(doc, ref);
+    }
+
+    @Override
+    public void setNextReader(IndexReader reader, int docBase) throws IOException {
+      final IndexDocValues docValues = reader.docValues(field);
+      source = docValues == null ? null : docValues.getSource();
+      sortedSource = source instanceof SortedSource ? (SortedSource) source : null;
+      if (bottom != null) {
+        convertBottom();
+      }
+    }
+
+    private void convertBottom() {
+      if (sortedSource != null) {
+        final int ord = sortedSource.getByValue(bottom, spare);
+        bottomKey = ord >= 0 ? 2*ord+1 : -2*(ord+1);
+      }
+    }
+    
+    @Override
+    public void setBottom(final int bottom) {
+      this.bottom = values[bottom];
+      convertBottom();
+    }
+
+    @Override
+    public Comparable<?> value(int slot) {
+      return values[slot];
+    }
+  }
+
   final protected static int binarySearch(BytesRef br, DocTermsIndex a, BytesRef key) {
     return binarySearch(br, a, key, 1, a.numOrd()-1);
   }
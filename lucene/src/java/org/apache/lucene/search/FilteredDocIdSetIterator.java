@@ -81,5 +81,12 @@ public abstract class FilteredDocIdSetIterator extends DocIdSetIterator {
     }
     return doc;
   }
+
+  /** Returns the cost of the underlying iterator, an upper
+   * bound of the number of documents that match. */
+  @Override
+  public long cost() throws IOException {
+    return _innerIter.cost();
+  }
   
 }
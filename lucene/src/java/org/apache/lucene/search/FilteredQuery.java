@@ -18,7 +18,9 @@ package org.apache.lucene.search;
  */
 
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.ToStringUtils;
 
 import java.io.IOException;
@@ -113,10 +115,6 @@ extends Query {
       @Override
       public Scorer scorer(IndexReader indexReader, boolean scoreDocsInOrder, boolean topScorer)
           throws IOException {
-        final Scorer scorer = weight.scorer(indexReader, true, false);
-        if (scorer == null) {
-          return null;
-        }
         DocIdSet docIdSet = filter.getDocIdSet(indexReader);
         if (docIdSet == null) {
           return null;
@@ -126,27 +124,73 @@ extends Query {
           return null;
         }
 
+        final Bits skipDocs = randomAccessSkipDocs(indexReader, docIdSet, docIdSetIterator);
+        if (skipDocs != null) {
+          // the query skips the docs the filter does not accept
+          final Scorer scorer = weight.scorer(indexReader, skipDocs, true, false);
+          if (scorer == null) {
+            return null;
+          }
+          return new Scorer(similarity, this) {
+            @Override
+            public int nextDoc() throws IOException { return scorer.nextDoc(); }
+
+            @Override
+            public int docID() { return scorer.docID(); }
+
+            @Override
+            public int advance(int target) throws IOException { return scorer.advance(target); }
+
+            @Override
+            public float score() throws IOException { return getBoost() * scorer.score(); }
+
+            @Override
+            public float maxScore() throws IOException { return boostedMaxScore(getBoost(), scorer); }
+
+            @Override
+            public void setMinCompetitiveScore(float minScore) throws IOException {
+              setBoostedMinCompetitiveScore(getBoost(), scorer, minScore);
+            }
+
+            @Override
+            public long cost() throws IOException { return scorer.cost(); }
+          };
+        }
+
+        final Scorer scorer = weight.scorer(indexReader, true, false);
+        if (scorer == null) {
+          return null;
+        }
+
+        // lead with whichever of the scorer and the filter matches
+        // fewer documents, and only advance the other one to them
+        final long scorerCost = scorer.cost();
+        final long filterCost = docIdSetIterator.cost();
+        final DocIdSetIterator lead = scorerLeads(scorerCost, filterCost) ? scorer : docIdSetIterator;
+        final DocIdSetIterator other = lead == scorer ? docIdSetIterator : scorer;
+        final long cost = Math.min(scorerCost, filterCost);
+
         return new Scorer(similarity, this) {
 
           private int doc = -1;
           
-          private int advanceToCommon(int scorerDoc, int disiDoc) throws IOException {
-            while (scorerDoc != disiDoc) {
-              if (scorerDoc < disiDoc) {
-                scorerDoc = scorer.advance(disiDoc);
-              } else {
-                disiDoc = docIdSetIterator.advance(scorerDoc);
+          private int advanceToCommon(int leadDoc) throws IOException {
+            while (leadDoc != NO_MORE_DOCS) {
+              int otherDoc = other.docID();
+              if (otherDoc < leadDoc) {
+                otherDoc = other.advance(leadDoc);
+              }
+              if (otherDoc == leadDoc) {
+                return leadDoc;
               }
+              leadDoc = lead.advance(otherDoc);
             }
-            return scorerDoc;
+            return NO_MORE_DOCS;
           }
 
           @Override
           public int nextDoc() throws IOException {
-            int scorerDoc, disiDoc;
-            return doc = (disiDoc = docIdSetIterator.nextDoc()) != NO_MORE_DOCS
-                && (scorerDoc = scorer.nextDoc()) != NO_MORE_DOCS
-                && advanceToCommon(scorerDoc, disiDoc) != NO_MORE_DOCS ? scorer.docID() : NO_MORE_DOCS;
+            return doc = advanceToCommon(lead.nextDoc());
           }
           
           @Override
@@ -154,19 +198,112 @@ extends Query {
           
           @Override
           public int advance(int target) throws IOException {
-            int disiDoc, scorerDoc;
-            return doc = (disiDoc = docIdSetIterator.advance(target)) != NO_MORE_DOCS
-                && (scorerDoc = scorer.advance(disiDoc)) != NO_MORE_DOCS 
-                && advanceToCommon(scorerDoc, disiDoc) != NO_MORE_DOCS ? scorer.docID() : NO_MORE_DOCS;
+            return doc = advanceToCommon(lead.advance(target));
           }
 
           @Override
           public float score() throws IOException { return getBoost() * scorer.score(); }
+
+          @Override
+          public float maxScore() throws IOException { return boostedMaxScore(getBoost(), scorer); }
+
+          @Override
+          public void setMinCompetitiveScore(float minScore) throws IOException {
+            setBoostedMinCompetitiveScore(getBoost(), scorer, minScore);
+          }
+
+          @Override
+          public long cost() { return cost; }
         };
       }
     };
   }
 
+  /** Returns true if a filtered search should lead with the
+   * scorer rather than with the filter: only if both costs are
+   * known and the scorer's is lower, so that filters of unknown
+   * cost keep leading. */
+  static boolean scorerLeads(long scorerCost, long filterCost) {
+    return scorerCost != Long.MAX_VALUE && filterCost != Long.MAX_VALUE
+        && scorerCost < filterCost;
+  }
+
+  /** Returns the max score of <code>scorer</code> once its
+   * scores are multiplied by <code>boost</code>, rounded up
+   * like the product. */
+  static float boostedMaxScore(float boost, Scorer scorer) throws IOException {
+    if (boost < 0.0f) {
+      // the lowest score becomes the highest
+      return Float.POSITIVE_INFINITY;
+    }
+    final float maxScore = scorer.maxScore();
+    if (maxScore == Float.POSITIVE_INFINITY) {
+      return maxScore;
+    }
+    return MaxScoreDisjunctionScorer.roundUp((double) boost * maxScore, 1);
+  }
+
+  /** Passes the min competitive score of the products of
+   * <code>scorer</code>'s scores by <code>boost</code> to
+   * <code>scorer</code>, rounded down so that no
+   * competitive document is skipped. */
+  static void setBoostedMinCompetitiveScore(float boost, Scorer scorer, float minScore) throws IOException {
+    if (boost > 0.0f && !Float.isInfinite(minScore) && !Float.isNaN(minScore)) {
+      final double min = minScore / (double) boost;
+      // each float operation has a relative error of at
+      // most 2^-24 < 1e-7
+      scorer.setMinCompetitiveScore((float) (min - 3e-7 * Math.abs(min)));
+    }
+  }
+
+  /** A filter with random access that matches at least one
+   * in <code>RANDOM_ACCESS_MIN_DENSITY</code> documents of a
+   * segment is applied by skipping the documents it does not
+   * accept while the query's postings are iterated, like
+   * deleted documents.  Sparser filters are intersected with
+   * the query's scorer, so that the scorer can skip to the
+   * filter's documents. */
+  static final int RANDOM_ACCESS_MIN_DENSITY = 100;
+
+  /** Returns the documents to skip to apply a filter with
+   * random access to the query, or <code>null</code> if the
+   * filter's {@link DocIdSet#bits} are null or it is too
+   * sparse, see {@link #RANDOM_ACCESS_MIN_DENSITY}.  The
+   * returned bits include the reader's deleted documents. */
+  static Bits randomAccessSkipDocs(IndexReader reader, DocIdSet docIdSet, DocIdSetIterator docIdSetIterator) throws IOException {
+    final Bits filterBits = docIdSet.bits();
+    if (filterBits == null) {
+      return null;
+    }
+    final int maxDoc = reader.maxDoc();
+    final long cost = docIdSetIterator.cost();
+    if (cost != Long.MAX_VALUE && cost * RANDOM_ACCESS_MIN_DENSITY < maxDoc) {
+      return null;
+    }
+    final Bits delDocs = MultiFields.getDeletedDocs(reader);
+    if (delDocs == null) {
+      return new Bits() {
+        public boolean get(int doc) {
+          return !filterBits.get(doc);
+        }
+
+        public int length() {
+          return maxDoc;
+        }
+      };
+    } else {
+      return new Bits() {
+        public boolean get(int doc) {
+          return delDocs.get(doc) || !filterBits.get(doc);
+        }
+
+        public int length() {
+          return maxDoc;
+        }
+      };
+    }
+  }
+
   /** Rewrites the wrapped query. */
   @Override
   public Query rewrite(IndexReader reader) throws IOException {
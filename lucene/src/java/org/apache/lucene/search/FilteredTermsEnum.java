@@ -79,7 +79,20 @@ public abstract class FilteredTermsEnum extends TermsEnum {
    * @param tenum the terms enumeration to filter, if {@code null} this is the null iterator.
    */
   public FilteredTermsEnum(final TermsEnum tenum) {
+    this(tenum, true);
+  }
+
+  /**
+   * Creates a filtered {@link TermsEnum} on a terms enum.
+   * @param tenum the terms enumeration to filter, if {@code null} this is the null iterator.
+   * @param startWithSeek if false, the first call to {@link #next}
+   *        steps <code>tenum</code> instead of seeking it to
+   *        {@link #nextSeekTerm}, eg if it is already
+   *        positioned or does not support seeking.
+   */
+  public FilteredTermsEnum(final TermsEnum tenum, final boolean startWithSeek) {
     this.tenum = tenum;
+    doSeek = startWithSeek;
   }
 
   /**
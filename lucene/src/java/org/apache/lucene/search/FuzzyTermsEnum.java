@@ -20,7 +20,9 @@ package org.apache.lucene.search;
 import org.apache.lucene.index.DocsAndPositionsEnum;
 import org.apache.lucene.index.DocsEnum;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
@@ -30,6 +32,8 @@ import org.apache.lucene.util.automaton.Automaton;
 import org.apache.lucene.util.automaton.BasicAutomata;
 import org.apache.lucene.util.automaton.BasicOperations;
 import org.apache.lucene.util.automaton.ByteRunAutomaton;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.apache.lucene.util.automaton.CompiledAutomatonCache;
 import org.apache.lucene.util.automaton.LevenshteinAutomata;
 
 import java.io.IOException;
@@ -60,7 +64,7 @@ public final class FuzzyTermsEnum extends TermsEnum {
   
   private int maxEdits;
 
-  private List<ByteRunAutomaton> runAutomata;
+  private List<CompiledAutomaton> runAutomata;
   
   private final IndexReader reader;
   private final Term term;
@@ -122,7 +126,7 @@ public final class FuzzyTermsEnum extends TermsEnum {
     initAutomata(editDistance);
     if (runAutomata != null && editDistance < runAutomata.size()) {
       return new AutomatonFuzzyTermsEnum(runAutomata.subList(0, editDistance + 1)
-          .toArray(new ByteRunAutomaton[0]), lastTerm);
+          .toArray(new CompiledAutomaton[0]), lastTerm);
     } else {
       return null;
     }
@@ -132,11 +136,20 @@ public final class FuzzyTermsEnum extends TermsEnum {
   private void initAutomata(int maxDistance) {
     if (runAutomata == null && 
         maxDistance <= LevenshteinAutomata.MAXIMUM_SUPPORTED_DISTANCE) {
-      LevenshteinAutomata builder = 
-        new LevenshteinAutomata(UnicodeUtil.newString(termText, realPrefixLength, termText.length - realPrefixLength));
+      final CompiledAutomatonCache cache = CompiledAutomatonCache.getDefault();
+      LevenshteinAutomata builder = null;
 
-      final ByteRunAutomaton[] ra = new ByteRunAutomaton[maxDistance + 1];
+      final CompiledAutomaton[] ra = new CompiledAutomaton[maxDistance + 1];
       for (int i = 0; i <= maxDistance; i++) {
+        final CompiledAutomatonCache.Key key = cache == null ? null :
+          new CompiledAutomatonCache.Key("levenshtein", term.text(), realPrefixLength, i);
+        ra[i] = cache == null ? null : cache.get(key);
+        if (ra[i] != null) {
+          continue;
+        }
+        if (builder == null) {
+          builder = new LevenshteinAutomata(UnicodeUtil.newString(termText, realPrefixLength, termText.length - realPrefixLength));
+        }
         Automaton a = builder.toAutomaton(i);
         // constant prefix
         if (realPrefixLength > 0) {
@@ -144,7 +157,10 @@ public final class FuzzyTermsEnum extends TermsEnum {
               UnicodeUtil.newString(termText, 0, realPrefixLength));
           a = BasicOperations.concatenate(prefix, a);
         }
-        ra[i] = new ByteRunAutomaton(a);
+        ra[i] = new CompiledAutomaton(a, true);
+        if (cache != null) {
+          cache.put(key, ra[i]);
+        }
       }
       runAutomata = Arrays.asList(ra);
     }
@@ -256,22 +272,24 @@ public final class FuzzyTermsEnum extends TermsEnum {
    * <p>
    * This is the fastest method as opposed to LinearFuzzyTermsEnum:
    * as enumeration is logarithmic to the number of terms (instead of linear)
-   * and comparison is linear to length of the term (rather than quadratic)
+   * and comparison is linear to length of the term (rather than quadratic).
+   * The terms are intersected with the largest Lev(n) DFA by
+   * {@link Terms#intersect}, this enum only scores them.
    */
-  private class AutomatonFuzzyTermsEnum extends AutomatonTermsEnum {
+  private class AutomatonFuzzyTermsEnum extends FilteredTermsEnum {
     private final ByteRunAutomaton matchers[];
     
     private final BytesRef termRef;
     
-    private final BytesRef lastTerm;
     private final MultiTermQuery.BoostAttribute boostAtt =
       attributes().addAttribute(MultiTermQuery.BoostAttribute.class);
     
-    public AutomatonFuzzyTermsEnum(ByteRunAutomaton matchers[], 
+    public AutomatonFuzzyTermsEnum(CompiledAutomaton compiled[], 
         BytesRef lastTerm) throws IOException {
-      super(matchers[matchers.length - 1], term.field(), reader, true, null);
-      this.matchers = matchers;
-      this.lastTerm = lastTerm;
+      super(intersect(compiled[compiled.length - 1], lastTerm), false);
+      this.matchers = new ByteRunAutomaton[compiled.length];
+      for (int i = 0; i < compiled.length; i++)
+        matchers[i] = compiled[i].runAutomaton;
       termRef = new BytesRef(term.text());
     }
     
@@ -280,14 +298,14 @@ public final class FuzzyTermsEnum extends TermsEnum {
     protected AcceptStatus accept(BytesRef term) {
       if (term.equals(termRef)) { // ed = 0
         boostAtt.setBoost(1.0F);
-        return AcceptStatus.YES_AND_SEEK;
+        return AcceptStatus.YES;
       }
       
       int codePointCount = -1;
       
       // TODO: benchmark doing this backwards
       for (int i = 1; i < matchers.length; i++)
-        if (matchers[i].run(term.bytes, 0, term.length)) {
+        if (matchers[i].run(term.bytes, term.offset, term.length)) {
           // this sucks, we convert just to score based on length.
           if (codePointCount == -1) {
             codePointCount = UnicodeUtil.codePointCount(term);
@@ -296,23 +314,21 @@ public final class FuzzyTermsEnum extends TermsEnum {
               (Math.min(codePointCount, termLength)));
           if (similarity > minSimilarity) {
             boostAtt.setBoost((float) ((similarity - minSimilarity) * scale_factor));
-            return AcceptStatus.YES_AND_SEEK;
+            return AcceptStatus.YES;
           } else {
-            return AcceptStatus.NO_AND_SEEK;
+            return AcceptStatus.NO;
           }
         }
       
-      return AcceptStatus.NO_AND_SEEK;
-    }
-    
-    /** defers to superclass, except can start at an arbitrary location */
-    @Override
-    protected BytesRef nextSeekTerm(BytesRef term) throws IOException {
-      if (term == null)
-        term = lastTerm;
-      return super.nextSeekTerm(term);
+      return AcceptStatus.NO;
     }
   }
+
+  /** returns the terms of the field accepted by compiled, after lastTerm if non-null */
+  private TermsEnum intersect(CompiledAutomaton compiled, BytesRef lastTerm) throws IOException {
+    final Terms terms = MultiFields.getTerms(reader, term.field());
+    return terms == null ? null : terms.intersect(compiled, lastTerm);
+  }
   
   /**
    * Implement fuzzy enumeration with linear brute force.
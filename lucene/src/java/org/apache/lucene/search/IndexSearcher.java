@@ -20,6 +20,9 @@ package org.apache.lucene.search;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.FieldSelector;
@@ -27,6 +30,7 @@ import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.ReaderUtil;
 
 /** Implements search over a single IndexReader.
@@ -43,6 +47,14 @@ import org.apache.lucene.util.ReaderUtil;
  * external synchronization, you should <b>not</b>
  * synchronize on the <code>IndexSearcher</code> instance;
  * use your own (non-Lucene) objects instead.</p>
+ *
+ * <p>If an {@link ExecutorService} is passed to the
+ * constructor, {@link #search(Weight,Filter,int)} and
+ * {@link #search(Weight,Filter,int,Sort)} search each
+ * segment in its own task and merge the per-segment
+ * results.  Searches driven by a custom {@link Collector}
+ * are always run sequentially on the calling thread, since
+ * {@link Collector} supports no concurrent access.</p>
  */
 public class IndexSearcher extends Searcher {
   IndexReader reader;
@@ -53,6 +65,11 @@ public class IndexSearcher extends Searcher {
   protected IndexReader[] subReaders;
   protected int[] docStarts;
 
+  // These are only used for searching in parallel, when an
+  // ExecutorService was passed to the constructor
+  private final ExecutorService executor;
+  private final IndexSearcher[] subSearchers;
+
   /** Creates a searcher searching the index in the named
    *  directory, with readOnly=true
    * @param path directory where IndexReader will be opened
@@ -60,7 +77,7 @@ public class IndexSearcher extends Searcher {
    * @throws IOException if there is a low-level IO error
    */
   public IndexSearcher(Directory path) throws CorruptIndexException, IOException {
-    this(IndexReader.open(path, true), true);
+    this(IndexReader.open(path, true), true, null);
   }
 
   /** Creates a searcher searching the index in the named
@@ -75,12 +92,27 @@ public class IndexSearcher extends Searcher {
    * @throws IOException if there is a low-level IO error
    */
   public IndexSearcher(Directory path, boolean readOnly) throws CorruptIndexException, IOException {
-    this(IndexReader.open(path, readOnly), true);
+    this(IndexReader.open(path, readOnly), true, null);
   }
 
   /** Creates a searcher searching the provided index. */
   public IndexSearcher(IndexReader r) {
-    this(r, false);
+    this(r, false, null);
+  }
+
+  /** Runs searches for each segment separately, using the
+   *  provided ExecutorService.  IndexSearcher will not
+   *  shutdown/awaitTermination this ExecutorService on
+   *  close; you must do so, eventually, on your own.  NOTE:
+   *  if you are using {@link org.apache.lucene.store.NIOFSDirectory}, do not use
+   *  the shutdownNow method of ExecutorService as this uses
+   *  Thread.interrupt under-the-hood which can silently
+   *  close file descriptors (see <a
+   *  href="https://issues.apache.org/jira/browse/LUCENE-2239">LUCENE-2239</a>).
+   * 
+   * @lucene.experimental */
+  public IndexSearcher(IndexReader r, ExecutorService executor) {
+    this(r, false, executor);
   }
 
   /** Expert: directly specify the reader, subReaders and
@@ -88,15 +120,35 @@ public class IndexSearcher extends Searcher {
    * 
    * @lucene.experimental */
   public IndexSearcher(IndexReader reader, IndexReader[] subReaders, int[] docStarts) {
+    this(reader, subReaders, docStarts, null);
+  }
+
+  /** Expert: directly specify the reader, subReaders and
+   *  their docID starts, and an ExecutorService.  In this
+   *  case, each segment will be separately searched using the
+   *  ExecutorService.  IndexSearcher will not
+   *  shutdown/awaitTermination this ExecutorService on
+   *  close; you must do so, eventually, on your own.  NOTE:
+   *  if you are using {@link org.apache.lucene.store.NIOFSDirectory}, do not use
+   *  the shutdownNow method of ExecutorService as this uses
+   *  Thread.interrupt under-the-hood which can silently
+   *  close file descriptors (see <a
+   *  href="https://issues.apache.org/jira/browse/LUCENE-2239">LUCENE-2239</a>).
+   * 
+   * @lucene.experimental */
+  public IndexSearcher(IndexReader reader, IndexReader[] subReaders, int[] docStarts, ExecutorService executor) {
     this.reader = reader;
     this.subReaders = subReaders;
     this.docStarts = docStarts;
     closeReader = false;
+    this.executor = executor;
+    subSearchers = newSubSearchers();
   }
   
-  private IndexSearcher(IndexReader r, boolean closeReader) {
+  private IndexSearcher(IndexReader r, boolean closeReader, ExecutorService executor) {
     reader = r;
     this.closeReader = closeReader;
+    this.executor = executor;
 
     List<IndexReader> subReadersList = new ArrayList<IndexReader>();
     gatherSubReaders(subReadersList, reader);
@@ -107,6 +159,20 @@ public class IndexSearcher extends Searcher {
       docStarts[i] = maxDoc;
       maxDoc += subReaders[i].maxDoc();
     }
+    subSearchers = newSubSearchers();
+  }
+
+  private IndexSearcher[] newSubSearchers() {
+    if (executor == null) {
+      return null;
+    }
+    // one sequential searcher per segment; docIDs are
+    // segment-relative and rebased when the results are merged
+    final IndexSearcher[] searchers = new IndexSearcher[subReaders.length];
+    for (int i = 0; i < subReaders.length; i++) {
+      searchers[i] = new IndexSearcher(subReaders[i], new IndexReader[] {subReaders[i]}, new int[] {0});
+    }
+    return searchers;
   }
 
   protected void gatherSubReaders(List<IndexReader> allSubReaders, IndexReader r) {
@@ -164,9 +230,42 @@ public class IndexSearcher extends Searcher {
 
     nDocs = Math.min(nDocs, reader.maxDoc());
 
-    TopScoreDocCollector collector = TopScoreDocCollector.create(nDocs, !weight.scoresDocsOutOfOrder());
-    search(weight, filter, collector);
-    return collector.topDocs();
+    if (executor == null) {
+      TopScoreDocCollector collector = TopScoreDocCollector.create(nDocs, !weight.scoresDocsOutOfOrder());
+      search(weight, filter, collector);
+      return collector.topDocs();
+    }
+
+    final HitQueue hq = new HitQueue(nDocs, false);
+    final Lock lock = new ReentrantLock();
+    final ParallelMultiSearcher.ExecutionHelper<TopDocs> runner = new ParallelMultiSearcher.ExecutionHelper<TopDocs>(executor);
+    
+    for (int i = 0; i < subSearchers.length; i++) { // search each sub
+      runner.submit(
+          new MultiSearcher.MultiSearcherCallableNoSort(lock, subSearchers[i], weight, filter, nDocs, hq, i, docStarts));
+    }
+
+    int totalHits = 0;
+    float maxScore = Float.NaN;
+    for (final TopDocs topDocs : runner) {
+      totalHits += topDocs.totalHits;
+      maxScore = mergeMaxScore(maxScore, topDocs);
+    }
+
+    final ScoreDoc[] scoreDocs = new ScoreDoc[hq.size()];
+    for (int i = hq.size() - 1; i >= 0; i--) // put docs in array
+      scoreDocs[i] = hq.pop();
+
+    return new TopDocs(totalHits, scoreDocs, maxScore);
+  }
+
+  /** Segments without hits report a NaN max score, which
+   *  must not win over the real max of the other segments. */
+  private static float mergeMaxScore(float maxScore, TopDocs topDocs) {
+    if (topDocs.totalHits == 0 || Float.isNaN(topDocs.getMaxScore())) {
+      return maxScore;
+    }
+    return Float.isNaN(maxScore) ? topDocs.getMaxScore() : Math.max(maxScore, topDocs.getMaxScore());
   }
 
   @Override
@@ -185,6 +284,10 @@ public class IndexSearcher extends Searcher {
    * instance by calling {@link TopFieldCollector#create} and
    * then pass that to {@link #search(Weight, Filter,
    * Collector)}.</p>
+   *
+   * <p>NOTE: when searching with an ExecutorService the
+   * fields are always filled, as they are needed to merge
+   * the per-segment results.</p>
    */
   public TopFieldDocs search(Weight weight, Filter filter, int nDocs,
                              Sort sort, boolean fillFields)
@@ -192,10 +295,33 @@ public class IndexSearcher extends Searcher {
 
     nDocs = Math.min(nDocs, reader.maxDoc());
 
-    TopFieldCollector collector = TopFieldCollector.create(sort, nDocs,
-        fillFields, fieldSortDoTrackScores, fieldSortDoMaxScore, !weight.scoresDocsOutOfOrder());
-    search(weight, filter, collector);
-    return (TopFieldDocs) collector.topDocs();
+    if (executor == null) {
+      TopFieldCollector collector = TopFieldCollector.create(sort, nDocs,
+          fillFields, fieldSortDoTrackScores, fieldSortDoMaxScore, !weight.scoresDocsOutOfOrder());
+      search(weight, filter, collector);
+      return (TopFieldDocs) collector.topDocs();
+    }
+
+    if (sort == null) throw new NullPointerException();
+
+    final FieldDocSortedHitQueue hq = new FieldDocSortedHitQueue(nDocs);
+    final Lock lock = new ReentrantLock();
+    final ParallelMultiSearcher.ExecutionHelper<TopFieldDocs> runner = new ParallelMultiSearcher.ExecutionHelper<TopFieldDocs>(executor);
+    for (int i = 0; i < subSearchers.length; i++) { // search each sub
+      runner.submit(
+          new MultiSearcher.MultiSearcherCallableWithSort(lock, subSearchers[i], weight, filter, nDocs, hq, sort, i, docStarts));
+    }
+    int totalHits = 0;
+    float maxScore = Float.NaN;
+    for (final TopFieldDocs topFieldDocs : runner) {
+      totalHits += topFieldDocs.totalHits;
+      maxScore = mergeMaxScore(maxScore, topFieldDocs);
+    }
+    final ScoreDoc[] scoreDocs = new ScoreDoc[hq.size()];
+    for (int i = hq.size() - 1; i >= 0; i--) // put docs in array
+      scoreDocs[i] = hq.pop();
+
+    return new TopFieldDocs(totalHits, scoreDocs, hq.getFields(), maxScore);
   }
 
   @Override
@@ -222,16 +348,7 @@ public class IndexSearcher extends Searcher {
       final Filter filter, final Collector collector) throws IOException {
 
     assert filter != null;
-    
-    Scorer scorer = weight.scorer(reader, true, false);
-    if (scorer == null) {
-      return;
-    }
-
-    int docID = scorer.docID();
-    assert docID == -1 || docID == DocIdSetIterator.NO_MORE_DOCS;
 
-    // CHECKME: use ConjunctionScorer here?
     DocIdSet filterDocIdSet = filter.getDocIdSet(reader);
     if (filterDocIdSet == null) {
       // this means the filter does not accept any documents.
@@ -243,23 +360,51 @@ public class IndexSearcher extends Searcher {
       // this means the filter does not accept any documents.
       return;
     }
-    int filterDoc = filterIter.nextDoc();
-    int scorerDoc = scorer.advance(filterDoc);
-    
+
+    final Bits skipDocs = FilteredQuery.randomAccessSkipDocs(reader, filterDocIdSet, filterIter);
+    if (skipDocs != null) {
+      // dense filter: the scorer skips the documents it
+      // does not accept, like deleted ones, and may score
+      // out of order
+      Scorer scorer = weight.scorer(reader, skipDocs, !collector.acceptsDocsOutOfOrder(), true);
+      if (scorer != null) {
+        scorer.score(collector);
+      }
+      return;
+    }
+
+    Scorer scorer = weight.scorer(reader, true, false);
+    if (scorer == null) {
+      return;
+    }
+
+    int docID = scorer.docID();
+    assert docID == -1 || docID == DocIdSetIterator.NO_MORE_DOCS;
+
+    // Lead with whichever of the scorer and the filter matches
+    // fewer documents, and only advance the other one to them.
+    // If either cost is unknown the filter leads, as it always did.
+    final DocIdSetIterator lead, other;
+    if (FilteredQuery.scorerLeads(scorer.cost(), filterIter.cost())) {
+      lead = scorer;
+      other = filterIter;
+    } else {
+      lead = filterIter;
+      other = scorer;
+    }
+
     collector.setScorer(scorer);
-    while (true) {
-      if (scorerDoc == filterDoc) {
-        // Check if scorer has exhausted, only before collecting.
-        if (scorerDoc == DocIdSetIterator.NO_MORE_DOCS) {
-          break;
-        }
-        collector.collect(scorerDoc);
-        filterDoc = filterIter.nextDoc();
-        scorerDoc = scorer.advance(filterDoc);
-      } else if (scorerDoc > filterDoc) {
-        filterDoc = filterIter.advance(scorerDoc);
+    int doc = lead.nextDoc();
+    while (doc != DocIdSetIterator.NO_MORE_DOCS) {
+      int otherDoc = other.docID();
+      if (otherDoc < doc) {
+        otherDoc = other.advance(doc);
+      }
+      if (otherDoc == doc) {
+        collector.collect(doc);
+        doc = lead.nextDoc();
       } else {
-        scorerDoc = scorer.advance(filterDoc);
+        doc = lead.advance(otherDoc);
       }
     }
   }
@@ -300,5 +445,10 @@ public class IndexSearcher extends Searcher {
   public void setDefaultFieldSortScoring(boolean doTrackScores, boolean doMaxScore) {
     fieldSortDoTrackScores = doTrackScores;
     fieldSortDoMaxScore = doMaxScore;
+    if (subSearchers != null) { // propagate settings to subs
+      for (IndexSearcher sub : subSearchers) {
+        sub.setDefaultFieldSortScoring(doTrackScores, doMaxScore);
+      }
+    }
   }
 }
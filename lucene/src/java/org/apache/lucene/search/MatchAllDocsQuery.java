@@ -52,10 +52,10 @@ public class MatchAllDocsQuery extends Query {
     private final int maxDoc;
     private final Bits delDocs;
     
-    MatchAllScorer(IndexReader reader, Similarity similarity, Weight w,
+    MatchAllScorer(IndexReader reader, Bits delDocs, Similarity similarity, Weight w,
         byte[] norms) throws IOException {
       super(similarity,w);
-      delDocs = MultiFields.getDeletedDocs(reader);
+      this.delDocs = delDocs;
       score = w.getValue();
       maxDoc = reader.maxDoc();
       this.norms = norms;
@@ -128,7 +128,12 @@ public class MatchAllDocsQuery extends Query {
 
     @Override
     public Scorer scorer(IndexReader reader, boolean scoreDocsInOrder, boolean topScorer) throws IOException {
-      return new MatchAllScorer(reader, similarity, this,
+      return scorer(reader, MultiFields.getDeletedDocs(reader), scoreDocsInOrder, topScorer);
+    }
+
+    @Override
+    public Scorer scorer(IndexReader reader, Bits skipDocs, boolean scoreDocsInOrder, boolean topScorer) throws IOException {
+      return new MatchAllScorer(reader, skipDocs, similarity, this,
           normsField != null ? reader.norms(normsField) : null);
     }
 
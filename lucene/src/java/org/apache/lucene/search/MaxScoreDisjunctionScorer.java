@@ -0,0 +1,299 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.util.ScorerDocQueue;
+
+/** A Scorer for pure disjunctions (only SHOULD clauses)
+ * that skips documents which cannot be competitive, once
+ * a {@link Collector} sets the minimum competitive score
+ * (see {@link Scorer#setMinCompetitiveScore}).
+ *
+ * <p>This implements the MaxScore algorithm: the sub
+ * scorers are sorted by their {@link Scorer#maxScore}, and
+ * the longest prefix of scorers whose summed bounds cannot
+ * reach the minimum score is "non-essential": documents
+ * matching only those scorers are never visited.  Only the
+ * other, essential, scorers are iterated, and the
+ * non-essential ones are advanced to each candidate, from
+ * the highest bound down, until the candidate's score can
+ * be proven not competitive.</p>
+ *
+ * <p>Until the minimum competitive score is set, this
+ * returns the same documents as {@link BooleanScorer2}.
+ * The sub scores are summed in double precision, so that a
+ * document's score does not depend on which scorers are
+ * essential; it may differ from BooleanScorer2's score in
+ * the last bits.</p>
+ */
+class MaxScoreDisjunctionScorer extends Scorer {
+  /** The subscorers, sorted by increasing max score once
+   * the bounds are known. */
+  private final Scorer[] scorers;
+  private final float[] coordFactors;
+
+  /** The essential subscorers, ordered by their current
+   * doc(), with the minimum at the top.  Exhausted scorers
+   * are removed. */
+  private ScorerDocQueue scorerDocQueue;
+
+  /** scorers[0..numNonEssential) are not in the queue. */
+  private int numNonEssential;
+
+  /** boundSums[i] is the sum of the max scores of
+   * scorers[0..i); null until the bounds are needed. */
+  private double[] boundSums;
+  /** maxCoordFactors[i] is the max coord factor of i or
+   * less matchers. */
+  private float[] maxCoordFactors;
+  private boolean canPrune;
+  private float minScore = Float.NEGATIVE_INFINITY;
+
+  private int currentDoc = -1;
+  private float currentScore = Float.NaN;
+  private int nrMatchers = -1;
+  private long cost = -1;
+
+  /** Construct a <code>MaxScoreDisjunctionScorer</code>.
+   * @param subScorers A collection of at least two subscorers.
+   * @param coordFactors The coord factor for each number
+   * of matching subscorers, from 0 to subScorers.size().
+   */
+  MaxScoreDisjunctionScorer(Weight weight, Similarity similarity, List<Scorer> subScorers, float[] coordFactors) throws IOException {
+    super(similarity, weight);
+    if (subScorers.size() <= 1) {
+      throw new IllegalArgumentException("There must be at least 2 subScorers");
+    }
+    scorers = subScorers.toArray(new Scorer[subScorers.size()]);
+    this.coordFactors = coordFactors;
+    scorerDocQueue = new ScorerDocQueue(scorers.length);
+    for (Scorer se : scorers) {
+      if (se.nextDoc() != NO_MORE_DOCS) {
+        scorerDocQueue.insert(se);
+      }
+    }
+  }
+
+  @Override
+  public void setMinCompetitiveScore(float minScore) throws IOException {
+    if (!(minScore > this.minScore)) {
+      return;
+    }
+    this.minScore = minScore;
+    if (boundSums == null) {
+      initBounds();
+    }
+    if (canPrune) {
+      int numNonEssential = this.numNonEssential;
+      while (numNonEssential < scorers.length - 1 && bound(boundSums[numNonEssential+1], numNonEssential+1) < minScore) {
+        numNonEssential++;
+      }
+      if (numNonEssential != this.numNonEssential) {
+        this.numNonEssential = numNonEssential;
+        // All scorers are after the current doc, so the
+        // queue can be rebuilt from their positions
+        scorerDocQueue = new ScorerDocQueue(scorers.length - numNonEssential);
+        for (int i = numNonEssential; i < scorers.length; i++) {
+          if (scorers[i].docID() != NO_MORE_DOCS) {
+            scorerDocQueue.insert(scorers[i]);
+          }
+        }
+      }
+    }
+  }
+
+  private void initBounds() throws IOException {
+    final float[] maxScores = new float[scorers.length];
+    for (int i = 0; i < scorers.length; i++) {
+      maxScores[i] = scorers[i].maxScore();
+    }
+
+    // insertion sort by increasing bound, there are few
+    // scorers
+    for (int i = 1; i < scorers.length; i++) {
+      final Scorer scorer = scorers[i];
+      final float maxScore = maxScores[i];
+      int j = i;
+      while (j > 0 && maxScores[j-1] > maxScore) {
+        scorers[j] = scorers[j-1];
+        maxScores[j] = maxScores[j-1];
+        j--;
+      }
+      scorers[j] = scorer;
+      maxScores[j] = maxScore;
+    }
+
+    boundSums = new double[scorers.length + 1];
+    for (int i = 0; i < scorers.length; i++) {
+      // a scorer that does not match contributes 0
+      boundSums[i+1] = boundSums[i] + Math.max(0.0f, maxScores[i]);
+    }
+
+    canPrune = true;
+    maxCoordFactors = new float[coordFactors.length];
+    float maxCoordFactor = 0.0f;
+    for (int i = 1; i < coordFactors.length; i++) {
+      if (coordFactors[i] < 0.0f) {
+        // a negative coord could make a negative sum score
+        // higher than its bound
+        canPrune = false;
+      }
+      maxCoordFactor = Math.max(maxCoordFactor, coordFactors[i]);
+      maxCoordFactors[i] = maxCoordFactor;
+    }
+  }
+
+  /** Upper bound of the score of a document whose summed
+   * sub scores are at most <code>sum</code>, matching at
+   * most <code>maxMatchers</code> subscorers. */
+  private float bound(double sum, int maxMatchers) {
+    return roundUp(sum * maxCoordFactors[maxMatchers], scorers.length);
+  }
+
+  /** Rounds up a bound computed in double precision, so
+   * that it is not below any score computed in float
+   * precision by summing <code>numScores</code> scores in
+   * some other order. */
+  static float roundUp(double bound, int numScores) {
+    if (Double.isInfinite(bound) || Double.isNaN(bound)) {
+      return Float.POSITIVE_INFINITY;
+    }
+    // each float operation has a relative error of at
+    // most 2^-24 < 1e-7
+    return (float) (bound + (numScores + 2) * 1e-7 * Math.abs(bound));
+  }
+
+  @Override
+  public int nextDoc() throws IOException {
+    return nextCandidate();
+  }
+
+  @Override
+  public int advance(int target) throws IOException {
+    if (target <= currentDoc) {
+      return currentDoc;
+    }
+    while (scorerDocQueue.size() > 0 && scorerDocQueue.topDoc() < target) {
+      scorerDocQueue.topSkipToAndAdjustElsePop(target);
+    }
+    return nextCandidate();
+  }
+
+  /** Returns the next competitive document from the top of
+   * the queue; on entry, all essential scorers are after
+   * the current doc. */
+  private int nextCandidate() throws IOException {
+    while (scorerDocQueue.size() > 0) {
+      final int candidate = scorerDocQueue.topDoc();
+      double sum = scorerDocQueue.topScore();
+      int matchers = 1;
+      do { // Until all essential subscorers are after candidate
+        if (!scorerDocQueue.topNextAndAdjustElsePop()) {
+          if (scorerDocQueue.size() == 0) {
+            break;
+          }
+        }
+        if (scorerDocQueue.topDoc() != candidate) {
+          break;
+        }
+        sum += scorerDocQueue.topScore();
+        matchers++;
+      } while (true);
+
+      boolean competitive = true;
+      for (int i = numNonEssential - 1; i >= 0; i--) {
+        if (bound(sum + boundSums[i+1], matchers + i + 1) < minScore) {
+          competitive = false;
+          break;
+        }
+        final Scorer scorer = scorers[i];
+        int doc = scorer.docID();
+        if (doc < candidate) {
+          doc = scorer.advance(candidate);
+        }
+        if (doc == candidate) {
+          sum += scorer.score();
+          matchers++;
+        }
+      }
+
+      if (competitive) {
+        final float score = (float) sum * coordFactors[matchers];
+        if (!(score < minScore)) {
+          currentScore = score;
+          nrMatchers = matchers;
+          return currentDoc = candidate;
+        }
+      }
+    }
+    return currentDoc = NO_MORE_DOCS;
+  }
+
+  @Override
+  public int docID() {
+    return currentDoc;
+  }
+
+  @Override
+  public float score() throws IOException {
+    return currentScore;
+  }
+
+  /** Returns the number of subscorers matching the current
+   * document. */
+  @Override
+  public float freq() {
+    return nrMatchers;
+  }
+
+  @Override
+  public float maxScore() throws IOException {
+    if (boundSums == null) {
+      initBounds();
+    }
+    return canPrune ? bound(boundSums[scorers.length], scorers.length) : Float.POSITIVE_INFINITY;
+  }
+
+  /** Returns the sum of the costs of the subscorers, or
+   * {@link Long#MAX_VALUE} if any is unknown. */
+  @Override
+  public long cost() throws IOException {
+    if (cost == -1) {
+      long sum = 0;
+      for (int i = 0; i < scorers.length && sum != Long.MAX_VALUE; i++) {
+        final long subCost = scorers[i].cost();
+        sum = subCost == Long.MAX_VALUE ? subCost : sum + subCost;
+      }
+      cost = sum;
+    }
+    return cost;
+  }
+
+  @Override
+  protected void visitSubScorers(Query parent, Occur relationship, ScorerVisitor<Query, Query, Scorer> visitor) {
+    super.visitSubScorers(parent, relationship, visitor);
+    final Query q = weight.getQuery();
+    for (Scorer s : scorers) {
+      s.visitSubScorers(q, Occur.SHOULD, visitor);
+    }
+  }
+}
@@ -246,7 +246,7 @@ public class ParallelMultiSearcher extends MultiSearcher {
    * @param <T>
    *          the type of the {@link Callable} return value
    */
-  private static final class ExecutionHelper<T> implements Iterator<T>, Iterable<T> {
+  static final class ExecutionHelper<T> implements Iterator<T>, Iterable<T> {
     private final CompletionService<T> service;
     private int numTasks;
 
@@ -282,7 +282,7 @@ public class ParallelMultiSearcher extends MultiSearcher {
     }
 
     public Iterator<T> iterator() {
-      // use the shortcut here - this is only used in a privat context
+      // use the shortcut here - this is only used in a package-private context
       return this;
     }
 
@@ -7,6 +7,9 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.util.ToStringUtils;
 import org.apache.lucene.util.automaton.Automaton;
 import org.apache.lucene.util.automaton.AutomatonProvider;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.apache.lucene.util.automaton.CompiledAutomatonCache;
+import org.apache.lucene.util.automaton.MinimizationOperations;
 import org.apache.lucene.util.automaton.RegExp;
 
 /**
@@ -77,7 +80,7 @@ public class RegexpQuery extends AutomatonQuery {
    * @param flags optional RegExp features from {@link RegExp}
    */
   public RegexpQuery(Term term, int flags) {
-    this(term, flags, defaultProvider);
+    super(term, compile(term.text(), flags));
   }
   
   /**
@@ -90,6 +93,26 @@ public class RegexpQuery extends AutomatonQuery {
   public RegexpQuery(Term term, int flags, AutomatonProvider provider) {
     super(term, new RegExp(term.text(), flags).toAutomaton(provider));
   }
+
+  /** Returns the compiled automaton of the regular
+   *  expression, from the default {@link
+   *  CompiledAutomatonCache} if it has it.  Only regular
+   *  expressions without named automata are cached. */
+  private static CompiledAutomaton compile(String regexp, int flags) {
+    final CompiledAutomatonCache cache = CompiledAutomatonCache.getDefault();
+    final CompiledAutomatonCache.Key key = cache == null ? null :
+      new CompiledAutomatonCache.Key("regexp", regexp, flags);
+    CompiledAutomaton compiled = cache == null ? null : cache.get(key);
+    if (compiled == null) {
+      final Automaton automaton = new RegExp(regexp, flags).toAutomaton(defaultProvider);
+      MinimizationOperations.minimize(automaton);
+      compiled = new CompiledAutomaton(automaton);
+      if (cache != null) {
+        cache.put(key, compiled);
+      }
+    }
+    return compiled;
+  }
   
   /** Prints a user-readable version of this query. */
   @Override
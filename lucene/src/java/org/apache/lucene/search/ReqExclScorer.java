@@ -117,4 +117,10 @@ class ReqExclScorer extends Scorer {
     }
     return doc = toNonExcluded();
   }
+
+  /** Returns the cost of the required scorer. */
+  @Override
+  public long cost() throws IOException {
+    return reqScorer == null ? 0 : reqScorer.cost();
+  }
 }
@@ -80,5 +80,11 @@ class ReqOptSumScorer extends Scorer {
     return optScorerDoc == curDoc ? reqScore + optScorer.score() : reqScore;
   }
 
+  /** Returns the cost of the required scorer. */
+  @Override
+  public long cost() throws IOException {
+    return reqScorer.cost();
+  }
+
 }
 
@@ -117,6 +117,29 @@ public abstract class Scorer extends DocIdSetIterator {
     throw new UnsupportedOperationException(this + " does not implement freq()");
   }
 
+  /** Returns an upper bound of the score of any document
+   *  this scorer matches, or {@link Float#POSITIVE_INFINITY}
+   *  if no bound is known, which is the default.  This may
+   *  be costly, so it should only be called by scorers that
+   *  prune non-competitive documents.
+   *
+   * @see #setMinCompetitiveScore
+   * @lucene.experimental */
+  public float maxScore() throws IOException {
+    return Float.POSITIVE_INFINITY;
+  }
+
+  /** Called by a {@link Collector} that will not collect
+   *  documents scoring less than <code>minScore</code>, nor
+   *  needs them counted, so that the scorer may skip them.
+   *  The minimum never decreases.  By default, this is
+   *  ignored and all matching documents are returned.
+   *
+   * @see TopScoreDocCollector#create(int, boolean, boolean)
+   * @lucene.experimental */
+  public void setMinCompetitiveScore(float minScore) throws IOException {
+  }
+
   /**
    * A callback to gather information from a scorer and its sub-scorers. Each
    * the top-level scorer as well as each of its sub-scorers are passed to
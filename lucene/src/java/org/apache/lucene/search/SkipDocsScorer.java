@@ -0,0 +1,93 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.util.Bits;
+
+/** A Scorer that returns the documents of an in-order
+ * scorer that are not set in a {@link Bits}.  Used by
+ * {@link Weight#scorer(org.apache.lucene.index.IndexReader,Bits,boolean,boolean)}
+ * for weights that cannot skip documents while iterating
+ * postings.
+ */
+final class SkipDocsScorer extends Scorer {
+  private final Scorer scorer;
+  private final Bits skipDocs;
+  private int doc = -1;
+
+  SkipDocsScorer(Weight weight, Scorer scorer, Bits skipDocs) {
+    super(scorer.getSimilarity(), weight);
+    this.scorer = scorer;
+    this.skipDocs = skipDocs;
+  }
+
+  private int nextNotSkipped(int doc) throws IOException {
+    while (doc != NO_MORE_DOCS && skipDocs.get(doc)) {
+      doc = scorer.nextDoc();
+    }
+    return doc;
+  }
+
+  @Override
+  public int nextDoc() throws IOException {
+    return doc = nextNotSkipped(scorer.nextDoc());
+  }
+
+  @Override
+  public int advance(int target) throws IOException {
+    return doc = nextNotSkipped(scorer.advance(target));
+  }
+
+  @Override
+  public int docID() {
+    return doc;
+  }
+
+  @Override
+  public float score() throws IOException {
+    return scorer.score();
+  }
+
+  @Override
+  public float freq() throws IOException {
+    return scorer.freq();
+  }
+
+  @Override
+  public float maxScore() throws IOException {
+    return scorer.maxScore();
+  }
+
+  @Override
+  public void setMinCompetitiveScore(float minScore) throws IOException {
+    scorer.setMinCompetitiveScore(minScore);
+  }
+
+  @Override
+  public long cost() throws IOException {
+    return scorer.cost();
+  }
+
+  @Override
+  protected void visitSubScorers(Query parent, Occur relationship, ScorerVisitor<Query, Query, Scorer> visitor) {
+    scorer.visitSubScorers(parent, relationship, visitor);
+  }
+}
@@ -94,6 +94,8 @@ implements Serializable {
   private Locale locale;    // defaults to "natural order" (no Locale)
   boolean reverse = false;  // defaults to natural order
   private FieldCache.Parser parser;
+  private boolean useIndexValues;
+  private boolean usePackedValues;
 
   // Used for CUSTOM sort
   private FieldComparatorSource comparatorSource;
@@ -312,6 +314,8 @@ implements Serializable {
 
     if (locale != null) buffer.append('(').append(locale).append(')');
     if (parser != null) buffer.append('(').append(parser).append(')');
+    if (useIndexValues) buffer.append("(indexValues)");
+    if (usePackedValues) buffer.append("(packedValues)");
     if (reverse) buffer.append('!');
 
     return buffer.toString();
@@ -330,6 +334,8 @@ implements Serializable {
       other.field == this.field // field is always interned
       && other.type == this.type
       && other.reverse == this.reverse
+      && other.useIndexValues == this.useIndexValues
+      && other.usePackedValues == this.usePackedValues
       && (other.locale == null ? this.locale == null : other.locale.equals(this.locale))
       && (other.comparatorSource == null ? this.comparatorSource == null : other.comparatorSource.equals(this.comparatorSource))
       && (other.parser == null ? this.parser == null : other.parser.equals(this.parser))
@@ -348,9 +354,44 @@ implements Serializable {
     if (locale != null) hash += locale.hashCode()^0x08150815;
     if (comparatorSource != null) hash += comparatorSource.hashCode();
     if (parser != null) hash += parser.hashCode()^0x3aaf56ff;
+    if (useIndexValues) hash += 0x7c2bd9a1;
+    if (usePackedValues) hash += 0x5a0f3c61;
     return hash;
   }
 
+  /** If true, the comparator reads the field's per-document
+   *  {@link org.apache.lucene.index.values.IndexDocValues}
+   *  instead of un-inverting the field through the {@link
+   *  FieldCache}.  Only {@link #INT} and {@link #LONG} (for
+   *  int values) and {@link #STRING} and {@link #STRING_VAL}
+   *  (for bytes values) are supported.
+   *
+   *  @lucene.experimental */
+  public void setUseIndexValues(boolean b) {
+    useIndexValues = b;
+  }
+
+  /** @see #setUseIndexValues */
+  public boolean getUseIndexValues() {
+    return useIndexValues;
+  }
+
+  /** If true, the comparator un-inverts the field into
+   *  {@link FieldCache.PackedValues}, which use only as many
+   *  bits per document as the field's values need, instead
+   *  of a plain <code>int[]</code> or <code>long[]</code>.
+   *  Only {@link #INT} and {@link #LONG} are supported.
+   *
+   *  @lucene.experimental */
+  public void setUsePackedValues(boolean b) {
+    usePackedValues = b;
+  }
+
+  /** @see #setUsePackedValues */
+  public boolean getUsePackedValues() {
+    return usePackedValues;
+  }
+
   // field must be interned after reading from stream
   private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
     in.defaultReadObject();
@@ -379,6 +420,34 @@ implements Serializable {
       return new FieldComparator.StringComparatorLocale(numHits, field, locale);
     }
 
+    if (useIndexValues) {
+      switch (type) {
+      case SortField.INT:
+      case SortField.LONG:
+        return new FieldComparator.IndexDocValuesLongComparator(numHits, field);
+
+      case SortField.STRING:
+      case SortField.STRING_VAL:
+        return new FieldComparator.IndexDocValuesBytesComparator(numHits, field);
+
+      default:
+        throw new IllegalStateException("sort type " + type + " cannot be used with index values (field=" + field + ")");
+      }
+    }
+
+    if (usePackedValues) {
+      switch (type) {
+      case SortField.INT:
+        return new FieldComparator.PackedValuesComparator(numHits, field, parser, true);
+
+      case SortField.LONG:
+        return new FieldComparator.PackedValuesComparator(numHits, field, parser, false);
+
+      default:
+        throw new IllegalStateException("sort type " + type + " cannot be used with packed values (field=" + field + ")");
+      }
+    }
+
     switch (type) {
     case SortField.SCORE:
       return new FieldComparator.RelevanceComparator(numHits);
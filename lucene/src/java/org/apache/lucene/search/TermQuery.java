@@ -21,9 +21,13 @@ import java.io.IOException;
 import java.util.Set;
 
 import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.Fields;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.Explanation.IDFExplanation;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.ToStringUtils;
 
 /** A Query that matches documents containing a term.
@@ -71,15 +75,29 @@ public class TermQuery extends Query {
 
     @Override
     public Scorer scorer(IndexReader reader, boolean scoreDocsInOrder, boolean topScorer) throws IOException {
-      DocsEnum docs = reader.termDocsEnum(reader.getDeletedDocs(),
-                                          term.field(),
-                                          term.bytes());
+      return scorer(reader, reader.getDeletedDocs(), scoreDocsInOrder, topScorer);
+    }
 
-      if (docs == null) {
+    @Override
+    public Scorer scorer(IndexReader reader, Bits skipDocs, boolean scoreDocsInOrder, boolean topScorer) throws IOException {
+      final Fields fields = reader.fields();
+      if (fields == null) {
+        return null;
+      }
+      final Terms terms = fields.terms(term.field());
+      if (terms == null) {
+        return null;
+      }
+      // seek once, for the postings and the term's stats
+      final TermsEnum termsEnum = terms.getThreadTermsEnum();
+      if (termsEnum.seek(term.bytes()) != TermsEnum.SeekStatus.FOUND) {
         return null;
       }
+      final int docFreq = termsEnum.docFreq();
+      final int maxTermFreq = termsEnum.maxTermFreq();
+      final DocsEnum docs = termsEnum.docs(skipDocs, null);
 
-      return new TermScorer(this, docs, similarity, reader.norms(term.field()));
+      return new TermScorer(this, docs, similarity, reader.norms(term.field()), reader, term, docFreq, maxTermFreq);
     }
 
     @Override
@@ -20,7 +20,11 @@ package org.apache.lucene.search;
 import java.io.IOException;
 
 import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.util.Bits;
 
 /** Expert: A <code>Scorer</code> for documents matching a <code>Term</code>.
  */
@@ -40,6 +44,17 @@ final class TermScorer extends Scorer {
   private int[] freqs;
   private final DocsEnum.BulkReadResult bulkResult;
 
+  // Only used to compute maxScore and cost
+  private final IndexReader reader;
+  private final Term term;
+  private final int docFreq;
+  private final int maxTermFreq;
+  private float maxScore = Float.NaN;
+
+  // Codecs that don't record the max freq of a term are
+  // asked for the postings of terms up to this docFreq
+  private static final int MAX_DOC_FREQ_TO_SCAN = 128;
+
   /**
    * Construct a <code>TermScorer</code>.
    * 
@@ -52,12 +67,26 @@ final class TermScorer extends Scorer {
    *          computations.
    * @param norms
    *          The field norms of the document fields for the <code>Term</code>.
+   * @param reader
+   *          The segment the <code>Term</code> is searched in.
+   * @param term
+   *          The <code>Term</code>.
+   * @param docFreq
+   *          The docFreq of the <code>Term</code> in the segment.
+   * @param maxTermFreq
+   *          The max freq of the <code>Term</code> in a document of the
+   *          segment, or -1 if the codec does not record it.
    */
-  TermScorer(Weight weight, DocsEnum td, Similarity similarity, byte[] norms) {
+  TermScorer(Weight weight, DocsEnum td, Similarity similarity, byte[] norms, IndexReader reader, Term term,
+             int docFreq, int maxTermFreq) {
     super(similarity, weight);
     
     this.docsEnum = td;
     this.norms = norms;
+    this.reader = reader;
+    this.term = term;
+    this.docFreq = docFreq;
+    this.maxTermFreq = maxTermFreq;
     this.weightValue = weight.getValue();
     bulkResult = td.getBulkResult();
 
@@ -173,6 +202,72 @@ final class TermScorer extends Scorer {
     return doc;
   }
 
+  /** Returns the score of the term's max frequency in a
+   *  document (see {@link TermsEnum#maxTermFreq}) with the
+   *  highest norm of the field; this assumes that {@link
+   *  Similarity#tf(float)} never decreases with the
+   *  frequency.  The bound is computed on the first call. */
+  @Override
+  public float maxScore() throws IOException {
+    if (Float.isNaN(maxScore)) {
+      final int maxFreq = maxTermFreq();
+      if (maxFreq == -1) {
+        maxScore = Float.POSITIVE_INFINITY;
+      } else {
+        // same arithmetic as score(), so the bound can't
+        // round below an actual score
+        float raw = maxFreq < SCORE_CACHE_SIZE ? 0.0f : getSimilarity().tf(maxFreq)*weightValue;
+        for (int i = 1; i < SCORE_CACHE_SIZE && i <= maxFreq; i++) {
+          raw = Math.max(raw, scoreCache[i]);
+        }
+        final float maxNorm = norms == null ? 1.0f : maxNorm();
+        maxScore = maxNorm == Float.POSITIVE_INFINITY ? maxNorm : raw * maxNorm;
+      }
+    }
+    return maxScore;
+  }
+
+  /** Returns the docFreq of the term in this segment,
+   *  which does not account for deletions. */
+  @Override
+  public long cost() {
+    return docFreq;
+  }
+
+  private int maxTermFreq() throws IOException {
+    if (maxTermFreq != -1 || docFreq > MAX_DOC_FREQ_TO_SCAN) {
+      return maxTermFreq;
+    }
+    // the codec does not record it, but the postings are
+    // short enough to scan
+    final DocsEnum docs = reader.termDocsEnum(null, term.field(), term.bytes());
+    if (docs == null) {
+      return -1;
+    }
+    int maxFreq = 0;
+    while (docs.nextDoc() != DocsEnum.NO_MORE_DOCS) {
+      maxFreq = Math.max(maxFreq, docs.freq());
+    }
+    return maxFreq;
+  }
+
+  private float maxNorm() throws IOException {
+    // the reader computes the distinct norms of the field
+    // once, rather than once per term
+    final Bits values = reader.normValues(term.field());
+    if (values == null) {
+      // the reader has norms(), but can't tell their values
+      return Float.POSITIVE_INFINITY;
+    }
+    float max = 0.0f;
+    for (int i = 0; i < 256; i++) {
+      if (values.get(i)) {
+        max = Math.max(max, getSimilarity().decodeNormValue((byte) i));
+      }
+    }
+    return max;
+  }
+
   /** Returns a string representation of this <code>TermScorer</code>. */
   @Override
   public String toString() { return "scorer(" + weight + ")"; }
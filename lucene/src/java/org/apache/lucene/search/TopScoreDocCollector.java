@@ -38,8 +38,8 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
 
   // Assumes docs are scored in order.
   private static class InOrderTopScoreDocCollector extends TopScoreDocCollector {
-    private InOrderTopScoreDocCollector(int numHits) {
-      super(numHits);
+    private InOrderTopScoreDocCollector(int numHits, boolean trackTotalHits) {
+      super(numHits, trackTotalHits);
     }
     
     @Override
@@ -60,6 +60,9 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
       pqTop.doc = doc + docBase;
       pqTop.score = score;
       pqTop = pq.updateTop();
+      if (!trackTotalHits) {
+        scorer.setMinCompetitiveScore(pqTop.score);
+      }
     }
     
     @Override
@@ -70,8 +73,8 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
 
   // Assumes docs are scored out of order.
   private static class OutOfOrderTopScoreDocCollector extends TopScoreDocCollector {
-    private OutOfOrderTopScoreDocCollector(int numHits) {
-      super(numHits);
+    private OutOfOrderTopScoreDocCollector(int numHits, boolean trackTotalHits) {
+      super(numHits, trackTotalHits);
     }
     
     @Override
@@ -89,6 +92,9 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
       pqTop.doc = doc;
       pqTop.score = score;
       pqTop = pq.updateTop();
+      if (!trackTotalHits) {
+        scorer.setMinCompetitiveScore(pqTop.score);
+      }
     }
     
     @Override
@@ -108,11 +114,28 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
    * objects.
    */
   public static TopScoreDocCollector create(int numHits, boolean docsScoredInOrder) {
+    return create(numHits, docsScoredInOrder, true);
+  }
+
+  /**
+   * Creates a new {@link TopScoreDocCollector}, like {@link
+   * #create(int, boolean)}.  If <code>trackTotalHits</code>
+   * is false, once the queue is full the collector tells the
+   * {@link Scorer} the score a document must beat to be
+   * competitive (see {@link Scorer#setMinCompetitiveScore}),
+   * so that scorers which support it can skip documents that
+   * cannot make the top hits.  The top hits are the same,
+   * but {@link TopDocs#totalHits} then only counts the
+   * documents that were collected.
+   *
+   * @lucene.experimental
+   */
+  public static TopScoreDocCollector create(int numHits, boolean docsScoredInOrder, boolean trackTotalHits) {
     
     if (docsScoredInOrder) {
-      return new InOrderTopScoreDocCollector(numHits);
+      return new InOrderTopScoreDocCollector(numHits, trackTotalHits);
     } else {
-      return new OutOfOrderTopScoreDocCollector(numHits);
+      return new OutOfOrderTopScoreDocCollector(numHits, trackTotalHits);
     }
     
   }
@@ -120,10 +143,12 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
   ScoreDoc pqTop;
   int docBase = 0;
   Scorer scorer;
+  final boolean trackTotalHits;
     
   // prevents instantiation
-  private TopScoreDocCollector(int numHits) {
+  private TopScoreDocCollector(int numHits, boolean trackTotalHits) {
     super(new HitQueue(numHits, true));
+    this.trackTotalHits = trackTotalHits;
     // HitQueue implements getSentinelObject to return a ScoreDoc, so we know
     // that at this point top() is already initialized.
     pqTop = pq.top();
@@ -158,5 +183,9 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
   @Override
   public void setScorer(Scorer scorer) throws IOException {
     this.scorer = scorer;
+    if (!trackTotalHits) {
+      // carry over the minimum from previous segments
+      scorer.setMinCompetitiveScore(pqTop.score);
+    }
   }
 }
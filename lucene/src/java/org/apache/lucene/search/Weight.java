@@ -21,6 +21,8 @@ import java.io.IOException;
 import java.io.Serializable;
 
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.util.Bits;
 
 /**
  * Expert: Calculate query weights and build query scorers.
@@ -98,7 +100,37 @@ public abstract class Weight implements Serializable {
    */
   public abstract Scorer scorer(IndexReader reader, boolean scoreDocsInOrder,
       boolean topScorer) throws IOException;
-  
+
+  /**
+   * Returns a {@link Scorer} like {@link
+   * #scorer(IndexReader,boolean,boolean)}, that does not
+   * match the documents set in <code>skipDocs</code>.  This
+   * is used to apply a filter with random access (see
+   * {@link DocIdSet#bits}), so <code>skipDocs</code> must
+   * also contain the reader's deleted documents, or be
+   * <code>null</code> to skip nothing.
+   * <p>
+   * Weights that iterate postings should override this to
+   * pass <code>skipDocs</code> to the {@link
+   * org.apache.lucene.index.DocsEnum}s, so that filtered
+   * documents are skipped like deleted ones.  The default
+   * implementation checks each document matched by an
+   * in-order scorer.
+   *
+   * @lucene.experimental
+   */
+  public Scorer scorer(IndexReader reader, Bits skipDocs, boolean scoreDocsInOrder,
+      boolean topScorer) throws IOException {
+    if (skipDocs == MultiFields.getDeletedDocs(reader)) {
+      return scorer(reader, scoreDocsInOrder, topScorer);
+    }
+    final Scorer scorer = scorer(reader, true, false);
+    if (scorer == null) {
+      return null;
+    }
+    return skipDocs == null ? scorer : new SkipDocsScorer(this, scorer, skipDocs);
+  }
+
   /** The sum of squared weights of contained query clauses. */
   public abstract float sumOfSquaredWeights() throws IOException;
 
@@ -22,6 +22,9 @@ import org.apache.lucene.util.ToStringUtils;
 import org.apache.lucene.util.automaton.Automaton;
 import org.apache.lucene.util.automaton.BasicAutomata;
 import org.apache.lucene.util.automaton.BasicOperations;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.apache.lucene.util.automaton.CompiledAutomatonCache;
+import org.apache.lucene.util.automaton.MinimizationOperations;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -49,7 +52,26 @@ public class WildcardQuery extends AutomatonQuery {
    * Constructs a query for terms matching <code>term</code>. 
    */
   public WildcardQuery(Term term) {
-    super(term, toAutomaton(term));
+    super(term, compile(term));
+  }
+
+  /** Returns the compiled automaton of the wildcard term,
+   *  from the default {@link CompiledAutomatonCache} if it
+   *  has it. */
+  private static CompiledAutomaton compile(Term wildcardquery) {
+    final CompiledAutomatonCache cache = CompiledAutomatonCache.getDefault();
+    final CompiledAutomatonCache.Key key = cache == null ? null :
+      new CompiledAutomatonCache.Key("wildcard", wildcardquery.text());
+    CompiledAutomaton compiled = cache == null ? null : cache.get(key);
+    if (compiled == null) {
+      final Automaton automaton = toAutomaton(wildcardquery);
+      MinimizationOperations.minimize(automaton);
+      compiled = new CompiledAutomaton(automaton);
+      if (cache != null) {
+        cache.put(key, compiled);
+      }
+    }
+    return compiled;
   }
   
   /**
@@ -0,0 +1,122 @@
+package org.apache.lucene.search.function;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.values.IndexDocValues;
+import org.apache.lucene.index.values.IndexDocValues.Source;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Expert: obtains the values of a field from its per-document
+ * {@link IndexDocValues}, rather than un-inverting the field
+ * through the {@link org.apache.lucene.search.FieldCache FieldCache}.
+ * <p>
+ * Numeric accessors require the field to be of type {@link
+ * IndexDocValues.Type#INTS}; {@link DocValues#strVal} also works
+ * on bytes values, decoding them as UTF-8.  Documents without a
+ * value, and segments without values for the field, read as 0 (or
+ * the empty string).
+ *
+ * @lucene.experimental
+ */
+public class IndexDocValuesSource extends ValueSource {
+  protected final String field;
+
+  /** 
+   * Constructor for a certain field.
+   * @param field field whose per-document values are used.  
+   */
+  public IndexDocValuesSource(String field) {
+    this.field = field;
+  }
+
+  /*(non-Javadoc) @see org.apache.lucene.search.function.ValueSource#description() */
+  @Override
+  public String description() {
+    return "indexValues(" + field + ')';
+  }
+
+  /*(non-Javadoc) @see org.apache.lucene.search.function.ValueSource#getValues(org.apache.lucene.index.IndexReader) */
+  @Override
+  public DocValues getValues(IndexReader reader) throws IOException {
+    final IndexDocValues docValues = reader.docValues(field);
+    final Source source = docValues == null ? null : docValues.getSource();
+    final boolean isBytes = docValues != null && docValues.type().isBytes();
+    return new DocValues() {
+      private final BytesRef spare = new BytesRef();
+
+      /*(non-Javadoc) @see org.apache.lucene.search.function.DocValues#floatVal(int) */
+      @Override
+      public float floatVal(int doc) {
+        return (float) longVal(doc);
+      }
+      /*(non-Javadoc) @see org.apache.lucene.search.function.DocValues#intVal(int) */
+      @Override
+      public int intVal(int doc) {
+        return (int) longVal(doc);
+      }
+      /*(non-Javadoc) @see org.apache.lucene.search.function.DocValues#longVal(int) */
+      @Override
+      public long longVal(int doc) {
+        return source == null ? 0 : source.getInt(doc);
+      }
+      /*(non-Javadoc) @see org.apache.lucene.search.function.DocValues#doubleVal(int) */
+      @Override
+      public double doubleVal(int doc) {
+        return (double) longVal(doc);
+      }
+      /*(non-Javadoc) @see org.apache.lucene.search.function.DocValues#strVal(int) */
+      @Override
+      public String strVal(int doc) {
+        if (isBytes) {
+          return source.getBytes(doc, spare).utf8ToString();
+        }
+        return Long.toString(longVal(doc));
+      }
+      /*(non-Javadoc) @see org.apache.lucene.search.function.DocValues#toString(int) */
+      @Override
+      public String toString(int doc) {
+        return description() + '=' + strVal(doc);
+      }
+      /*(non-Javadoc) @see org.apache.lucene.search.function.DocValues#getInnerArray() */
+      @Override
+      Object getInnerArray() {
+        return source;
+      }
+    };
+  }
+
+  /*(non-Javadoc) @see java.lang.Object#equals(java.lang.Object) */
+  @Override
+  public boolean equals(Object o) {
+    if (o == null || o.getClass() != IndexDocValuesSource.class) return false;
+    IndexDocValuesSource other = (IndexDocValuesSource)o;
+    return this.field.equals(other.field);
+  }
+
+  private static final int hcode = IndexDocValuesSource.class.hashCode();
+  
+  /*(non-Javadoc) @see java.lang.Object#hashCode() */
+  @Override
+  public int hashCode() {
+    return hcode + field.hashCode();
+  }
+}
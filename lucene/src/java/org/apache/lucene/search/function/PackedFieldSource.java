@@ -0,0 +1,142 @@
+package org.apache.lucene.search.function;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.function.DocValues;
+
+import java.io.IOException;
+
+/**
+ * Expert: obtains int or long field values from the 
+ * {@link org.apache.lucene.search.FieldCache FieldCache}
+ * using <code>getPackedInts()</code> or
+ * <code>getPackedLongs()</code>, which store only as many
+ * bits per document as the values need, and makes those
+ * values available as other numeric types, casting as
+ * needed.  Documents without a value have the value 0.
+ * 
+ * @lucene.experimental
+ * 
+ * @see org.apache.lucene.search.function.FieldCacheSource for requirements 
+ * on the field.
+ */
+public class PackedFieldSource extends FieldCacheSource {
+  private final FieldCache.Parser parser;
+  private final boolean ints;
+
+  /**
+   * Create a cached packed field source with the default
+   * string-to-int or string-to-long parser.
+   * @param ints true to parse values as ints, false for longs
+   */
+  public PackedFieldSource(String field, boolean ints) {
+    super(field);
+    this.parser = null;
+    this.ints = ints;
+  }
+
+  /**
+   * Create a cached packed int field source with a specific string-to-int parser. 
+   */
+  public PackedFieldSource(String field, FieldCache.IntParser parser) {
+    super(field);
+    this.parser = parser;
+    this.ints = true;
+  }
+
+  /**
+   * Create a cached packed long field source with a specific string-to-long parser. 
+   */
+  public PackedFieldSource(String field, FieldCache.LongParser parser) {
+    super(field);
+    this.parser = parser;
+    this.ints = false;
+  }
+
+  /*(non-Javadoc) @see org.apache.lucene.search.function.ValueSource#description() */
+  @Override
+  public String description() {
+    return (ints ? "packedInt(" : "packedLong(") + super.description() + ')';
+  }
+
+  /*(non-Javadoc) @see org.apache.lucene.search.function.FieldCacheSource#getCachedValues(org.apache.lucene.search.FieldCache, java.lang.String, org.apache.lucene.index.IndexReader) */
+  @Override
+  public DocValues getCachedFieldValues (FieldCache cache, String field, IndexReader reader) throws IOException {
+    final FieldCache.PackedValues values = ints ?
+      cache.getPackedInts(reader, field, (FieldCache.IntParser) parser) :
+      cache.getPackedLongs(reader, field, (FieldCache.LongParser) parser);
+    return new DocValues() {
+      /*(non-Javadoc) @see org.apache.lucene.search.function.DocValues#floatVal(int) */
+      @Override
+      public float floatVal(int doc) { 
+        return values.get(doc); 
+      }
+      /*(non-Javadoc) @see org.apache.lucene.search.function.DocValues#intVal(int) */
+      @Override
+      public int intVal(int doc) { 
+        return (int) values.get(doc); 
+      }
+      /*(non-Javadoc) @see org.apache.lucene.search.function.DocValues#longVal(int) */
+      @Override
+      public long longVal(int doc) { 
+        return values.get(doc); 
+      }
+      /*(non-Javadoc) @see org.apache.lucene.search.function.DocValues#doubleVal(int) */
+      @Override
+      public double doubleVal(int doc) { 
+        return values.get(doc); 
+      }
+      /*(non-Javadoc) @see org.apache.lucene.search.function.DocValues#toString(int) */
+      @Override
+      public String toString(int doc) { 
+        return description() + '=' + longVal(doc);  
+      }
+      /*(non-Javadoc) @see org.apache.lucene.search.function.DocValues#getInnerArray() */
+      @Override
+      Object getInnerArray() {
+        return values;
+      }
+    };
+  }
+
+  /*(non-Javadoc) @see org.apache.lucene.search.function.FieldCacheSource#cachedFieldSourceEquals(org.apache.lucene.search.function.FieldCacheSource) */
+  @Override
+  public boolean cachedFieldSourceEquals(FieldCacheSource o) {
+    if (o.getClass() != PackedFieldSource.class) {
+      return false;
+    }
+    PackedFieldSource other = (PackedFieldSource)o;
+    if (this.ints != other.ints) {
+      return false;
+    }
+    return this.parser==null ? 
+      other.parser==null :
+      other.parser != null && this.parser.getClass() == other.parser.getClass();
+  }
+
+  /*(non-Javadoc) @see org.apache.lucene.search.function.FieldCacheSource#cachedFieldSourceHashCode() */
+  @Override
+  public int cachedFieldSourceHashCode() {
+    final int h = parser==null ? 
+      (ints ? Integer.class : Long.class).hashCode() : parser.getClass().hashCode();
+    return h ^ 0x2b3e8c0d;
+  }
+
+}
@@ -138,6 +138,22 @@ public abstract class Directory implements Closeable {
     return openInput(name);
   }
 
+  /** Expert: returns the directory that {@link
+   * org.apache.lucene.index.IndexWriter} uses to write, and
+   * read back, the files of a new merged segment.
+   * <code>mergeBytes</code> is the approximate size of the
+   * segments being merged.  The returned directory must see
+   * the same files as this one, but it may use a different
+   * IO strategy, for example one that bypasses the OS cache
+   * so that big merges do not evict the files searches are
+   * using.  The default implementation returns this
+   * directory.
+   * @lucene.experimental
+   */
+  public Directory getMergeDirectory(long mergeBytes) {
+    return this;
+  }
+
   /** Construct a {@link Lock}.
    * @param name the name of the lock file
    */
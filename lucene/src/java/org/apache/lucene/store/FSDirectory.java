@@ -184,9 +184,12 @@ public abstract class FSDirectory extends Directory {
    *  best implementation given the current environment.
    *  The directory returned uses the {@link NativeFSLockFactory}.
    *
-   *  <p>Currently this returns {@link NIOFSDirectory}
-   *  on non-Windows JREs and {@link SimpleFSDirectory}
-   *  on Windows. It is highly recommended that you consult the
+   *  <p>Currently this returns {@link MMapDirectory} for
+   *  64 bit JVMs on Linux, Solaris and Windows that support
+   *  unmapping (see {@link MMapDirectory#UNMAP_SUPPORTED}),
+   *  {@link NIOFSDirectory} on other non-Windows JREs and
+   *  {@link SimpleFSDirectory} on other Windows JREs. It is
+   *  highly recommended that you consult the
    *  implementation's documentation for your platform before
    *  using this method.
    *
@@ -195,11 +198,7 @@ public abstract class FSDirectory extends Directory {
    * the event that higher performance defaults become
    * possible; if the precise implementation is important to
    * your application, please instantiate it directly,
-   * instead. On 64 bit systems, it may also good to
-   * return {@link MMapDirectory}, but this is disabled
-   * because of officially missing unmap support in Java.
-   * For optimal performance you should consider using
-   * this implementation on 64 bit JVMs.
+   * instead.
    *
    * <p>See <a href="#subclasses">above</a> */
   public static FSDirectory open(File path) throws IOException {
@@ -209,7 +208,10 @@ public abstract class FSDirectory extends Directory {
   /** Just like {@link #open(File)}, but allows you to
    *  also specify a custom {@link LockFactory}. */
   public static FSDirectory open(File path, LockFactory lockFactory) throws IOException {
-    if (Constants.WINDOWS) {
+    if ((Constants.WINDOWS || Constants.SUN_OS || Constants.LINUX)
+          && Constants.JRE_IS_64BIT && MMapDirectory.UNMAP_SUPPORTED) {
+      return new MMapDirectory(path, lockFactory);
+    } else if (Constants.WINDOWS) {
       return new SimpleFSDirectory(path, lockFactory);
     } else {
       return new NIOFSDirectory(path, lockFactory);
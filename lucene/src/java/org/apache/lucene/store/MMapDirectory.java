@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.ClosedChannelException; // javadoc @link
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
@@ -30,6 +31,9 @@ import java.security.AccessController;
 import java.security.PrivilegedExceptionAction;
 import java.security.PrivilegedActionException;
 import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.apache.lucene.util.Constants;
 
@@ -48,6 +52,12 @@ import org.apache.lucene.util.Constants;
  * address space. If you get an OutOfMemoryException, it is recommended
  * to reduce the chunk size, until it works.
  *
+ * <p>Files can be loaded into physical memory as soon as they
+ * are opened, see {@link #setPreloadExtensions}.  This is useful
+ * for small files that are accessed randomly by every query, like
+ * the terms index and norms, so that the first queries against a
+ * freshly opened index do not pay for page faults.
+ *
  * <p>Due to <a href="http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4724038">
  * this bug</a> in Sun's JRE, MMapDirectory's {@link IndexInput#close}
  * is unable to close the underlying OS file handle.  Only when GC
@@ -64,8 +74,8 @@ import org.apache.lucene.util.Constants;
  * an important limitation to be aware of.
  *
  * <p>This class supplies the workaround mentioned in the bug report
- * (disabled by default, see {@link #setUseUnmap}), which may fail on
- * non-Sun JVMs. It forcefully unmaps the buffer on close by using
+ * (enabled by default if {@link #UNMAP_SUPPORTED}, see {@link
+ * #setUseUnmap}), which may fail on non-Sun JVMs. It forcefully unmaps the buffer on close by using
  * an undocumented internal cleanup functionality.
  * {@link #UNMAP_SUPPORTED} is <code>true</code>, if the workaround
  * can be enabled (with no guarantees).
@@ -78,8 +88,16 @@ import org.apache.lucene.util.Constants;
  * </p>
  */
 public class MMapDirectory extends FSDirectory {
-  private boolean useUnmapHack = false;
-  private int maxBBuf = Constants.JRE_IS_64BIT ? Integer.MAX_VALUE : (256 * 1024 * 1024);
+  private boolean useUnmapHack = UNMAP_SUPPORTED;
+  private volatile Set<String> preloadExtensions = Collections.emptySet();
+  private int chunkSizePower;
+
+  /**
+   * Default max chunk size: 1 GiByte for 64 bit JVMs and 256 MiBytes
+   * for 32 bit JVMs.
+   * @see #setMaxChunkSize
+   */
+  public static final int DEFAULT_MAX_BUFF = Constants.JRE_IS_64BIT ? (1 << 30) : (1 << 28);
 
   /** Create a new MMapDirectory for the named location.
    *
@@ -90,6 +108,7 @@ public class MMapDirectory extends FSDirectory {
    */
   public MMapDirectory(File path, LockFactory lockFactory) throws IOException {
     super(path, lockFactory);
+    setMaxChunkSize(DEFAULT_MAX_BUFF);
   }
 
   /** Create a new MMapDirectory for the named location and {@link NativeFSLockFactory}.
@@ -98,7 +117,7 @@ public class MMapDirectory extends FSDirectory {
    * @throws IOException
    */
   public MMapDirectory(File path) throws IOException {
-    super(path, null);
+    this(path, null);
   }
 
   /**
@@ -174,20 +193,23 @@ public class MMapDirectory extends FSDirectory {
   }
   
   /**
-   * Sets the maximum chunk size (default is {@link Integer#MAX_VALUE} for
-   * 64 bit JVMs and 256 MiBytes for 32 bit JVMs) used for memory mapping.
+   * Sets the maximum chunk size (default is {@link #DEFAULT_MAX_BUFF})
+   * used for memory mapping.  The given value is rounded down to a
+   * power of two, so that the chunk of a file position can be found
+   * with a shift and the offset in the chunk with a mask.
    * Especially on 32 bit platform, the address space can be very fragmented,
    * so large index files cannot be mapped.
    * Using a lower chunk size makes the directory implementation a little
    * bit slower (as the correct chunk must be resolved on each seek)
    * but the chance is higher that mmap does not fail. On 64 bit
-   * Java platforms, this parameter should always be {@link Integer#MAX_VALUE},
-   * as the address space is big enough.
+   * Java platforms, this parameter should usually be left at its
+   * default, as the address space is big enough.
    */
-  public void setMaxChunkSize(final int maxBBuf) {
-    if (maxBBuf<=0)
+  public void setMaxChunkSize(final int maxChunkSize) {
+    if (maxChunkSize <= 0)
       throw new IllegalArgumentException("Maximum chunk size for mmap must be >0");
-    this.maxBBuf=maxBBuf;
+    this.chunkSizePower = 31 - Integer.numberOfLeadingZeros(maxChunkSize);
+    assert this.chunkSizePower >= 0 && this.chunkSizePower <= 30;
   }
   
   /**
@@ -195,7 +217,28 @@ public class MMapDirectory extends FSDirectory {
    * @see #setMaxChunkSize
    */
   public int getMaxChunkSize() {
-    return maxBBuf;
+    return 1 << chunkSizePower;
+  }
+
+  /**
+   * Sets the extensions (without the leading dot, for example
+   * <code>"tii"</code> or <code>"nrm"</code>) of the files whose
+   * mapped contents are loaded into physical memory when they are
+   * opened.  Loading is only a hint to the operating system, and
+   * costs a full read of the file on open, so only use it for
+   * files that are small and randomly accessed.  By default no
+   * files are preloaded.
+   */
+  public void setPreloadExtensions(Set<String> extensions) {
+    preloadExtensions = Collections.unmodifiableSet(new HashSet<String>(extensions));
+  }
+
+  /**
+   * Returns the extensions of the files that are preloaded on open.
+   * @see #setPreloadExtensions
+   */
+  public Set<String> getPreloadExtensions() {
+    return preloadExtensions;
   }
 
   /** Creates an IndexInput for the file with the given name. */
@@ -204,24 +247,33 @@ public class MMapDirectory extends FSDirectory {
     ensureOpen();
     File f = new File(getDirectory(), name);
     RandomAccessFile raf = new RandomAccessFile(f, "r");
+    final boolean preload = preloadExtensions.contains(FileSwitchDirectory.getExtension(name));
     try {
-      return (raf.length() <= maxBBuf)
-             ? (IndexInput) new MMapIndexInput(raf)
-             : (IndexInput) new MultiMMapIndexInput(raf, maxBBuf);
+      return (raf.length() <= (1L << chunkSizePower))
+             ? (IndexInput) new MMapIndexInput(raf, preload)
+             : (IndexInput) new MultiMMapIndexInput(raf, chunkSizePower, preload);
     } finally {
       raf.close();
     }
   }
 
+  private static ByteBuffer map(FileChannel channel, long offset, long length, boolean preload) throws IOException {
+    final MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, offset, length);
+    if (preload) {
+      buffer.load();
+    }
+    return buffer;
+  }
+
   private class MMapIndexInput extends IndexInput {
 
     private ByteBuffer buffer;
     private final long length;
     private boolean isClone = false;
 
-    private MMapIndexInput(RandomAccessFile raf) throws IOException {
+    private MMapIndexInput(RandomAccessFile raf, boolean preload) throws IOException {
         this.length = raf.length();
-        this.buffer = raf.getChannel().map(MapMode.READ_ONLY, 0, length);
+        this.buffer = map(raf.getChannel(), 0, length, preload);
     }
 
     @Override
@@ -280,6 +332,8 @@ public class MMapDirectory extends FSDirectory {
   // Because Java's ByteBuffer uses an int to address the
   // values, it's necessary to access a file >
   // Integer.MAX_VALUE in size using multiple byte buffers.
+  // All buffers but the last are 1 << chunkSizePower bytes,
+  // so positions are resolved with a shift and a mask.
   private class MultiMMapIndexInput extends IndexInput {
   
     private ByteBuffer[] buffers;
@@ -288,29 +342,33 @@ public class MMapDirectory extends FSDirectory {
     private final long length;
   
     private int curBufIndex;
-    private final int maxBufSize;
+    private final int chunkSizePower;
+    private final long chunkSizeMask;
   
     private ByteBuffer curBuf; // redundant for speed: buffers[curBufIndex]
     private int curAvail; // redundant for speed: (bufSizes[curBufIndex] - curBuf.position())
   
     private boolean isClone = false;
     
-    public MultiMMapIndexInput(RandomAccessFile raf, int maxBufSize)
+    public MultiMMapIndexInput(RandomAccessFile raf, int chunkSizePower, boolean preload)
       throws IOException {
       this.length = raf.length();
-      this.maxBufSize = maxBufSize;
+      this.chunkSizePower = chunkSizePower;
       
-      if (maxBufSize <= 0)
-        throw new IllegalArgumentException("Non positive maxBufSize: "
-                                           + maxBufSize);
+      if (chunkSizePower < 0 || chunkSizePower > 30)
+        throw new IllegalArgumentException("Invalid chunkSizePower used for ByteBuffer size: "
+                                           + chunkSizePower);
       
-      if ((length / maxBufSize) > Integer.MAX_VALUE)
+      if ((length >>> chunkSizePower) >= Integer.MAX_VALUE)
         throw new IllegalArgumentException
-          ("RandomAccessFile too big for maximum buffer size: "
+          ("RandomAccessFile too big for chunk size: "
            + raf.toString());
       
-      int nrBuffers = (int) (length / maxBufSize);
-      if (((long) nrBuffers * maxBufSize) <= length) nrBuffers++;
+      final long chunkSize = 1L << chunkSizePower;
+      this.chunkSizeMask = chunkSize - 1L;
+
+      // we always allocate one more buffer, the last one may be a 0 byte one
+      final int nrBuffers = (int) (length >>> chunkSizePower) + 1;
       
       this.buffers = new ByteBuffer[nrBuffers];
       this.bufSizes = new int[nrBuffers];
@@ -318,10 +376,10 @@ public class MMapDirectory extends FSDirectory {
       long bufferStart = 0;
       FileChannel rafc = raf.getChannel();
       for (int bufNr = 0; bufNr < nrBuffers; bufNr++) { 
-        int bufSize = (length > (bufferStart + maxBufSize))
-          ? maxBufSize
-          : (int) (length - bufferStart);
-        this.buffers[bufNr] = rafc.map(MapMode.READ_ONLY,bufferStart,bufSize);
+        int bufSize = (int) ((length > (bufferStart + chunkSize))
+          ? chunkSize
+          : (length - bufferStart));
+        this.buffers[bufNr] = map(rafc, bufferStart, bufSize, preload);
         this.bufSizes[bufNr] = bufSize;
         bufferStart += bufSize;
       }
@@ -363,14 +421,14 @@ public class MMapDirectory extends FSDirectory {
   
     @Override
     public long getFilePointer() {
-      return ((long) curBufIndex * maxBufSize) + curBuf.position();
+      return (((long) curBufIndex) << chunkSizePower) + curBuf.position();
     }
   
     @Override
     public void seek(long pos) throws IOException {
-      curBufIndex = (int) (pos / maxBufSize);
+      curBufIndex = (int) (pos >>> chunkSizePower);
       curBuf = buffers[curBufIndex];
-      int bufOffset = (int) (pos - ((long) curBufIndex * maxBufSize));
+      final int bufOffset = (int) (pos & chunkSizeMask);
       curBuf.position(bufOffset);
       curAvail = bufSizes[curBufIndex] - bufOffset;
     }
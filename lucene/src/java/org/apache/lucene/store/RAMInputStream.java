@@ -83,19 +83,23 @@ class RAMInputStream extends IndexInput implements Cloneable {
   }
 
   private final void switchCurrentBuffer(boolean enforceEOF) throws IOException {
+    bufferStart = (long) BUFFER_SIZE * (long) currentBufferIndex;
     if (currentBufferIndex >= file.numBuffers()) {
       // end of file reached, no more buffers left
       if (enforceEOF)
         throw new IOException("Read past EOF");
       else {
-        // Force EOF if a read takes place at this position
+        // Force EOF if a read takes place at this position.
+        // bufferStart must still move, else a later seek
+        // back into the previous buffer would not switch to
+        // it and would keep the wrong buffer index
         currentBufferIndex--;
-        bufferPosition = BUFFER_SIZE;
+        bufferPosition = 0;
+        bufferLength = 0;
       }
     } else {
       currentBuffer = file.getBuffer(currentBufferIndex);
       bufferPosition = 0;
-      bufferStart = (long) BUFFER_SIZE * (long) currentBufferIndex;
       long buflen = length - bufferStart;
       bufferLength = buflen > BUFFER_SIZE ? BUFFER_SIZE : (int) buflen;
     }
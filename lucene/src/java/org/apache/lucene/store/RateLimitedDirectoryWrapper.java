@@ -0,0 +1,144 @@
+package org.apache.lucene.store;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Expert: A Directory wrapper that throttles the bytes
+ * written to every {@link IndexOutput} it creates with the
+ * provided {@link RateLimiter}.  All other operations are
+ * passed through to the wrapped directory.
+ *
+ * <p>{@link org.apache.lucene.index.IndexWriter} uses this
+ * to limit the write rate of merges, see {@link
+ * org.apache.lucene.index.ConcurrentMergeScheduler#setMaxMergeWriteMBPerSec}.</p>
+ *
+ * @lucene.experimental
+ */
+public class RateLimitedDirectoryWrapper extends Directory {
+  private final Directory delegate;
+  private final RateLimiter rateLimiter;
+
+  public RateLimitedDirectoryWrapper(Directory delegate, RateLimiter rateLimiter) {
+    this.delegate = delegate;
+    this.rateLimiter = rateLimiter;
+  }
+
+  /** Return the wrapped directory */
+  public Directory getDelegate() {
+    return delegate;
+  }
+
+  /** Return the rate limiter shared by all outputs */
+  public RateLimiter getRateLimiter() {
+    return rateLimiter;
+  }
+
+  @Override
+  public String[] listAll() throws IOException {
+    return delegate.listAll();
+  }
+
+  @Override
+  public boolean fileExists(String name) throws IOException {
+    return delegate.fileExists(name);
+  }
+
+  @Override
+  public long fileModified(String name) throws IOException {
+    return delegate.fileModified(name);
+  }
+
+  @Override
+  public void touchFile(String name) throws IOException {
+    delegate.touchFile(name);
+  }
+
+  @Override
+  public void deleteFile(String name) throws IOException {
+    delegate.deleteFile(name);
+  }
+
+  @Override
+  public long fileLength(String name) throws IOException {
+    return delegate.fileLength(name);
+  }
+
+  @Override
+  public IndexOutput createOutput(String name) throws IOException {
+    return new RateLimitedIndexOutput(rateLimiter, delegate.createOutput(name));
+  }
+
+  @Deprecated
+  @Override
+  public void sync(String name) throws IOException {
+    delegate.sync(name);
+  }
+
+  @Override
+  public void sync(Collection<String> names) throws IOException {
+    delegate.sync(names);
+  }
+
+  @Override
+  public IndexInput openInput(String name) throws IOException {
+    return delegate.openInput(name);
+  }
+
+  @Override
+  public IndexInput openInput(String name, int bufferSize) throws IOException {
+    return delegate.openInput(name, bufferSize);
+  }
+
+  @Override
+  public Lock makeLock(String name) {
+    return delegate.makeLock(name);
+  }
+
+  @Override
+  public void clearLock(String name) throws IOException {
+    delegate.clearLock(name);
+  }
+
+  @Override
+  public void setLockFactory(LockFactory lockFactory) {
+    delegate.setLockFactory(lockFactory);
+  }
+
+  @Override
+  public LockFactory getLockFactory() {
+    return delegate.getLockFactory();
+  }
+
+  @Override
+  public String getLockID() {
+    return delegate.getLockID();
+  }
+
+  @Override
+  public void close() throws IOException {
+    delegate.close();
+  }
+
+  @Override
+  public String toString() {
+    return "RateLimitedDirectoryWrapper(" + delegate.toString() + ")";
+  }
+}
@@ -36,6 +36,19 @@ public class DocIdBitSet extends DocIdSet {
     return new DocIdBitSetIterator(bitSet);
   }
 
+  @Override
+  public Bits bits() {
+    return new Bits() {
+      public boolean get(int index) {
+        return bitSet.get(index);
+      }
+
+      public int length() {
+        return bitSet.size();
+      }
+    };
+  }
+
   /** This DocIdSet implementation is cacheable. */
   @Override
   public boolean isCacheable() {
@@ -79,5 +92,12 @@ public class DocIdBitSet extends DocIdSet {
       docId = d == -1 ? NO_MORE_DOCS : d;
       return docId;
     }
+
+    /** Returns the number of set bits, which is computed on
+     * each call. */
+    @Override
+    public long cost() {
+      return bitSet.cardinality();
+    }
   }
 }
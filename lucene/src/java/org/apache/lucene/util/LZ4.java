@@ -0,0 +1,230 @@
+package org.apache.lucene.util;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+
+/**
+ * Fast LZ77-style compression, using the LZ4 block format.
+ * Compression greedily looks for matches of at least 4
+ * bytes at most 64 KB back, using a hash table of the
+ * last position of each 4-byte sequence.  It is cheap
+ * enough to run on every flush and merge, and decompression
+ * is little more than a series of array copies.
+ *
+ * <p>The compressed stream does not record the length of
+ * the uncompressed data, so callers must store it
+ * themselves and pass it to {@link #decompress}.</p>
+ *
+ * @lucene.internal
+ */
+public final class LZ4 {
+
+  private LZ4() {}
+
+  static final int MEMORY_USAGE = 14;
+  static final int MIN_MATCH = 4; // minimum length of a match
+  static final int MAX_DISTANCE = 1 << 16; // maximum distance of a reference
+  static final int LAST_LITERALS = 5; // the last 5 bytes are always literals
+  static final int HASH_LOG = MEMORY_USAGE - 2;
+
+  /** Extra bytes {@link #decompress} may write past the
+   *  end of the decompressed data; size destination arrays
+   *  to at least <code>decompressedLen + COPY_OVERRUN</code>. */
+  public static final int COPY_OVERRUN = 7;
+
+  private static int hash(int i) {
+    return (i * -1640531535) >>> (32 - HASH_LOG);
+  }
+
+  private static int readInt(byte[] buf, int i) {
+    return ((buf[i] & 0xFF) << 24) | ((buf[i+1] & 0xFF) << 16) | ((buf[i+2] & 0xFF) << 8) | (buf[i+3] & 0xFF);
+  }
+
+  private static int commonBytes(byte[] b, int o1, int o2, int limit) {
+    assert o1 < o2;
+    int count = 0;
+    while (o2 < limit && b[o1++] == b[o2++]) {
+      ++count;
+    }
+    return count;
+  }
+
+  /**
+   * Decompress exactly <code>decompressedLen</code> bytes
+   * from <code>compressed</code> into <code>dest</code>,
+   * starting at offset 0.  <code>dest</code> must have room
+   * for <code>decompressedLen + {@link #COPY_OVERRUN}</code>
+   * bytes.
+   */
+  public static void decompress(DataInput compressed, int decompressedLen, byte[] dest) throws IOException {
+    assert dest.length >= decompressedLen + COPY_OVERRUN;
+    int dOff = 0;
+    do {
+      // literals
+      final int token = compressed.readByte() & 0xFF;
+      int literalLen = token >>> 4;
+
+      if (literalLen != 0) {
+        if (literalLen == 0x0F) {
+          byte len;
+          while ((len = compressed.readByte()) == (byte) 0xFF) {
+            literalLen += 0xFF;
+          }
+          literalLen += len & 0xFF;
+        }
+        compressed.readBytes(dest, dOff, literalLen);
+        dOff += literalLen;
+      }
+
+      if (dOff >= decompressedLen) {
+        break;
+      }
+
+      // match
+      final int matchDec = (compressed.readByte() & 0xFF) | ((compressed.readByte() & 0xFF) << 8);
+      assert matchDec > 0;
+
+      int matchLen = token & 0x0F;
+      if (matchLen == 0x0F) {
+        int len;
+        while ((len = compressed.readByte()) == (byte) 0xFF) {
+          matchLen += 0xFF;
+        }
+        matchLen += len & 0xFF;
+      }
+      matchLen += MIN_MATCH;
+
+      // copying a multiple of 8 bytes is faster, hence COPY_OVERRUN
+      final int fastLen = (matchLen + 7) & 0xFFFFFFF8;
+      if (matchDec < matchLen || dOff + fastLen > dest.length) {
+        // overlapping: copy byte by byte
+        for (int ref = dOff - matchDec, end = dOff + matchLen; dOff < end; ++ref, ++dOff) {
+          dest[dOff] = dest[ref];
+        }
+      } else {
+        System.arraycopy(dest, dOff - matchDec, dest, dOff, fastLen);
+        dOff += matchLen;
+      }
+    } while (dOff < decompressedLen);
+
+    if (dOff != decompressedLen) {
+      throw new IOException("decompressed " + dOff + " bytes but expected " + decompressedLen + ": data is corrupt");
+    }
+  }
+
+  private static void encodeLen(int l, DataOutput out) throws IOException {
+    while (l >= 0xFF) {
+      out.writeByte((byte) 0xFF);
+      l -= 0xFF;
+    }
+    out.writeByte((byte) l);
+  }
+
+  private static void encodeLiterals(byte[] bytes, int token, int anchor, int literalLen, DataOutput out) throws IOException {
+    out.writeByte((byte) token);
+
+    // encode literal length
+    if (literalLen >= 0x0F) {
+      encodeLen(literalLen - 0x0F, out);
+    }
+
+    // encode literals
+    out.writeBytes(bytes, anchor, literalLen);
+  }
+
+  private static void encodeLastLiterals(byte[] bytes, int anchor, int literalLen, DataOutput out) throws IOException {
+    final int token = Math.min(literalLen, 0x0F) << 4;
+    encodeLiterals(bytes, token, anchor, literalLen, out);
+  }
+
+  private static void encodeSequence(byte[] bytes, int anchor, int matchRef, int matchOff, int matchLen, DataOutput out) throws IOException {
+    final int literalLen = matchOff - anchor;
+    assert matchLen >= MIN_MATCH;
+    // encode token
+    final int token = (Math.min(literalLen, 0x0F) << 4) | Math.min(matchLen - MIN_MATCH, 0x0F);
+    encodeLiterals(bytes, token, anchor, literalLen, out);
+
+    // encode match distance
+    final int matchDec = matchOff - matchRef;
+    assert matchDec > 0 && matchDec < MAX_DISTANCE;
+    out.writeByte((byte) matchDec);
+    out.writeByte((byte) (matchDec >>> 8));
+
+    // encode match length
+    if (matchLen >= MIN_MATCH + 0x0F) {
+      encodeLen(matchLen - 0x0F - MIN_MATCH, out);
+    }
+  }
+
+  /**
+   * Reusable hash table for {@link #compress}, so that
+   * compressing many small blocks does not allocate.
+   */
+  public static final class HashTable {
+    final int[] table = new int[1 << HASH_LOG];
+  }
+
+  /**
+   * Compress <code>bytes[off:off+len]</code> into
+   * <code>out</code>.
+   */
+  public static void compress(byte[] bytes, int off, int len, DataOutput out, HashTable ht) throws IOException {
+    final int end = off + len;
+    int anchor = off;
+
+    if (len > LAST_LITERALS + MIN_MATCH) {
+      final int limit = end - LAST_LITERALS;
+      final int matchLimit = limit - MIN_MATCH;
+      final int[] table = ht.table;
+      Arrays.fill(table, -1);
+
+      int o = off + 1;
+      main:
+      while (o < matchLimit) {
+        // find a match
+        int ref;
+        while (true) {
+          if (o >= matchLimit) {
+            break main;
+          }
+          final int v = readInt(bytes, o);
+          final int h = hash(v);
+          ref = table[h];
+          table[h] = o;
+          if (ref != -1 && o - ref < MAX_DISTANCE && readInt(bytes, ref) == v) {
+            break;
+          }
+          ++o;
+        }
+
+        final int matchLen = MIN_MATCH + commonBytes(bytes, ref + MIN_MATCH, o + MIN_MATCH, limit);
+        encodeSequence(bytes, anchor, ref, o, matchLen, out);
+        o += matchLen;
+        anchor = o;
+      }
+    }
+
+    // last literals
+    encodeLastLiterals(bytes, anchor, end - anchor, out);
+  }
+}
@@ -115,6 +115,12 @@ public class OpenBitSet extends DocIdSet implements Bits, Cloneable, Serializabl
     return new OpenBitSetIterator(bits, wlen);
   }
 
+  /** Returns this set, which supports random access. */
+  @Override
+  public Bits bits() {
+    return this;
+  }
+
   /** This DocIdSet implementation is cacheable. */
   @Override
   public boolean isCacheable() {
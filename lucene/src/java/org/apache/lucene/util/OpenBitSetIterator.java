@@ -185,6 +185,13 @@ public class OpenBitSetIterator extends DocIdSetIterator {
     return curDocId = (i<<6) + bitIndex;
   }
 
+  /** Returns the number of set bits, which is computed on
+   * each call. */
+  @Override
+  public long cost() {
+    return BitUtil.pop_array(arr, 0, words);
+  }
+
   @Override
   public int docID() {
     return curDocId;
@@ -222,6 +222,11 @@ public class SortedVIntList extends DocIdSet {
         return doc;
       }
       
+      @Override
+      public long cost() {
+        return size;
+      }
+      
       @Override
       public int advance(int target) {
         while (bytePos < lastBytePos) {
@@ -0,0 +1,89 @@
+package org.apache.lucene.util.automaton;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * An {@link Automaton} compiled for matching against the
+ * terms of an index, eg with {@link
+ * org.apache.lucene.index.Terms#intersect}: it holds the
+ * UTF-8 {@link ByteRunAutomaton} and what is needed to
+ * enumerate the terms it accepts.
+ * <p>
+ * Instances are immutable once constructed, so one can be
+ * shared by any number of threads and segments.
+ *
+ * @lucene.experimental
+ */
+public class CompiledAutomaton {
+  /** The tableized UTF-8 form of the automaton. */
+  public final ByteRunAutomaton runAutomaton;
+  /** True if the automaton accepts a finite language. */
+  public final boolean finite;
+  /** Common suffix of the accepted terms, or
+   *  <code>null</code> if the automaton is finite. */
+  public final BytesRef commonSuffixRef;
+  // sorted transitions of each state of the UTF-8
+  // automaton, indexed by state number
+  private final Transition[][] sortedTransitions;
+  // private copy of the automaton this was compiled from:
+  // it is numbered here, so that cloning it later only
+  // reads it
+  private final Automaton automaton;
+
+  /** Compiles <code>automaton</code>, and computes whether
+   *  it is finite. */
+  public CompiledAutomaton(Automaton automaton) {
+    this(automaton, SpecialOperations.isFinite(automaton));
+  }
+
+  /** Compiles <code>automaton</code>, which accepts a
+   *  finite language iff <code>finite</code> is true. */
+  public CompiledAutomaton(Automaton automaton, boolean finite) {
+    this.automaton = automaton.clone();
+    if (!this.automaton.isSingleton()) {
+      this.automaton.getNumberedStates();
+    }
+    runAutomaton = new ByteRunAutomaton(automaton);
+    this.finite = finite;
+    final Automaton utf8 = runAutomaton.getAutomaton();
+    // don't use suffix w/ finite DFAs
+    commonSuffixRef = finite ? null : SpecialOperations.getCommonSuffixBytesRef(utf8);
+    sortedTransitions = new Transition[runAutomaton.getSize()][];
+    for (State state : utf8.getNumberedStates()) {
+      state.sortTransitions(Transition.CompareByMinMaxThenDest);
+      state.trimTransitionsArray();
+      sortedTransitions[state.getNumber()] = state.transitionsArray;
+    }
+  }
+
+  /** Returns the transitions of each state of the UTF-8
+   *  automaton, sorted by min, max then destination, and
+   *  indexed by state number.  The returned array must
+   *  not be modified. */
+  public Transition[][] getSortedTransitions() {
+    return sortedTransitions;
+  }
+
+  /** Returns a new copy of the automaton this was compiled
+   *  from, that the caller may modify. */
+  public Automaton getAutomaton() {
+    return automaton.clone();
+  }
+}
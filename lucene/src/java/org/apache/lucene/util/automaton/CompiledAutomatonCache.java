@@ -0,0 +1,150 @@
+package org.apache.lucene.util.automaton;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.util.DoubleBarrelLRUCache;
+
+/**
+ * A bounded cache of {@link CompiledAutomaton}s, shared by
+ * the queries that build the same automaton over and over,
+ * eg {@link org.apache.lucene.search.RegexpQuery}, {@link
+ * org.apache.lucene.search.WildcardQuery} and {@link
+ * org.apache.lucene.search.FuzzyQuery}: determinizing,
+ * minimizing and compiling an automaton to UTF-8 often costs
+ * more than running it over the terms.
+ * <p>
+ * Entries are keyed by what the automaton is built from,
+ * see {@link Key}.  The cache is safe for use by multiple
+ * threads, as are the {@link CompiledAutomaton}s it holds.
+ * It is an LRU cache (see {@link DoubleBarrelLRUCache}), so
+ * it holds at most twice its max size entries.
+ *
+ * @lucene.experimental
+ */
+public final class CompiledAutomatonCache {
+
+  /** Max size of the default cache. */
+  public static final int DEFAULT_MAX_SIZE = 512;
+
+  private static volatile CompiledAutomatonCache defaultCache = new CompiledAutomatonCache(DEFAULT_MAX_SIZE);
+
+  /** Returns the cache used by the queries, or
+   *  <code>null</code> if caching is disabled. */
+  public static CompiledAutomatonCache getDefault() {
+    return defaultCache;
+  }
+
+  /** Sets the cache used by the queries created from now
+   *  on; <code>null</code> disables caching. */
+  public static void setDefault(CompiledAutomatonCache cache) {
+    defaultCache = cache;
+  }
+
+  /**
+   * Key of a cached automaton: the type of the automaton (eg
+   * <code>"regexp"</code>), the text it is built from and
+   * any options that change it.  Keys are immutable.
+   */
+  public static final class Key extends DoubleBarrelLRUCache.CloneableKey {
+    private final String type;
+    private final String text;
+    private final int[] options;
+    private final int hashCode;
+
+    public Key(String type, String text, int... options) {
+      this.type = type;
+      this.text = text;
+      this.options = options.clone();
+      this.hashCode = (type.hashCode() * 31 + text.hashCode()) * 31 + Arrays.hashCode(this.options);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      final Key key = (Key) other;
+      return hashCode == key.hashCode && type.equals(key.type) &&
+        text.equals(key.text) && Arrays.equals(options, key.options);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public Object clone() {
+      // immutable
+      return this;
+    }
+
+    @Override
+    public String toString() {
+      return type + ":" + text + Arrays.toString(options);
+    }
+  }
+
+  private final DoubleBarrelLRUCache<Key,CompiledAutomaton> cache;
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  /** Creates a cache that holds at least the
+   *  <code>maxSize</code> most recently used automata. */
+  public CompiledAutomatonCache(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be > 0 (got " + maxSize + ")");
+    }
+    cache = new DoubleBarrelLRUCache<Key,CompiledAutomaton>(maxSize);
+  }
+
+  /** Returns the automaton cached for <code>key</code>, or
+   *  <code>null</code>. */
+  public CompiledAutomaton get(Key key) {
+    final CompiledAutomaton compiled = cache.get(key);
+    if (compiled == null) {
+      missCount.incrementAndGet();
+    } else {
+      hitCount.incrementAndGet();
+    }
+    return compiled;
+  }
+
+  /** Caches <code>compiled</code> for <code>key</code>. */
+  public void put(Key key, CompiledAutomaton compiled) {
+    cache.put(key, compiled);
+  }
+
+  /** Returns the number of {@link #get} calls that found
+   *  an automaton. */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /** Returns the number of {@link #get} calls that did
+   *  not find an automaton. */
+  public long getMissCount() {
+    return missCount.get();
+  }
+}
@@ -0,0 +1,329 @@
+package org.apache.lucene.util.automaton.fst;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * Builds a compact FST (maps a byte sequence input to an
+ * output) from pre-sorted inputs, with outputs.
+ *
+ * <p>The inputs must be added in sorted (unsigned byte)
+ * order, each at most once.  Shared prefixes and shared
+ * suffixes are both stored only once: as inputs are added,
+ * the nodes that can no longer change are frozen and
+ * de-duplicated against all previously frozen nodes, so
+ * the result is a minimal FST (assuming outputs are
+ * "well-behaved", as {@link PositiveIntOutputs} are).
+ *
+ * <p>See <a href="http://citeseerx.ist.psu.edu/viewdoc/summary?doi=10.1.1.24.3698">this
+ * paper</a> for the algorithm.
+ *
+ * @lucene.experimental
+ */
+public class Builder<T> {
+  private final NodeHash<T> dedupHash;
+  private final FST<T> fst;
+  private final T NO_OUTPUT;
+
+  private final BytesRef lastInput = new BytesRef();
+  private long inputCount;
+
+  // current "frontier": frontier[i] is the node reached
+  // after the first i bytes of the last input
+  private UnCompiledNode<T>[] frontier;
+
+  @SuppressWarnings("unchecked")
+  public Builder(Outputs<T> outputs) {
+    fst = new FST<T>(outputs);
+    dedupHash = new NodeHash<T>(fst);
+    NO_OUTPUT = outputs.getNoOutput();
+
+    frontier = new UnCompiledNode[10];
+    for(int idx=0;idx<frontier.length;idx++) {
+      frontier[idx] = new UnCompiledNode<T>(this, idx);
+    }
+  }
+
+  /** Returns the number of inputs added so far. */
+  public long getInputCount() {
+    return inputCount;
+  }
+
+  private CompiledNode compileNode(UnCompiledNode<T> n) throws IOException {
+    final int address;
+    if (n.numArcs == 0) {
+      address = FST.FINAL_END_NODE;
+    } else {
+      address = dedupHash.add(n);
+    }
+    n.clear();
+
+    final CompiledNode fn = new CompiledNode();
+    fn.address = address;
+    return fn;
+  }
+
+  private void freezeTail(int prefixLenPlus1) throws IOException {
+    final int downTo = Math.max(1, prefixLenPlus1);
+    for(int idx=lastInput.length; idx >= downTo; idx--) {
+      final UnCompiledNode<T> node = frontier[idx];
+      final UnCompiledNode<T> parent = frontier[idx-1];
+      final T nextFinalOutput = node.output;
+      final boolean isFinal = node.isFinal;
+      // compileNode clears node:
+      parent.replaceLast(lastInput.bytes[lastInput.offset + idx - 1] & 0xFF,
+                         compileNode(node),
+                         nextFinalOutput,
+                         isFinal);
+    }
+  }
+
+  /** Add the next input/output pair.  The provided input
+   *  must be sorted after the previous one (compared as
+   *  unsigned bytes).  You can safely reuse the provided
+   *  input BytesRef across calls, but it must not change
+   *  until this method returns. */
+  public void add(BytesRef input, T output) throws IOException {
+    assert output != null;
+
+    if (inputCount > 0 && compare(lastInput, input) >= 0) {
+      throw new IllegalArgumentException("inputs are added out of order, or twice: lastInput=" + lastInput + " vs input=" + input);
+    }
+    inputCount++;
+
+    if (input.length == 0) {
+      // empty input: only allowed as first input.  we have
+      // to special case this because the packed FST
+      // format cannot represent the empty input since
+      // 'finalness' is stored on the incoming arc, not on
+      // the node
+      fst.setEmptyOutput(output);
+      return;
+    }
+
+    // compare shared prefix length
+    int pos1 = 0;
+    int pos2 = input.offset;
+    final int pos1Stop = Math.min(lastInput.length, input.length);
+    while(true) {
+      if (pos1 >= pos1Stop || lastInput.bytes[pos1] != input.bytes[pos2]) {
+        break;
+      }
+      pos1++;
+      pos2++;
+    }
+    final int prefixLenPlus1 = pos1+1;
+      
+    if (frontier.length < input.length+1) {
+      @SuppressWarnings("unchecked") final UnCompiledNode<T>[] next =
+        new UnCompiledNode[ArrayUtil.oversize(input.length+1, RamUsageEstimator.NUM_BYTES_OBJECT_REF)];
+      System.arraycopy(frontier, 0, next, 0, frontier.length);
+      for(int idx=frontier.length;idx<next.length;idx++) {
+        next[idx] = new UnCompiledNode<T>(this, idx);
+      }
+      frontier = next;
+    }
+
+    // minimize/compile states from previous input's
+    // orphan'd suffix
+    freezeTail(prefixLenPlus1);
+
+    // init tail states for current input
+    for(int idx=prefixLenPlus1;idx<=input.length;idx++) {
+      frontier[idx-1].addArc(input.bytes[input.offset + idx - 1] & 0xFF,
+                             frontier[idx]);
+    }
+
+    final UnCompiledNode<T> lastNode = frontier[input.length];
+    lastNode.isFinal = true;
+    lastNode.output = NO_OUTPUT;
+
+    // push conflicting outputs forward, only as far as
+    // needed
+    for(int idx=1;idx<prefixLenPlus1;idx++) {
+      final UnCompiledNode<T> node = frontier[idx];
+      final UnCompiledNode<T> parentNode = frontier[idx-1];
+
+      final int label = input.bytes[input.offset + idx - 1] & 0xFF;
+      final T lastOutput = parentNode.getLastOutput(label);
+
+      final T commonOutputPrefix;
+      final T wordSuffix;
+
+      if (lastOutput != NO_OUTPUT) {
+        commonOutputPrefix = fst.outputs.common(output, lastOutput);
+        wordSuffix = fst.outputs.subtract(lastOutput, commonOutputPrefix);
+        parentNode.setLastOutput(label, commonOutputPrefix);
+        node.prependOutput(wordSuffix);
+      } else {
+        commonOutputPrefix = NO_OUTPUT;
+      }
+
+      output = fst.outputs.subtract(output, commonOutputPrefix);
+    }
+
+    // this new arc is private to this new input; set its
+    // arc output to the leftover output:
+    frontier[prefixLenPlus1-1].setLastOutput(input.bytes[input.offset + prefixLenPlus1-1] & 0xFF, output);
+
+    // save last input
+    lastInput.copy(input);
+  }
+
+  private static int compare(BytesRef a, BytesRef b) {
+    return BytesRef.getUTF8SortedAsUnicodeComparator().compare(a, b);
+  }
+
+  /** Returns final FST.  NOTE: this will return null if
+   *  nothing is accepted by the FST. */
+  public FST<T> finish() throws IOException {
+
+    // minimize nodes in the last word's suffix
+    freezeTail(0);
+
+    final UnCompiledNode<T> root = frontier[0];
+    if (root.numArcs == 0 && fst.getEmptyOutput() == null) {
+      return null;
+    }
+    fst.finish(compileNode(root).address);
+
+    return fst;
+  }
+
+  static class Arc<T> {
+    public int label;                             // really an "unsigned" byte
+    public Node target;
+    public boolean isFinal;
+    public T output;
+    public T nextFinalOutput;
+  }
+
+  // NOTE: not many instances of Node or CompiledNode are in
+  // memory while the FST is being built; it's only the
+  // current "frontier":
+
+  static interface Node {
+    boolean isCompiled();
+  }
+
+  static final class CompiledNode implements Node {
+    int address;
+    public boolean isCompiled() {
+      return true;
+    }
+  }
+
+  static final class UnCompiledNode<T> implements Node {
+    final Builder<T> owner;
+    int numArcs;
+    Arc<T>[] arcs;
+    T output;
+    boolean isFinal;
+
+    /** This node's depth, starting from the automaton root. */
+    final int depth;
+
+    @SuppressWarnings("unchecked")
+    public UnCompiledNode(Builder<T> owner, int depth) {
+      this.owner = owner;
+      arcs = new Arc[1];
+      arcs[0] = new Arc<T>();
+      output = owner.NO_OUTPUT;
+      this.depth = depth;
+    }
+
+    public boolean isCompiled() {
+      return false;
+    }
+
+    public void clear() {
+      numArcs = 0;
+      isFinal = false;
+      output = owner.NO_OUTPUT;
+
+      // We don't clear the arcs since we reuse them; the
+      // NO_OUTPUTs are reset by addArc
+    }
+
+    public T getLastOutput(int labelToMatch) {
+      assert numArcs > 0;
+      assert arcs[numArcs-1].label == labelToMatch;
+      return arcs[numArcs-1].output;
+    }
+
+    public void addArc(int label, Node target) {
+      assert label >= 0;
+      assert numArcs == 0 || label > arcs[numArcs-1].label: "arc[-1].label=" + arcs[numArcs-1].label + " new label=" + label + " numArcs=" + numArcs;
+      if (numArcs == arcs.length) {
+        @SuppressWarnings("unchecked") final Arc<T>[] newArcs =
+          new Arc[ArrayUtil.oversize(numArcs+1, RamUsageEstimator.NUM_BYTES_OBJECT_REF)];
+        System.arraycopy(arcs, 0, newArcs, 0, arcs.length);
+        for(int arcIdx=numArcs;arcIdx<newArcs.length;arcIdx++) {
+          newArcs[arcIdx] = new Arc<T>();
+        }
+        arcs = newArcs;
+      }
+      final Arc<T> arc = arcs[numArcs++];
+      arc.label = label;
+      arc.target = target;
+      arc.output = arc.nextFinalOutput = owner.NO_OUTPUT;
+      arc.isFinal = false;
+    }
+
+    public void replaceLast(int labelToMatch, Node target, T nextFinalOutput, boolean isFinal) {
+      assert numArcs > 0;
+      final Arc<T> arc = arcs[numArcs-1];
+      assert arc.label == labelToMatch: "arc.label=" + arc.label + " vs " + labelToMatch;
+      arc.target = target;
+      arc.nextFinalOutput = nextFinalOutput;
+      arc.isFinal = isFinal;
+    }
+
+    public void setLastOutput(int labelToMatch, T newOutput) {
+      assert owner.validOutput(newOutput);
+      assert numArcs > 0;
+      final Arc<T> arc = arcs[numArcs-1];
+      assert arc.label == labelToMatch;
+      arc.output = newOutput;
+    }
+
+    // pushes an output prefix forward onto all arcs
+    public void prependOutput(T outputPrefix) {
+      assert owner.validOutput(outputPrefix);
+
+      for(int arcIdx=0;arcIdx<numArcs;arcIdx++) {
+        arcs[arcIdx].output = owner.fst.outputs.add(outputPrefix, arcs[arcIdx].output);
+        assert owner.validOutput(arcs[arcIdx].output);
+      }
+
+      if (isFinal) {
+        output = owner.fst.outputs.add(outputPrefix, output);
+        assert owner.validOutput(output);
+      }
+    }
+  }
+
+  private boolean validOutput(T output) {
+    return output == NO_OUTPUT || !output.equals(NO_OUTPUT);
+  }
+}
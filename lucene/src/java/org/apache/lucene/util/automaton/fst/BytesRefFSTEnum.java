@@ -0,0 +1,248 @@
+package org.apache.lucene.util.automaton.fst;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/** Can next() and seekFloor() through the input/output
+ *  pairs of an FST, in sorted (unsigned byte) order of the
+ *  inputs.
+ *
+ *  @lucene.experimental
+ */
+public class BytesRefFSTEnum<T> {
+  private final FST<T> fst;
+
+  // arcs[0] is the virtual arc into the start node;
+  // arcs[i] is the arc for the i'th byte of current input:
+  private FST.Arc<T>[] arcs;
+  // output[i] is the output accumulated up to and
+  // including arcs[i]:
+  private T[] output;
+
+  private final BytesRef current = new BytesRef(10);
+  private int upto;
+  private boolean started;
+  private boolean exhausted;
+
+  private final T NO_OUTPUT;
+  private final InputOutput<T> result = new InputOutput<T>();
+
+  /** Holds a single input (BytesRef) + output pair. */
+  public static class InputOutput<T> {
+    public BytesRef input;
+    public T output;
+  }
+
+  /** Creates an enum positioned before the first input. */
+  @SuppressWarnings("unchecked")
+  public BytesRefFSTEnum(FST<T> fst) {
+    this.fst = fst;
+    result.input = current;
+    NO_OUTPUT = fst.outputs.getNoOutput();
+    arcs = new FST.Arc[10];
+    output = (T[]) new Object[10];
+    reset();
+  }
+
+  /** Re-positions before the first input. */
+  public void reset() {
+    fst.getFirstArc(getArc(0));
+    output[0] = NO_OUTPUT;
+    upto = 0;
+    current.length = 0;
+    started = false;
+    exhausted = false;
+  }
+
+  /** Returns the current input/output pair; only valid
+   *  after a successful {@link #next} or {@link
+   *  #seekFloor}. */
+  public InputOutput<T> current() {
+    return result;
+  }
+
+  /** Advances to the next input, returning null once all
+   *  inputs were visited. */
+  public InputOutput<T> next() throws IOException {
+    if (exhausted) {
+      return null;
+    }
+
+    if (!started) {
+      started = true;
+      if (arcs[0].isFinal()) {
+        // the empty input is accepted, and it sorts first
+        return setResult(arcs[0].nextFinalOutput());
+      }
+    }
+
+    if (FST.targetHasArcs(arcs[upto])) {
+      // current input is a prefix of the next one: descend
+      fst.readFirstTargetArc(arcs[upto], getArc(upto+1));
+      upto++;
+      return pushFirst();
+    }
+
+    // pop until we find an arc with a next sibling
+    while(upto == 0 || arcs[upto].isLast()) {
+      if (upto == 0) {
+        exhausted = true;
+        current.length = 0;
+        return null;
+      }
+      upto--;
+    }
+    fst.readNextArc(arcs[upto]);
+    return pushFirst();
+  }
+
+  /** Seeks to the biggest input that's &lt;= target, and
+   *  returns it; {@link #next} then continues from there.
+   *  Returns null, and re-positions before the first input,
+   *  if all inputs are greater than target. */
+  public InputOutput<T> seekFloor(BytesRef target) throws IOException {
+    reset();
+    started = true;
+
+    int targetUpto = 0;
+    while(true) {
+      final FST.Arc<T> arc = arcs[upto];
+      if (targetUpto == target.length) {
+        if (arc.isFinal()) {
+          // exact match
+          return setResult(fst.outputs.add(output[upto], arc.nextFinalOutput()));
+        }
+        // all inputs with this prefix are greater than
+        // target
+        return backtrack();
+      }
+
+      if (!FST.targetHasArcs(arc)) {
+        // the input up to here is accepted, and is a prefix
+        // of target, so it's the floor
+        assert arc.isFinal();
+        return setResult(fst.outputs.add(output[upto], arc.nextFinalOutput()));
+      }
+
+      final int label = target.bytes[target.offset + targetUpto] & 0xFF;
+      final FST.Arc<T> nextArc = fst.findFloorTargetArc(label, arc, getArc(upto+1));
+      if (nextArc == null) {
+        // all arcs leaving this node are greater than target
+        if (arc.isFinal()) {
+          return setResult(fst.outputs.add(output[upto], arc.nextFinalOutput()));
+        }
+        return backtrack();
+      }
+
+      upto++;
+      if (nextArc.label == label) {
+        setCurrentLabel(nextArc.label);
+        output[upto] = fst.outputs.add(output[upto-1], nextArc.output);
+        targetUpto++;
+      } else {
+        // smaller label: the floor is the last input below
+        // this arc
+        return pushLast();
+      }
+    }
+  }
+
+  // Called when all inputs through arcs[upto] are greater
+  // than the target: walks back up to the first smaller
+  // sibling arc, or accepted prefix
+  private InputOutput<T> backtrack() throws IOException {
+    while(upto > 0) {
+      final FST.Arc<T> arc = arcs[upto];
+      if (fst.findFloorTargetArc(arc.label-1, arcs[upto-1], arc) != null) {
+        return pushLast();
+      }
+      upto--;
+      if (arcs[upto].isFinal()) {
+        return setResult(fst.outputs.add(output[upto], arcs[upto].nextFinalOutput()));
+      }
+    }
+    reset();
+    return null;
+  }
+
+  // Descends from arcs[upto] along first arcs until an
+  // accepted input is reached
+  private InputOutput<T> pushFirst() throws IOException {
+    while(true) {
+      final FST.Arc<T> arc = arcs[upto];
+      setCurrentLabel(arc.label);
+      output[upto] = fst.outputs.add(output[upto-1], arc.output);
+      if (arc.isFinal()) {
+        return setResult(fst.outputs.add(output[upto], arc.nextFinalOutput()));
+      }
+      fst.readFirstTargetArc(arc, getArc(upto+1));
+      upto++;
+    }
+  }
+
+  // Descends from arcs[upto] along last arcs to the
+  // biggest input below it
+  private InputOutput<T> pushLast() throws IOException {
+    while(true) {
+      final FST.Arc<T> arc = arcs[upto];
+      setCurrentLabel(arc.label);
+      output[upto] = fst.outputs.add(output[upto-1], arc.output);
+      if (!FST.targetHasArcs(arc)) {
+        assert arc.isFinal();
+        return setResult(fst.outputs.add(output[upto], arc.nextFinalOutput()));
+      }
+      fst.readLastTargetArc(arc, getArc(upto+1));
+      upto++;
+    }
+  }
+
+  private InputOutput<T> setResult(T finalOutput) {
+    current.length = upto;
+    result.output = finalOutput;
+    return result;
+  }
+
+  private void setCurrentLabel(int label) {
+    if (current.bytes.length < upto) {
+      current.grow(upto);
+    }
+    current.bytes[upto-1] = (byte) label;
+  }
+
+  @SuppressWarnings("unchecked")
+  private FST.Arc<T> getArc(int idx) {
+    if (idx >= arcs.length) {
+      final int newSize = ArrayUtil.oversize(1+idx, RamUsageEstimator.NUM_BYTES_OBJECT_REF);
+      final FST.Arc<T>[] newArcs = new FST.Arc[newSize];
+      System.arraycopy(arcs, 0, newArcs, 0, arcs.length);
+      arcs = newArcs;
+      final T[] newOutput = (T[]) new Object[newSize];
+      System.arraycopy(output, 0, newOutput, 0, output.length);
+      output = newOutput;
+    }
+    if (arcs[idx] == null) {
+      arcs[idx] = new FST.Arc<T>();
+    }
+    return arcs[idx];
+  }
+}
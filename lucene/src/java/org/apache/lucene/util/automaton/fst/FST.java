@@ -0,0 +1,620 @@
+package org.apache.lucene.util.automaton.fst;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.CodecUtil;
+
+/** Represents an FST using a compact byte[] format.
+ *  <p> The format is similar to what's used by Morfologik
+ *  (http://sourceforge.net/projects/morfologik): nodes are
+ *  written in the order they are frozen by the {@link
+ *  Builder}, so each arc points back to an already written
+ *  target node.  Nodes with many arcs are written as fixed
+ *  size arrays so that arcs can be binary searched by
+ *  label; other nodes are scanned linearly.
+ *
+ *  <p>Inputs are byte sequences, compared as unsigned
+ *  bytes; labels are therefore in the range 0..255.
+ *
+ *  @lucene.experimental
+ */
+public class FST<T> {
+
+  final static int BIT_FINAL_ARC = 1 << 0;
+  final static int BIT_LAST_ARC = 1 << 1;
+  final static int BIT_STOP_NODE = 1 << 2;
+  final static int BIT_ARC_HAS_OUTPUT = 1 << 3;
+  final static int BIT_ARC_HAS_FINAL_OUTPUT = 1 << 4;
+
+  // Arcs are stored as fixed-size (per entry) array, so
+  // that we can find an arc using binary search.  We do
+  // this for nodes with many arcs (see shouldExpand).
+  // NOTE: this value can never occur as the flags of a
+  // real arc, since a final output is only recorded on
+  // final arcs:
+  private final static byte ARCS_AS_FIXED_ARRAY = BIT_ARC_HAS_FINAL_OUTPUT;
+
+  /** If arc has this many arcs or more, and is close to the
+   *  root, it's written as a fixed array */
+  final static int FIXED_ARRAY_SHALLOW_DISTANCE = 3;
+  final static int FIXED_ARRAY_NUM_ARCS_SHALLOW = 5;
+
+  /** Deeper nodes are only written as a fixed array with at
+   *  least this many arcs */
+  final static int FIXED_ARRAY_NUM_ARCS_DEEP = 10;
+
+  private int[] bytesPerArc = new int[0];
+
+  // Increment version to change it
+  private final static String FILE_FORMAT_NAME = "FST";
+  private final static int VERSION_START = 0;
+  private final static int VERSION_CURRENT = VERSION_START;
+
+  /** Address of the (virtual) target of arcs leading to a
+   *  final node without outgoing arcs. */
+  final static int FINAL_END_NODE = -1;
+
+  // if non-null, this FST accepts the empty string and
+  // produces this output
+  private T emptyOutput;
+
+  private byte[] bytes;
+
+  private int startNode = FINAL_END_NODE;
+  private boolean finished;
+
+  public final Outputs<T> outputs;
+
+  private int nodeCount;
+  private int arcCount;
+  private int arcWithOutputCount;
+
+  /** Represents a single arc. */
+  public final static class Arc<T> {
+    /** Label of the arc, 0..255 */
+    public int label;
+    /** Output of the arc */
+    public T output;
+
+    int target;
+
+    byte flags;
+    T nextFinalOutput;
+    int nextArc;
+
+    // This is non-zero if current arcs are fixed array:
+    int posArcsStart;
+    int bytesPerArc;
+    int arcIdx;
+    int numArcs;
+
+    /** Returns this */
+    public Arc<T> copyFrom(Arc<T> other) {
+      label = other.label;
+      target = other.target;
+      flags = other.flags;
+      output = other.output;
+      nextFinalOutput = other.nextFinalOutput;
+      nextArc = other.nextArc;
+      if (other.bytesPerArc != 0) {
+        bytesPerArc = other.bytesPerArc;
+        posArcsStart = other.posArcsStart;
+        arcIdx = other.arcIdx;
+        numArcs = other.numArcs;
+      } else {
+        bytesPerArc = 0;
+      }
+      return this;
+    }
+
+    boolean flag(int flag) {
+      return FST.flag(flags, flag);
+    }
+
+    /** True if this is the last arc leaving its node. */
+    public boolean isLast() {
+      return flag(BIT_LAST_ARC);
+    }
+
+    /** True if the input read up to and including this arc
+     *  is accepted; its output then also includes {@link
+     *  #nextFinalOutput()}. */
+    public boolean isFinal() {
+      return flag(BIT_FINAL_ARC);
+    }
+
+    /** The output added when the input ends after this
+     *  arc; only meaningful if {@link #isFinal}. */
+    public T nextFinalOutput() {
+      return nextFinalOutput;
+    }
+  };
+
+  static boolean flag(int flags, int bit) {
+    return (flags & bit) != 0;
+  }
+
+  private final BytesWriter writer;
+
+  // make a new empty FST, for building
+  FST(Outputs<T> outputs) {
+    this.outputs = outputs;
+    bytes = new byte[128];
+    writer = new BytesWriter();
+    // Address 0 is never a node: NodeHash uses 0 to mark
+    // an empty slot
+    writer.writeByte((byte) 0);
+  }
+
+  /** Load a previously saved FST. */
+  public FST(IndexInput in, Outputs<T> outputs) throws IOException {
+    this.outputs = outputs;
+    writer = null;
+    CodecUtil.checkHeader(in, FILE_FORMAT_NAME, VERSION_START, VERSION_START);
+    if (in.readByte() == 1) {
+      emptyOutput = outputs.read(in);
+    } else {
+      emptyOutput = null;
+    }
+    startNode = in.readInt();
+    nodeCount = in.readVInt();
+    arcCount = in.readVInt();
+    arcWithOutputCount = in.readVInt();
+
+    bytes = new byte[in.readVInt()];
+    in.readBytes(bytes, 0, bytes.length);
+    finished = true;
+  }
+
+  /** Returns bytes used to represent the FST */
+  public int sizeInBytes() {
+    return bytes.length;
+  }
+
+  void finish(int startNode) {
+    if (finished) {
+      throw new IllegalStateException("already finished");
+    }
+    finished = true;
+    byte[] finalBytes = new byte[writer.posWrite];
+    System.arraycopy(bytes, 0, finalBytes, 0, writer.posWrite);
+    bytes = finalBytes;
+    this.startNode = startNode;
+  }
+
+  void setEmptyOutput(T v) {
+    if (emptyOutput != null) {
+      throw new IllegalStateException("empty input was already added");
+    }
+    emptyOutput = v;
+  }
+
+  /** Returns the output for the empty input, or null if
+   *  the empty input is not accepted. */
+  public T getEmptyOutput() {
+    return emptyOutput;
+  }
+
+  public void save(IndexOutput out) throws IOException {
+    if (!finished) {
+      throw new IllegalStateException("call finish first");
+    }
+    CodecUtil.writeHeader(out, FILE_FORMAT_NAME, VERSION_CURRENT);
+    if (emptyOutput != null) {
+      out.writeByte((byte) 1);
+      outputs.write(emptyOutput, out);
+    } else {
+      out.writeByte((byte) 0);
+    }
+    out.writeInt(startNode);
+    out.writeVInt(nodeCount);
+    out.writeVInt(arcCount);
+    out.writeVInt(arcWithOutputCount);
+    out.writeVInt(bytes.length);
+    out.writeBytes(bytes, 0, bytes.length);
+  }
+
+  public int getNodeCount() {
+    return nodeCount;
+  }
+
+  public int getArcCount() {
+    return arcCount;
+  }
+
+  public int getArcWithOutputCount() {
+    return arcWithOutputCount;
+  }
+
+  private boolean shouldExpand(Builder.UnCompiledNode<T> node) {
+    return (node.depth <= FIXED_ARRAY_SHALLOW_DISTANCE && node.numArcs >= FIXED_ARRAY_NUM_ARCS_SHALLOW) || 
+      node.numArcs >= FIXED_ARRAY_NUM_ARCS_DEEP;
+  }
+
+  // serializes new node by appending its bytes to the end
+  // of the current byte[]
+  int addNode(Builder.UnCompiledNode<T> node) throws IOException {
+    assert node.numArcs > 0;
+
+    final int startAddress = writer.posWrite;
+    nodeCount++;
+
+    final boolean doFixedArray = shouldExpand(node);
+    final int fixedArrayStart;
+    if (doFixedArray) {
+      if (bytesPerArc.length < node.numArcs) {
+        bytesPerArc = new int[ArrayUtil.oversize(node.numArcs, 1)];
+      }
+      // write a "false" first arc:
+      writer.writeByte(ARCS_AS_FIXED_ARRAY);
+      writer.writeVInt(node.numArcs);
+      // placeholder -- we'll come back and write the number
+      // of bytes per arc here:
+      writer.writeByte((byte) 0);
+      fixedArrayStart = writer.posWrite;
+    } else {
+      fixedArrayStart = 0;
+    }
+
+    int maxBytesPerArc = 0;
+    final int lastArc = node.numArcs-1;
+    for(int arcIdx=0;arcIdx<node.numArcs;arcIdx++) {
+      final Builder.Arc<T> arc = node.arcs[arcIdx];
+      final Builder.CompiledNode target = (Builder.CompiledNode) arc.target;
+      final int arcStartPos = writer.posWrite;
+      int flags = 0;
+
+      if (arcIdx == lastArc) {
+        flags += BIT_LAST_ARC;
+      }
+      if (arc.isFinal) {
+        flags += BIT_FINAL_ARC;
+        if (arc.nextFinalOutput != outputs.getNoOutput()) {
+          flags += BIT_ARC_HAS_FINAL_OUTPUT;
+        }
+      } else {
+        assert arc.nextFinalOutput == outputs.getNoOutput();
+      }
+
+      if (target.address == FINAL_END_NODE) {
+        // a node without arcs must be final, else the
+        // input leading here would be a dead end
+        assert arc.isFinal;
+        flags += BIT_STOP_NODE;
+      }
+
+      if (arc.output != outputs.getNoOutput()) {
+        flags += BIT_ARC_HAS_OUTPUT;
+        arcWithOutputCount++;
+      }
+
+      writer.writeByte((byte) flags);
+      writer.writeByte((byte) arc.label);
+
+      if (arc.output != outputs.getNoOutput()) {
+        outputs.write(arc.output, writer);
+      }
+      if (arc.nextFinalOutput != outputs.getNoOutput()) {
+        outputs.write(arc.nextFinalOutput, writer);
+      }
+      if (target.address != FINAL_END_NODE) {
+        writer.writeVInt(target.address);
+      }
+
+      // just write the arcs "like normal" on first pass,
+      // but record how many bytes each one took, and max
+      // byte size:
+      if (doFixedArray) {
+        bytesPerArc[arcIdx] = writer.posWrite - arcStartPos;
+        maxBytesPerArc = Math.max(maxBytesPerArc, bytesPerArc[arcIdx]);
+      }
+      arcCount++;
+    }
+
+    if (doFixedArray) {
+      assert maxBytesPerArc > 0;
+      // 2nd pass just "expands" all arcs to take up a fixed
+      // byte size
+      assert maxBytesPerArc < 128: "maxBytesPerArc=" + maxBytesPerArc;
+      bytes[fixedArrayStart-1] = (byte) maxBytesPerArc;
+      final int sizeNeeded = fixedArrayStart + node.numArcs * maxBytesPerArc;
+      bytes = ArrayUtil.grow(bytes, sizeNeeded);
+
+      // expand the arcs in place, backwards
+      int srcPos = writer.posWrite;
+      int destPos = fixedArrayStart + node.numArcs*maxBytesPerArc;
+      writer.posWrite = destPos;
+      for(int arcIdx=node.numArcs-1;arcIdx>=0;arcIdx--) {
+        destPos -= maxBytesPerArc;
+        srcPos -= bytesPerArc[arcIdx];
+        if (srcPos != destPos) {
+          assert destPos > srcPos;
+          System.arraycopy(bytes, srcPos, bytes, destPos, bytesPerArc[arcIdx]);
+        }
+      }
+    }
+
+    return startAddress;
+  }
+
+  /** Fills virtual 'start' arc, ie, an empty incoming arc to
+   *  the FST's start node */
+  public Arc<T> getFirstArc(Arc<T> arc) {
+    if (emptyOutput != null) {
+      arc.flags = BIT_FINAL_ARC | BIT_LAST_ARC;
+      arc.nextFinalOutput = emptyOutput;
+    } else {
+      arc.flags = BIT_LAST_ARC;
+      arc.nextFinalOutput = outputs.getNoOutput();
+    }
+    if (startNode == FINAL_END_NODE) {
+      arc.flags |= BIT_STOP_NODE;
+    }
+
+    // If there are no nodes, ie, the FST only accepts the
+    // empty string, then startNode is FINAL_END_NODE:
+    arc.target = startNode;
+    arc.output = outputs.getNoOutput();
+    arc.bytesPerArc = 0;
+    return arc;
+  }
+
+  /** Returns true if the node at the end of this arc has
+   *  outgoing arcs. */
+  public static boolean targetHasArcs(Arc<?> arc) {
+    return !arc.flag(BIT_STOP_NODE);
+  }
+
+  /** Follow the follow arc and read the first arc of its
+   *  target; this changes the provided arc (2nd arg)
+   *  in-place and returns it. */
+  public Arc<T> readFirstTargetArc(Arc<T> follow, Arc<T> arc) throws IOException {
+    assert targetHasArcs(follow);
+    return readFirstRealArc(follow.target, arc);
+  }
+
+  Arc<T> readFirstRealArc(int address, Arc<T> arc) throws IOException {
+    final BytesReader in = getBytesReader(address);
+
+    if (in.readByte() == ARCS_AS_FIXED_ARRAY) {
+      // this is first arc in a fixed-array
+      arc.numArcs = in.readVInt();
+      arc.bytesPerArc = in.readByte() & 0xFF;
+      arc.arcIdx = -1;
+      arc.posArcsStart = in.pos;
+    } else {
+      arc.bytesPerArc = 0;
+      arc.nextArc = address;
+    }
+    return readNextArc(arc);
+  }
+
+  /** Follow the follow arc and read the last arc of its
+   *  target; this changes the provided arc (2nd arg)
+   *  in-place and returns it. */
+  public Arc<T> readLastTargetArc(Arc<T> follow, Arc<T> arc) throws IOException {
+    readFirstTargetArc(follow, arc);
+    if (arc.bytesPerArc != 0) {
+      arc.arcIdx = arc.numArcs-2;
+      return readNextArc(arc);
+    }
+    while(!arc.isLast()) {
+      readNextArc(arc);
+    }
+    return arc;
+  }
+
+  /** In-place read; returns the arc.  The arc must not be
+   *  the last arc of its node. */
+  public Arc<T> readNextArc(Arc<T> arc) throws IOException {
+    final BytesReader in;
+    if (arc.bytesPerArc != 0) {
+      // arcs are at fixed entries
+      arc.arcIdx++;
+      assert arc.arcIdx < arc.numArcs;
+      in = getBytesReader(arc.posArcsStart + arc.arcIdx*arc.bytesPerArc);
+    } else {
+      // arcs are packed
+      in = getBytesReader(arc.nextArc);
+    }
+    arc.flags = in.readByte();
+    arc.label = in.readByte() & 0xFF;
+
+    if (arc.flag(BIT_ARC_HAS_OUTPUT)) {
+      arc.output = outputs.read(in);
+    } else {
+      arc.output = outputs.getNoOutput();
+    }
+
+    if (arc.flag(BIT_ARC_HAS_FINAL_OUTPUT)) {
+      arc.nextFinalOutput = outputs.read(in);
+    } else {
+      arc.nextFinalOutput = outputs.getNoOutput();
+    }
+
+    if (arc.flag(BIT_STOP_NODE)) {
+      arc.target = FINAL_END_NODE;
+    } else {
+      arc.target = in.readVInt();
+    }
+    arc.nextArc = in.pos;
+    return arc;
+  }
+
+  /** Finds an arc leaving the incoming arc, replacing the arc in place.
+   *  This returns null if the arc was not found, else the incoming arc. */
+  public Arc<T> findTargetArc(int labelToMatch, Arc<T> follow, Arc<T> arc) throws IOException {
+    if (!targetHasArcs(follow)) {
+      return null;
+    }
+
+    final BytesReader in = getBytesReader(follow.target);
+
+    if (in.readByte() == ARCS_AS_FIXED_ARRAY) {
+      // Arcs are full array; do binary search:
+      arc.numArcs = in.readVInt();
+      arc.bytesPerArc = in.readByte() & 0xFF;
+      arc.posArcsStart = in.pos;
+      int low = 0;
+      int high = arc.numArcs-1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        in.pos = arc.posArcsStart + arc.bytesPerArc*mid + 1;
+        int midLabel = in.readByte() & 0xFF;
+        final int cmp = midLabel - labelToMatch;
+        if (cmp < 0) {
+          low = mid + 1;
+        } else if (cmp > 0) {
+          high = mid - 1;
+        } else {
+          arc.arcIdx = mid-1;
+          return readNextArc(arc);
+        }
+      }
+      return null;
+    }
+
+    // Linear scan
+    readFirstTargetArc(follow, arc);
+    while(true) {
+      if (arc.label == labelToMatch) {
+        return arc;
+      } else if (arc.label > labelToMatch || arc.isLast()) {
+        return null;
+      } else {
+        readNextArc(arc);
+      }
+    }
+  }
+
+  /** Finds the arc with the largest label that's &lt;=
+   *  labelToMatch leaving the incoming arc, replacing the
+   *  arc in place.  This returns null if all arcs have a
+   *  larger label, else the arc. */
+  public Arc<T> findFloorTargetArc(int labelToMatch, Arc<T> follow, Arc<T> arc) throws IOException {
+    if (!targetHasArcs(follow) || labelToMatch < 0) {
+      return null;
+    }
+
+    final BytesReader in = getBytesReader(follow.target);
+
+    if (in.readByte() == ARCS_AS_FIXED_ARRAY) {
+      arc.numArcs = in.readVInt();
+      arc.bytesPerArc = in.readByte() & 0xFF;
+      arc.posArcsStart = in.pos;
+      int low = 0;
+      int high = arc.numArcs-1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        in.pos = arc.posArcsStart + arc.bytesPerArc*mid + 1;
+        int midLabel = in.readByte() & 0xFF;
+        final int cmp = midLabel - labelToMatch;
+        if (cmp < 0) {
+          low = mid + 1;
+        } else if (cmp > 0) {
+          high = mid - 1;
+        } else {
+          high = mid;
+          break;
+        }
+      }
+      if (high < 0) {
+        return null;
+      }
+      arc.arcIdx = high-1;
+      return readNextArc(arc);
+    }
+
+    // Linear scan, remembering where the last arc <= label
+    // started so we can go back to it:
+    readFirstTargetArc(follow, arc);
+    if (arc.label > labelToMatch) {
+      return null;
+    }
+    int floorPos = follow.target;
+    while(!arc.isLast()) {
+      final int nextPos = arc.nextArc;
+      readNextArc(arc);
+      if (arc.label > labelToMatch) {
+        arc.nextArc = floorPos;
+        return readNextArc(arc);
+      }
+      floorPos = nextPos;
+    }
+    return arc;
+  }
+
+  final BytesReader getBytesReader(int pos) {
+    // TODO: maybe re-use via ThreadLocal?
+    return new BytesReader(pos);
+  }
+
+  // Non-static: writes to FST's byte[]
+  private class BytesWriter extends DataOutput {
+    int posWrite;
+
+    public BytesWriter() {
+      // NOTE: we can't use 0 as a node address
+      posWrite = 0;
+    }
+
+    @Override
+    public void writeByte(byte b) {
+      if (bytes.length == posWrite) {
+        bytes = ArrayUtil.grow(bytes);
+      }
+      assert posWrite < bytes.length: "posWrite=" + posWrite + " bytes.length=" + bytes.length;
+      bytes[posWrite++] = b;
+    }
+
+    @Override
+    public void writeBytes(byte[] b, int offset, int length) {
+      final int size = posWrite + length;
+      bytes = ArrayUtil.grow(bytes, size);
+      System.arraycopy(b, offset, bytes, posWrite, length);
+      posWrite += length;
+    }
+  }
+
+  // Non-static: reads from FST's byte[]
+  final class BytesReader extends DataInput {
+    int pos;
+
+    public BytesReader(int pos) {
+      this.pos = pos;
+    }
+
+    @Override
+    public byte readByte() {
+      return bytes[pos++];
+    }
+
+    @Override
+    public void readBytes(byte[] b, int offset, int len) {
+      System.arraycopy(bytes, pos, b, offset, len);
+      pos += len;
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package org.apache.lucene.util.automaton.fst;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+
+/**
+ * Output is a non-negative long, for each input term.
+ * Common prefix of two outputs is their minimum, so when
+ * the outputs increase with the inputs (eg, the ord of
+ * each term), {@link Util#getByOutput} can map an output
+ * back to its input.
+ *
+ * @lucene.experimental
+ */
+public final class PositiveIntOutputs extends Outputs<Long> {
+  
+  private final static Long NO_OUTPUT = new Long(0);
+
+  private final static PositiveIntOutputs singleton = new PositiveIntOutputs();
+
+  private PositiveIntOutputs() {
+  }
+
+  public static PositiveIntOutputs getSingleton() {
+    return singleton;
+  }
+
+  public Long get(long v) {
+    if (v == 0) {
+      return NO_OUTPUT;
+    } else {
+      return Long.valueOf(v);
+    }
+  }
+
+  @Override
+  public Long common(Long output1, Long output2) {
+    assert valid(output1);
+    assert valid(output2);
+    if (output1 == NO_OUTPUT || output2 == NO_OUTPUT) {
+      return NO_OUTPUT;
+    } else {
+      return get(Math.min(output1.longValue(), output2.longValue()));
+    }
+  }
+
+  @Override
+  public Long subtract(Long output, Long inc) {
+    assert valid(output);
+    assert valid(inc);
+    assert output.longValue() >= inc.longValue();
+
+    if (inc == NO_OUTPUT) {
+      return output;
+    } else {
+      return get(output.longValue() - inc.longValue());
+    }
+  }
+
+  @Override
+  public Long add(Long prefix, Long output) {
+    assert valid(prefix);
+    assert valid(output);
+    if (prefix == NO_OUTPUT) {
+      return output;
+    } else if (output == NO_OUTPUT) {
+      return prefix;
+    } else {
+      return Long.valueOf(prefix.longValue() + output.longValue());
+    }
+  }
+
+  @Override
+  public void write(Long output, DataOutput out) throws IOException {
+    assert valid(output);
+    out.writeVLong(output.longValue());
+  }
+
+  @Override
+  public Long read(DataInput in) throws IOException {
+    return get(in.readVLong());
+  }
+
+  private boolean valid(Long o) {
+    assert o != null;
+    assert o == NO_OUTPUT || o.longValue() > 0;
+    return true;
+  }
+
+  @Override
+  public Long getNoOutput() {
+    return NO_OUTPUT;
+  }
+
+  @Override
+  public String outputToString(Long output) {
+    return output.toString();
+  }
+}
@@ -0,0 +1,104 @@
+package org.apache.lucene.util.automaton.fst;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.util.BytesRef;
+
+/** Static helper methods
+ *
+ * @lucene.experimental */
+public final class Util {
+  private Util() {
+  }
+
+  /** Looks up the output for this input, or null if the
+   *  input is not accepted. */
+  public static<T> T get(FST<T> fst, BytesRef input) throws IOException {
+    assert fst.outputs.getNoOutput() != null;
+
+    // TODO: would be nice not to alloc this on every lookup
+    final FST.Arc<T> arc = fst.getFirstArc(new FST.Arc<T>());
+
+    // Accumulate output as we go
+    T output = fst.outputs.getNoOutput();
+    for(int i=0;i<input.length;i++) {
+      if (fst.findTargetArc(input.bytes[i+input.offset] & 0xFF, arc, arc) == null) {
+        return null;
+      }
+      output = fst.outputs.add(output, arc.output);
+    }
+
+    if (arc.isFinal()) {
+      return fst.outputs.add(output, arc.nextFinalOutput());
+    } else {
+      return null;
+    }
+  }
+
+  /** Reverse lookup: returns the input whose output is
+   *  targetOutput, or null if there is none.  This only
+   *  works if the outputs increase with the inputs (eg, the
+   *  ord of each input); it walks a single path, taking at
+   *  each node the last arc whose output does not exceed
+   *  the target. */
+  public static BytesRef getByOutput(FST<Long> fst, long targetOutput) throws IOException {
+    final FST.Arc<Long> arc = fst.getFirstArc(new FST.Arc<Long>());
+    final FST.Arc<Long> scratch = new FST.Arc<Long>();
+    final BytesRef result = new BytesRef(10);
+
+    long output = 0;
+    int upto = 0;
+    while(true) {
+      if (arc.isFinal()) {
+        final long finalOutput = output + arc.nextFinalOutput().longValue();
+        if (finalOutput == targetOutput) {
+          result.length = upto;
+          return result;
+        } else if (finalOutput > targetOutput) {
+          return null;
+        }
+      }
+
+      if (!FST.targetHasArcs(arc)) {
+        return null;
+      }
+
+      fst.readFirstTargetArc(arc, scratch);
+      if (output + scratch.output.longValue() > targetOutput) {
+        return null;
+      }
+      arc.copyFrom(scratch);
+      while(!scratch.isLast()) {
+        fst.readNextArc(scratch);
+        if (output + scratch.output.longValue() <= targetOutput) {
+          arc.copyFrom(scratch);
+        } else {
+          break;
+        }
+      }
+
+      if (result.bytes.length == upto) {
+        result.grow(upto+1);
+      }
+      result.bytes[upto++] = (byte) arc.label;
+      output += arc.output.longValue();
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package org.apache.lucene.util.packed;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.store.IndexInput;
+
+import java.io.IOException;
+
+/**
+ * Reads packed values straight from an {@link IndexInput},
+ * seeking on every {@link #get}, instead of loading them
+ * into RAM.  Not thread-safe.
+ */
+class DirectPackedReader extends PackedInts.ReaderImpl {
+  private final IndexInput in;
+  private final long startPointer;
+
+  public DirectPackedReader(int bitsPerValue, int valueCount, IndexInput in) {
+    super(valueCount, bitsPerValue);
+    this.in = in;
+    startPointer = in.getFilePointer();
+  }
+
+  public long get(int index) {
+    final long majorBitPos = (long) index * bitsPerValue;
+    final int bitPos = (int) (majorBitPos & 63);
+    final int endBits = bitPos + bitsPerValue;
+    try {
+      in.seek(startPointer + ((majorBitPos >>> 6) << 3));
+      final long block = in.readLong();
+      final long value = (block << bitPos) >>> (64 - bitsPerValue);
+      if (endBits <= 64) {
+        // not split
+        return value;
+      } else {
+        // split: the low bits are at the top of the next block
+        return value | (in.readLong() >>> (128 - endBits));
+      }
+    } catch (IOException ioe) {
+      throw new IllegalStateException("failed to read packed value at index " + index, ioe);
+    }
+  }
+
+  public String toString() {
+    return "DirectPackedReader(bitsPerValue=" + bitsPerValue + ", size=" + size() + ")";
+  }
+}
@@ -196,6 +196,26 @@ public class PackedInts {
     return new PackedReaderIterator(bitsPerValue, valueCount, in);
   }
 
+  /**
+   * Retrieve PackedInts as a {@link Reader} that does not
+   * load the values into RAM but instead seeks and reads
+   * the IndexInput on every {@link Reader#get}.  The
+   * returned Reader is not thread-safe, and it owns the
+   * IndexInput (pass a clone if the input is shared).
+   * @param in positioned at the beginning of a stored packed int structure.
+   * @return a read only random access capable array of positive integers.
+   * @throws IOException if the structure could not be retrieved.
+   * @lucene.internal
+   */
+  public static Reader getDirectReader(IndexInput in) throws IOException {
+    CodecUtil.checkHeader(in, CODEC_NAME, VERSION_START, VERSION_START);
+    final int bitsPerValue = in.readVInt();
+    assert bitsPerValue > 0 && bitsPerValue <= 64: "bitsPerValue=" + bitsPerValue;
+    final int valueCount = in.readVInt();
+
+    return new DirectPackedReader(bitsPerValue, valueCount, in);
+  }
+
   /**
    * Create a packed integer array with the given amount of values initialized
    * to 0. the valueCount and the bitsPerValue cannot be changed after creation.
@@ -216,4 +216,66 @@ public class TestConcurrentMergeScheduler extends LuceneTestCase {
 
     directory.close();
   }
+
+  private void addDocs(IndexWriter writer, int numDocs) throws IOException {
+    for(int i=0;i<numDocs;i++) {
+      Document doc = new Document();
+      doc.add(new Field("id", Integer.toString(i), Field.Store.YES, Field.Index.NOT_ANALYZED));
+      doc.add(new Field("content", "aaa bbb ccc ddd " + i, Field.Store.YES, Field.Index.ANALYZED));
+      writer.addDocument(doc);
+    }
+  }
+
+  public void testThrottledMerges() throws IOException {
+    Random random = newRandom();
+    MockDirectoryWrapper directory = newDirectory(random);
+    ConcurrentMergeScheduler cms = new ConcurrentMergeScheduler();
+    cms.setMinThrottledMergeMB(0.0);
+    cms.setMaxMergeWriteMBPerSec(1.0);
+    assertEquals(1.0, cms.getMaxMergeWriteMBPerSec(), 0.0);
+    IndexWriter writer = new IndexWriter(directory, newIndexWriterConfig(random,
+        TEST_VERSION_CURRENT, new MockAnalyzer())
+        .setMaxBufferedDocs(10).setMergeScheduler(cms).setMergePolicy(new LogDocMergePolicy()));
+    addDocs(writer, 200);
+    writer.optimize();
+    writer.close();
+    assertTrue(cms.getTotalThrottledTimeMS() > 0);
+
+    IndexReader reader = IndexReader.open(directory, true);
+    assertEquals(200, reader.numDocs());
+    reader.close();
+    directory.close();
+  }
+
+  public void testSmallMergesNotThrottled() throws IOException {
+    Random random = newRandom();
+    MockDirectoryWrapper directory = newDirectory(random);
+    ConcurrentMergeScheduler cms = new ConcurrentMergeScheduler();
+    // would take minutes if these merges were throttled
+    cms.setMaxMergeWriteMBPerSec(0.001);
+    IndexWriter writer = new IndexWriter(directory, newIndexWriterConfig(random,
+        TEST_VERSION_CURRENT, new MockAnalyzer())
+        .setMaxBufferedDocs(10).setMergeScheduler(cms).setMergePolicy(new LogDocMergePolicy()));
+    addDocs(writer, 200);
+    writer.optimize();
+    writer.close();
+    assertEquals(0, cms.getTotalThrottledTimeMS());
+    directory.close();
+  }
+
+  public void testIllegalThrottleSettings() {
+    ConcurrentMergeScheduler cms = new ConcurrentMergeScheduler();
+    try {
+      cms.setMaxMergeWriteMBPerSec(-1.0);
+      fail("did not hit exception");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+    try {
+      cms.setMinThrottledMergeMB(-1.0);
+      fail("did not hit exception");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+  }
 }
@@ -40,6 +40,9 @@ import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.English;
 import org.apache.lucene.util.LuceneTestCase;
 import org.apache.lucene.util._TestUtil;
 
@@ -517,4 +520,161 @@ public class TestFieldsReader extends LuceneTestCase {
     }
 
   }
+
+  // Stored fields are compressed in blocks of several
+  // documents; make sure documents of all sizes and
+  // positions in their block read back fine, before and
+  // after (bulk-copying) merges
+  public void testCompressedBlocks() throws Exception {
+    Directory dir = newDirectory(random);
+    IndexWriterConfig conf = newIndexWriterConfig(random, TEST_VERSION_CURRENT, new MockAnalyzer()).setMaxBufferedDocs(_TestUtil.nextInt(random, 2, 100));
+    ((LogMergePolicy) conf.getMergePolicy()).setUseCompoundFile(false);
+    ((LogMergePolicy) conf.getMergePolicy()).setUseCompoundDocStore(false);
+    IndexWriter writer = new IndexWriter(dir, conf);
+
+    final int numDocs = 1000 * RANDOM_MULTIPLIER;
+    final String[] texts = new String[numDocs];
+    final byte[][] binaries = new byte[numDocs][];
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(new Field("id", Integer.toString(i), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      if (random.nextInt(10) != 0) {
+        // a few docs are bigger than a whole block
+        final int numWords = random.nextInt(50) == 0 ? 5000 : random.nextInt(50);
+        StringBuilder sb = new StringBuilder();
+        for (int j = 0; j < numWords; j++) {
+          sb.append(English.intToEnglish(random.nextInt(1000))).append(' ');
+        }
+        texts[i] = sb.toString();
+        binaries[i] = new byte[random.nextInt(20)];
+        random.nextBytes(binaries[i]);
+        doc.add(new Field("text", texts[i], Field.Store.YES, Field.Index.ANALYZED));
+        doc.add(new Field("binary", binaries[i]));
+      }
+      writer.addDocument(doc);
+    }
+    writer.close();
+
+    IndexReader reader = IndexReader.open(dir, true);
+    checkCompressedBlocks(reader, texts, binaries);
+    reader.close();
+
+    writer = new IndexWriter(dir, newIndexWriterConfig(random, TEST_VERSION_CURRENT, new MockAnalyzer()));
+    writer.deleteDocuments(new Term("id", "7"));
+    texts[7] = null;
+    writer.optimize();
+    writer.close();
+
+    reader = IndexReader.open(dir, true);
+    checkCompressedBlocks(reader, texts, binaries);
+    reader.close();
+
+    // the texts are very repetitive
+    long textBytes = 0;
+    for (String text : texts) {
+      if (text != null) {
+        textBytes += text.length();
+      }
+    }
+    long fdtBytes = 0;
+    for (String file : dir.listAll()) {
+      if (file.endsWith("." + IndexFileNames.FIELDS_EXTENSION)) {
+        fdtBytes += dir.fileLength(file);
+      }
+    }
+    assertTrue("fdt is " + fdtBytes + " bytes for " + textBytes + " bytes of text", fdtBytes < textBytes / 2);
+    dir.close();
+  }
+
+  private void checkCompressedBlocks(IndexReader reader, String[] texts, byte[][] binaries) throws IOException {
+    final Set<String> lazyFieldNames = Collections.singleton("text");
+    final FieldSelector lazySelector = new SetBasedFieldSelector(Collections.singleton("binary"), lazyFieldNames);
+
+    final int[] ids = new int[reader.maxDoc()];
+    final Bits delDocs = MultiFields.getDeletedDocs(reader);
+    for (int i = 0; i < texts.length; i++) {
+      final DocsEnum docs = MultiFields.getTermDocsEnum(reader, delDocs, "id", new BytesRef(Integer.toString(i)));
+      if (docs != null && docs.nextDoc() != DocsEnum.NO_MORE_DOCS) {
+        ids[docs.docID()] = i;
+      }
+    }
+
+    for (int iter = 0; iter < 2 * reader.maxDoc(); iter++) {
+      final int docID = random.nextInt(reader.maxDoc());
+      if (delDocs != null && delDocs.get(docID)) {
+        continue;
+      }
+      final int id = ids[docID];
+      final boolean lazy = random.nextBoolean();
+      final Document doc = lazy ? reader.document(docID, lazySelector) : reader.document(docID);
+      if (texts[id] == null) {
+        assertEquals(0, doc.getFields().size());
+        continue;
+      }
+      final Fieldable text = doc.getFieldable("text");
+      assertEquals(lazy, text.isLazy());
+      assertEquals(texts[id], text.stringValue());
+      final byte[] binary = doc.getBinaryValue("binary");
+      assertEquals(binaries[id].length, binary.length);
+      for (int i = 0; i < binary.length; i++) {
+        assertEquals(binaries[id][i], binary[i]);
+      }
+    }
+  }
+
+  // Collects the visited values as Strings
+  private static class CollectingVisitor extends StoredFieldVisitor {
+    final Set<String> fields;
+    final StringBuilder values = new StringBuilder();
+
+    CollectingVisitor(Set<String> fields) {
+      this.fields = fields;
+    }
+
+    @Override
+    public Status needsField(String field) {
+      if (field == DocHelper.LARGE_LAZY_FIELD_KEY) {
+        return Status.STOP;
+      }
+      return fields == null || fields.contains(field) ? Status.YES : Status.NO;
+    }
+
+    @Override
+    public void stringField(String field, byte[] utf8, int offset, int length, boolean tokenized) throws IOException {
+      values.append(field).append('=').append(new String(utf8, offset, length, "UTF-8")).append(tokenized ? "(t)" : "").append('\n');
+    }
+
+    @Override
+    public void binaryField(String field, byte[] value, int offset, int length) {
+      values.append(field).append("=binary:").append(length).append('\n');
+    }
+  }
+
+  public void testStoredFieldVisitor() throws Exception {
+    IndexReader reader = IndexReader.open(dir, true);
+    Document doc = reader.document(0);
+    for (Set<String> fields : new Set[] {null, Collections.singleton(DocHelper.TEXT_FIELD_2_KEY)}) {
+      CollectingVisitor expected = new CollectingVisitor(fields);
+      expected.visitDocument(doc);
+      assertTrue(expected.values.indexOf(DocHelper.TEXT_FIELD_2_KEY + "=" + DocHelper.FIELD_2_TEXT + "(t)") != -1);
+      assertEquals(fields == null, expected.values.indexOf(DocHelper.LAZY_FIELD_BINARY_KEY + "=binary:") != -1);
+      assertEquals(-1, expected.values.indexOf(DocHelper.LARGE_LAZY_FIELD_KEY));
+
+      // visits the stored bytes
+      CollectingVisitor actual = new CollectingVisitor(fields);
+      reader.document(0, actual);
+      assertEquals(expected.values.toString(), actual.values.toString());
+
+      // default implementation, which loads the Document
+      actual = new CollectingVisitor(fields);
+      new FilterIndexReader(reader) {
+        @Override
+        public void document(int n, StoredFieldVisitor visitor) throws IOException {
+          visitor.visitDocument(document(n));
+        }
+      }.document(0, actual);
+      assertEquals(expected.values.toString(), actual.values.toString());
+    }
+    reader.close();
+  }
 }
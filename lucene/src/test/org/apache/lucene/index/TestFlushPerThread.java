@@ -0,0 +1,165 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Random;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.English;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestFlushPerThread extends LuceneTestCase {
+
+  private IndexWriterConfig newConfig(Random random) {
+    return newIndexWriterConfig(random, TEST_VERSION_CURRENT, new MockAnalyzer()).setFlushPerThread(true);
+  }
+
+  private static Document newDoc(int id, int count) {
+    Document doc = new Document();
+    doc.add(new Field("id", Integer.toString(id), Field.Store.YES, Field.Index.NOT_ANALYZED));
+    doc.add(new Field("contents", English.intToEnglish(id+10*count), Field.Store.NO, Field.Index.ANALYZED,
+                      Field.TermVector.WITH_POSITIONS_OFFSETS));
+    return doc;
+  }
+
+  public void testSingleThread() throws Exception {
+    Random random = newRandom();
+    Directory dir = newDirectory(random);
+    IndexWriter writer = new IndexWriter(dir, newConfig(random).setMaxBufferedDocs(7));
+
+    for(int i=0;i<100;i++)
+      writer.addDocument(newDoc(i, 0));
+    assertTrue(writer.getFlushCount() > 0);
+    assertEquals(100, writer.maxDoc());
+
+    // Applies both to flushed docs and to buffered ones
+    writer.deleteDocuments(new Term("id", "3"));
+    writer.deleteDocuments(new TermQuery(new Term("id", "98")));
+    writer.updateDocument(new Term("id", "99"), newDoc(99, 1));
+    writer.addDocument(newDoc(3, 1));
+
+    IndexReader r = writer.getReader();
+    assertEquals(99, r.numDocs());
+    IndexSearcher s = new IndexSearcher(r);
+    assertEquals(1, s.search(new TermQuery(new Term("id", "3")), 10).totalHits);
+    assertEquals(0, s.search(new TermQuery(new Term("id", "98")), 10).totalHits);
+    assertEquals(1, s.search(new TermQuery(new Term("id", "99")), 10).totalHits);
+    s.close();
+    r.close();
+
+    writer.close();
+    assertTrue(_TestUtil.checkIndex(dir));
+    dir.close();
+  }
+
+  private static class UpdateThread extends Thread {
+    final IndexWriter writer;
+    final int iters;
+    volatile Throwable failure;
+
+    UpdateThread(IndexWriter writer, int iters) {
+      this.writer = writer;
+      this.iters = iters;
+    }
+
+    @Override
+    public void run() {
+      try {
+        for(int count=0;count<iters;count++) {
+          for(int i=0;i<100;i++) {
+            writer.updateDocument(new Term("id", Integer.toString(i)), newDoc(i, count));
+          }
+        }
+      } catch (Throwable t) {
+        failure = t;
+      }
+    }
+  }
+
+  public void testConcurrentUpdates() throws Exception {
+    Random random = newRandom();
+    Directory dir = newDirectory(random);
+    IndexWriterConfig conf = newConfig(random).setMaxThreadStates(4);
+    if (random.nextBoolean()) {
+      conf.setMaxBufferedDocs(_TestUtil.nextInt(random, 2, 50));
+    } else {
+      conf.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH).setRAMBufferSizeMB(0.1);
+    }
+    IndexWriter writer = new IndexWriter(dir, conf);
+
+    UpdateThread[] threads = new UpdateThread[4];
+    for(int i=0;i<threads.length;i++) {
+      threads[i] = new UpdateThread(writer, 5 * RANDOM_MULTIPLIER);
+      threads[i].start();
+    }
+    for(int i=0;i<threads.length;i++)
+      threads[i].join();
+    for(int i=0;i<threads.length;i++)
+      assertNull("thread " + i + " hit exception: " + threads[i].failure, threads[i].failure);
+
+    assertTrue(writer.getFlushCount() > 0);
+
+    // Each id must be live exactly once
+    IndexReader r = writer.getReader();
+    assertEquals(100, r.numDocs());
+    for(int i=0;i<100;i++) {
+      DocsEnum docs = MultiFields.getTermDocsEnum(r, MultiFields.getDeletedDocs(r), "id", new BytesRef(Integer.toString(i)));
+      assertNotNull(docs);
+      assertTrue(docs.nextDoc() != DocsEnum.NO_MORE_DOCS);
+      assertEquals(DocsEnum.NO_MORE_DOCS, docs.nextDoc());
+    }
+    r.close();
+
+    writer.close();
+    assertTrue(_TestUtil.checkIndex(dir));
+    r = IndexReader.open(dir, true);
+    assertEquals(100, r.numDocs());
+    r.close();
+    dir.close();
+  }
+
+  public void testDeleteAllAndRollback() throws Exception {
+    Random random = newRandom();
+    Directory dir = newDirectory(random);
+    IndexWriter writer = new IndexWriter(dir, newConfig(random).setMaxBufferedDocs(10));
+    for(int i=0;i<25;i++)
+      writer.addDocument(newDoc(i, 0));
+    writer.commit();
+    for(int i=0;i<25;i++)
+      writer.addDocument(newDoc(i, 1));
+    assertEquals(50, writer.maxDoc());
+
+    writer.deleteAll();
+    assertEquals(0, writer.maxDoc());
+    writer.addDocument(newDoc(0, 2));
+    assertEquals(1, writer.maxDoc());
+
+    writer.rollback();
+    IndexReader r = IndexReader.open(dir, true);
+    assertEquals(25, r.numDocs());
+    r.close();
+    dir.close();
+  }
+}
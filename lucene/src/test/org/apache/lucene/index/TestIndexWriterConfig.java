@@ -83,7 +83,9 @@ public class TestIndexWriterConfig extends LuceneTestCaseJ4 {
     assertNull(conf.getMergedSegmentWarmer());
     assertEquals(IndexWriterConfig.DEFAULT_CODEC_PROVIDER, CodecProvider.getDefault());
     assertEquals(IndexWriterConfig.DEFAULT_MAX_THREAD_STATES, conf.getMaxThreadStates());
+    assertEquals(IndexWriterConfig.DEFAULT_FLUSH_PER_THREAD, conf.getFlushPerThread());
     assertEquals(IndexWriterConfig.DEFAULT_READER_TERMS_INDEX_DIVISOR, conf.getReaderTermsIndexDivisor());
+    assertNull(conf.getMergeExecutor());
     assertEquals(LogByteSizeMergePolicy.class, conf.getMergePolicy().getClass());
     
     // Sanity check - validate that all getters are covered.
@@ -106,8 +108,10 @@ public class TestIndexWriterConfig extends LuceneTestCaseJ4 {
     getters.add("getCodecProvider");
     getters.add("getMergePolicy");
     getters.add("getMaxThreadStates");
+    getters.add("getFlushPerThread");
     getters.add("getReaderPooling");
     getters.add("getReaderTermsIndexDivisor");
+    getters.add("getMergeExecutor");
     for (Method m : IndexWriterConfig.class.getDeclaredMethods()) {
       if (m.getDeclaringClass() == IndexWriterConfig.class && m.getName().startsWith("get")) {
         assertTrue("method " + m.getName() + " is not tested for defaults", getters.contains(m.getName()));
@@ -20,13 +20,21 @@ package org.apache.lucene.index;
 import org.apache.lucene.util.LuceneTestCase;
 import org.apache.lucene.store.BufferedIndexInput;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
 import org.apache.lucene.index.codecs.CodecProvider;
 import org.apache.lucene.util.BytesRef;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class TestSegmentMerger extends LuceneTestCase {
   //The variables for the new merged segment
@@ -40,6 +48,7 @@ public class TestSegmentMerger extends LuceneTestCase {
   private Directory merge2Dir;
   private Document doc2 = new Document();
   private SegmentReader reader2 = null;
+  private Random random;
   
 
   public TestSegmentMerger(String s) {
@@ -49,7 +58,7 @@ public class TestSegmentMerger extends LuceneTestCase {
   @Override
   protected void setUp() throws Exception {
     super.setUp();
-    Random random = newRandom();
+    random = newRandom();
     mergedDir = newDirectory(random);
     merge1Dir = newDirectory(random);
     merge2Dir = newDirectory(random);
@@ -134,4 +143,109 @@ public class TestSegmentMerger extends LuceneTestCase {
     TestSegmentReader.checkNorms(mergedReader);
     mergedReader.close();
   }    
+
+  public void testConcurrentPhases() throws IOException {
+    SegmentMerger merger = new SegmentMerger(mergedDir, IndexWriter.DEFAULT_TERM_INDEX_INTERVAL, "seq", null, CodecProvider.getDefault(), null);
+    merger.add(reader1);
+    merger.add(reader2);
+    assertEquals(2, merger.merge());
+    Set<String> files = new HashSet<String>(Arrays.asList(mergedDir.listAll()));
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      merger = new SegmentMerger(mergedDir, IndexWriter.DEFAULT_TERM_INDEX_INTERVAL, "conc", null, CodecProvider.getDefault(), null);
+      merger.setExecutor(executor);
+      merger.add(reader1);
+      merger.add(reader2);
+      assertEquals(2, merger.merge());
+    } finally {
+      executor.shutdown();
+    }
+
+    // the concurrent merge must write exactly the same files
+    int count = 0;
+    for (String file : mergedDir.listAll()) {
+      if (!file.startsWith("conc")) {
+        continue;
+      }
+      final String seqFile = "seq" + file.substring(4);
+      assertTrue(seqFile, files.contains(seqFile));
+      assertSameContent(file, seqFile);
+      count++;
+    }
+    assertEquals(files.size(), count);
+  }
+
+  public void testConcurrentFields() throws IOException {
+    // many fields, more than ConcurrentPostingsMerger buffers
+    // at once, and deletions to re-map the docs around
+    final int numFields = 10 * ConcurrentPostingsMerger.MAX_BUFFERED_FIELDS;
+    IndexReader[] readers = new IndexReader[2];
+    Directory[] dirs = new Directory[readers.length];
+    for (int i = 0; i < readers.length; i++) {
+      dirs[i] = newDirectory(random);
+      IndexWriter writer = new IndexWriter(dirs[i], newIndexWriterConfig(random, TEST_VERSION_CURRENT, new MockAnalyzer()));
+      for (int j = 0; j < 50; j++) {
+        Document doc = new Document();
+        doc.add(new Field("id", Integer.toString(j), Field.Store.YES, Field.Index.NOT_ANALYZED));
+        for (int k = 0; k < numFields; k++) {
+          if (random.nextInt(3) != 0) {
+            doc.add(new Field("field" + k, "term" + random.nextInt(20) + " term" + random.nextInt(20),
+                              Field.Store.NO, random.nextBoolean() ? Field.Index.ANALYZED : Field.Index.NOT_ANALYZED));
+          }
+        }
+        writer.addDocument(doc);
+      }
+      writer.optimize();
+      writer.close();
+      readers[i] = IndexReader.open(dirs[i], false);
+      readers[i].deleteDocument(random.nextInt(50));
+    }
+
+    SegmentMerger merger = new SegmentMerger(mergedDir, IndexWriter.DEFAULT_TERM_INDEX_INTERVAL, "seq", null, CodecProvider.getDefault(), null);
+    for (IndexReader reader : readers) {
+      merger.add(SegmentReader.getOnlySegmentReader(reader));
+    }
+    assertEquals(98, merger.merge());
+    Set<String> files = new HashSet<String>(Arrays.asList(mergedDir.listAll()));
+
+    // a single thread, busy with the other phases, must not
+    // keep the fields from being merged
+    ExecutorService executor = Executors.newFixedThreadPool(1);
+    try {
+      merger = new SegmentMerger(mergedDir, IndexWriter.DEFAULT_TERM_INDEX_INTERVAL, "conc", null, CodecProvider.getDefault(), null);
+      merger.setExecutor(executor);
+      for (IndexReader reader : readers) {
+        merger.add(SegmentReader.getOnlySegmentReader(reader));
+      }
+      assertEquals(98, merger.merge());
+    } finally {
+      executor.shutdown();
+    }
+
+    int count = 0;
+    for (String file : mergedDir.listAll()) {
+      if (file.startsWith("conc")) {
+        assertSameContent(file, "seq" + file.substring(4));
+        count++;
+      }
+    }
+    assertEquals(files.size(), count);
+
+    for (int i = 0; i < readers.length; i++) {
+      readers[i].close();
+      dirs[i].close();
+    }
+  }
+
+  private void assertSameContent(String file1, String file2) throws IOException {
+    IndexInput in1 = mergedDir.openInput(file1);
+    IndexInput in2 = mergedDir.openInput(file2);
+    assertEquals(file1, in2.length(), in1.length());
+    for (long i = 0; i < in1.length(); i++) {
+      assertEquals(file1, in2.readByte(), in1.readByte());
+    }
+    in1.close();
+    in2.close();
+  }
 }
@@ -0,0 +1,177 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.analysis.MockTokenizer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.search.AutomatonTermsEnum;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.ReaderUtil;
+import org.apache.lucene.util._TestUtil;
+import org.apache.lucene.util.automaton.Automaton;
+import org.apache.lucene.util.automaton.AutomatonTestUtil;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.apache.lucene.util.automaton.LevenshteinAutomata;
+import org.apache.lucene.util.automaton.MinimizationOperations;
+import org.apache.lucene.util.automaton.RegExp;
+
+/**
+ * Checks that {@link Terms#intersect} returns the same terms
+ * as running the automaton over all terms of the field.
+ */
+public class TestTermsIntersect extends LuceneTestCase {
+  private Random random;
+  private Directory dir;
+  private IndexReader reader;
+  private final List<String> termStrings = new ArrayList<String>();
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    random = newRandom();
+    dir = newDirectory(random);
+    RandomIndexWriter writer = new RandomIndexWriter(random, dir, new MockAnalyzer(MockTokenizer.KEYWORD, false));
+
+    Document doc = new Document();
+    Field field = new Field("field", "", Field.Store.NO, Field.Index.NOT_ANALYZED);
+    doc.add(field);
+    int num = 2000 * RANDOM_MULTIPLIER;
+    for (int i = 0; i < num; i++) {
+      final String s;
+      if (random.nextBoolean()) {
+        s = _TestUtil.randomUnicodeString(random);
+      } else {
+        // terms sharing long prefixes, that simple patterns match
+        s = randomString("abc", 1 + random.nextInt(10));
+      }
+      field.setValue(s);
+      termStrings.add(s);
+      writer.addDocument(doc);
+    }
+    reader = writer.getReader();
+    writer.close();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    reader.close();
+    dir.close();
+    super.tearDown();
+  }
+
+  private String randomString(String chars, int length) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      sb.append(chars.charAt(random.nextInt(chars.length())));
+    }
+    return sb.toString();
+  }
+
+  // eg ".*ab?c+"
+  private String randomPattern() {
+    StringBuilder sb = new StringBuilder();
+    int length = 1 + random.nextInt(4);
+    for (int i = 0; i < length; i++) {
+      sb.append(randomString("abc.", 1));
+      sb.append(randomString("  *?+", 1).trim());
+    }
+    return sb.toString();
+  }
+
+  public void testRegexps() throws Exception {
+    int num = 100 * RANDOM_MULTIPLIER;
+    for (int i = 0; i < num; i++) {
+      final Automaton a;
+      if (random.nextBoolean()) {
+        a = AutomatonTestUtil.randomRegexp(random).toAutomaton();
+      } else {
+        a = new RegExp(randomPattern(), RegExp.NONE).toAutomaton();
+      }
+      MinimizationOperations.minimize(a);
+      assertIntersect(new CompiledAutomaton(a));
+    }
+  }
+
+  public void testFuzzy() throws Exception {
+    int num = 50 * RANDOM_MULTIPLIER;
+    for (int i = 0; i < num; i++) {
+      final String term = termStrings.get(random.nextInt(termStrings.size()));
+      final Automaton a = new LevenshteinAutomata(term).toAutomaton(random.nextInt(3));
+      assertIntersect(new CompiledAutomaton(a, true));
+    }
+  }
+
+  private void assertIntersect(CompiledAutomaton compiled) throws IOException {
+    List<IndexReader> subs = new ArrayList<IndexReader>();
+    ReaderUtil.gatherSubReaders(subs, reader);
+    for (IndexReader sub : subs) {
+      assertIntersect(sub.fields().terms("field"), compiled);
+    }
+    assertIntersect(MultiFields.getTerms(reader, "field"), compiled);
+  }
+
+  private void assertIntersect(Terms terms, CompiledAutomaton compiled) throws IOException {
+    BytesRef startTerm = null;
+    if (random.nextBoolean()) {
+      startTerm = new BytesRef(termStrings.get(random.nextInt(termStrings.size())));
+    } else if (random.nextInt(4) == 0) {
+      startTerm = new BytesRef(randomString("abc", 1 + random.nextInt(5)));
+    }
+
+    // brute force
+    final Comparator<BytesRef> termComp = terms.getComparator();
+    final List<BytesRef> expected = new ArrayList<BytesRef>();
+    final List<Integer> docFreqs = new ArrayList<Integer>();
+    TermsEnum termsEnum = terms.iterator();
+    BytesRef term;
+    while ((term = termsEnum.next()) != null) {
+      if ((startTerm == null || termComp.compare(term, startTerm) > 0) &&
+          compiled.runAutomaton.run(term.bytes, term.offset, term.length)) {
+        expected.add(new BytesRef(term));
+        docFreqs.add(termsEnum.docFreq());
+      }
+    }
+
+    assertTerms(expected, docFreqs, terms.intersect(compiled, startTerm));
+    assertTerms(expected, docFreqs, new AutomatonTermsEnum(terms.iterator(), compiled, startTerm));
+  }
+
+  private void assertTerms(List<BytesRef> expected, List<Integer> docFreqs, TermsEnum termsEnum) throws IOException {
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i), termsEnum.next());
+      assertEquals(docFreqs.get(i).intValue(), termsEnum.docFreq());
+      DocsEnum docs = termsEnum.docs(null, null);
+      int count = 0;
+      while (docs.nextDoc() != DocsEnum.NO_MORE_DOCS) {
+        count++;
+      }
+      assertEquals(docFreqs.get(i).intValue(), count);
+    }
+    assertNull(termsEnum.next());
+  }
+}
@@ -0,0 +1,187 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Random;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.English;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestTieredMergePolicy extends LuceneTestCase {
+
+  private static Document newDoc(int id, int count) {
+    Document doc = new Document();
+    doc.add(new Field("id", Integer.toString(id), Field.Store.YES, Field.Index.NOT_ANALYZED));
+    doc.add(new Field("contents", English.intToEnglish(id+10*count), Field.Store.NO, Field.Index.ANALYZED));
+    return doc;
+  }
+
+  private static TieredMergePolicy newTieredMergePolicy() {
+    return new TieredMergePolicy().setMaxMergeAtOnce(2).setSegmentsPerTier(2.0).setFloorSegmentMB(0.0001);
+  }
+
+  // Updates documents while segments are merged out of order, so
+  // buffered deletes must still hit the right documents
+  private void doTestUpdates(Random random, boolean flushPerThread) throws Exception {
+    Directory dir = newDirectory(random);
+    IndexWriterConfig conf = newIndexWriterConfig(random, TEST_VERSION_CURRENT, new MockAnalyzer())
+      .setMaxBufferedDocs(3).setMergePolicy(newTieredMergePolicy()).setFlushPerThread(flushPerThread);
+    IndexWriter writer = new IndexWriter(dir, conf);
+
+    final int numDocs = 50;
+    for(int i=0;i<numDocs;i++) {
+      writer.addDocument(newDoc(i, 0));
+    }
+    for(int iter=1;iter<4;iter++) {
+      for(int i=0;i<numDocs;i+=iter+1) {
+        writer.updateDocument(new Term("id", Integer.toString(i)), newDoc(i, iter));
+      }
+    }
+    writer.deleteDocuments(new Term("id", "7"));
+    writer.close();
+
+    _TestUtil.checkIndex(dir);
+    IndexReader reader = IndexReader.open(dir, true);
+    assertEquals(numDocs-1, reader.numDocs());
+    IndexSearcher searcher = new IndexSearcher(reader);
+    for(int i=0;i<numDocs;i++) {
+      final int expected = i == 7 ? 0 : 1;
+      assertEquals("id=" + i, expected, searcher.search(new TermQuery(new Term("id", Integer.toString(i))), 10).totalHits);
+    }
+    searcher.close();
+    reader.close();
+    dir.close();
+  }
+
+  public void testUpdatesWithNonContiguousMerges() throws Exception {
+    Random random = newRandom();
+    doTestUpdates(random, false);
+    doTestUpdates(random, true);
+  }
+
+  public void testExpungeDeletes() throws Exception {
+    Random random = newRandom();
+    Directory dir = newDirectory(random);
+    TieredMergePolicy tmp = newTieredMergePolicy();
+    tmp.setExpungeDeletesPctAllowed(30.0);
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(random, TEST_VERSION_CURRENT, new MockAnalyzer())
+                                         .setMaxBufferedDocs(4).setMergePolicy(tmp));
+    for(int i=0;i<80;i++) {
+      writer.addDocument(newDoc(i, 0));
+    }
+    writer.optimize();
+    for(int i=0;i<80;i+=2) {
+      writer.deleteDocuments(new Term("id", Integer.toString(i)));
+    }
+    writer.commit();
+    writer.expungeDeletes();
+    assertEquals(40, writer.numDocs());
+    assertEquals(40, writer.maxDoc());
+    writer.close();
+    dir.close();
+  }
+
+  public void testOptimize() throws Exception {
+    Random random = newRandom();
+    Directory dir = newDirectory(random);
+    TieredMergePolicy tmp = newTieredMergePolicy().setMaxMergeAtOnceExplicit(3);
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(random, TEST_VERSION_CURRENT, new MockAnalyzer())
+                                         .setMaxBufferedDocs(2).setMergePolicy(tmp));
+    for(int i=0;i<50;i++) {
+      writer.addDocument(newDoc(i, 0));
+      if (i % 5 == 0) {
+        writer.deleteDocuments(new Term("id", Integer.toString(i/2)));
+      }
+    }
+    writer.optimize(3);
+    writer.commit();
+    assertTrue(writer.getSegmentCount() <= 3);
+    writer.optimize();
+    assertEquals(1, writer.getSegmentCount());
+    assertEquals(40, writer.numDocs());
+    assertEquals(40, writer.maxDoc());
+    writer.close();
+    dir.close();
+  }
+
+  public void testMaxMergedSegmentSize() throws Exception {
+    Random random = newRandom();
+    Directory dir = newDirectory(random);
+    // every flushed segment is already larger than half the max size
+    TieredMergePolicy tmp = newTieredMergePolicy().setMaxMergedSegmentMB(0.0001);
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(random, TEST_VERSION_CURRENT, new MockAnalyzer())
+                                         .setMaxBufferedDocs(5).setMergePolicy(tmp));
+    for(int i=0;i<50;i++) {
+      writer.addDocument(newDoc(i, 0));
+    }
+    writer.commit();
+    assertEquals(10, writer.getSegmentCount());
+    writer.close();
+    dir.close();
+  }
+
+  public void testSetters() {
+    TieredMergePolicy tmp = new TieredMergePolicy();
+    assertEquals(10, tmp.getMaxMergeAtOnce());
+    assertEquals(30, tmp.getMaxMergeAtOnceExplicit());
+    assertEquals(5*1024.0, tmp.getMaxMergedSegmentMB(), 0.0);
+    assertEquals(2.0, tmp.getFloorSegmentMB(), 0.0);
+    assertEquals(10.0, tmp.getSegmentsPerTier(), 0.0);
+
+    tmp.setMaxMergedSegmentMB(500.0);
+    assertEquals(500.0, tmp.getMaxMergedSegmentMB(), 0.0);
+
+    try {
+      tmp.setMaxMergeAtOnce(1);
+      fail("did not hit exception");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+    try {
+      tmp.setSegmentsPerTier(1.0);
+      fail("did not hit exception");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+    try {
+      tmp.setFloorSegmentMB(0.0);
+      fail("did not hit exception");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+    try {
+      tmp.setExpungeDeletesPctAllowed(101.0);
+      fail("did not hit exception");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+    try {
+      tmp.setReclaimDeletesWeight(-1.0);
+      fail("did not hit exception");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+  }
+}
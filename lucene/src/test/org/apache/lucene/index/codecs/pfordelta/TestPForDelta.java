@@ -0,0 +1,174 @@
+package org.apache.lucene.index.codecs.pfordelta;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Random;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.codecs.sep.IntIndexInput;
+import org.apache.lucene.index.codecs.sep.IntIndexOutput;
+import org.apache.lucene.index.codecs.sep.IntStreamFactory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestPForDelta extends LuceneTestCase {
+
+  private int nextValue(Random random) {
+    switch(random.nextInt(10)) {
+    case 0:
+      // exception
+      return random.nextInt();
+    case 1:
+      return 0;
+    default:
+      return random.nextInt(1 << random.nextInt(8));
+    }
+  }
+
+  public void testRandomInts() throws Exception {
+    Random random = newRandom();
+    Directory dir = newDirectory(random);
+
+    for(int iter=0;iter<10*RANDOM_MULTIPLIER;iter++) {
+      final int blockSize = _TestUtil.nextInt(random, 1, 300);
+      final int count = random.nextInt(5000);
+      final int[] values = new int[count];
+      for(int i=0;i<count;i++) {
+        values[i] = nextValue(random);
+      }
+
+      IntStreamFactory f = new PForDeltaCodec(blockSize).getIntFactory();
+      IntIndexOutput out = f.createOutput(dir, "test" + iter);
+      for(int i=0;i<count;i++) {
+        out.write(values[i]);
+      }
+      out.close();
+
+      IntIndexInput in = f.openInput(dir, "test" + iter);
+      IntIndexInput.Reader r = in.reader();
+      int upto = 0;
+      while(upto < count) {
+        if (random.nextBoolean()) {
+          assertEquals(values[upto++], r.next());
+        } else {
+          final IntsRef chunk = r.read(_TestUtil.nextInt(random, 1, count - upto));
+          assertTrue(chunk.length > 0);
+          for(int i=0;i<chunk.length;i++) {
+            assertEquals(values[upto++], chunk.ints[chunk.offset+i]);
+          }
+        }
+      }
+      in.close();
+    }
+    dir.close();
+  }
+
+  public void testAllBitWidths() throws Exception {
+    final int[] values = new int[100];
+    final int[] decoded = new int[100];
+    final byte[] packed = new byte[400];
+    for(int numBits=0;numBits<=32;numBits++) {
+      final long max = (1L << numBits) - 1;
+      for(int i=0;i<values.length;i++) {
+        values[i] = (int) (max - i % (max + 1));
+      }
+      final byte[] bytes = new byte[PForDelta.numBytes(values.length, numBits)];
+      long acc = 0;
+      int accBits = 0;
+      int p = 0;
+      for(int i=0;i<values.length;i++) {
+        acc |= (values[i] & 0xFFFFFFFFL) << accBits;
+        accBits += numBits;
+        while(accBits >= 8) {
+          bytes[p++] = (byte) acc;
+          acc >>>= 8;
+          accBits -= 8;
+        }
+      }
+      if (accBits > 0) {
+        bytes[p++] = (byte) acc;
+      }
+      System.arraycopy(bytes, 0, packed, 0, bytes.length);
+      PForDelta.unpack(packed, decoded, values.length, numBits);
+      for(int i=0;i<values.length;i++) {
+        assertEquals("numBits=" + numBits + " i=" + i, values[i], decoded[i]);
+      }
+    }
+  }
+
+  public void testBulkRead() throws Exception {
+    Random random = newRandom();
+    Directory dir = newDirectory(random);
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(random, TEST_VERSION_CURRENT, new MockAnalyzer())
+                                    .setCodecProvider(_TestUtil.alwaysCodec(new PForDeltaCodec(_TestUtil.nextInt(random, 1, 200)))));
+    final int numDocs = 3000*RANDOM_MULTIPLIER;
+    for(int i=0;i<numDocs;i++) {
+      Document doc = new Document();
+      doc.add(new Field("id", "" + i, Field.Store.NO, Field.Index.NOT_ANALYZED));
+      StringBuilder sb = new StringBuilder("common");
+      if (i % 3 == 0) {
+        sb.append(" three");
+      }
+      final int extra = random.nextInt(5);
+      for(int j=0;j<extra;j++) {
+        sb.append(" common");
+      }
+      doc.add(new Field("body", sb.toString(), Field.Store.NO, Field.Index.ANALYZED));
+      doc.add(new Field("omit", sb.toString(), Field.Store.NO, Field.Index.ANALYZED));
+      doc.getField("omit").setOmitTermFreqAndPositions(true);
+      w.addDocument(doc);
+      if (random.nextInt(10) == 7) {
+        w.deleteDocuments(new Term("id", "" + random.nextInt(i+1)));
+      }
+    }
+    IndexReader r = w.getReader();
+    w.close();
+
+    for(String field : new String[] {"body", "omit"}) {
+      for(String text : new String[] {"common", "three"}) {
+        final BytesRef term = new BytesRef(text);
+        DocsEnum expected = MultiFields.getTermDocsEnum(r, MultiFields.getDeletedDocs(r), field, term);
+        DocsEnum actual = MultiFields.getTermDocsEnum(r, MultiFields.getDeletedDocs(r), field, term);
+        DocsEnum.BulkReadResult bulk = actual.getBulkResult();
+        while(true) {
+          final int count = actual.read();
+          if (count == 0) {
+            assertEquals(DocsEnum.NO_MORE_DOCS, expected.nextDoc());
+            break;
+          }
+          for(int i=0;i<count;i++) {
+            assertEquals(expected.nextDoc(), bulk.docs.ints[i]);
+            assertEquals(expected.freq(), bulk.freqs.ints[i]);
+          }
+        }
+      }
+    }
+    r.close();
+    dir.close();
+  }
+}
@@ -0,0 +1,174 @@
+package org.apache.lucene.index.codecs.standard;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.SegmentWriteState;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.codecs.Codec;
+import org.apache.lucene.index.codecs.CodecProvider;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestTermStateCache extends LuceneTestCase {
+
+  private static TermState newState(long ord) {
+    TermState state = new TermState();
+    state.ord = ord;
+    state.docFreq = (int) ord;
+    return state;
+  }
+
+  public void testBasics() throws Exception {
+    TermStateCache cache = new TermStateCache(10);
+    assertEquals(16, cache.getSize());
+
+    BytesRef term = new BytesRef("lucene");
+    assertNull(cache.get("field", term));
+    cache.put("field", term, newState(17));
+    // the term is copied
+    term.copy("solr");
+    assertNull(cache.get("field", term));
+    assertEquals(17, cache.get("field", new BytesRef("lucene")).ord);
+    // same bytes, other field
+    assertNull(cache.get("other", new BytesRef("lucene")));
+
+    cache.put("field", new BytesRef("lucene"), newState(42));
+    assertEquals(42, cache.get("field", new BytesRef("lucene")).ord);
+
+    assertEquals(2, cache.getHitCount());
+    assertEquals(3, cache.getMissCount());
+  }
+
+  public void testDisabled() throws Exception {
+    TermStateCache cache = new TermStateCache(0);
+    cache.put("field", new BytesRef("lucene"), newState(17));
+    assertNull(cache.get("field", new BytesRef("lucene")));
+    assertEquals(0, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+  }
+
+  public void testBounded() throws Exception {
+    TermStateCache cache = new TermStateCache(64);
+    for (int i = 0; i < 1000; i++) {
+      cache.put("field", new BytesRef("" + i), newState(i));
+    }
+    int found = 0;
+    for (int i = 0; i < 1000; i++) {
+      TermState state = cache.get("field", new BytesRef("" + i));
+      if (state != null) {
+        assertEquals(i, state.ord);
+        found++;
+      }
+    }
+    assertTrue("found=" + found, found > 0 && found <= cache.getSize());
+    // the most recently added term is always cached
+    assertEquals(999, cache.get("field", new BytesRef("999")).ord);
+  }
+
+  public void testConcurrent() throws Exception {
+    final TermStateCache cache = new TermStateCache(128);
+    final AtomicBoolean failed = new AtomicBoolean();
+    final int numThreads = 4;
+    final int iters = 10000 * RANDOM_MULTIPLIER;
+    final long seed = newRandom().nextLong();
+    Thread[] threads = new Thread[numThreads];
+    for (int i = 0; i < numThreads; i++) {
+      final Random random = new Random(seed + i);
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          final BytesRef term = new BytesRef();
+          for (int j = 0; j < iters && !failed.get(); j++) {
+            final int value = random.nextInt(500);
+            term.copy("" + value);
+            final TermState state = cache.get("field", term);
+            if (state == null) {
+              cache.put("field", term, newState(value));
+            } else if (state.ord != value || state.docFreq != value) {
+              failed.set(true);
+            }
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertFalse(failed.get());
+    assertEquals(numThreads * (long) iters, cache.getHitCount() + cache.getMissCount());
+  }
+
+  private static class StandardOnlyCodecs extends CodecProvider {
+    final Codec codec = new StandardCodec(256);
+
+    StandardOnlyCodecs() {
+      register(codec);
+    }
+
+    @Override
+    public Codec getWriter(SegmentWriteState state) {
+      return codec;
+    }
+  }
+
+  public void testTermQueries() throws Exception {
+    Random random = newRandom();
+    Directory dir = newDirectory(random);
+    CodecProvider codecs = new StandardOnlyCodecs();
+    IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(random, TEST_VERSION_CURRENT, new MockAnalyzer()).setCodecProvider(codecs));
+    for (int i = 0; i < 100; i++) {
+      Document doc = new Document();
+      doc.add(new Field("id", "" + i, Field.Store.NO, Field.Index.NOT_ANALYZED));
+      doc.add(new Field("body", i % 2 == 0 ? "even" : "odd", Field.Store.NO, Field.Index.NOT_ANALYZED));
+      w.addDocument(doc);
+    }
+    w.optimize();
+    w.close();
+
+    IndexReader r = IndexReader.open(dir, null, true, 1, codecs);
+    IndexReader[] subs = r.getSequentialSubReaders();
+    assertEquals(1, subs.length);
+    TermStateCache cache = ((StandardTermsDictReader) subs[0].fields()).getTermsCache();
+    assertEquals(256, cache.getSize());
+
+    IndexSearcher s = new IndexSearcher(r);
+    assertEquals(50, s.search(new TermQuery(new Term("body", "even")), 1).totalHits);
+    final long hits = cache.getHitCount();
+    // the term is now cached, so looking it up again
+    // doesn't seek the terms dict
+    for (int i = 0; i < 10; i++) {
+      assertEquals(50, s.search(new TermQuery(new Term("body", "even")), 1).totalHits);
+    }
+    assertTrue(cache.getHitCount() >= hits + 10);
+    s.close();
+    r.close();
+    dir.close();
+  }
+}
@@ -0,0 +1,269 @@
+package org.apache.lucene.index.values;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Random;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.IndexDocValuesField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LogMergePolicy;
+import org.apache.lucene.index.MultiDocValues;
+import org.apache.lucene.index.SerialMergeScheduler;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.values.IndexDocValues.Source;
+import org.apache.lucene.index.values.IndexDocValues.SortedSource;
+import org.apache.lucene.index.values.IndexDocValues.Type;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.function.DocValues;
+import org.apache.lucene.search.function.IndexDocValuesSource;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestIndexDocValues extends LuceneTestCase {
+
+  private Random random;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    random = newRandom();
+  }
+
+  private static String fixed(int id) {
+    final String s = Integer.toString(id);
+    return "00000000".substring(s.length()) + s;
+  }
+
+  private static String var(int id) {
+    // variable length, not in id order
+    return Integer.toString(id * 7919 % 1000) + "_" + Integer.toString(id, 2);
+  }
+
+  private Document newDoc(int id) {
+    Document doc = new Document();
+    doc.add(new Field("id", Integer.toString(id), Field.Store.YES, Field.Index.NOT_ANALYZED));
+    // leave some docs without values
+    if (id % 10 != 3) {
+      doc.add(new IndexDocValuesField("int").setInt(id % 2 == 0 ? -id * 1000L : id * 1000000000L));
+      doc.add(new IndexDocValuesField("fixed").setBytes(new BytesRef(fixed(id)), Type.BYTES_FIXED_STRAIGHT));
+      doc.add(new IndexDocValuesField("var").setBytes(new BytesRef(var(id)), Type.BYTES_VAR_STRAIGHT));
+      doc.add(new IndexDocValuesField("sorted").setBytes(new BytesRef(var(id % 50)), Type.BYTES_SORTED));
+    }
+    return doc;
+  }
+
+  private long expectedInt(int id) {
+    if (id % 10 == 3) {
+      return 0;
+    }
+    return id % 2 == 0 ? -id * 1000L : id * 1000000000L;
+  }
+
+  private String expectedBytes(String field, int id) {
+    if (id % 10 == 3) {
+      return field.equals("fixed") ? "\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000" : "";
+    } else if (field.equals("fixed")) {
+      return fixed(id);
+    } else if (field.equals("var")) {
+      return var(id);
+    } else {
+      return var(id % 50);
+    }
+  }
+
+  private void verify(IndexReader r, boolean direct) throws Exception {
+    for (IndexReader sub : r.getSequentialSubReaders()) {
+      final IndexDocValues ints = sub.docValues("int");
+      assertEquals(Type.INTS, ints.type());
+      final Source intSource = direct ? ints.getDirectSource() : ints.getSource();
+      final BytesRef spare = new BytesRef();
+      for (int docID = 0; docID < sub.maxDoc(); docID++) {
+        if (sub.getDeletedDocs() != null && sub.getDeletedDocs().get(docID)) {
+          continue;
+        }
+        final int id = Integer.parseInt(sub.document(docID).get("id"));
+        assertEquals(expectedInt(id), intSource.getInt(docID));
+        for (String field : new String[] {"fixed", "var", "sorted"}) {
+          final IndexDocValues values = sub.docValues(field);
+          final Source source = direct ? values.getDirectSource() : values.getSource();
+          assertEquals(expectedBytes(field, id), source.getBytes(docID, spare).utf8ToString());
+        }
+      }
+      assertNull(sub.docValues("id"));
+      assertNull(sub.docValues("missing"));
+    }
+  }
+
+  public void testFlushAndMerge() throws Exception {
+    Directory dir = newDirectory(random);
+    IndexWriterConfig conf = newIndexWriterConfig(random, TEST_VERSION_CURRENT, new MockAnalyzer()).setMaxBufferedDocs(17);
+    IndexWriter writer = new IndexWriter(dir, conf);
+    final int numDocs = 200;
+    for (int i = 0; i < numDocs; i++) {
+      writer.addDocument(newDoc(i));
+      if (i % 13 == 0) {
+        writer.deleteDocuments(new Term("id", Integer.toString(i)));
+      }
+    }
+
+    IndexReader r = writer.getReader();
+    verify(r, false);
+    verify(r, true);
+    r.close();
+
+    writer.optimize();
+    r = writer.getReader();
+    assertEquals(1, r.getSequentialSubReaders().length);
+    verify(r, false);
+    verify(r, true);
+
+    // sorted values stay sorted across merges
+    IndexReader seg = r.getSequentialSubReaders()[0];
+    Source source = seg.docValues("sorted").getSource();
+    assertTrue(source instanceof SortedSource);
+    SortedSource sorted = (SortedSource) source;
+    BytesRef last = null;
+    for (int ord = 0; ord < sorted.getValueCount(); ord++) {
+      BytesRef value = new BytesRef();
+      value.copy(sorted.getByOrd(ord, new BytesRef()));
+      if (last != null) {
+        assertTrue(last.compareTo(value) < 0);
+      }
+      last = value;
+    }
+    assertEquals(sorted.ord(0), sorted.getByValue(sorted.getBytes(0, new BytesRef()), new BytesRef()));
+    r.close();
+
+    writer.close();
+    assertTrue(_TestUtil.checkIndex(dir));
+    dir.close();
+  }
+
+  public void testSortAndValueSource() throws Exception {
+    Directory dir = newDirectory(random);
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(random, TEST_VERSION_CURRENT, new MockAnalyzer()).setMaxBufferedDocs(9));
+    final int numDocs = 60;
+    for (int i = 0; i < numDocs; i++) {
+      writer.addDocument(newDoc(i));
+    }
+    IndexReader r = writer.getReader();
+    writer.close();
+    IndexSearcher s = new IndexSearcher(r);
+
+    for (String field : new String[] {"int", "fixed", "var", "sorted"}) {
+      for (boolean reverse : new boolean[] {false, true}) {
+        SortField sortField = new SortField(field, field.equals("int") ? SortField.LONG : SortField.STRING, reverse);
+        sortField.setUseIndexValues(true);
+        TopDocs hits = s.search(new MatchAllDocsQuery(), null, 25, new Sort(sortField));
+        assertEquals(numDocs, hits.totalHits);
+        Object last = null;
+        for (int i = 0; i < hits.scoreDocs.length; i++) {
+          final int id = Integer.parseInt(r.document(hits.scoreDocs[i].doc).get("id"));
+          final Object value;
+          if (field.equals("int")) {
+            value = Long.valueOf(expectedInt(id));
+          } else {
+            value = new BytesRef(expectedBytes(field, id));
+          }
+          if (last != null) {
+            @SuppressWarnings("unchecked")
+            final int cmp = ((Comparable<Object>) last).compareTo(value);
+            assertTrue(field + " not sorted: " + last + " vs " + value, reverse ? cmp >= 0 : cmp <= 0);
+          }
+          last = value;
+        }
+      }
+    }
+
+    IndexDocValuesSource valueSource = new IndexDocValuesSource("int");
+    assertEquals(valueSource, new IndexDocValuesSource("int"));
+    assertEquals(valueSource.hashCode(), new IndexDocValuesSource("int").hashCode());
+    for (IndexReader sub : r.getSequentialSubReaders()) {
+      DocValues values = valueSource.getValues(sub);
+      DocValues strings = new IndexDocValuesSource("var").getValues(sub);
+      for (int docID = 0; docID < sub.maxDoc(); docID++) {
+        final int id = Integer.parseInt(sub.document(docID).get("id"));
+        assertEquals(expectedInt(id), values.longVal(docID));
+        assertEquals(expectedBytes("var", id), strings.strVal(docID));
+      }
+    }
+
+    s.close();
+    r.close();
+    dir.close();
+  }
+
+  public void testMergeWidensTypes() throws Exception {
+    Directory dir = newDirectory(random);
+    // serial, so the failing merge below throws in this thread
+    IndexWriterConfig conf = newIndexWriterConfig(random, TEST_VERSION_CURRENT, new MockAnalyzer())
+      .setMergeScheduler(new SerialMergeScheduler());
+    ((LogMergePolicy) conf.getMergePolicy()).setMergeFactor(10);
+    IndexWriter writer = new IndexWriter(dir, conf);
+    Document doc = new Document();
+    doc.add(new IndexDocValuesField("field").setBytes(new BytesRef("abc"), Type.BYTES_FIXED_STRAIGHT));
+    writer.addDocument(doc);
+    writer.commit();
+    doc = new Document();
+    doc.add(new IndexDocValuesField("field").setBytes(new BytesRef("de"), Type.BYTES_FIXED_STRAIGHT));
+    writer.addDocument(doc);
+    writer.commit();
+    doc = new Document();
+    doc.add(new IndexDocValuesField("field").setBytes(new BytesRef("f"), Type.BYTES_VAR_STRAIGHT));
+    writer.addDocument(doc);
+
+    IndexReader r = writer.getReader();
+    IndexDocValues multi = MultiDocValues.getDocValues(r, "field");
+    assertEquals(Type.BYTES_VAR_STRAIGHT, multi.type());
+    r.close();
+
+    writer.optimize();
+    r = writer.getReader();
+    IndexDocValues values = r.getSequentialSubReaders()[0].docValues("field");
+    assertEquals(Type.BYTES_VAR_STRAIGHT, values.type());
+    Source source = values.getSource();
+    BytesRef spare = new BytesRef();
+    assertEquals("abc", source.getBytes(0, spare).utf8ToString());
+    assertEquals("de", source.getBytes(1, spare).utf8ToString());
+    assertEquals("f", source.getBytes(2, spare).utf8ToString());
+    r.close();
+
+    doc = new Document();
+    doc.add(new IndexDocValuesField("field").setInt(17));
+    writer.addDocument(doc);
+    try {
+      writer.optimize();
+      fail("merging ints with bytes should fail");
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+    writer.rollback();
+    dir.close();
+  }
+}
@@ -47,6 +47,13 @@ public class TestBooleanQuery extends LuceneTestCase {
     bq2.add(nested2, BooleanClause.Occur.SHOULD);
 
     assertEquals(bq1, bq2);
+
+    // pruning changes the scores in the last bits and the total hits
+    bq2.setMaxScorePruning(true);
+    assertFalse(bq1.equals(bq2));
+    bq1.setMaxScorePruning(true);
+    assertEquals(bq1, bq2);
+    assertEquals(bq1.hashCode(), bq2.hashCode());
   }
 
   public void testException() {
@@ -120,4 +127,79 @@ public class TestBooleanQuery extends LuceneTestCase {
     dir.close();
   }
   
+
+  /** A scorer over a fixed list of docs that counts how many
+   *  times it is moved. */
+  private static class CountingScorer extends Scorer {
+    private final int[] docs;
+    private final long cost;
+    private int upto = -1;
+    int moves;
+
+    CountingScorer(int[] docs, long cost) {
+      super(Similarity.getDefault());
+      this.docs = docs;
+      this.cost = cost;
+    }
+
+    @Override
+    public int docID() {
+      return upto < 0 ? -1 : upto < docs.length ? docs[upto] : NO_MORE_DOCS;
+    }
+
+    @Override
+    public int nextDoc() {
+      moves++;
+      upto++;
+      return docID();
+    }
+
+    @Override
+    public int advance(int target) {
+      moves++;
+      do {
+        upto++;
+      } while (upto < docs.length && docs[upto] < target);
+      return docID();
+    }
+
+    @Override
+    public float score() {
+      return 1.0f;
+    }
+
+    @Override
+    public long cost() {
+      return cost;
+    }
+  }
+
+  public void testConjunctionLeadsWithRarestScorer() throws Exception {
+    final int[] all = new int[1000];
+    for (int i = 0; i < all.length; i++) {
+      all[i] = i;
+    }
+    final int[] rare = new int[] {10, 500, 999};
+
+    CountingScorer common1 = new CountingScorer(all, all.length);
+    CountingScorer common2 = new CountingScorer(all, all.length);
+    CountingScorer rareScorer = new CountingScorer(rare, rare.length);
+    ConjunctionScorer cs = new ConjunctionScorer(Similarity.getDefault(), common1, rareScorer, common2);
+    assertEquals(rare.length, cs.cost());
+    for (int doc : rare) {
+      assertEquals(doc, cs.nextDoc());
+    }
+    assertEquals(DocIdSetIterator.NO_MORE_DOCS, cs.nextDoc());
+    // the common scorers are only advanced to the rare docs
+    assertEquals(rare.length, common1.moves);
+    assertEquals(rare.length, common2.moves);
+    assertEquals(rare.length + 1, rareScorer.moves);
+
+    // without costs, the results are the same
+    cs = new ConjunctionScorer(Similarity.getDefault(),
+        new CountingScorer(all, Long.MAX_VALUE), new CountingScorer(rare, Long.MAX_VALUE));
+    assertEquals(500, cs.advance(11));
+    assertEquals(999, cs.nextDoc());
+    assertEquals(DocIdSetIterator.NO_MORE_DOCS, cs.nextDoc());
+  }
 }
@@ -19,6 +19,7 @@ package org.apache.lucene.search;
 import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericField;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.RandomIndexWriter;
@@ -216,4 +217,69 @@ public class TestFieldCache extends LuceneTestCase {
     r.close();
     dir.close();
   }
+
+  public void testPackedValues() throws Exception {
+    Directory dir = newDirectory(random);
+    RandomIndexWriter writer = new RandomIndexWriter(random, dir);
+    final long[] wideValues = new long[] {Long.MIN_VALUE, -17, 42, Long.MAX_VALUE};
+    final int numDocs = 500 * RANDOM_MULTIPLIER;
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      // sometimes skip the fields
+      if (random.nextInt(10) != 7) {
+        doc.add(new Field("narrow", String.valueOf(1000 + random.nextInt(16)), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      }
+      if (random.nextInt(10) != 7) {
+        doc.add(new Field("wide", String.valueOf(wideValues[random.nextInt(wideValues.length)]), Field.Store.NO, Field.Index.NOT_ANALYZED));
+      }
+      doc.add(new NumericField("numeric").setIntValue(random.nextInt()));
+      writer.addDocument(doc);
+    }
+    IndexReader r = writer.getReader();
+    writer.close();
+
+    FieldCache cache = FieldCache.DEFAULT;
+    try {
+      int[] ints = cache.getInts(r, "narrow");
+      FieldCache.PackedValues packed = cache.getPackedInts(r, "narrow");
+      assertSame(packed, cache.getPackedInts(r, "narrow"));
+      assertEquals(r.maxDoc(), packed.size());
+      assertEquals(1000, packed.getMinValue());
+      assertTrue(packed.getMaxValue() <= 1015);
+      for (int doc = 0; doc < ints.length; doc++) {
+        assertEquals(ints[doc], packed.get(doc));
+        assertEquals(ints[doc] != 0, packed.exists(doc));
+      }
+      // 5 bits per doc: the 16 values plus missing
+      assertTrue(packed.toString(), packed.ramBytesUsed() < r.maxDoc());
+
+      long[] longs = cache.getLongs(r, "wide");
+      packed = cache.getPackedLongs(r, "wide");
+      assertEquals(Long.MIN_VALUE, packed.getMinValue());
+      assertEquals(Long.MAX_VALUE, packed.getMaxValue());
+      for (int doc = 0; doc < longs.length; doc++) {
+        assertEquals(longs[doc], packed.get(doc));
+      }
+      // the range does not fit, but the 4 values do
+      assertTrue(packed.toString(), packed.ramBytesUsed() < r.maxDoc() + 4 * 8);
+
+      ints = cache.getInts(r, "numeric");
+      packed = cache.getPackedInts(r, "numeric");
+      for (int doc = 0; doc < ints.length; doc++) {
+        assertEquals(ints[doc], packed.get(doc));
+        assertTrue(packed.exists(doc));
+      }
+
+      packed = cache.getPackedLongs(r, "bogusfield");
+      assertEquals(r.maxDoc(), packed.size());
+      assertEquals(0, packed.get(0));
+      assertFalse(packed.exists(0));
+    } finally {
+      // ints and packed values of the same field are
+      // distinct cache entries
+      cache.purge(r);
+    }
+    r.close();
+    dir.close();
+  }
 }
@@ -19,14 +19,21 @@ package org.apache.lucene.search;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.index.DocsEnum;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.RandomIndexWriter;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.LuceneTestCase;
 import org.apache.lucene.util.DocIdBitSet;
+import org.apache.lucene.util.OpenBitSet;
+import java.io.IOException;
 import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
 
 /**
@@ -44,11 +51,12 @@ public class TestFilteredQuery extends LuceneTestCase {
   private Directory directory;
   private Query query;
   private Filter filter;
+  private Random random;
 
   @Override
   protected void setUp() throws Exception {
     super.setUp();
-    Random random = newRandom();
+    random = newRandom();
     directory = newDirectory(random);
     RandomIndexWriter writer = new RandomIndexWriter (random, directory);
 
@@ -220,6 +228,189 @@ public class TestFilteredQuery extends LuceneTestCase {
     assertEquals(1, hits.length);
     QueryUtils.check(query,searcher);    
   }
+
+  // Wraps filter A, counting the calls to nextDoc and advance;
+  // the cost is only reported if knownCost is true
+  private Filter countingFilter(final int[] nextDocs, final int[] advances, final boolean knownCost) {
+    return new Filter() {
+      @Override
+      public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+        final DocIdSetIterator it = newStaticFilterA().getDocIdSet(reader).iterator();
+        return new DocIdSet() {
+          @Override
+          public DocIdSetIterator iterator() {
+            return new DocIdSetIterator() {
+              @Override
+              public int docID() {
+                return it.docID();
+              }
+              @Override
+              public int nextDoc() throws IOException {
+                nextDocs[0]++;
+                return it.nextDoc();
+              }
+              @Override
+              public int advance(int target) throws IOException {
+                advances[0]++;
+                return it.advance(target);
+              }
+              @Override
+              public long cost() throws IOException {
+                return knownCost ? it.cost() : Long.MAX_VALUE;
+              }
+            };
+          }
+        };
+      }
+    };
+  }
+
+  // Make sure the filter is only advanced to the docs of a
+  // rarer query
+  public void testLeadsWithRarerIterator() throws Exception {
+    final int[] nextDocs = new int[1];
+    final int[] advances = new int[1];
+    Filter f = countingFilter(nextDocs, advances, true);
+    Query q = new TermQuery(new Term("field", "x"));
+
+    ScoreDoc[] hits = searcher.search(q, f, 1000).scoreDocs;
+    assertEquals(1, hits.length);
+    assertEquals(3, hits[0].doc);
+    assertEquals(0, nextDocs[0]);
+    assertEquals(1, advances[0]);
+
+    advances[0] = 0;
+    hits = searcher.search(new FilteredQuery(q, f), 1000).scoreDocs;
+    assertEquals(1, hits.length);
+    assertEquals(3, hits[0].doc);
+    assertEquals(0, nextDocs[0]);
+    assertEquals(1, advances[0]);
+  }
+
+  // Make sure a filter of unknown cost still leads
+  public void testUnknownCostFilterLeads() throws Exception {
+    final int[] nextDocs = new int[1];
+    final int[] advances = new int[1];
+    Filter f = countingFilter(nextDocs, advances, false);
+    Query q = new TermQuery(new Term("field", "x"));
+
+    ScoreDoc[] hits = searcher.search(q, f, 1000).scoreDocs;
+    assertEquals(1, hits.length);
+    assertEquals(3, hits[0].doc);
+    assertTrue(nextDocs[0] > 0);
+
+    nextDocs[0] = 0;
+    hits = searcher.search(new FilteredQuery(q, f), 1000).scoreDocs;
+    assertEquals(1, hits.length);
+    assertEquals(3, hits[0].doc);
+    assertTrue(nextDocs[0] > 0);
+  }
+
+  // filters with random access must match the same docs,
+  // with the same scores, as when they are iterated
+  public void testRandomAccessFilter() throws Exception {
+    Directory dir = newDirectory(random);
+    RandomIndexWriter writer = new RandomIndexWriter(random, dir);
+    final String[] words = {"a", "b", "c"};
+    for (int i = 0; i < 300; i++) {
+      Document doc = new Document();
+      StringBuilder sb = new StringBuilder();
+      for (int j = 0; j < 4; j++) {
+        sb.append(words[random.nextInt(words.length)]).append(' ');
+      }
+      doc.add(new Field("field", sb.toString(), Field.Store.NO, Field.Index.ANALYZED));
+      doc.add(new Field("filter", random.nextInt(3) == 0 ? "no" : "yes", Field.Store.NO, Field.Index.NOT_ANALYZED));
+      doc.add(new Field("del", random.nextInt(10) == 0 ? "yes" : "no", Field.Store.NO, Field.Index.NOT_ANALYZED));
+      writer.addDocument(doc);
+    }
+    writer.deleteDocuments(new Term("del", "yes"));
+    IndexReader r = writer.getReader();
+    writer.close();
+    IndexSearcher s = new IndexSearcher(r);
+
+    PhraseQuery pq = new PhraseQuery();
+    pq.add(new Term("field", "a"));
+    pq.add(new Term("field", "b"));
+    BooleanQuery bq = new BooleanQuery();
+    bq.add(new TermQuery(new Term("field", "a")), Occur.MUST);
+    bq.add(new TermQuery(new Term("field", "b")), Occur.SHOULD);
+    bq.add(new TermQuery(new Term("field", "c")), Occur.MUST_NOT);
+    BooleanQuery or = new BooleanQuery();
+    or.add(new TermQuery(new Term("field", "b")), Occur.SHOULD);
+    or.add(pq, Occur.SHOULD);
+    DisjunctionMaxQuery dmq = new DisjunctionMaxQuery(0.1f);
+    dmq.add(new TermQuery(new Term("field", "a")));
+    dmq.add(new TermQuery(new Term("field", "c")));
+    Query[] queries = {new TermQuery(new Term("field", "b")), pq, bq, or, dmq, new MatchAllDocsQuery()};
+
+    final int[] gets = new int[1];
+    Filter randomAccess = newTermFilter(true, gets);
+    Filter iterated = newTermFilter(false, gets);
+    for (Query q : queries) {
+      gets[0] = 0;
+      assertSameHits(s.search(q, iterated, 1000), s.search(q, randomAccess, 1000));
+      assertSameHits(s.search(new FilteredQuery(q, iterated), 1000), s.search(new FilteredQuery(q, randomAccess), 1000));
+      assertTrue(gets[0] > 0);
+    }
+
+    s.close();
+    r.close();
+    dir.close();
+  }
+
+  // accepts the docs with filter:yes, and only exposes them
+  // by random access if randomAccess is true
+  private static Filter newTermFilter(final boolean randomAccess, final int[] gets) {
+    return new Filter() {
+      @Override
+      public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+        final OpenBitSet set = new OpenBitSet(reader.maxDoc());
+        DocsEnum docs = reader.termDocsEnum(null, "filter", new BytesRef("yes"));
+        if (docs != null) {
+          int doc;
+          while ((doc = docs.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+            set.set(doc);
+          }
+        }
+        return new DocIdSet() {
+          @Override
+          public DocIdSetIterator iterator() {
+            return set.iterator();
+          }
+
+          @Override
+          public Bits bits() {
+            if (!randomAccess) {
+              return null;
+            }
+            return new Bits() {
+              public boolean get(int doc) {
+                gets[0]++;
+                return set.get(doc);
+              }
+
+              public int length() {
+                return set.length();
+              }
+            };
+          }
+        };
+      }
+    };
+  }
+
+  private void assertSameHits(TopDocs expected, TopDocs actual) {
+    assertEquals(expected.totalHits, actual.totalHits);
+    Map<Integer,Float> scores = new HashMap<Integer,Float>();
+    for (ScoreDoc sd : expected.scoreDocs) {
+      scores.put(sd.doc, sd.score);
+    }
+    assertEquals(scores.size(), actual.scoreDocs.length);
+    for (ScoreDoc sd : actual.scoreDocs) {
+      assertTrue(scores.containsKey(sd.doc));
+      assertEquals(scores.get(sd.doc).floatValue(), sd.score, 0.0001f);
+    }
+  }
 }
 
 
@@ -0,0 +1,270 @@
+package org.apache.lucene.search;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.OpenBitSet;
+
+public class TestMaxScoreDisjunction extends LuceneTestCase {
+  private static final int NUM_TERMS = 50;
+
+  private Random random;
+  private Directory dir;
+  private IndexReader reader;
+  private IndexSearcher searcher;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    random = newRandom();
+    dir = newDirectory(random);
+    RandomIndexWriter w = new RandomIndexWriter(random, dir, newIndexWriterConfig(random, TEST_VERSION_CURRENT, new MockAnalyzer()));
+    final int numDocs = 1000 * RANDOM_MULTIPLIER;
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      StringBuilder sb = new StringBuilder();
+      final int length = 1 + random.nextInt(30);
+      for (int j = 0; j < length; j++) {
+        // low terms are much more frequent than high ones
+        final int term = (int) (NUM_TERMS * Math.pow(random.nextDouble(), 3));
+        sb.append(" t").append(term);
+      }
+      doc.add(new Field("body", sb.toString(), Field.Store.NO, Field.Index.ANALYZED));
+      doc.add(new Field("title", "t" + random.nextInt(NUM_TERMS), Field.Store.NO, Field.Index.ANALYZED));
+      w.addDocument(doc);
+    }
+    reader = w.getReader();
+    w.close();
+    searcher = new IndexSearcher(reader);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    searcher.close();
+    reader.close();
+    dir.close();
+    super.tearDown();
+  }
+
+  private Query randomClause() {
+    final Query q;
+    if (random.nextInt(4) == 0) {
+      DisjunctionMaxQuery dmq = new DisjunctionMaxQuery(random.nextInt(3) / 2.0f);
+      dmq.add(new TermQuery(new Term("body", "t" + random.nextInt(NUM_TERMS))));
+      dmq.add(new TermQuery(new Term("title", "t" + random.nextInt(NUM_TERMS))));
+      q = dmq;
+    } else {
+      q = new TermQuery(new Term("body", "t" + random.nextInt(NUM_TERMS)));
+    }
+    if (random.nextBoolean()) {
+      q.setBoost(1 + random.nextInt(5));
+    }
+    return q;
+  }
+
+  private TopDocs search(Query q, int n, boolean trackTotalHits) throws Exception {
+    return search(q, null, n, trackTotalHits);
+  }
+
+  private TopDocs search(Query q, Filter filter, int n, boolean trackTotalHits) throws Exception {
+    TopScoreDocCollector c = TopScoreDocCollector.create(n, true, trackTotalHits);
+    searcher.search(q, filter, c);
+    return c.topDocs();
+  }
+
+  /** Accepts every <code>interval</code>th doc of each segment. */
+  private static Filter everyNthDoc(final int interval) {
+    return new Filter() {
+      @Override
+      public DocIdSet getDocIdSet(IndexReader reader) {
+        final OpenBitSet bits = new OpenBitSet(reader.maxDoc());
+        for (int doc = 0; doc < reader.maxDoc(); doc += interval) {
+          bits.set(doc);
+        }
+        return bits;
+      }
+    };
+  }
+
+  private void assertSameHits(TopDocs expected, TopDocs actual) {
+    assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+    for (int i = 0; i < expected.scoreDocs.length; i++) {
+      assertEquals(expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+      assertEquals(expected.scoreDocs[i].score, actual.scoreDocs[i].score, 0.0f);
+    }
+  }
+
+  private Map<Integer,Float> allHits(Query q) throws Exception {
+    final Map<Integer,Float> hits = new HashMap<Integer,Float>();
+    searcher.search(q, new Collector() {
+      private Scorer scorer;
+      private int docBase;
+      @Override
+      public void setScorer(Scorer scorer) {
+        this.scorer = scorer;
+      }
+      @Override
+      public void collect(int doc) throws IOException {
+        hits.put(docBase + doc, scorer.score());
+      }
+      @Override
+      public void setNextReader(IndexReader reader, int docBase) {
+        this.docBase = docBase;
+      }
+      @Override
+      public boolean acceptsDocsOutOfOrder() {
+        return false;
+      }
+    });
+    return hits;
+  }
+
+  public void testSameTopHits() throws Exception {
+    long collected = 0;
+    long matches = 0;
+    for (int iter = 0; iter < 50 * RANDOM_MULTIPLIER; iter++) {
+      BooleanQuery bq = new BooleanQuery(random.nextInt(5) == 0);
+      final int numClauses = 2 + random.nextInt(20);
+      for (int i = 0; i < numClauses; i++) {
+        bq.add(randomClause(), BooleanClause.Occur.SHOULD);
+      }
+      final int n = 1 + random.nextInt(20);
+
+      // in order BooleanScorer2
+      Map<Integer,Float> expectedHits = allHits(bq);
+
+      bq.setMaxScorePruning(true);
+      Map<Integer,Float> actualHits = allHits(bq);
+      assertEquals(expectedHits.keySet(), actualHits.keySet());
+      for (Map.Entry<Integer,Float> hit : expectedHits.entrySet()) {
+        final float score = hit.getValue();
+        assertEquals(score, actualHits.get(hit.getKey()), score * 1e-6f);
+      }
+      if (iter == 0) {
+        // slow
+        QueryUtils.check(bq, searcher);
+      }
+
+      TopDocs expected = search(bq, n, true);
+      assertEquals(expectedHits.size(), expected.totalHits);
+      TopDocs pruned = search(bq, n, false);
+      assertSameHits(expected, pruned);
+      assertTrue(pruned.totalHits <= expected.totalHits);
+      collected += pruned.totalHits;
+      matches += expected.totalHits;
+    }
+    // the common terms can't all make the top hits
+    assertTrue("collected=" + collected + " matches=" + matches, collected < matches);
+  }
+
+  public void testFilteredTopHits() throws Exception {
+    // the dense filter is applied with random access, the
+    // sparse one by leap-frogging
+    final Filter dense = everyNthDoc(2);
+    final Filter sparse = everyNthDoc(150);
+    long collected = 0;
+    long matches = 0;
+    for (int iter = 0; iter < 50 * RANDOM_MULTIPLIER; iter++) {
+      BooleanQuery bq = new BooleanQuery(random.nextInt(5) == 0);
+      final int numClauses = 2 + random.nextInt(20);
+      for (int i = 0; i < numClauses; i++) {
+        bq.add(randomClause(), BooleanClause.Occur.SHOULD);
+      }
+      bq.setMaxScorePruning(true);
+      final int n = 1 + random.nextInt(20);
+      final Filter filter = random.nextInt(4) == 0 ? sparse : dense;
+
+      FilteredQuery fq = new FilteredQuery(bq, filter);
+      if (random.nextBoolean()) {
+        fq.setBoost(1 + random.nextInt(5));
+      }
+      TopDocs expected = search(fq, n, true);
+      TopDocs pruned = search(fq, n, false);
+      assertSameHits(expected, pruned);
+      assertTrue(pruned.totalHits <= expected.totalHits);
+      if (filter == dense) {
+        collected += pruned.totalHits;
+        matches += expected.totalHits;
+      }
+
+      expected = search(bq, filter, n, true);
+      pruned = search(bq, filter, n, false);
+      assertSameHits(expected, pruned);
+      assertTrue(pruned.totalHits <= expected.totalHits);
+    }
+    // the filtered scorers pass the min competitive score on
+    assertTrue("collected=" + collected + " matches=" + matches, collected < matches);
+  }
+
+  public void testMaxScoreBoundsScores() throws Exception {
+    BooleanQuery bq = new BooleanQuery();
+    bq.setMaxScorePruning(true);
+    for (int i = 0; i < 5; i++) {
+      bq.add(randomClause(), BooleanClause.Occur.SHOULD);
+    }
+    final Weight w = bq.weight(searcher);
+    for (IndexReader r : reader.getSequentialSubReaders()) {
+      Scorer s = w.scorer(r, true, true);
+      if (s == null) {
+        continue;
+      }
+      final float maxScore = s.maxScore();
+      int doc;
+      while ((doc = s.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+        assertTrue("doc=" + doc + " score=" + s.score() + " maxScore=" + maxScore, s.score() <= maxScore);
+      }
+    }
+  }
+
+  public void testMaxTermFreq() throws Exception {
+    Terms terms = MultiFields.getTerms(reader, "body");
+    TermsEnum termsEnum = terms.iterator();
+    BytesRef term;
+    DocsEnum docs = null;
+    while ((term = termsEnum.next()) != null) {
+      final int maxTermFreq = termsEnum.maxTermFreq();
+      if (maxTermFreq == -1) {
+        // the codec did not record it
+        continue;
+      }
+      int maxFreq = 0;
+      docs = termsEnum.docs(null, docs);
+      while (docs.nextDoc() != DocsEnum.NO_MORE_DOCS) {
+        maxFreq = Math.max(maxFreq, docs.freq());
+      }
+      assertEquals(term.utf8ToString(), maxFreq, maxTermFreq);
+    }
+  }
+}
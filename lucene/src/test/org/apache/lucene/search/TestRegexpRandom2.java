@@ -152,7 +152,8 @@ public class TestRegexpRandom2 extends LuceneTestCase {
     // a\uda07* prefixquery. Prefixquery then does the "wrong" thing, which
     // isn't really wrong as the query was undefined to begin with... but not
     // automatically comparable.
-    if (!(smart.getTermsEnum(searcher.getIndexReader()) instanceof AutomatonTermsEnum))
+    TermsEnum te = smart.getTermsEnum(searcher.getIndexReader());
+    if (te instanceof PrefixTermsEnum || te instanceof SingleTermsEnum)
       return;
     
     TopDocs smartDocs = searcher.search(smart, 25);
@@ -27,6 +27,7 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
 
 /** Document boost unit test.
  *
@@ -96,4 +97,34 @@ public class TestSetNorm extends LuceneTestCase {
     }
     store.close();
   }
+
+  public void testNormValues() throws Exception {
+    Random random = newRandom();
+    Directory store = newDirectory(random);
+    IndexWriter writer = new IndexWriter(store, newIndexWriterConfig(random, TEST_VERSION_CURRENT, new MockAnalyzer()));
+    Document d1 = new Document();
+    d1.add(new Field("field", "word", Field.Store.NO, Field.Index.ANALYZED));
+    writer.addDocument(d1);
+    writer.addDocument(d1);
+    writer.optimize();
+    writer.close();
+
+    IndexReader reader = IndexReader.open(store, false);
+    IndexReader segment = reader.getSequentialSubReaders()[0];
+    final byte norm = reader.norms("field")[0];
+    final byte newNorm = Similarity.getDefault().encodeNormValue(16.0f);
+    assertTrue(norm != newNorm);
+    Bits values = segment.normValues("field");
+    assertTrue(values.get(norm & 0xFF));
+    assertFalse(values.get(newNorm & 0xFF));
+    assertNull(segment.normValues("nonexistent"));
+
+    // changing a norm invalidates the cached values
+    reader.setNorm(1, "field", newNorm);
+    values = segment.normValues("field");
+    assertTrue(values.get(norm & 0xFF));
+    assertTrue(values.get(newNorm & 0xFF));
+    reader.close();
+    store.close();
+  }
 }
@@ -25,6 +25,9 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -37,6 +40,7 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.LogMergePolicy;
+import org.apache.lucene.index.MultiReader;
 import org.apache.lucene.index.RandomIndexWriter;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.util.BytesRef;
@@ -284,7 +288,33 @@ public class TestSort extends LuceneTestCase implements Serializable {
     assertMatches (full, queryX, sort, "AIGEC");
     assertMatches (full, queryY, sort, "DJHFB");
   }
-  
+
+  // same as the int and long typed sorts, from packed values
+  public void testPackedValuesSort() throws Exception {
+    SortField sf = new SortField ("int", SortField.INT);
+    sf.setUsePackedValues(true);
+    assertTrue(sf.toString().indexOf("(packedValues)") != -1);
+    assertFalse(sf.equals(new SortField ("int", SortField.INT)));
+    sort.setSort (sf, SortField.FIELD_DOC );
+    assertMatches (full, queryX, sort, "IGAEC");
+    assertMatches (full, queryY, sort, "DHFJB");
+
+    sf = new SortField ("long", SortField.LONG, true);
+    sf.setUsePackedValues(true);
+    sort.setSort (sf, SortField.FIELD_DOC );
+    assertMatches (full, queryX, sort, "IGCAE");
+    assertMatches (full, queryY, sort, "DHJBF");
+
+    sf = new SortField ("float", SortField.FLOAT);
+    sf.setUsePackedValues(true);
+    try {
+      sf.getComparator(1, 0);
+      fail("should have hit IllegalStateException");
+    } catch (IllegalStateException ise) {
+      // expected
+    }
+  }
+
   /**
    * Test String sorting: small queue to many matches, multi field sort, reverse sort
    */
@@ -651,6 +681,45 @@ public class TestSort extends LuceneTestCase implements Serializable {
     runMultiSorts(searcher, false);
   }
 
+  // test a variety of sorts using an IndexSearcher that
+  // searches each segment in parallel
+  public void testParallelIndexSearcherSort() throws Exception {
+    ExecutorService exec = Executors.newFixedThreadPool(3);
+    try {
+      IndexReader multi = new MultiReader(new IndexReader[] { searchX.reader, searchY.reader }, false);
+      IndexSearcher searcher = new IndexSearcher(multi, exec);
+      searcher.setDefaultFieldSortScoring(true, true);
+      runMultiSorts(searcher, false);
+
+      // unsorted results must match the sequential searcher
+      IndexSearcher sequential = new IndexSearcher(multi);
+      Query[] queries = new Query[] { queryX, queryY, queryA, queryE, queryF, queryG };
+      for (Query q : queries) {
+        TopDocs expected = sequential.search(q, null, 1000);
+        TopDocs actual = searcher.search(q, null, 1000);
+        assertEquals(expected.totalHits, actual.totalHits);
+        assertEquals(expected.getMaxScore(), actual.getMaxScore(), 1e-6);
+        assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+        for (int i = 0; i < expected.scoreDocs.length; i++) {
+          assertEquals(expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+          assertEquals(expected.scoreDocs[i].score, actual.scoreDocs[i].score, 1e-6);
+        }
+      }
+
+      // no hits at all
+      TopDocs none = searcher.search(new TermQuery(new Term("contents", "bogus")), null, 10);
+      assertEquals(0, none.totalHits);
+      assertTrue(Float.isNaN(none.getMaxScore()));
+
+      searcher.close();
+      sequential.close();
+      multi.close();
+    } finally {
+      exec.shutdown();
+      exec.awaitTermination(1000, TimeUnit.MILLISECONDS);
+    }
+  }
+
   // test that the relevancy scores are the same even if
   // hits are sorted
   public void testNormalizedScores() throws Exception {
@@ -140,6 +140,25 @@ public class TestFieldScoreQuery extends FunctionTestSetup {
     s.close();
   }
 
+  /** Test that a ValueSourceQuery over packed int and long values returns the expected scores. */
+  @Test
+  public void testExactScorePacked () throws Exception {
+    IndexSearcher s = new IndexSearcher(dir, true);
+    for (ValueSource vs : new ValueSource[] {new PackedFieldSource(INT_FIELD, true), new PackedFieldSource(INT_FIELD, false)}) {
+      Query q = new ValueSourceQuery(vs);
+      QueryUtils.check(q,s);
+      TopDocs td = s.search(q,null,1000);
+      assertEquals("All docs should be matched!",N_DOCS,td.totalHits);
+      for (ScoreDoc aSd : td.scoreDocs) {
+        String id = s.getIndexReader().document(aSd.doc).get(ID_FIELD);
+        float expectedScore = expectedFieldScore(id); // "ID7" --> 7.0
+        assertEquals("score of " + id + " shuould be " + expectedScore + " != " + aSd.score, expectedScore, aSd.score, TEST_SCORE_TOLERANCE_DELTA);
+      }
+    }
+    assertFalse(new PackedFieldSource(INT_FIELD, true).equals(new PackedFieldSource(INT_FIELD, false)));
+    s.close();
+  }
+
   /** Test that FieldScoreQuery of Type.BYTE caches/reuses loaded values and consumes the proper RAM resources. */
   @Test
   public void testCachingByte () throws  Exception {
@@ -18,6 +18,8 @@ package org.apache.lucene.store;
  */
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Random;
 
 import org.apache.lucene.document.Document;
@@ -44,6 +46,57 @@ public class TestMultiMMap extends LuceneTestCase {
       workDir.mkdirs();
   }
   
+  public void testChunkSizeIsPowerOfTwo() throws Exception {
+    MMapDirectory dir = new MMapDirectory(new File(workDir, "chunkSize"));
+    assertEquals(MMapDirectory.DEFAULT_MAX_BUFF, dir.getMaxChunkSize());
+    dir.setMaxChunkSize(100);
+    assertEquals(64, dir.getMaxChunkSize());
+    dir.setMaxChunkSize(Integer.MAX_VALUE);
+    assertEquals(1 << 30, dir.getMaxChunkSize());
+    dir.close();
+  }
+
+  public void testSeekAcrossChunks() throws Exception {
+    Random random = newRandom();
+    MMapDirectory dir = new MMapDirectory(new File(workDir, "seek"));
+    dir.setMaxChunkSize(16);
+    // preload one of the files
+    dir.setPreloadExtensions(new HashSet<String>(Arrays.asList("tii")));
+    for (String name : new String[] {"bytes.tii", "bytes.bin"}) {
+      IndexOutput out = dir.createOutput(name);
+      for (int i = 0; i < 96; i++) {
+        out.writeByte((byte) i);
+      }
+      out.close();
+
+      IndexInput in = dir.openInput(name);
+      assertEquals(96, in.length());
+      for (int i = 0; i < 50*RANDOM_MULTIPLIER; i++) {
+        int pos = random.nextInt(96);
+        in.seek(pos);
+        assertEquals(pos, in.getFilePointer());
+        assertEquals((byte) pos, in.readByte());
+        IndexInput clone = (IndexInput) in.clone();
+        assertEquals(pos+1, clone.getFilePointer());
+        if (pos + 20 <= 96) {
+          byte[] bytes = new byte[20];
+          clone.seek(pos);
+          clone.readBytes(bytes, 0, 20);
+          for (int j = 0; j < 20; j++) {
+            assertEquals((byte) (pos+j), bytes[j]);
+          }
+        }
+        clone.close();
+      }
+      // the file size is a multiple of the chunk size here
+      in.seek(92);
+      in.readBytes(new byte[4], 0, 4);
+      assertEquals(96, in.getFilePointer());
+      in.close();
+    }
+    dir.close();
+  }
+
   public void testRandomChunkSizes() throws Exception {
     Random random = newRandom();
     for (int i = 0; i < 10*RANDOM_MULTIPLIER; i++)
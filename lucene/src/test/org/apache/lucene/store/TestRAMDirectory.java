@@ -172,7 +172,35 @@ public class TestRAMDirectory extends LuceneTestCase {
     i.close();
     dir.close();
   }
-  
+
+  public void testSeekBackFromEOF() throws Exception {
+    RAMDirectory dir = new RAMDirectory();
+    IndexOutput o = dir.createOutput("out");
+    for (int j = 0; j < 2048; j++) {
+      o.writeByte((byte) j);
+    }
+    o.close();
+    IndexInput i = dir.openInput("out");
+    i.seek(4);
+    assertEquals((byte) 4, i.readByte());
+    // seek to the end, on a buffer boundary, and back
+    i.seek(2048);
+    assertEquals(2048, i.getFilePointer());
+    i.seek(4);
+    for (int j = 4; j < 2048; j++) {
+      assertEquals((byte) j, i.readByte());
+    }
+    i.seek(2048);
+    try {
+      i.readByte();
+      fail("should have hit EOF");
+    } catch (IOException e) {
+      // expected
+    }
+    i.close();
+    dir.close();
+  }
+
   private void rmDir(File dir) {
     File[] files = dir.listFiles();
     for (int i = 0; i < files.length; i++) {
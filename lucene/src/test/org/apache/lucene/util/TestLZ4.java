@@ -0,0 +1,120 @@
+package org.apache.lucene.util;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RAMDirectory;
+
+public class TestLZ4 extends LuceneTestCase {
+  private Random random;
+  private final LZ4.HashTable hashTable = new LZ4.HashTable();
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    random = newRandom();
+  }
+
+  // Compresses bytes[off:off+len], checks it decompresses
+  // to the same bytes and returns the compressed length
+  private long roundTrip(byte[] bytes, int off, int len) throws IOException {
+    RAMDirectory dir = new RAMDirectory();
+    IndexOutput out = dir.createOutput("lz4");
+    LZ4.compress(bytes, off, len, out, hashTable);
+    // marker to check decompress consumes exactly what was written
+    out.writeByte((byte) 42);
+    out.close();
+
+    IndexInput in = dir.openInput("lz4");
+    byte[] restored = new byte[len + LZ4.COPY_OVERRUN];
+    LZ4.decompress(in, len, restored);
+    assertEquals(42, in.readByte());
+    assertEquals(in.length(), in.getFilePointer());
+    in.close();
+    final long compressedLength = dir.fileLength("lz4") - 1;
+    dir.close();
+
+    for (int i = 0; i < len; i++) {
+      assertEquals(bytes[off+i], restored[i]);
+    }
+    return compressedLength;
+  }
+
+  public void testEmpty() throws IOException {
+    assertEquals(1, roundTrip(new byte[0], 0, 0));
+  }
+
+  public void testShort() throws IOException {
+    for (int len = 1; len < 20; len++) {
+      byte[] bytes = new byte[len];
+      Arrays.fill(bytes, (byte) 'a');
+      roundTrip(bytes, 0, len);
+    }
+  }
+
+  public void testRandom() throws IOException {
+    int iters = 100 * RANDOM_MULTIPLIER;
+    for (int i = 0; i < iters; i++) {
+      final byte[] bytes = new byte[random.nextInt(1 << 16)];
+      random.nextBytes(bytes);
+      final int off = bytes.length == 0 ? 0 : random.nextInt(bytes.length);
+      roundTrip(bytes, off, bytes.length - off);
+    }
+  }
+
+  public void testRepetitive() throws IOException {
+    int iters = 100 * RANDOM_MULTIPLIER;
+    for (int i = 0; i < iters; i++) {
+      // few distinct bytes, so there are many matches of
+      // all lengths, including overlapping ones
+      final byte[] bytes = new byte[random.nextInt(1 << 16)];
+      final int alphabet = 1 + random.nextInt(4);
+      for (int j = 0; j < bytes.length; j++) {
+        bytes[j] = (byte) random.nextInt(alphabet);
+      }
+      roundTrip(bytes, 0, bytes.length);
+    }
+  }
+
+  public void testText() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() < 100000) {
+      sb.append(English.intToEnglish(random.nextInt(10000))).append(' ');
+    }
+    final byte[] bytes = sb.toString().getBytes("UTF-8");
+    final long compressedLength = roundTrip(bytes, 0, bytes.length);
+    assertTrue("compressed " + bytes.length + " bytes to " + compressedLength, compressedLength < bytes.length / 2);
+  }
+
+  public void testLongMatches() throws IOException {
+    // matches and literals longer than 0x0F + 0xFF need
+    // several length bytes; matches are limited to 64 KB
+    // back
+    final byte[] bytes = new byte[300000];
+    random.nextBytes(bytes);
+    System.arraycopy(bytes, 0, bytes, 1000, 5000);
+    System.arraycopy(bytes, 100000, bytes, 200000, 30000);
+    Arrays.fill(bytes, 250000, 260000, (byte) 7);
+    roundTrip(bytes, 0, bytes.length);
+  }
+}
@@ -0,0 +1,179 @@
+package org.apache.lucene.util.automaton;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Random;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.analysis.MockTokenizer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.RegexpQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestCompiledAutomatonCache extends LuceneTestCase {
+  private CompiledAutomatonCache defaultCache;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    defaultCache = CompiledAutomatonCache.getDefault();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    CompiledAutomatonCache.setDefault(defaultCache);
+    super.tearDown();
+  }
+
+  private static CompiledAutomaton compile(String regexp) {
+    return new CompiledAutomaton(new RegExp(regexp).toAutomaton());
+  }
+
+  public void testKeys() {
+    CompiledAutomatonCache.Key key = new CompiledAutomatonCache.Key("regexp", "ab*", RegExp.ALL);
+    assertEquals(key, new CompiledAutomatonCache.Key("regexp", "ab*", RegExp.ALL));
+    assertEquals(key.hashCode(), new CompiledAutomatonCache.Key("regexp", "ab*", RegExp.ALL).hashCode());
+    assertFalse(key.equals(new CompiledAutomatonCache.Key("wildcard", "ab*", RegExp.ALL)));
+    assertFalse(key.equals(new CompiledAutomatonCache.Key("regexp", "ab+", RegExp.ALL)));
+    assertFalse(key.equals(new CompiledAutomatonCache.Key("regexp", "ab*", RegExp.NONE)));
+    assertFalse(key.equals(new CompiledAutomatonCache.Key("regexp", "ab*")));
+  }
+
+  public void testHitsAndMisses() {
+    CompiledAutomatonCache cache = new CompiledAutomatonCache(10);
+    CompiledAutomatonCache.Key key = new CompiledAutomatonCache.Key("regexp", "ab*", RegExp.ALL);
+    assertNull(cache.get(key));
+    assertEquals(0, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+
+    CompiledAutomaton compiled = compile("ab*");
+    cache.put(key, compiled);
+    assertSame(compiled, cache.get(new CompiledAutomatonCache.Key("regexp", "ab*", RegExp.ALL)));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+  }
+
+  public void testBounded() {
+    final int maxSize = 4;
+    CompiledAutomatonCache cache = new CompiledAutomatonCache(maxSize);
+    final CompiledAutomaton compiled = compile("a");
+    final int num = 100;
+    for (int i = 0; i < num; i++) {
+      cache.put(new CompiledAutomatonCache.Key("regexp", Integer.toString(i)), compiled);
+    }
+    int cached = 0;
+    for (int i = 0; i < num; i++) {
+      if (cache.get(new CompiledAutomatonCache.Key("regexp", Integer.toString(i))) != null) {
+        cached++;
+      }
+    }
+    assertTrue("cached=" + cached, cached <= 2 * maxSize);
+    // the most recently added one is kept
+    assertNotNull(cache.get(new CompiledAutomatonCache.Key("regexp", Integer.toString(num - 1))));
+  }
+
+  public void testCopiesAutomaton() {
+    Automaton a = new RegExp("ab*").toAutomaton();
+    CompiledAutomaton compiled = new CompiledAutomaton(a);
+    Automaton copy = compiled.getAutomaton();
+    assertNotSame(copy, compiled.getAutomaton());
+    assertTrue(BasicOperations.sameLanguage(a, copy));
+    // modifying the copy does not change the compiled automaton
+    copy = BasicOperations.complement(copy);
+    assertTrue(BasicOperations.sameLanguage(a, compiled.getAutomaton()));
+  }
+
+  public void testQueries() throws Exception {
+    Random random = newRandom();
+    Directory dir = newDirectory(random);
+    RandomIndexWriter writer = new RandomIndexWriter(random, dir, new MockAnalyzer(MockTokenizer.KEYWORD, false));
+    Document doc = new Document();
+    Field field = new Field("field", "", Field.Store.NO, Field.Index.NOT_ANALYZED);
+    doc.add(field);
+    int num = 200 * RANDOM_MULTIPLIER;
+    for (int i = 0; i < num; i++) {
+      StringBuilder sb = new StringBuilder();
+      for (int j = random.nextInt(6); j >= 0; j--) {
+        sb.append((char) ('a' + random.nextInt(10)));
+      }
+      field.setValue(sb.toString());
+      writer.addDocument(doc);
+    }
+    IndexReader reader = writer.getReader();
+    writer.close();
+    IndexSearcher searcher = new IndexSearcher(reader);
+
+    String[] regexps = new String[] { "a.*b", "[ab]*c", "b?c+d" };
+    String[] wildcards = new String[] { "a*b", "?b*c", "*d" };
+    String[] fuzzy = new String[] { "abcd", "bcde", "fghij" };
+
+    CompiledAutomatonCache cache = new CompiledAutomatonCache(16);
+    for (int iter = 0; iter < 2; iter++) {
+      for (int i = 0; i < regexps.length; i++) {
+        Term regexp = new Term("field", regexps[i]);
+        Term wildcard = new Term("field", wildcards[i]);
+        Term term = new Term("field", fuzzy[i]);
+        // fuzzy queries build their automata when searching
+        CompiledAutomatonCache.setDefault(null);
+        Query[] uncached = new Query[] { new RegexpQuery(regexp), new WildcardQuery(wildcard), new FuzzyQuery(term, 0.5f) };
+        TopDocs[] expected = new TopDocs[uncached.length];
+        for (int j = 0; j < uncached.length; j++) {
+          expected[j] = searcher.search(uncached[j], 10 * num);
+        }
+        CompiledAutomatonCache.setDefault(cache);
+        Query[] cached = new Query[] { new RegexpQuery(regexp), new WildcardQuery(wildcard), new FuzzyQuery(term, 0.5f) };
+        for (int j = 0; j < cached.length; j++) {
+          assertEquals(uncached[j], cached[j]);
+          assertSameHits(expected[j], searcher.search(cached[j], 10 * num));
+        }
+      }
+      if (iter == 0) {
+        assertEquals(0, cache.getHitCount());
+      }
+    }
+    // the second time, all regexps and wildcards, and the
+    // levenshtein automata of each edit distance, were cached
+    assertTrue(cache.getHitCount() >= 2 * regexps.length);
+    assertEquals(cache.getMissCount(), cache.getHitCount());
+
+    searcher.close();
+    reader.close();
+    dir.close();
+  }
+
+  private void assertSameHits(TopDocs expected, TopDocs actual) {
+    assertEquals(expected.totalHits, actual.totalHits);
+    assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+    for (int i = 0; i < expected.scoreDocs.length; i++) {
+      ScoreDoc doc = expected.scoreDocs[i];
+      assertEquals(doc.doc, actual.scoreDocs[i].doc);
+      assertEquals(doc.score, actual.scoreDocs[i].score, 0f);
+    }
+  }
+}
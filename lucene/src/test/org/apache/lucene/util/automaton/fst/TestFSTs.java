@@ -0,0 +1,214 @@
+package org.apache.lucene.util.automaton.fst;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestFSTs extends LuceneTestCase {
+
+  private Random random;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    random = newRandom();
+  }
+
+  private static BytesRef toBytesRef(String s) {
+    return new BytesRef(s);
+  }
+
+  private FST<Long> build(TreeMap<BytesRef,Long> pairs) throws Exception {
+    final Builder<Long> builder = new Builder<Long>(PositiveIntOutputs.getSingleton());
+    for(Map.Entry<BytesRef,Long> ent : pairs.entrySet()) {
+      builder.add(ent.getKey(), PositiveIntOutputs.getSingleton().get(ent.getValue().longValue()));
+    }
+    return builder.finish();
+  }
+
+  private FST<Long> saveLoad(FST<Long> fst) throws Exception {
+    final Directory dir = newDirectory(random);
+    final IndexOutput out = dir.createOutput("fst");
+    fst.save(out);
+    out.close();
+    final IndexInput in = dir.openInput("fst");
+    final FST<Long> loaded = new FST<Long>(in, PositiveIntOutputs.getSingleton());
+    in.close();
+    dir.close();
+    assertEquals(fst.sizeInBytes(), loaded.sizeInBytes());
+    return loaded;
+  }
+
+  private TreeMap<BytesRef,Long> randomTerms(int count, boolean ords) {
+    final TreeMap<BytesRef,Long> terms = new TreeMap<BytesRef,Long>();
+    final boolean binary = random.nextBoolean();
+    while(terms.size() < count) {
+      final BytesRef term;
+      if (binary) {
+        final byte[] bytes = new byte[random.nextInt(10)];
+        for(int i=0;i<bytes.length;i++) {
+          // small alphabet, so inputs share prefixes/suffixes
+          bytes[i] = (byte) (random.nextBoolean() ? random.nextInt(4) : 252 + random.nextInt(4));
+        }
+        term = new BytesRef(bytes);
+      } else {
+        term = toBytesRef(_TestUtil.randomRealisticUnicodeString(random, 12));
+      }
+      terms.put(term, Long.valueOf(random.nextInt(1000)));
+    }
+    if (ords) {
+      long ord = 0;
+      for(Map.Entry<BytesRef,Long> ent : terms.entrySet()) {
+        ent.setValue(Long.valueOf(ord++));
+      }
+    }
+    return terms;
+  }
+
+  private void verify(FST<Long> fst, TreeMap<BytesRef,Long> terms, boolean ords) throws Exception {
+    // exact lookups
+    for(Map.Entry<BytesRef,Long> ent : terms.entrySet()) {
+      assertEquals("input=" + ent.getKey(), ent.getValue(), Util.get(fst, ent.getKey()));
+      if (ords) {
+        assertEquals(ent.getKey(), Util.getByOutput(fst, ent.getValue().longValue()));
+      }
+    }
+    if (ords) {
+      assertNull(Util.getByOutput(fst, terms.size()));
+    }
+
+    // enumeration
+    final BytesRefFSTEnum<Long> fstEnum = new BytesRefFSTEnum<Long>(fst);
+    for(Map.Entry<BytesRef,Long> ent : terms.entrySet()) {
+      final BytesRefFSTEnum.InputOutput<Long> io = fstEnum.next();
+      assertNotNull(io);
+      assertEquals(ent.getKey(), io.input);
+      assertEquals(ent.getValue(), io.output);
+    }
+    assertNull(fstEnum.next());
+
+    // random lookups & floor seeks, mostly near existing
+    // inputs
+    final List<BytesRef> termList = new ArrayList<BytesRef>(terms.keySet());
+    for(int iter=0;iter<1000;iter++) {
+      final BytesRef target;
+      final int r = random.nextInt(3);
+      if (r == 0) {
+        target = toBytesRef(_TestUtil.randomRealisticUnicodeString(random, 12));
+      } else {
+        final BytesRef term = termList.get(random.nextInt(termList.size()));
+        final byte[] bytes = new byte[term.length + (r == 1 ? 1 : 0)];
+        System.arraycopy(term.bytes, term.offset, bytes, 0, term.length);
+        if (r == 1) {
+          bytes[term.length] = (byte) random.nextInt(256);
+        } else if (bytes.length > 0) {
+          bytes[bytes.length-1] += (byte) (random.nextInt(3)-1);
+        }
+        target = new BytesRef(bytes);
+      }
+
+      assertEquals(terms.get(target), Util.get(fst, target));
+
+      final BytesRef floor = terms.floorKey(target);
+      final BytesRefFSTEnum.InputOutput<Long> io = fstEnum.seekFloor(target);
+      if (floor == null) {
+        assertNull("target=" + target, io);
+        // enum was reset to the start
+        assertEquals(terms.firstKey(), fstEnum.next().input);
+      } else {
+        assertNotNull("target=" + target + " floor=" + floor, io);
+        assertEquals("target=" + target, floor, io.input);
+        assertEquals(terms.get(floor), io.output);
+
+        // next continues after the floor
+        final BytesRef next = terms.higherKey(floor);
+        final BytesRefFSTEnum.InputOutput<Long> nextIO = fstEnum.next();
+        if (next == null) {
+          assertNull(nextIO);
+        } else {
+          assertEquals(next, nextIO.input);
+          assertEquals(terms.get(next), nextIO.output);
+        }
+      }
+    }
+  }
+
+  public void testRandom() throws Exception {
+    for(int iter=0;iter<10;iter++) {
+      final boolean ords = random.nextBoolean();
+      final TreeMap<BytesRef,Long> terms = randomTerms(1+random.nextInt(iter < 5 ? 20 : 2000), ords);
+      FST<Long> fst = build(terms);
+      verify(fst, terms, ords);
+      verify(saveLoad(fst), terms, ords);
+    }
+  }
+
+  public void testEmptyInput() throws Exception {
+    final TreeMap<BytesRef,Long> terms = new TreeMap<BytesRef,Long>();
+    terms.put(new BytesRef(), Long.valueOf(0));
+    FST<Long> fst = build(terms);
+    assertNotNull(fst);
+    verify(fst, terms, true);
+
+    terms.put(toBytesRef("a"), Long.valueOf(1));
+    terms.put(toBytesRef("ab"), Long.valueOf(2));
+    terms.put(toBytesRef("b"), Long.valueOf(3));
+    fst = build(terms);
+    verify(fst, terms, true);
+    verify(saveLoad(fst), terms, true);
+
+    assertNull(new Builder<Long>(PositiveIntOutputs.getSingleton()).finish());
+  }
+
+  public void testSharedSuffixes() throws Exception {
+    final TreeMap<BytesRef,Long> terms = new TreeMap<BytesRef,Long>();
+    final String[] prefixes = new String[] {"a", "b", "c", "d", "e", "f", "g"};
+    for(String prefix : prefixes) {
+      terms.put(toBytesRef(prefix + "station"), Long.valueOf(0));
+    }
+    final FST<Long> fst = build(terms);
+    verify(fst, terms, false);
+    // the start node, the node after the first letter,
+    // and one node per byte of the shared suffix except
+    // the last (the final node has no arcs and is not
+    // stored)
+    assertEquals(1+"station".length(), fst.getNodeCount());
+  }
+
+  public void testOutOfOrder() throws Exception {
+    final Builder<Long> builder = new Builder<Long>(PositiveIntOutputs.getSingleton());
+    builder.add(toBytesRef("b"), PositiveIntOutputs.getSingleton().get(1));
+    try {
+      builder.add(toBytesRef("a"), PositiveIntOutputs.getSingleton().get(2));
+      fail("out of order input should fail");
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+  }
+}
@@ -94,6 +94,15 @@ public class TestPackedInts extends LuceneTestCase {
         }
         assertEquals(fp, in.getFilePointer());
         in.close();
+
+        in = d.openInput("out.bin");
+        PackedInts.Reader r3 = PackedInts.getDirectReader(in);
+        for(int i=valueCount-1;i>=0;i--) {
+          assertEquals("index=" + i + " ceil=" + ceil + " valueCount="
+                  + valueCount + " nbits=" + nbits + " for "
+                  + r3.getClass().getSimpleName(), values[i], r3.get(i));
+        }
+        in.close();
         ceil *= 2;
         d.close();
       }
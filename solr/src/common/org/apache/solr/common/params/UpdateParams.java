@@ -51,4 +51,10 @@ public interface UpdateParams
   public static final String MAX_OPTIMIZE_SEGMENTS = "maxSegments";
 
   public static final String EXPUNGE_DELETES = "expungeDeletes";
+
+  /**
+   * If true, a commit only makes the pending changes visible to searches, without making
+   * them durable.  The new searcher reads them straight from the IndexWriter.
+   */
+  public static final String SOFT_COMMIT = "softCommit";
 }
@@ -0,0 +1,434 @@
+package org.apache.solr.common.util;
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent cache that evicts its least frequently used entries, and that
+ * can be bounded by the memory used by its values as well as by its number of
+ * entries.
+ * <p/>
+ * Access frequencies are kept, for hits and misses alike, in a small
+ * {@link FrequencySketch} that is periodically aged, so they reflect recent
+ * history.  When the cache is full, a new entry is only admitted if its key
+ * has been requested more often than the most frequently used entry evicted by
+ * the last cleanup; this keeps bursts of one-off requests from flushing
+ * frequently used entries.  Admission is not checked while the cache is not
+ * live, i.e. while it is being autowarmed.
+ * <p/>
+ * Like {@link ConcurrentLRUCache}, cleanup happens in the thread that takes the
+ * cache over its limits, and brings it down to its lower water marks.
+ *
+ * @version $Id$
+ * @see ConcurrentLRUCache
+ */
+public class ConcurrentLFUCache<K,V> {
+
+  /** Estimates the memory used by cached values. */
+  public static interface RamSizeEstimator<V> {
+    /** Returns the approximate number of bytes used by <code>value</code>. */
+    public long ramBytes(V value);
+  }
+
+  private final ConcurrentHashMap<Object, CacheEntry<K,V>> map;
+  private final int upperWaterMark, lowerWaterMark;
+  private final long maxRamBytes, lowerRamBytes;
+  private final RamSizeEstimator<V> estimator;
+  private final ReentrantLock markAndSweepLock = new ReentrantLock(true);
+  private volatile FrequencySketch sketch;
+  private volatile boolean islive = true;
+  private final Stats stats = new Stats();
+  // a new entry must be more frequent than this to be admitted into a full cache
+  private volatile int admissionFrequency = -1;
+
+  /**
+   * @param upperWaterMark  the maximum number of entries
+   * @param lowerWaterMark  the number of entries a cleanup brings the cache down to
+   * @param maxRamBytes     the maximum memory used by the values, or <= 0 for no limit
+   * @param initialSize     the initial capacity of the map
+   * @param estimator       estimates the memory used by values, may be null if maxRamBytes is not set
+   */
+  public ConcurrentLFUCache(int upperWaterMark, int lowerWaterMark, long maxRamBytes, int initialSize,
+                            RamSizeEstimator<V> estimator) {
+    if (upperWaterMark < 1) throw new IllegalArgumentException("upperWaterMark must be > 0");
+    if (lowerWaterMark >= upperWaterMark)
+      throw new IllegalArgumentException("lowerWaterMark must be  < upperWaterMark");
+    if (maxRamBytes > 0 && estimator == null)
+      throw new IllegalArgumentException("a RamSizeEstimator is required to limit the memory used");
+    map = new ConcurrentHashMap<Object, CacheEntry<K,V>>(initialSize);
+    this.upperWaterMark = upperWaterMark;
+    this.lowerWaterMark = lowerWaterMark;
+    this.maxRamBytes = maxRamBytes > 0 ? maxRamBytes : Long.MAX_VALUE;
+    this.lowerRamBytes = maxRamBytes > 0 ? (long)(maxRamBytes * ((double)lowerWaterMark / upperWaterMark)) : Long.MAX_VALUE;
+    this.estimator = estimator;
+    this.sketch = new FrequencySketch(upperWaterMark);
+  }
+
+  public void setAlive(boolean live) {
+    islive = live;
+  }
+
+  /**
+   * Starts from a copy of the access frequencies of <code>other</code>, so
+   * that they survive when a cache replaces another.
+   */
+  public void inheritFrequencies(ConcurrentLFUCache<K,V> other) {
+    sketch = other.sketch.copy();
+  }
+
+  public V get(K key) {
+    CacheEntry<K,V> e = map.get(key);
+    if (islive) {
+      if (sketch.increment(key.hashCode())) {
+        // the frequencies were halved, and so is the bar for new entries
+        admissionFrequency >>= 1;
+      }
+      if (e == null) {
+        stats.missCounter.incrementAndGet();
+      } else {
+        stats.hitCounter.incrementAndGet();
+      }
+    }
+    if (e == null) return null;
+    if (islive) e.lastAccessed = stats.accessCounter.incrementAndGet();
+    return e.value;
+  }
+
+  public V remove(K key) {
+    CacheEntry<K,V> cacheEntry = map.remove(key);
+    if (cacheEntry != null) {
+      stats.size.decrementAndGet();
+      stats.ramBytes.addAndGet(-cacheEntry.ramBytes);
+      return cacheEntry.value;
+    }
+    return null;
+  }
+
+  private boolean isFull() {
+    return stats.size.get() >= lowerWaterMark || stats.ramBytes.get() >= lowerRamBytes;
+  }
+
+  public V put(K key, V val) {
+    if (val == null) return null;
+    if (islive && admissionFrequency >= 0 && isFull() && !map.containsKey(key)
+        && sketch.frequency(key.hashCode()) <= admissionFrequency) {
+      stats.rejectCounter.incrementAndGet();
+      return null;
+    }
+
+    long ramBytes = estimator == null ? 0 : estimator.ramBytes(val);
+    CacheEntry<K,V> e = new CacheEntry<K,V>(key, val, stats.accessCounter.incrementAndGet(), ramBytes);
+    CacheEntry<K,V> oldCacheEntry = map.put(key, e);
+    int currentSize;
+    long currentRam;
+    if (oldCacheEntry == null) {
+      currentSize = stats.size.incrementAndGet();
+      currentRam = stats.ramBytes.addAndGet(ramBytes);
+    } else {
+      currentSize = stats.size.get();
+      currentRam = stats.ramBytes.addAndGet(ramBytes - oldCacheEntry.ramBytes);
+    }
+    if (islive) {
+      stats.putCounter.incrementAndGet();
+    } else {
+      stats.nonLivePutCounter.incrementAndGet();
+    }
+
+    if (currentSize > upperWaterMark || currentRam > maxRamBytes) {
+      markAndSweep();
+    }
+    return oldCacheEntry == null ? null : oldCacheEntry.value;
+  }
+
+  private static final Comparator<CacheEntry> LEAST_USED_FIRST = new Comparator<CacheEntry>() {
+    public int compare(CacheEntry a, CacheEntry b) {
+      if (a.frequencyCopy != b.frequencyCopy) return a.frequencyCopy < b.frequencyCopy ? -1 : 1;
+      if (a.lastAccessedCopy != b.lastAccessedCopy) return a.lastAccessedCopy < b.lastAccessedCopy ? -1 : 1;
+      return 0;
+    }
+  };
+
+  private List<CacheEntry<K,V>> snapshot() {
+    FrequencySketch sketch = this.sketch;
+    List<CacheEntry<K,V>> entries = new ArrayList<CacheEntry<K,V>>(map.size());
+    for (CacheEntry<K,V> ce : map.values()) {
+      ce.frequencyCopy = sketch.frequency(ce.key.hashCode());
+      ce.lastAccessedCopy = ce.lastAccessed;
+      entries.add(ce);
+    }
+    Collections.sort(entries, LEAST_USED_FIRST);
+    return entries;
+  }
+
+  /**
+   * Removes the least frequently used entries, least recently used first among
+   * equally frequent ones, until the cache is below both of its lower water marks.
+   */
+  private void markAndSweep() {
+    if (!markAndSweepLock.tryLock()) return;
+    try {
+      int sz = stats.size.get();
+      long ram = stats.ramBytes.get();
+      if (sz <= upperWaterMark && ram <= maxRamBytes) return;
+
+      int maxEvictedFrequency = 0;
+      for (CacheEntry<K,V> ce : snapshot()) {
+        boolean overSize = sz > lowerWaterMark;
+        if (!overSize && ram <= lowerRamBytes) break;
+        if (map.remove(ce.key, ce)) {
+          stats.size.decrementAndGet();
+          stats.ramBytes.addAndGet(-ce.ramBytes);
+          if (overSize) {
+            stats.sizeEvictionCounter.incrementAndGet();
+          } else {
+            stats.ramEvictionCounter.incrementAndGet();
+          }
+          sz--;
+          ram -= ce.ramBytes;
+          maxEvictedFrequency = Math.max(maxEvictedFrequency, ce.frequencyCopy);
+        }
+      }
+      admissionFrequency = maxEvictedFrequency;
+    } finally {
+      markAndSweepLock.unlock();
+    }
+  }
+
+  /**
+   * Returns up to <code>n</code> of the most frequently used entries, the most
+   * frequently used first.
+   */
+  public Map<K,V> getMostUsedItems(int n) {
+    Map<K,V> result = new LinkedHashMap<K,V>();
+    List<CacheEntry<K,V>> entries;
+    // we need to grab the lock since we are changing the copies
+    markAndSweepLock.lock();
+    try {
+      entries = snapshot();
+    } finally {
+      markAndSweepLock.unlock();
+    }
+    for (int i = entries.size() - 1; i >= 0 && result.size() < n; i--) {
+      CacheEntry<K,V> e = entries.get(i);
+      result.put(e.key, e.value);
+    }
+    return result;
+  }
+
+  public int size() {
+    return stats.size.get();
+  }
+
+  /** Returns the estimated memory used by the cached values. */
+  public long ramBytesUsed() {
+    return stats.ramBytes.get();
+  }
+
+  public void clear() {
+    for (CacheEntry<K,V> ce : map.values()) {
+      remove(ce.key);
+    }
+  }
+
+  private static class CacheEntry<K,V> {
+    final K key;
+    final V value;
+    final long ramBytes;
+    volatile long lastAccessed = 0;
+    long lastAccessedCopy = 0;
+    int frequencyCopy = 0;
+
+    public CacheEntry(K key, V value, long lastAccessed, long ramBytes) {
+      this.key = key;
+      this.value = value;
+      this.lastAccessed = lastAccessed;
+      this.ramBytes = ramBytes;
+    }
+
+    public String toString() {
+      return "key: " + key + " value: " + value + " lastAccessed:" + lastAccessed;
+    }
+  }
+
+  public Stats getStats() {
+    return stats;
+  }
+
+  public static class Stats {
+    private final AtomicLong accessCounter = new AtomicLong(0),
+            putCounter = new AtomicLong(0),
+            nonLivePutCounter = new AtomicLong(0),
+            hitCounter = new AtomicLong(),
+            missCounter = new AtomicLong(),
+            sizeEvictionCounter = new AtomicLong(),
+            ramEvictionCounter = new AtomicLong(),
+            rejectCounter = new AtomicLong(),
+            ramBytes = new AtomicLong();
+    private final AtomicInteger size = new AtomicInteger();
+
+    public long getCumulativeLookups() {
+      return hitCounter.get() + missCounter.get();
+    }
+
+    public long getCumulativeHits() {
+      return hitCounter.get();
+    }
+
+    public long getCumulativePuts() {
+      return putCounter.get();
+    }
+
+    public long getCumulativeEvictions() {
+      return sizeEvictionCounter.get() + ramEvictionCounter.get();
+    }
+
+    /** Evictions because the cache had too many entries. */
+    public long getCumulativeSizeEvictions() {
+      return sizeEvictionCounter.get();
+    }
+
+    /** Evictions because the values used too much memory. */
+    public long getCumulativeRamEvictions() {
+      return ramEvictionCounter.get();
+    }
+
+    /** New entries that were not admitted because they were not used often enough. */
+    public long getCumulativeRejects() {
+      return rejectCounter.get();
+    }
+
+    public int getCurrentSize() {
+      return size.get();
+    }
+
+    public long getCurrentRamBytes() {
+      return ramBytes.get();
+    }
+
+    public long getCumulativeNonLivePuts() {
+      return nonLivePutCounter.get();
+    }
+
+    public long getCumulativeMisses() {
+      return missCounter.get();
+    }
+
+    public void add(Stats other) {
+      accessCounter.addAndGet(other.accessCounter.get());
+      putCounter.addAndGet(other.putCounter.get());
+      nonLivePutCounter.addAndGet(other.nonLivePutCounter.get());
+      hitCounter.addAndGet(other.hitCounter.get());
+      missCounter.addAndGet(other.missCounter.get());
+      sizeEvictionCounter.addAndGet(other.sizeEvictionCounter.get());
+      ramEvictionCounter.addAndGet(other.ramEvictionCounter.get());
+      rejectCounter.addAndGet(other.rejectCounter.get());
+      size.set(Math.max(size.get(), other.size.get()));
+    }
+  }
+
+  /**
+   * A count-min sketch of 4 bit counters that estimates how often keys were
+   * requested.  Once the number of increments reaches ten times the capacity
+   * of the cache all counters are halved, so that old accesses fade out.
+   * <p/>
+   * Updates are not atomic: concurrent increments may occasionally be lost,
+   * which only makes the estimates slightly more approximate.
+   */
+  static final class FrequencySketch {
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int capacity) {
+      int n = 64;
+      while (n < capacity && n < (1 << 24)) n <<= 1;
+      table = new long[n];
+      mask = n - 1;
+      sampleSize = 10 * Math.max(capacity, 16);
+    }
+
+    private FrequencySketch(FrequencySketch other) {
+      table = other.table.clone();
+      mask = other.mask;
+      sampleSize = other.sampleSize;
+      additions = other.additions;
+    }
+
+    FrequencySketch copy() {
+      return new FrequencySketch(this);
+    }
+
+    private static int hash(int hashCode, int i) {
+      long h = (hashCode + SEEDS[i]) * SEEDS[i];
+      h += h >>> 32;
+      return (int)h;
+    }
+
+    /** Returns the estimated number of times <code>hashCode</code> was incremented, at most 15. */
+    int frequency(int hashCode) {
+      int freq = Integer.MAX_VALUE;
+      for (int i = 0; i < 4; i++) {
+        int h = hash(hashCode, i);
+        int shift = ((h >>> 28) & 15) << 2;
+        freq = Math.min(freq, (int)((table[h & mask] >>> shift) & 15));
+      }
+      return freq;
+    }
+
+    /** Counts one more access; returns true if this aged the sketch. */
+    boolean increment(int hashCode) {
+      boolean added = false;
+      for (int i = 0; i < 4; i++) {
+        int h = hash(hashCode, i);
+        int idx = h & mask;
+        int shift = ((h >>> 28) & 15) << 2;
+        long word = table[idx];
+        if (((word >>> shift) & 15) != 15) {
+          table[idx] = word + (1L << shift);
+          added = true;
+        }
+      }
+      if (added && ++additions >= sampleSize) {
+        return reset();
+      }
+      return false;
+    }
+
+    private synchronized boolean reset() {
+      if (additions < sampleSize) return false;
+      for (int i = 0; i < table.length; i++) {
+        table[i] = (table[i] >>> 1) & RESET_MASK;
+      }
+      additions >>>= 1;
+      return true;
+    }
+  }
+}
@@ -466,6 +466,14 @@ public class JavaBinCodec {
     daos.write(bytes, 0, upto);
   }
 
+  /**
+   * write a string already encoded as UTF-8 bytes, as tag+length like {@link #writeStr}
+   */
+  public void writeUTF8Str(byte[] utf8, int offset, int length) throws IOException {
+    writeTag(STR, length);
+    daos.write(utf8, offset, length);
+  }
+
   byte[] bytes;
   char[] chars;
 
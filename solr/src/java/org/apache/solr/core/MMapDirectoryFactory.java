@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.StrUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Directory provider that always uses {@link MMapDirectory}.
+ * <p/>
+ * Can be configured with the following init args:
+ * <ul>
+ *   <li><code>maxChunkSize</code> - the size of the mapped chunks, rounded
+ *   down to a power of two (default {@link MMapDirectory#DEFAULT_MAX_BUFF})</li>
+ *   <li><code>unmap</code> - whether to unmap files on close, if the JVM
+ *   supports it (default true)</li>
+ *   <li><code>preload</code> - comma separated extensions of the files to
+ *   load into memory when they are opened, for example <code>tii,nrm</code>
+ *   (default none)</li>
+ * </ul>
+ *
+ * @see MMapDirectory
+ */
+public class MMapDirectoryFactory extends DirectoryFactory {
+  private static final Logger log = LoggerFactory.getLogger(MMapDirectoryFactory.class);
+
+  private boolean unmapHack = true;
+  private int maxChunk = MMapDirectory.DEFAULT_MAX_BUFF;
+  private Set<String> preloadExtensions = new HashSet<String>();
+
+  @Override
+  public Directory open(String path) throws IOException {
+    MMapDirectory mapDirectory = new MMapDirectory(new File(path));
+    if (unmapHack && MMapDirectory.UNMAP_SUPPORTED) {
+      mapDirectory.setUseUnmap(true);
+    } else {
+      if (unmapHack) {
+        log.warn("Unmap not supported on this JVM, continuing on without setting unmap");
+      }
+      mapDirectory.setUseUnmap(false);
+    }
+    mapDirectory.setMaxChunkSize(maxChunk);
+    mapDirectory.setPreloadExtensions(preloadExtensions);
+    return mapDirectory;
+  }
+
+  @Override
+  public void init(NamedList args) {
+    SolrParams params = SolrParams.toSolrParams(args);
+    maxChunk = params.getInt("maxChunkSize", MMapDirectory.DEFAULT_MAX_BUFF);
+    if (maxChunk <= 0) {
+      throw new IllegalArgumentException("maxChunkSize must be greater than 0");
+    }
+    unmapHack = params.getBool("unmap", true);
+    preloadExtensions = new HashSet<String>();
+    String preload = params.get("preload");
+    if (preload != null) {
+      for (String ext : StrUtils.splitSmart(preload, ",", true)) {
+        ext = ext.trim();
+        if (ext.length() > 0) {
+          preloadExtensions.add(ext);
+        }
+      }
+    }
+  }
+}
@@ -146,9 +146,11 @@ public class SolrConfig extends Config {
     filtOptThreshold = getFloat("query/boolTofilterOptimizer/@threshold",.05f);
     
     useFilterForSortedQuery = getBool("query/useFilterForSortedQuery", false);
+    compressedDocSets = getBool("query/compressedDocSets", false);
     queryResultWindowSize = getInt("query/queryResultWindowSize", 1);
     queryResultMaxDocsCached = getInt("query/queryResultMaxDocsCached", Integer.MAX_VALUE);
     enableLazyFieldLoading = getBool("query/enableLazyFieldLoading", false);
+    cacheResponseDocuments = getBool("query/cacheResponseDocuments", false);
 
     
     filterCacheConfig = CacheConfig.getConfig(this, "query/filterCache");
@@ -191,6 +193,7 @@ public class SolrConfig extends Config {
       jmxConfig = new JmxConfiguration(false, null, null, null);
     }
      maxWarmingSearchers = getInt("query/maxWarmingSearchers",Integer.MAX_VALUE);
+     autowarmThreads = getInt("query/autowarmThreads",1);
 
      loadPluginInfo(SolrRequestHandler.class,"requestHandler",true, true);
      loadPluginInfo(QParserPlugin.class,"queryParser",true, true);
@@ -221,7 +224,9 @@ public class SolrConfig extends Config {
     return new UpdateHandlerInfo(get("updateHandler/@class",null),
             getInt("updateHandler/autoCommit/maxDocs",-1),
             getInt("updateHandler/autoCommit/maxTime",-1),
-            getInt("updateHandler/commitIntervalLowerBound",-1));
+            getInt("updateHandler/commitIntervalLowerBound",-1),
+            getInt("updateHandler/autoSoftCommit/maxDocs",-1),
+            getInt("updateHandler/autoSoftCommit/maxTime",-1));
   }
 
   private void loadPluginInfo(Class clazz, String tag, boolean requireName, boolean requireClass) {
@@ -253,9 +258,11 @@ public class SolrConfig extends Config {
   public final CacheConfig[] userCacheConfigs;
   // SolrIndexSearcher - more...
   public final boolean useFilterForSortedQuery;
+  public final boolean compressedDocSets;
   public final int queryResultWindowSize;
   public final int queryResultMaxDocsCached;
   public final boolean enableLazyFieldLoading;
+  public final boolean cacheResponseDocuments;
   public final boolean reopenReaders;
   // DocSet
   public final float hashSetInverseLoadFactor;
@@ -269,6 +276,8 @@ public class SolrConfig extends Config {
   private Map<String, List<PluginInfo>> pluginStore = new LinkedHashMap<String, List<PluginInfo>>();
 
   public final int maxWarmingSearchers;
+  /** number of threads used to regenerate the entries of each cache while autowarming */
+  public final int autowarmThreads;
   public final boolean unlockOnStartup;
   public final boolean useColdSearcher;
   public final Version luceneMatchVersion;
@@ -426,6 +435,7 @@ public class SolrConfig extends Config {
   public static class UpdateHandlerInfo{
     public final String className;
     public final int autoCommmitMaxDocs,autoCommmitMaxTime,commitIntervalLowerBound;
+    public final int autoSoftCommitMaxDocs,autoSoftCommitMaxTime;
 
     /**
      * @param className
@@ -434,10 +444,25 @@ public class SolrConfig extends Config {
      * @param commitIntervalLowerBound set -1 as default
      */
     public UpdateHandlerInfo(String className, int autoCommmitMaxDocs, int autoCommmitMaxTime, int commitIntervalLowerBound) {
+      this(className, autoCommmitMaxDocs, autoCommmitMaxTime, commitIntervalLowerBound, -1, -1);
+    }
+
+    /**
+     * @param className
+     * @param autoCommmitMaxDocs set -1 as default
+     * @param autoCommmitMaxTime set -1 as default
+     * @param commitIntervalLowerBound set -1 as default
+     * @param autoSoftCommitMaxDocs set -1 as default
+     * @param autoSoftCommitMaxTime set -1 as default
+     */
+    public UpdateHandlerInfo(String className, int autoCommmitMaxDocs, int autoCommmitMaxTime, int commitIntervalLowerBound,
+                             int autoSoftCommitMaxDocs, int autoSoftCommitMaxTime) {
       this.className = className;
       this.autoCommmitMaxDocs = autoCommmitMaxDocs;
       this.autoCommmitMaxTime = autoCommmitMaxTime;
       this.commitIntervalLowerBound = commitIntervalLowerBound;
+      this.autoSoftCommitMaxDocs = autoSoftCommitMaxDocs;
+      this.autoSoftCommitMaxTime = autoSoftCommitMaxTime;
     } 
   }
 
@@ -21,6 +21,7 @@ import org.apache.lucene.index.IndexDeletionPolicy;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.SolrException.ErrorCode;
@@ -48,6 +49,7 @@ import org.apache.solr.response.XMLResponseWriter;
 import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.search.QParserPlugin;
 import org.apache.solr.search.SolrFieldCacheMBean;
+import org.apache.solr.search.SolrIndexReader;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.search.ValueSourceParser;
 import org.apache.solr.update.DirectUpdateHandler2;
@@ -157,6 +159,23 @@ public final class SolrCore implements SolrInfoMBean {
   public SolrConfig getSolrConfig() {
     return solrConfig;
   }
+
+  /**
+   * Gets the executor used to regenerate cache entries in parallel while
+   * autowarming a new searcher, or null if autowarming is single threaded.
+   * @see SolrConfig#autowarmThreads
+   */
+  public ExecutorService getAutowarmExecutor() {
+    return autowarmExecutor;
+  }
+
+  /**
+   * Gets the per-segment un-inverted fields shared by the searchers of this
+   * core.  A segment's entries are evicted once no open searcher uses it.
+   */
+  public SegmentUnInvertedFieldCache getSegmentFieldValueCache() {
+    return segmentFieldValueCache;
+  }
   
   /**
    * Gets the schema resource name used by this core instance.
@@ -533,12 +552,16 @@ public final class SolrCore implements SolrInfoMBean {
     }
 
     infoRegistry.put("fieldCache", new SolrFieldCacheMBean());
+    infoRegistry.put("segmentFieldValueCache", segmentFieldValueCache);
 
     this.schema = schema;
     this.dataDir = dataDir;
     this.solrConfig = config;
     this.startTime = System.currentTimeMillis();
     this.maxWarmingSearchers = config.maxWarmingSearchers;
+    if (config.autowarmThreads > 1) {
+      autowarmExecutor = Executors.newFixedThreadPool(config.autowarmThreads);
+    }
 
     booleanQueryMaxClauseCount();
   
@@ -704,6 +727,14 @@ public final class SolrCore implements SolrInfoMBean {
     } catch (Exception e) {
       SolrException.log(log,e);
     }
+    if (autowarmExecutor != null) {
+      try {
+        autowarmExecutor.shutdown();
+      } catch (Exception e) {
+        SolrException.log(log,e);
+      }
+    }
+    segmentFieldValueCache.close();
     if( closeHooks != null ) {
        for( CloseHook hook : closeHooks ) {
          hook.close( this );
@@ -895,6 +926,8 @@ public final class SolrCore implements SolrInfoMBean {
   private final LinkedList<RefCounted<SolrIndexSearcher>> _searchers = new LinkedList<RefCounted<SolrIndexSearcher>>();
 
   final ExecutorService searcherExecutor = Executors.newSingleThreadExecutor();
+  private ExecutorService autowarmExecutor;  // null unless autowarmThreads > 1
+  private final SegmentUnInvertedFieldCache segmentFieldValueCache = new SegmentUnInvertedFieldCache();
   private int onDeckSearchers;  // number of searchers preparing
   private Object searcherLock = new Object();  // the sync object for the searcher
   private final int maxWarmingSearchers;  // max number of on-deck searchers allowed
@@ -978,6 +1011,20 @@ public final class SolrCore implements SolrInfoMBean {
    * @throws IOException
    */
   public RefCounted<SolrIndexSearcher> getSearcher(boolean forceNew, boolean returnSearcher, final Future[] waitSearcher) throws IOException {
+    return getSearcher(forceNew, returnSearcher, waitSearcher, null);
+  }
+
+  /**
+   * Like {@link #getSearcher(boolean, boolean, Future[])}, but if a new searcher is opened
+   * and <tt>nrtWriter</tt> is not null, the searcher uses the near real-time reader of
+   * that writer ({@link IndexWriter#getReader()}), which sees all changes made so far
+   * through the writer, committed or not.
+   *
+   * @param nrtWriter          if non-null, the IndexWriter to open the new searcher's reader from.
+   * @throws IOException
+   */
+  public RefCounted<SolrIndexSearcher> getSearcher(boolean forceNew, boolean returnSearcher, final Future[] waitSearcher,
+                                                   IndexWriter nrtWriter) throws IOException {
     // it may take some time to open an index.... we may need to make
     // sure that two threads aren't trying to open one at the same time
     // if it isn't necessary.
@@ -1042,15 +1089,25 @@ public final class SolrCore implements SolrInfoMBean {
       File indexDirFile = new File(getIndexDir()).getCanonicalFile();
       File newIndexDirFile = new File(newIndexDir).getCanonicalFile();
       
-      if (newestSearcher != null && solrConfig.reopenReaders
+      IndexReader newReader = null;
+      if (nrtWriter != null) {
+        newReader = nrtWriter.getReader();
+      } else if (newestSearcher != null && solrConfig.reopenReaders
           && indexDirFile.equals(newIndexDirFile)) {
         IndexReader currentReader = newestSearcher.get().getReader();
-        IndexReader newReader = currentReader.reopen();
-
-        if (newReader == currentReader) {
-          currentReader.incRef();
+        try {
+          newReader = currentReader.reopen();
+          if (newReader == currentReader) {
+            currentReader.incRef();
+          }
+        } catch (AlreadyClosedException e) {
+          // the current reader came from an IndexWriter that has been closed
+          // since (by a commit after a soft commit), open from the directory.
+          log.info(logid+"Reader was opened from a closed IndexWriter, opening a new one");
         }
+      }
 
+      if (newReader != null) {
         tmp = new SolrIndexSearcher(this, schema, "main", newReader, true, true);
       } else {
         IndexReader reader = getIndexReaderFactory().newReader(getDirectoryFactory().open(newIndexDir), true);
@@ -1229,6 +1286,19 @@ public final class SolrCore implements SolrInfoMBean {
   }
 
 
+  /** Evicts the per-segment caches of the segments that no open searcher uses. */
+  private void evictClosedSegments() {
+    Set<Object> coreKeys = new HashSet<Object>();
+    synchronized (searcherLock) {
+      for (RefCounted<SolrIndexSearcher> holder : _searchers) {
+        for (SolrIndexReader leaf : holder.get().getReader().getLeafReaders()) {
+          coreKeys.add(leaf.getCoreCacheKey());
+        }
+      }
+    }
+    segmentFieldValueCache.retainSegments(coreKeys);
+  }
+
   private RefCounted<SolrIndexSearcher> newHolder(SolrIndexSearcher newSearcher) {
     RefCounted<SolrIndexSearcher> holder = new RefCounted<SolrIndexSearcher>(newSearcher) {
       public void close() {
@@ -1243,6 +1313,7 @@ public final class SolrCore implements SolrInfoMBean {
             _searchers.remove(this);
           }
           resource.close();
+          evictClosedSegments();
         } catch (IOException e) {
           log.error("Error closing searcher:" + SolrException.toStr(e));
         }
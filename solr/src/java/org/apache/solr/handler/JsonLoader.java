@@ -26,6 +26,7 @@ import org.apache.noggit.JSONParser;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.SolrInputField;
 import org.apache.solr.common.util.ContentStream;
+import org.apache.solr.common.params.UpdateParams;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
 import org.apache.solr.update.AddUpdateCommand;
@@ -191,6 +192,9 @@ class JsonLoader extends ContentStreamLoader {
           else if( XmlUpdateRequestHandler.WAIT_FLUSH.equals( key ) ) {
             cmd.waitFlush = js.getBoolean();
           }
+          else if( UpdateParams.SOFT_COMMIT.equals( key ) ) {
+            cmd.softCommit = js.getBoolean();
+          }
           else {
             throw new IOException( "Unknown key: "+key+" ["+js.getPosition()+"]" );
           }
@@ -156,6 +156,8 @@ class XMLLoader extends ContentStreamLoader {
                 cmd.maxOptimizeSegments = Integer.parseInt(attrVal);
               } else if (UpdateParams.EXPUNGE_DELETES.equals(attrName)) {
                 cmd.expungeDeletes = StrUtils.parseBoolean(attrVal);
+              } else if (UpdateParams.SOFT_COMMIT.equals(attrName)) {
+                cmd.softCommit = StrUtils.parseBoolean(attrVal);
               } else {
                 XmlUpdateRequestHandler.log.warn("unexpected attribute commit/@" + attrName);
               }
@@ -0,0 +1,331 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.request;
+
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.core.SolrCore;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The un-inverted form of a multi-valued field for a single segment.  See
+ * {@link UnInvertedField} for a description of the encoding; term numbers here
+ * are local to the segment and are mapped to global term numbers by
+ * {@link UnInvertedField} at count time.
+ *
+ * <p>Instances only depend on the segment's core (deletions are ignored while
+ * un-inverting), so the core's {@link SegmentUnInvertedFieldCache} caches them
+ * by {@link IndexReader#getCoreCacheKey()} for every searcher that shares the segment.
+ */
+class SegmentUnInvertedField {
+  static final int TNUM_OFFSET=2;
+
+  final String field;
+  final int maxDoc;
+  int numTermsInField;
+  int termsInverted;  // number of unique terms that were un-inverted
+  long termInstances; // total number of references to term numbers
+  long memsz;
+  int total_time;  // total time to uninvert the segment
+  int phase1_time;  // time for phase1 of the uninvert process
+
+  int[] index;
+  byte[][] tnums = new byte[256][];
+  int[] maxTermCounts;
+
+  /** Sorted term numbers of the terms that were too frequent to un-invert */
+  int[] bigTerms;
+  int numBigTerms;
+
+  SegmentUnInvertedField(String field, String prefix, IndexReader reader) throws IOException {
+    this.field = field;
+    this.maxDoc = reader.maxDoc();
+    uninvert(reader, prefix);
+  }
+
+  /** Returns true if the given segment term number was not un-inverted */
+  boolean isBigTerm(int termNum) {
+    return Arrays.binarySearch(bigTerms, 0, numBigTerms, termNum) >= 0;
+  }
+
+  public long memSize() {
+    // can cache the mem size since it shouldn't change
+    if (memsz!=0) return memsz;
+    long sz = 8*8 + 32; // local fields
+    sz += bigTerms.length * 4;
+    if (index != null) sz += index.length * 4;
+    if (tnums!=null) {
+      for (byte[] arr : tnums)
+        if (arr != null) sz += arr.length;
+    }
+    if (maxTermCounts != null)
+      sz += maxTermCounts.length * 4;
+    memsz = sz;
+    return sz;
+  }
+
+  private void uninvert(IndexReader reader, String prefix) throws IOException {
+    long startTime = System.currentTimeMillis();
+
+    int[] index = new int[maxDoc];       // immediate term numbers, or the index into the byte[] representing the last number
+    this.index = index;
+    final int[] lastTerm = new int[maxDoc];    // last term we saw for this document
+    final byte[][] bytes = new byte[maxDoc][]; // list of term numbers for the doc (delta encoded vInts)
+    maxTermCounts = new int[1024];
+    bigTerms = new int[8];
+
+    NumberedTermsEnum te = new NumberedTermsEnum(reader, new TermIndex(field, prefix),
+                                                 prefix==null ? new BytesRef() : new BytesRef(prefix), 0);
+
+    // threshold, over which we use set intersections instead of counting
+    // to (1) save memory, and (2) speed up faceting.
+    // Add 2 for testing purposes so that there will always be some terms under
+    // the threshold even when the index is very small.
+    int threshold = maxDoc / 20 + 2;
+
+    // we need a minimum of 9 bytes, but round up to 12 since the space would
+    // be wasted with most allocators anyway.
+    byte[] tempArr = new byte[12];
+
+    //
+    // enumerate all terms, and build an intermediate form of the un-inverted field.
+    //
+    // During this intermediate form, every document has a (potential) byte[]
+    // and the int[maxDoc()] array either contains the termNumber list directly
+    // or the *end* offset of the termNumber list in it's byte array (for faster
+    // appending and faster creation of the final form).
+    //
+    // Deleted documents are un-inverted too, so that this segment can be
+    // shared by later searchers that only differ in their deletions.
+    //
+
+    DocsEnum docsEnum = null;
+
+    for (;;) {
+      BytesRef t = te.term();
+      if (t==null) break;
+
+      int termNum = te.getTermNumber();
+
+      if (termNum >= maxTermCounts.length) {
+        // resize by doubling - for very large number of unique terms, expanding
+        // by 4K and resultant GC will dominate uninvert times.  Resize at end if material
+        int[] newMaxTermCounts = new int[maxTermCounts.length*2];
+        System.arraycopy(maxTermCounts, 0, newMaxTermCounts, 0, termNum);
+        maxTermCounts = newMaxTermCounts;
+      }
+
+      int df = te.docFreq();
+      if (df >= threshold) {
+        // counted by the top-level field with set intersections
+        if (numBigTerms == bigTerms.length) {
+          int[] newBigTerms = new int[bigTerms.length*2];
+          System.arraycopy(bigTerms, 0, newBigTerms, 0, numBigTerms);
+          bigTerms = newBigTerms;
+        }
+        bigTerms[numBigTerms++] = termNum;
+        te.next();
+        continue;
+      }
+
+      termsInverted++;
+
+      docsEnum = te.tenum.docs(null, docsEnum);
+
+      DocsEnum.BulkReadResult bulkResult = docsEnum.getBulkResult();
+
+      for(;;) {
+        int n = docsEnum.read();
+        if (n <= 0) break;
+
+        maxTermCounts[termNum] += n;
+
+        for (int i=0; i<n; i++) {
+          termInstances++;
+          int doc = bulkResult.docs.ints[i];
+          // add 2 to the term number to make room for special reserved values:
+          // 0 (end term) and 1 (index into byte array follows)
+          int delta = termNum - lastTerm[doc] + TNUM_OFFSET;
+          lastTerm[doc] = termNum;
+          int val = index[doc];
+
+          if ((val & 0xff)==1) {
+            // index into byte array (actually the end of
+            // the doc-specific byte[] when building)
+            int pos = val >>> 8;
+            int ilen = UnInvertedField.vIntSize(delta);
+            byte[] arr = bytes[doc];
+            int newend = pos+ilen;
+            if (newend > arr.length) {
+              // We avoid a doubling strategy to lower memory usage.
+              // this faceting method isn't for docs with many terms.
+              int newLen = (newend + 3) & 0xfffffffc;  // 4 byte alignment
+              byte[] newarr = new byte[newLen];
+              System.arraycopy(arr, 0, newarr, 0, pos);
+              arr = newarr;
+              bytes[doc] = newarr;
+            }
+            pos = UnInvertedField.writeInt(delta, arr, pos);
+            index[doc] = (pos<<8) | 1;  // update pointer to end index in byte[]
+          } else {
+            // OK, this int has data in it... find the end (a zero starting byte - not
+            // part of another number, hence not following a byte with the high bit set).
+            int ipos;
+            if (val==0) {
+              ipos=0;
+            } else if ((val & 0x0000ff80)==0) {
+              ipos=1;
+            } else if ((val & 0x00ff8000)==0) {
+              ipos=2;
+            } else if ((val & 0xff800000)==0) {
+              ipos=3;
+            } else {
+              ipos=4;
+            }
+
+            int endPos = UnInvertedField.writeInt(delta, tempArr, ipos);
+            if (endPos <= 4) {
+              // value will fit in the integer... move bytes back
+              for (int j=ipos; j<endPos; j++) {
+                val |= (tempArr[j] & 0xff) << (j<<3);
+              }
+              index[doc] = val;
+            } else {
+              // value won't fit... move integer into byte[]
+              for (int j=0; j<ipos; j++) {
+                tempArr[j] = (byte)val;
+                val >>>=8;
+              }
+              // point at the end index in the byte[]
+              index[doc] = (endPos<<8) | 1;
+              bytes[doc] = tempArr;
+              tempArr = new byte[12];
+            }
+
+          }
+
+        }
+
+      }
+
+      te.next();
+    }
+
+    numTermsInField = te.getTermNumber();
+    te.close();
+
+    // free space if outrageously wasteful (tradeoff memory/cpu)
+
+    if ((maxTermCounts.length - numTermsInField) > 1024) { // too much waste!
+      int[] newMaxTermCounts = new int[numTermsInField];
+      System.arraycopy(maxTermCounts, 0, newMaxTermCounts, 0, numTermsInField);
+      maxTermCounts = newMaxTermCounts;
+    }
+
+    long midPoint = System.currentTimeMillis();
+
+    if (termInstances == 0) {
+      // we didn't invert anything
+      // lower memory consumption.
+      index = this.index = null;
+      tnums = null;
+    } else {
+
+      //
+      // transform intermediate form into the final form, building a single byte[]
+      // at a time, and releasing the intermediate byte[]s as we go to avoid
+      // increasing the memory footprint.
+      //
+      for (int pass = 0; pass<256; pass++) {
+        byte[] target = tnums[pass];
+        int pos=0;  // end in target;
+        if (target != null) {
+          pos = target.length;
+        } else {
+          target = new byte[4096];
+        }
+
+        // loop over documents, 0x00ppxxxx, 0x01ppxxxx, 0x02ppxxxx
+        // where pp is the pass (which array we are building), and xx is all values.
+        // each pass shares the same byte[] for termNumber lists.
+        for (int docbase = pass<<16; docbase<maxDoc; docbase+=(1<<24)) {
+          int lim = Math.min(docbase + (1<<16), maxDoc);
+          for (int doc=docbase; doc<lim; doc++) {
+            int val = index[doc];
+            if ((val&0xff) == 1) {
+              int len = val >>> 8;
+              index[doc] = (pos<<8)|1; // change index to point to start of array
+              if ((pos & 0xff000000) != 0) {
+                // we only have 24 bits for the array index
+                throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Too many values for UnInvertedField faceting on field "+field);
+              }
+              byte[] arr = bytes[doc];
+              bytes[doc] = null;        // IMPORTANT: allow GC to avoid OOM
+              if (target.length <= pos + len) {
+                int newlen = target.length;
+                while (newlen <= pos + len) newlen<<=1;  // doubling strategy
+                byte[] newtarget = new byte[newlen];
+                System.arraycopy(target, 0, newtarget, 0, pos);
+                target = newtarget;
+              }
+              System.arraycopy(arr, 0, target, pos, len);
+              pos += len + 1;  // skip single byte at end and leave it 0 for terminator
+            }
+          }
+        }
+
+        // shrink array
+        if (pos < target.length) {
+          byte[] newtarget = new byte[pos];
+          System.arraycopy(target, 0, newtarget, 0, pos);
+          target = newtarget;
+          if (target.length > (1<<24)*.9) {
+            SolrCore.log.warn("Approaching too many values for UnInvertedField faceting on field '"+field+"' : bucket size=" + target.length);
+          }
+        }
+
+        tnums[pass] = target;
+
+        if ((pass << 16) > maxDoc)
+          break;
+      }
+    }
+
+    long endTime = System.currentTimeMillis();
+
+    total_time = (int)(endTime-startTime);
+    phase1_time = (int)(midPoint-startTime);
+  }
+
+  public String toString() {
+    return "{field=" + field
+            + ",maxDoc=" + maxDoc
+            + ",memSize="+memSize()
+            + ",time="+total_time
+            + ",phase1="+phase1_time
+            + ",nTerms="+numTermsInField
+            + ",bigTerms="+numBigTerms
+            + ",termInstances="+termInstances
+            + "}";
+  }
+
+}
@@ -0,0 +1,210 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.request;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.core.SolrInfoMBean;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The per-segment un-inverted fields of a core (see {@link SegmentUnInvertedField}),
+ * shared by all searchers of the core that see the same segments.
+ *
+ * <p>Entries are keyed by the segment's {@link IndexReader#getCoreCacheKey()}, and
+ * are evicted by {@link #retainSegments} once no open searcher uses their segment
+ * any more, and by {@link #close} when the core is closed.
+ */
+public class SegmentUnInvertedFieldCache implements SolrInfoMBean {
+
+  /** Marks an entry that is being un-inverted by another thread */
+  private static final class CreationPlaceholder {
+    SegmentUnInvertedField value;
+  }
+
+  /** core cache key -> (field -> CreationPlaceholder) */
+  private final Map<Object,Map<String,CreationPlaceholder>> cache =
+      new HashMap<Object,Map<String,CreationPlaceholder>>();
+
+  // guarded by cache
+  private long lookups;
+  private long hits;
+  private long inserts;
+  private long evictions;
+
+  private static String cacheKey(String field, String prefix) {
+    return prefix == null ? field : field + '\u0000' + prefix;
+  }
+
+  /** Returns the un-inverted field for the given segment if it was
+   *  already created, else null. */
+  SegmentUnInvertedField getIfPresent(IndexReader reader, String field, String prefix) {
+    CreationPlaceholder placeholder;
+    synchronized (cache) {
+      lookups++;
+      Map<String,CreationPlaceholder> innerCache = cache.get(reader.getCoreCacheKey());
+      if (innerCache == null) {
+        return null;
+      }
+      placeholder = innerCache.get(cacheKey(field, prefix));
+    }
+    if (placeholder == null) {
+      return null;
+    }
+    synchronized (placeholder) {
+      if (placeholder.value != null) {
+        synchronized (cache) {
+          hits++;
+        }
+      }
+      return placeholder.value;
+    }
+  }
+
+  /** Returns the un-inverted field for the given segment, creating it
+   *  if no other reader sharing the segment's core has done so yet. */
+  SegmentUnInvertedField get(IndexReader reader, String field, String prefix) throws IOException {
+    final Object readerKey = reader.getCoreCacheKey();
+    final String key = cacheKey(field, prefix);
+    CreationPlaceholder placeholder;
+    synchronized (cache) {
+      Map<String,CreationPlaceholder> innerCache = cache.get(readerKey);
+      if (innerCache == null) {
+        innerCache = new HashMap<String,CreationPlaceholder>();
+        cache.put(readerKey, innerCache);
+      }
+      placeholder = innerCache.get(key);
+      if (placeholder == null) {
+        placeholder = new CreationPlaceholder();
+        innerCache.put(key, placeholder);
+      }
+    }
+
+    synchronized (placeholder) {
+      if (placeholder.value == null) {
+        placeholder.value = new SegmentUnInvertedField(field, prefix, reader);
+        synchronized (cache) {
+          inserts++;
+        }
+        SolrCore.log.info("UnInverted multi-valued field segment " + placeholder.value);
+      }
+      return placeholder.value;
+    }
+  }
+
+  /**
+   * Evicts the un-inverted fields of every segment whose core cache key is not in
+   * <code>coreKeys</code>, the keys of the segments of the open searchers.
+   */
+  public void retainSegments(Collection<Object> coreKeys) {
+    synchronized (cache) {
+      for (Iterator<Map.Entry<Object,Map<String,CreationPlaceholder>>> it = cache.entrySet().iterator(); it.hasNext();) {
+        Map.Entry<Object,Map<String,CreationPlaceholder>> entry = it.next();
+        if (!coreKeys.contains(entry.getKey())) {
+          evictions += entry.getValue().size();
+          it.remove();
+        }
+      }
+    }
+  }
+
+  /** Returns the number of un-inverted segment fields. */
+  public int size() {
+    synchronized (cache) {
+      int size = 0;
+      for (Map<String,CreationPlaceholder> innerCache : cache.values()) {
+        size += innerCache.size();
+      }
+      return size;
+    }
+  }
+
+  /** Evicts everything; called when the core is closed. */
+  public void close() {
+    synchronized (cache) {
+      evictions += size();
+      cache.clear();
+    }
+  }
+
+
+  //////////////////////// SolrInfoMBeans methods //////////////////////
+
+
+  public String getName() {
+    return SegmentUnInvertedFieldCache.class.getName();
+  }
+
+  public String getVersion() {
+    return SolrCore.version;
+  }
+
+  public String getDescription() {
+    return "Per segment un-inverted multi-valued fields";
+  }
+
+  public Category getCategory() {
+    return Category.CACHE;
+  }
+
+  public String getSourceId() {
+    return "$Id$";
+  }
+
+  public String getSource() {
+    return "$URL$";
+  }
+
+  public URL[] getDocs() {
+    return null;
+  }
+
+  // returns a ratio, not a percent.
+  private static String calcHitRatio(long lookups, long hits) {
+    if (lookups==0) return "0.00";
+    if (lookups==hits) return "1.00";
+    int hundredths = (int)(hits*100/lookups);   // rounded down
+    if (hundredths < 10) return "0.0" + hundredths;
+    return "0." + hundredths;
+  }
+
+  public NamedList getStatistics() {
+    NamedList lst = new SimpleOrderedMap();
+    synchronized (cache) {
+      lst.add("lookups", lookups);
+      lst.add("hits", hits);
+      lst.add("hitratio", calcHitRatio(lookups,hits));
+      lst.add("inserts", inserts);
+      lst.add("evictions", evictions);
+      lst.add("size", size());
+    }
+    return lst;
+  }
+
+  public String toString() {
+    return "segmentFieldValueCache" + getStatistics().toString();
+  }
+}
@@ -28,6 +28,7 @@ import org.apache.lucene.index.MultiFields;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TermRangeQuery;
 import org.apache.lucene.util.PagedBytes;
+import org.apache.lucene.util.PriorityQueue;
 import org.apache.noggit.CharArr;
 import org.apache.solr.common.params.FacetParams;
 import org.apache.solr.common.util.NamedList;
@@ -51,9 +52,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.Map;
 import java.util.Comparator;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -85,9 +91,15 @@ import java.util.concurrent.atomic.AtomicLong;
  *   index to find the closest term and iterate until the desired number is hit (very
  *   much like Lucene's own internal term index).
  *
+ *   The structures above are built per segment (see SegmentUnInvertedField), in
+ *   parallel, and are shared by all searchers that see the same segment, so a new
+ *   searcher only has to un-invert the segments that changed.  Segment term numbers
+ *   are mapped to global term numbers (the numbering of the top-level terms) while
+ *   counting, and a term that is big in any segment is counted by set intersection.
+ *
  */
 public class UnInvertedField {
-  private static int TNUM_OFFSET=2;
+  private static int TNUM_OFFSET=SegmentUnInvertedField.TNUM_OFFSET;
 
   static class TopTerm {
     BytesRef term;
@@ -107,11 +119,16 @@ public class UnInvertedField {
   final TermIndex ti;
   long memsz;
   int total_time;  // total time to uninvert the field
-  int phase1_time;  // time for phase1 of the uninvert process
+  int phase1_time;  // time for phase1 of the uninvert process (un-inverting the segments)
+  int segmentsReused; // number of segments that were already un-inverted
   final AtomicLong use = new AtomicLong(); // number of uses
 
-  int[] index;
-  byte[][] tnums = new byte[256][];
+  SegmentUnInvertedField[] segments;
+  int[] segmentOffsets;
+  /** per segment: segment term number -> global term number.  Instances
+   * of global big terms are mapped to numTermsInField, an extra slot of the
+   * counts array that is ignored. */
+  int[][] ordMaps;
   int[] maxTermCounts;
   final Map<Integer,TopTerm> bigTerms = new LinkedHashMap<Integer,TopTerm>();
 
@@ -124,10 +141,13 @@ public class UnInvertedField {
     for (TopTerm tt : bigTerms.values()) {
       sz += tt.memSize();
     }
-    if (index != null) sz += index.length * 4;
-    if (tnums!=null) {
-      for (byte[] arr : tnums)
-        if (arr != null) sz += arr.length;
+    // segments are shared with other searchers over the same segments, but
+    // count them here since they are kept alive by this entry.
+    for (SegmentUnInvertedField seg : segments) {
+      sz += seg.memSize();
+    }
+    for (int[] ordMap : ordMaps) {
+      sz += ordMap.length * 4;
     }
     if (maxTermCounts != null)
       sz += maxTermCounts.length * 4;
@@ -192,268 +212,190 @@ public class UnInvertedField {
   private void uninvert(SolrIndexSearcher searcher) throws IOException {
     long startTime = System.currentTimeMillis();
 
-    IndexReader reader = searcher.getReader();
-    int maxDoc = reader.maxDoc();
-
-    int[] index = new int[maxDoc];       // immediate term numbers, or the index into the byte[] representing the last number
-    this.index = index;
-    final int[] lastTerm = new int[maxDoc];    // last term we saw for this document
-    final byte[][] bytes = new byte[maxDoc][]; // list of term numbers for the doc (delta encoded vInts)
-    maxTermCounts = new int[1024];
+    SolrIndexReader topReader = searcher.getReader();
+    final SolrIndexReader[] leaves = topReader.getLeafReaders();
+    segmentOffsets = topReader.getLeafOffsets();
+    segments = getSegments(searcher.getCore() == null ? null : searcher.getCore().getSegmentFieldValueCache(), leaves);
 
-    NumberedTermsEnum te = ti.getEnumerator(reader);
-
-    // threshold, over which we use set intersections instead of counting
-    // to (1) save memory, and (2) speed up faceting.
-    // Add 2 for testing purposes so that there will always be some terms under
-    // the threshold even when the index is very small.
-    int threshold = maxDoc / 20 + 2;
-    // threshold = 2000000000; //////////////////////////////// USE FOR TESTING
-
-    // we need a minimum of 9 bytes, but round up to 12 since the space would
-    // be wasted with most allocators anyway.
-    byte[] tempArr = new byte[12];
+    long midPoint = System.currentTimeMillis();
 
     //
-    // enumerate all terms, and build an intermediate form of the un-inverted field.
+    // Merge the per-segment terms into global term numbers.  Every segment's
+    // terms are a subset of the top-level terms, in the same order, so a
+    // priority queue over the segment enums numbers the terms exactly like a
+    // NumberedTermsEnum over the top-level reader does.  This only visits the
+    // terms, never the postings, so it is cheap compared to un-inverting.
     //
-    // During this intermediate form, every document has a (potential) byte[]
-    // and the int[maxDoc()] array either contains the termNumber list directly
-    // or the *end* offset of the termNumber list in it's byte array (for faster
-    // appending and faster creation of the final form).
-    //
-    // idea... if things are too large while building, we could do a range of docs
-    // at a time (but it would be a fair amount slower to build)
-    // could also do ranges in parallel to take advantage of multiple CPUs
-
-    // OPTIONAL: remap the largest df terms to the lowest 128 (single byte)
-    // values.  This requires going over the field first to find the most
-    // frequent terms ahead of time.
-
-    SolrIndexSearcher.DocsEnumState deState = null;
-
-    for (;;) {
-      BytesRef t = te.term();
-      if (t==null) break;
-
-      int termNum = te.getTermNumber();
+    final String prefix = ti.prefix == null ? null : ti.prefix.utf8ToString();
+    ordMaps = new int[segments.length][];
+    PriorityQueue<SegmentTerms> queue = new PriorityQueue<SegmentTerms>() {
+      {
+        initialize(leaves.length);
+      }
+      @Override
+      protected boolean lessThan(SegmentTerms a, SegmentTerms b) {
+        return a.te.term().compareTo(b.te.term()) < 0;
+      }
+    };
+    for (int i=0; i<segments.length; i++) {
+      ordMaps[i] = new int[segments[i].numTermsInField];
+      NumberedTermsEnum te = new NumberedTermsEnum(leaves[i], new TermIndex(field, prefix),
+                                                   ti.prefix==null ? new BytesRef() : ti.prefix, 0);
+      if (te.term() != null) {
+        queue.add(new SegmentTerms(i, te));
+      }
+    }
 
-      if (termNum >= maxTermCounts.length) {
-        // resize by doubling - for very large number of unique terms, expanding
-        // by 4K and resultant GC will dominate uninvert times.  Resize at end if material
-        int[] newMaxTermCounts = new int[maxTermCounts.length*2];
-        System.arraycopy(maxTermCounts, 0, newMaxTermCounts, 0, termNum);
-        maxTermCounts = newMaxTermCounts;
+    ArrayList<BytesRef> indexedTerms = new ArrayList<BytesRef>();
+    PagedBytes indexedBytes = new PagedBytes(15);
+    OpenBitSet isBigTerm = new OpenBitSet();
+    BytesRef current = new BytesRef();
+    int termNum = 0;
+    while (queue.size() > 0) {
+      current.copy(queue.top().te.term());
+      if ((termNum & TermIndex.intervalMask) == 0) {
+        BytesRef out = new BytesRef();
+        indexedBytes.copy(current, out);
+        indexedTerms.add(out);
+        ti.sizeOfStrings += current.length;
       }
+      boolean big = false;
+      do {
+        SegmentTerms top = queue.top();
+        int segTermNum = top.te.getTermNumber();
+        ordMaps[top.segment][segTermNum] = termNum;
+        if (!big && segments[top.segment].isBigTerm(segTermNum)) {
+          big = true;
+        }
+        if (top.te.next() == null) {
+          queue.pop();
+        } else {
+          queue.updateTop();
+        }
+      } while (queue.size() > 0 && queue.top().te.term().equals(current));
 
-      int df = te.docFreq();
-      if (df >= threshold) {
+      if (big) {
+        isBigTerm.set(termNum);
         TopTerm topTerm = new TopTerm();
-        topTerm.term = new BytesRef(t);
+        topTerm.term = new BytesRef(current);
         topTerm.termNum = termNum;
         bigTerms.put(topTerm.termNum, topTerm);
-
-        if (deState == null) {
-          deState = new SolrIndexSearcher.DocsEnumState();
-          deState.termsEnum = te.tenum;
-          deState.reuse = te.docsEnum;
-        }
-        DocSet set = searcher.getDocSet(new TermQuery(new Term(ti.field, topTerm.term)), deState);
-        te.docsEnum = deState.reuse;
-
-        maxTermCounts[termNum] = set.size();
-
-        te.next();
-        continue;
       }
-
-      termsInverted++;
-
-      DocsEnum docsEnum = te.getDocsEnum();
-
-      DocsEnum.BulkReadResult bulkResult = docsEnum.getBulkResult();
-
-      for(;;) {
-        int n = docsEnum.read();
-        if (n <= 0) break;
-
-        maxTermCounts[termNum] += n;
-
-        for (int i=0; i<n; i++) {
-          termInstances++;
-          int doc = bulkResult.docs.ints[i];
-          // add 2 to the term number to make room for special reserved values:
-          // 0 (end term) and 1 (index into byte array follows)
-          int delta = termNum - lastTerm[doc] + TNUM_OFFSET;
-          lastTerm[doc] = termNum;
-          int val = index[doc];
-
-          if ((val & 0xff)==1) {
-            // index into byte array (actually the end of
-            // the doc-specific byte[] when building)
-            int pos = val >>> 8;
-            int ilen = vIntSize(delta);
-            byte[] arr = bytes[doc];
-            int newend = pos+ilen;
-            if (newend > arr.length) {
-              // We avoid a doubling strategy to lower memory usage.
-              // this faceting method isn't for docs with many terms.
-              // In hotspot, objects have 2 words of overhead, then fields, rounded up to a 64-bit boundary.
-              // TODO: figure out what array lengths we can round up to w/o actually using more memory
-              // (how much space does a byte[] take up?  Is data preceded by a 32 bit length only?
-              // It should be safe to round up to the nearest 32 bits in any case.
-              int newLen = (newend + 3) & 0xfffffffc;  // 4 byte alignment
-              byte[] newarr = new byte[newLen];
-              System.arraycopy(arr, 0, newarr, 0, pos);
-              arr = newarr;
-              bytes[doc] = newarr;
-            }
-            pos = writeInt(delta, arr, pos);
-            index[doc] = (pos<<8) | 1;  // update pointer to end index in byte[]
-          } else {
-            // OK, this int has data in it... find the end (a zero starting byte - not
-            // part of another number, hence not following a byte with the high bit set).
-            int ipos;
-            if (val==0) {
-              ipos=0;
-            } else if ((val & 0x0000ff80)==0) {
-              ipos=1;
-            } else if ((val & 0x00ff8000)==0) {
-              ipos=2;
-            } else if ((val & 0xff800000)==0) {
-              ipos=3;
-            } else {
-              ipos=4;
-            }
-
-            int endPos = writeInt(delta, tempArr, ipos);
-            if (endPos <= 4) {
-              // value will fit in the integer... move bytes back
-              for (int j=ipos; j<endPos; j++) {
-                val |= (tempArr[j] & 0xff) << (j<<3);
-              }
-              index[doc] = val;
-            } else {
-              // value won't fit... move integer into byte[]
-              for (int j=0; j<ipos; j++) {
-                tempArr[j] = (byte)val;
-                val >>>=8;
-              }
-              // point at the end index in the byte[]
-              index[doc] = (endPos<<8) | 1;
-              bytes[doc] = tempArr;
-              tempArr = new byte[12];
-            }
-
-          }
-
+      termNum++;
+    }
+    numTermsInField = termNum;
+    ti.nTerms = numTermsInField;
+    ti.index = indexedTerms.toArray(new BytesRef[indexedTerms.size()]);
+
+    maxTermCounts = new int[numTermsInField];
+    for (int i=0; i<segments.length; i++) {
+      SegmentUnInvertedField seg = segments[i];
+      int[] ordMap = ordMaps[i];
+      termsInverted += seg.termsInverted;
+      termInstances += seg.termInstances;
+      for (int segTermNum=0; segTermNum<ordMap.length; segTermNum++) {
+        int globalTermNum = ordMap[segTermNum];
+        if (isBigTerm.get(globalTermNum)) {
+          // a big term in some other segment: don't count it twice
+          ordMap[segTermNum] = numTermsInField;
+        } else {
+          maxTermCounts[globalTermNum] += seg.maxTermCounts[segTermNum];
         }
-
       }
-
-      te.next();
     }
 
-    numTermsInField = te.getTermNumber();
-    te.close();
+    for (TopTerm tt : bigTerms.values()) {
+      DocSet set = searcher.getDocSet(new TermQuery(new Term(ti.field, tt.term)));
+      maxTermCounts[tt.termNum] = set.size();
+    }
 
-    // free space if outrageously wasteful (tradeoff memory/cpu) 
+    long endTime = System.currentTimeMillis();
 
-    if ((maxTermCounts.length - numTermsInField) > 1024) { // too much waste!
-      int[] newMaxTermCounts = new int[numTermsInField];
-      System.arraycopy(maxTermCounts, 0, newMaxTermCounts, 0, numTermsInField);
-      maxTermCounts = newMaxTermCounts;
-   }
+    total_time = (int)(endTime-startTime);
+    phase1_time = (int)(midPoint-startTime);
 
-    long midPoint = System.currentTimeMillis();
+    SolrCore.log.info("UnInverted multi-valued field " + toString());
+  }
 
-    if (termInstances == 0) {
-      // we didn't invert anything
-      // lower memory consumption.
-      index = this.index = null;
-      tnums = null;
-    } else {
+  private static final class SegmentTerms {
+    final int segment;
+    final NumberedTermsEnum te;
 
-      //
-      // transform intermediate form into the final form, building a single byte[]
-      // at a time, and releasing the intermediate byte[]s as we go to avoid
-      // increasing the memory footprint.
-      //
-      for (int pass = 0; pass<256; pass++) {
-        byte[] target = tnums[pass];
-        int pos=0;  // end in target;
-        if (target != null) {
-          pos = target.length;
-        } else {
-          target = new byte[4096];
-        }
+    SegmentTerms(int segment, NumberedTermsEnum te) {
+      this.segment = segment;
+      this.te = te;
+    }
+  }
 
-        // loop over documents, 0x00ppxxxx, 0x01ppxxxx, 0x02ppxxxx
-        // where pp is the pass (which array we are building), and xx is all values.
-        // each pass shares the same byte[] for termNumber lists.
-        for (int docbase = pass<<16; docbase<maxDoc; docbase+=(1<<24)) {
-          int lim = Math.min(docbase + (1<<16), maxDoc);
-          for (int doc=docbase; doc<lim; doc++) {
-            int val = index[doc];
-            if ((val&0xff) == 1) {
-              int len = val >>> 8;
-              index[doc] = (pos<<8)|1; // change index to point to start of array
-              if ((pos & 0xff000000) != 0) {
-                // we only have 24 bits for the array index
-                throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Too many values for UnInvertedField faceting on field "+field);
-              }
-              byte[] arr = bytes[doc];
-              bytes[doc] = null;        // IMPORTANT: allow GC to avoid OOM
-              if (target.length <= pos + len) {
-                int newlen = target.length;
-                /*** we don't have to worry about the array getting too large
-                 * since the "pos" param will overflow first (only 24 bits available)
-                if ((newlen<<1) <= 0) {
-                  // overflow...
-                  newlen = Integer.MAX_VALUE;
-                  if (newlen <= pos + len) {
-                    throw new SolrException(400,"Too many terms to uninvert field!");
-                  }
-                } else {
-                  while (newlen <= pos + len) newlen<<=1;  // doubling strategy
-                }
-                ****/
-                while (newlen <= pos + len) newlen<<=1;  // doubling strategy                 
-                byte[] newtarget = new byte[newlen];
-                System.arraycopy(target, 0, newtarget, 0, pos);
-                target = newtarget;
-              }
-              System.arraycopy(arr, 0, target, pos, len);
-              pos += len + 1;  // skip single byte at end and leave it 0 for terminator
-            }
-          }
-        }
+  /** Un-inverts the segments that no other searcher has un-inverted yet, in
+   * parallel on the facet executor.  Without a cache every segment is un-inverted. */
+  private SegmentUnInvertedField[] getSegments(final SegmentUnInvertedFieldCache cache, final SolrIndexReader[] leaves) throws IOException {
+    final String prefix = ti.prefix == null ? null : ti.prefix.utf8ToString();
+    final SegmentUnInvertedField[] segs = new SegmentUnInvertedField[leaves.length];
+
+    CompletionService<Object> completionService = new ExecutorCompletionService<Object>(SimpleFacets.facetExecutor);
+    LinkedList<Callable<Object>> pending = new LinkedList<Callable<Object>>();
+    int threads = Runtime.getRuntime().availableProcessors();
+    int numTasks = 0;
+
+    for (int i=0; i<leaves.length; i++) {
+      SegmentUnInvertedField seg = cache == null ? null : cache.getIfPresent(leaves[i], field, prefix);
+      if (seg != null) {
+        segs[i] = seg;
+        segmentsReused++;
+        continue;
+      }
 
-        // shrink array
-        if (pos < target.length) {
-          byte[] newtarget = new byte[pos];
-          System.arraycopy(target, 0, newtarget, 0, pos);
-          target = newtarget;
-          if (target.length > (1<<24)*.9) {
-            SolrCore.log.warn("Approaching too many values for UnInvertedField faceting on field '"+field+"' : bucket size=" + target.length);
-          }
+      final int segIdx = i;
+      Callable<Object> task = new Callable<Object>() {
+        public Object call() throws Exception {
+          segs[segIdx] = cache == null ? new SegmentUnInvertedField(field, prefix, leaves[segIdx])
+              : cache.get(leaves[segIdx], field, prefix);
+          return null;
         }
-        
-        tnums[pass] = target;
+      };
 
-        if ((pass << 16) > maxDoc)
-          break;
+      numTasks++;
+      if (--threads >= 0) {
+        completionService.submit(task);
+      } else {
+        pending.add(task);
       }
     }
 
-    long endTime = System.currentTimeMillis();
-
-    total_time = (int)(endTime-startTime);
-    phase1_time = (int)(midPoint-startTime);
+    for (int i=0; i<numTasks; i++) {
+      try {
+        completionService.take().get();
+        if (!pending.isEmpty()) {
+          completionService.submit(pending.removeFirst());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException)cause;
+        } else if (cause instanceof IOException) {
+          throw (IOException)cause;
+        } else {
+          throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Error un-inverting field: " + field, cause);
+        }
+      }
+    }
 
-    SolrCore.log.info("UnInverted multi-valued field " + toString());
+    return segs;
   }
 
+  /** Returns the index of the segment containing the top-level doc */
+  private int segmentIndex(int doc) {
+    int idx = SolrIndexReader.readerIndex(doc, segmentOffsets);
+    // skip over empty segments, which share their offset with the next one
+    while (idx+1 < segmentOffsets.length && segmentOffsets[idx+1] <= doc) {
+      idx++;
+    }
+    return idx;
+  }
 
 
 
@@ -470,7 +412,6 @@ public class UnInvertedField {
 
     if (baseSize >= mincount) {
 
-      final int[] index = this.index;
       // tricky: we add more more element than we need because we will reuse this array later
       // for ordering term ords before converting to term labels.
       final int[] counts = new int[numTermsInField + 1];
@@ -532,14 +473,31 @@ public class UnInvertedField {
       // Perhaps a different copy of the code would be warranted.
 
       if (termInstances > 0) {
+        int segIdx = -1;
+        int segStart = 0, segEnd = 0;
+        int[] index = null;
+        byte[][] tnums = null;
+        int[] ordMap = null;
+
         DocIterator iter = docs.iterator();
         while (iter.hasNext()) {
           int doc = iter.nextDoc();
-          int code = index[doc];
+          if (doc >= segEnd || doc < segStart) {
+            segIdx = segmentIndex(doc);
+            SegmentUnInvertedField seg = segments[segIdx];
+            segStart = segmentOffsets[segIdx];
+            segEnd = segStart + seg.maxDoc;
+            index = seg.index;
+            tnums = seg.tnums;
+            ordMap = ordMaps[segIdx];
+          }
+          if (index == null) continue;
+          int segDoc = doc - segStart;
+          int code = index[segDoc];
 
           if ((code & 0xff)==1) {
             int pos = code>>>8;
-            int whichArray = (doc >>> 16) & 0xff;
+            int whichArray = (segDoc >>> 16) & 0xff;
             byte[] arr = tnums[whichArray];
             int tnum = 0;
             for(;;) {
@@ -551,7 +509,7 @@ public class UnInvertedField {
               }
               if (delta == 0) break;
               tnum += delta - TNUM_OFFSET;
-              counts[tnum]++;
+              counts[ordMap[tnum]]++;
             }
           } else {
             int tnum = 0;
@@ -561,7 +519,7 @@ public class UnInvertedField {
               if ((code & 0x80)==0) {
                 if (delta==0) break;
                 tnum += delta - TNUM_OFFSET;
-                counts[tnum]++;
+                counts[ordMap[tnum]]++;
                 delta = 0;
               }
               code >>>= 8;
@@ -726,7 +684,6 @@ public class UnInvertedField {
       i++;
     }
 
-    final int[] index = this.index;
     final int[] counts = new int[numTermsInField];//keep track of the number of times we see each word in the field for all the documents in the docset
 
     NumberedTermsEnum te = ti.getEnumerator(searcher.getReader());
@@ -774,14 +731,31 @@ public class UnInvertedField {
 
 
     if (termInstances > 0) {
+      int segIdx = -1;
+      int segStart = 0, segEnd = 0;
+      int[] index = null;
+      byte[][] tnums = null;
+      int[] ordMap = null;
+
       DocIterator iter = docs.iterator();
       while (iter.hasNext()) {
         int doc = iter.nextDoc();
-        int code = index[doc];
+        if (doc >= segEnd || doc < segStart) {
+          segIdx = segmentIndex(doc);
+          SegmentUnInvertedField seg = segments[segIdx];
+          segStart = segmentOffsets[segIdx];
+          segEnd = segStart + seg.maxDoc;
+          index = seg.index;
+          tnums = seg.tnums;
+          ordMap = ordMaps[segIdx];
+        }
+        if (index == null) continue;
+        int segDoc = doc - segStart;
+        int code = index[segDoc];
 
         if ((code & 0xff) == 1) {
           int pos = code >>> 8;
-          int whichArray = (doc >>> 16) & 0xff;
+          int whichArray = (segDoc >>> 16) & 0xff;
           byte[] arr = tnums[whichArray];
           int tnum = 0;
           for (; ;) {
@@ -793,9 +767,11 @@ public class UnInvertedField {
             }
             if (delta == 0) break;
             tnum += delta - TNUM_OFFSET;
-            counts[tnum]++;
+            int globalTnum = ordMap[tnum];
+            if (globalTnum == numTermsInField) continue;  // counted as a big term
+            counts[globalTnum]++;
             for (FieldFacetStats f : finfo) {
-              f.facetTermNum(doc, tnum);
+              f.facetTermNum(doc, globalTnum);
             }
           }
         } else {
@@ -806,9 +782,12 @@ public class UnInvertedField {
             if ((code & 0x80) == 0) {
               if (delta == 0) break;
               tnum += delta - TNUM_OFFSET;
-              counts[tnum]++;
-              for (FieldFacetStats f : finfo) {
-                f.facetTermNum(doc, tnum);
+              int globalTnum = ordMap[tnum];
+              if (globalTnum != numTermsInField) {
+                counts[globalTnum]++;
+                for (FieldFacetStats f : finfo) {
+                  f.facetTermNum(doc, globalTnum);
+                }
               }
               delta = 0;
             }
@@ -887,6 +866,8 @@ public class UnInvertedField {
             + ",time="+total_time
             + ",phase1="+phase1_time
             + ",nTerms="+numTermsInField
+            + ",segments="+segments.length
+            + ",segmentsReused="+segmentsReused
             + ",bigTerms="+bigTerms.size()
             + ",termInstances="+termInstances
             + ",uses="+use.get()
@@ -18,6 +18,7 @@ package org.apache.solr.response;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.util.BytesRef;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.util.NamedList;
@@ -26,6 +27,7 @@ import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.schema.*;
 import org.apache.solr.search.DocIterator;
 import org.apache.solr.search.DocList;
+import org.apache.solr.search.RawFieldsVisitor;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -94,6 +96,11 @@ public class BinaryResponseWriter implements BinaryQueryResponseWriter {
       if (o instanceof Document) {
         return getDoc((Document) o);
       }
+      if (o instanceof RawFieldsVisitor.Utf8Field) {
+        BytesRef utf8 = ((RawFieldsVisitor.Utf8Field) o).getUTF8();
+        codec.writeUTF8Str(utf8.bytes, utf8.offset, utf8.length);
+        return null;
+      }
 
       return o;
     }
@@ -114,12 +121,22 @@ public class BinaryResponseWriter implements BinaryQueryResponseWriter {
       codec.writeTag(JavaBinCodec.ARR, sz);
       if(searcher == null) searcher = solrQueryRequest.getSearcher();
       if(schema == null) schema = solrQueryRequest.getSchema(); 
+      // cached Documents are written as is; the stored fields of the
+      // others are visited, so string values can be written from their
+      // UTF-8 bytes
+      RawFieldsVisitor visitor = new RawFieldsVisitor(returnFields);
       DocIterator iterator = ids.iterator();
       for (int i = 0; i < sz; i++) {
         int id = iterator.nextDoc();
-        Document doc = searcher.doc(id, returnFields);
-
-        SolrDocument sdoc = getDoc(doc);
+        SolrDocument sdoc;
+        Document doc = searcher.cachedDoc(id, returnFields);
+        if (doc != null) {
+          sdoc = getDoc(doc);
+        } else {
+          visitor.reset();
+          searcher.doc(id, visitor);
+          sdoc = getDoc(visitor.getFields());
+        }
 
         if (includeScore && ids.hasScores()) {
           sdoc.addField("score", iterator.score());
@@ -131,15 +148,24 @@ public class BinaryResponseWriter implements BinaryQueryResponseWriter {
 
 
     public SolrDocument getDoc(Document doc) {
+      return getDoc((List<Fieldable>) doc.getFields());
+    }
+
+    // String values collected by a RawFieldsVisitor are kept as is, and
+    // written by resolve() straight from their UTF-8 bytes, if the field
+    // type would convert them to the same String
+    private SolrDocument getDoc(List<Fieldable> fields) {
       SolrDocument solrDoc = new SolrDocument();
-      for (Fieldable f : (List<Fieldable>) doc.getFields()) {
+      for (Fieldable f : fields) {
         String fieldName = f.name();
         if (returnFields != null && !returnFields.contains(fieldName)) continue;
         SchemaField sf = schema.getFieldOrNull(fieldName);
         FieldType ft = null;
         if(sf != null) ft =sf.getType();
         Object val;
-        if (ft == null) {  // handle fields not in the schema
+        if (f instanceof RawFieldsVisitor.Utf8Field && (ft == null || ft.getClass() == StrField.class || ft.getClass() == TextField.class)) {
+          val = f;
+        } else if (ft == null) {  // handle fields not in the schema
           if (f.isBinary()) val = f.getBinaryValue();
           else val = f.stringValue();
         } else {
@@ -19,21 +19,29 @@ package org.apache.solr.response;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.StringHelper;
+import org.apache.lucene.util.VirtualMethod;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
 import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.schema.FieldType;
 import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.StrField;
 import org.apache.solr.schema.TextField;
 import org.apache.solr.search.DocIterator;
 import org.apache.solr.search.DocList;
+import org.apache.solr.search.RawFieldsVisitor;
 import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.ByteUtils;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.CharBuffer;
 import java.util.*;
 
 /**
@@ -63,6 +71,12 @@ public class JSONResponseWriter implements QueryResponseWriter {
 
 
 class JSONWriter extends TextResponseWriter {
+  private static final VirtualMethod<JSONWriter> writeStrMethod =
+    new VirtualMethod<JSONWriter>(JSONWriter.class, "writeStr", String.class, String.class, boolean.class);
+
+  // subclasses that escape strings differently get Strings
+  private final boolean writeUTF8 = !writeStrMethod.isOverriddenAsOf(getClass());
+  private char[] utf16 = new char[0];
 
   // cache the calendar instance in case we are writing many dates...
   private Calendar cal;
@@ -349,7 +363,7 @@ class JSONWriter extends TextResponseWriter {
         }
         indent();
         writeKey(fname,true);
-        sf.write(this, fname, ff);
+        writeFieldValue(sf, fname, ff);
       }
     }
 
@@ -381,7 +395,7 @@ class JSONWriter extends TextResponseWriter {
           writeArraySeparator();
         }
         if (indentArrElems) indent();
-        mvf.sfield.write(this, null, ff);
+        writeFieldValue(mvf.sfield, null, ff);
       }
       writeArrayCloser();
       decLevel();
@@ -395,6 +409,20 @@ class JSONWriter extends TextResponseWriter {
     writeMapCloser();
   }
 
+  // Writes the value of a stored field.  String values read with a
+  // RawFieldsVisitor are written straight from their UTF-8 bytes if the
+  // field type writes them unchanged, and writeStr was not overridden.
+  private void writeFieldValue(SchemaField sf, String name, Fieldable ff) throws IOException {
+    if (ff instanceof RawFieldsVisitor.Utf8Field && writeUTF8) {
+      Class<? extends FieldType> type = sf.getType().getClass();
+      if (type == StrField.class || type == TextField.class) {
+        writeStr(name, ((RawFieldsVisitor.Utf8Field) ff).getUTF8());
+        return;
+      }
+    }
+    sf.write(this, name, ff);
+  }
+
   public void writeSolrDocument(String name, SolrDocument doc, Set<String> returnFields, Map pseudoFields) throws IOException {
     writeMapOpener(-1); // no trivial way to determine map size
     // TODO: could easily figure out size for SolrDocument if needed...
@@ -485,10 +513,22 @@ class JSONWriter extends TextResponseWriter {
     SolrIndexSearcher searcher = req.getSearcher();
     // be defensive... write out the doc even if we don't have the scores like we should
     includeScore = includeScore && ids.hasScores();
+    // cached Documents are written as is; the stored fields of the
+    // others are visited, so string values can be written from their
+    // UTF-8 bytes
+    RawFieldsVisitor visitor = new RawFieldsVisitor(fields);
     DocIterator iterator = ids.iterator();
     for (int i=0; i<sz; i++) {
       int id = iterator.nextDoc();
-      Document doc = searcher.doc(id, fields);
+      List<Fieldable> docFields;
+      Document doc = searcher.cachedDoc(id, fields);
+      if (doc != null) {
+        docFields = doc.getFields();
+      } else {
+        visitor.reset();
+        searcher.doc(id, visitor);
+        docFields = visitor.getFields();
+      }
 
       if (first) {
         first=false;
@@ -496,7 +536,12 @@ class JSONWriter extends TextResponseWriter {
         writeArraySeparator();
       }
       indent();
-      writeDoc(null, doc, fields, (includeScore ? iterator.score() : 0.0f), includeScore);
+      Map other = null;
+      if (includeScore) {
+        other = scoreMap;
+        scoreMap.put("score",iterator.score());
+      }
+      writeDoc(null, docFields, fields, other);
     }
     decLevel();
     writeArrayCloser();
@@ -603,51 +648,67 @@ class JSONWriter extends TextResponseWriter {
     // it might be more efficient to use a stringbuilder or write substrings
     // if writing chars to the stream is slow.
     if (needsEscaping) {
+      writeEscapedStr(val);
+    } else {
+      writer.write('"');
+      writer.write(val);
+      writer.write('"');
+    }
+  }
 
+  /**
+   * Write a string value given as UTF-8 bytes, which are decoded into a
+   * reused buffer instead of a String, and escaped.
+   */
+  public void writeStr(String name, BytesRef utf8) throws IOException {
+    // UnicodeUtil's decoder is incremental, so it can't decode a
+    // slice of a shared buffer
+    if (utf16.length < utf8.length) {
+      utf16 = ArrayUtil.grow(utf16, utf8.length);
+    }
+    final int length = ByteUtils.UTF8toUTF16(utf8.bytes, utf8.offset, utf8.length, utf16, 0);
+    writeEscapedStr(CharBuffer.wrap(utf16, 0, length));
+  }
 
-     /* http://www.ietf.org/internet-drafts/draft-crockford-jsonorg-json-04.txt
-      All Unicode characters may be placed within
-      the quotation marks except for the characters which must be
-      escaped: quotation mark, reverse solidus, and the control
-      characters (U+0000 through U+001F).
-     */
-      writer.write('"');
+  private void writeEscapedStr(CharSequence val) throws IOException {
+   /* http://www.ietf.org/internet-drafts/draft-crockford-jsonorg-json-04.txt
+    All Unicode characters may be placed within
+    the quotation marks except for the characters which must be
+    escaped: quotation mark, reverse solidus, and the control
+    characters (U+0000 through U+001F).
+   */
+    writer.write('"');
 
-      for (int i=0; i<val.length(); i++) {
-        char ch = val.charAt(i);
-        if ((ch > '#' && ch != '\\' && ch !=  '\u2028') || ch==' ') { // fast path
+    for (int i=0; i<val.length(); i++) {
+      char ch = val.charAt(i);
+      if ((ch > '#' && ch != '\\' && ch !=  '\u2028') || ch==' ') { // fast path
+        writer.write(ch);
+        continue;
+      }
+      switch(ch) {
+        case '"':
+        case '\\':
+          writer.write('\\');
           writer.write(ch);
-          continue;
-        }
-        switch(ch) {
-          case '"':
-          case '\\':
-            writer.write('\\');
+          break;
+        case '\r': writer.write('\\'); writer.write('r'); break;
+        case '\n': writer.write('\\'); writer.write('n'); break;
+        case '\t': writer.write('\\'); writer.write('t'); break;
+        case '\b': writer.write('\\'); writer.write('b'); break;
+        case '\f': writer.write('\\'); writer.write('f'); break;
+        case '\u2028': unicodeEscape(writer,ch); break;
+        // case '/':
+        default: {
+          if (ch <= 0x1F) {
+            unicodeEscape(writer,ch);
+          } else {
             writer.write(ch);
-            break;
-          case '\r': writer.write('\\'); writer.write('r'); break;
-          case '\n': writer.write('\\'); writer.write('n'); break;
-          case '\t': writer.write('\\'); writer.write('t'); break;
-          case '\b': writer.write('\\'); writer.write('b'); break;
-          case '\f': writer.write('\\'); writer.write('f'); break;
-          case '\u2028': unicodeEscape(writer,ch); break;
-          // case '/':
-          default: {
-            if (ch <= 0x1F) {
-              unicodeEscape(writer,ch);
-            } else {
-              writer.write(ch);
-            }
           }
         }
       }
-
-      writer.write('"');
-    } else {
-      writer.write('"');
-      writer.write(val);
-      writer.write('"');
     }
+
+    writer.write('"');
   }
 
 
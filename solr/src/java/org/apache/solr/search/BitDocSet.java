@@ -185,6 +185,8 @@ public class BitDocSet extends DocSetBase {
     OpenBitSet newbits = (OpenBitSet)(bits.clone());
      if (other instanceof BitDocSet) {
        newbits.andNot(((BitDocSet)other).bits);
+     } else if (other instanceof OffHeapBitDocSet) {
+       ((OffHeapBitDocSet)other).andNotInto(newbits);
      } else {
        DocIterator iter = other.iterator();
        while (iter.hasNext()) newbits.clear(iter.nextDoc());
@@ -197,6 +199,8 @@ public class BitDocSet extends DocSetBase {
      OpenBitSet newbits = (OpenBitSet)(bits.clone());
      if (other instanceof BitDocSet) {
        newbits.union(((BitDocSet)other).bits);
+     } else if (other instanceof OffHeapBitDocSet) {
+       ((OffHeapBitDocSet)other).orInto(newbits);
      } else {
        DocIterator iter = other.iterator();
        while (iter.hasNext()) newbits.set(iter.nextDoc());
@@ -0,0 +1,644 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.BitUtil;
+import org.apache.lucene.util.OpenBitSet;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * <code>ChunkedDocSet</code> is an immutable, compressed <code>DocSet</code>
+ * for sets that are too large for a {@link SortedIntDocSet} but much
+ * sparser than a full bit set.
+ * <p>
+ * The document id space is split into chunks of 65536 documents.  Empty chunks
+ * take no space, chunks with at most 4096 documents are stored as a sorted
+ * array of the low 16 bits of their ids (2 bytes per document) and denser
+ * chunks as an 8KB bitmap.  A set with a density of 1% thus takes about a sixth
+ * of the memory of a {@link BitDocSet} and an eighth of that of a
+ * {@link SortedIntDocSet}.
+ * <p>
+ * Intersections, differences and their sizes are computed chunk by chunk
+ * against other <code>ChunkedDocSet</code>s and {@link BitDocSet}s.
+ *
+ * @see #compress
+ * @version $Id$
+ */
+public class ChunkedDocSet extends DocSetBase {
+  static final int CHUNK_SHIFT = 16;
+  static final int WORDS_PER_CHUNK = 1 << (CHUNK_SHIFT - 6);
+  /** chunks with more documents than this are stored as bitmaps */
+  static final int MAX_ARRAY_SIZE = 4096;
+
+  // the chunk numbers (doc >>> CHUNK_SHIFT) of the non-empty chunks, ascending
+  final int[] keys;
+  // for every chunk, either its sorted low bits or its bitmap is non-null
+  final char[][] arrays;
+  final long[][] bitmaps;
+  final int[] cardinalities;
+  final int size;
+
+  private ChunkedDocSet(int[] keys, char[][] arrays, long[][] bitmaps, int[] cardinalities, int size) {
+    this.keys = keys;
+    this.arrays = arrays;
+    this.bitmaps = bitmaps;
+    this.cardinalities = cardinalities;
+    this.size = size;
+  }
+
+  /** Creates a ChunkedDocSet with the same documents as <code>set</code>. */
+  public static ChunkedDocSet create(DocSet set) {
+    if (set instanceof ChunkedDocSet) return (ChunkedDocSet)set;
+    Builder builder = new Builder();
+    if (set instanceof BitDocSet) {
+      builder.addAll(((BitDocSet)set).getBits());
+    } else {
+      int[] docs = new int[set.size()];
+      int i = 0;
+      for (DocIterator iter = set.iterator(); iter.hasNext();) {
+        docs[i++] = iter.nextDoc();
+      }
+      // not every DocSet iterates in order
+      Arrays.sort(docs);
+      for (int doc : docs) builder.add(doc);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Returns a ChunkedDocSet with the same documents as <code>set</code> if it
+   * takes at most half the memory of <code>set</code>, else <code>set</code> itself.
+   */
+  public static DocSet compress(BitDocSet set) {
+    ChunkedDocSet chunked = create(set);
+    return chunked.memSize() * 2 <= set.memSize() ? chunked : set;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private int chunkIndex(int key) {
+    return Arrays.binarySearch(keys, key);
+  }
+
+  public boolean exists(int doc) {
+    int idx = chunkIndex(doc >>> CHUNK_SHIFT);
+    if (idx < 0) return false;
+    return contains(idx, doc & 0xffff);
+  }
+
+  private boolean contains(int idx, int low) {
+    char[] array = arrays[idx];
+    if (array != null) {
+      return Arrays.binarySearch(array, (char)low) >= 0;
+    }
+    return (bitmaps[idx][low >> 6] & (1L << low)) != 0;
+  }
+
+  /** Returns the index of the first set bit of <code>bitmap</code> at or after <code>bit</code>, or -1. */
+  static int nextSetBit(long[] bitmap, int bit) {
+    int i = bit >> 6;
+    if (i >= bitmap.length) return -1;
+    long word = bitmap[i] >>> (bit & 0x3f);
+    if (word != 0) {
+      return bit + BitUtil.ntz(word);
+    }
+    while (++i < bitmap.length) {
+      word = bitmap[i];
+      if (word != 0) return (i << 6) + BitUtil.ntz(word);
+    }
+    return -1;
+  }
+
+  /** Iterates the documents in order, with efficient skipping. */
+  final class ChunkIterator {
+    private int chunk = 0;   // index of the current chunk
+    private int pos = -1;    // position in the array, or bit in the bitmap, of the current doc
+
+    /** Returns the next document, or {@link DocIdSetIterator#NO_MORE_DOCS}. */
+    int next() {
+      while (chunk < keys.length) {
+        char[] array = arrays[chunk];
+        if (array != null) {
+          if (++pos < array.length) return (keys[chunk] << CHUNK_SHIFT) | array[pos];
+        } else {
+          int bit = nextSetBit(bitmaps[chunk], pos + 1);
+          if (bit >= 0) {
+            pos = bit;
+            return (keys[chunk] << CHUNK_SHIFT) | bit;
+          }
+        }
+        chunk++;
+        pos = -1;
+      }
+      return DocIdSetIterator.NO_MORE_DOCS;
+    }
+
+    /** Returns the first document at or after <code>target</code>, which must be beyond the current document. */
+    int advance(int target) {
+      int key = target >>> CHUNK_SHIFT;
+      if (chunk >= keys.length) return DocIdSetIterator.NO_MORE_DOCS;
+      if (keys[chunk] < key) {
+        int idx = Arrays.binarySearch(keys, chunk, keys.length, key);
+        if (idx < 0) {
+          // starts at the beginning of the next non-empty chunk
+          chunk = -idx - 1;
+          pos = -1;
+          return next();
+        }
+        chunk = idx;
+        pos = -1;
+      } else if (keys[chunk] > key) {
+        return next();
+      }
+      int low = target & 0xffff;
+      char[] array = arrays[chunk];
+      if (array != null) {
+        int idx = Arrays.binarySearch(array, Math.max(pos + 1, 0), array.length, (char)low);
+        pos = (idx >= 0 ? idx : -idx - 1) - 1;
+      } else {
+        pos = Math.max(pos, low - 1);
+      }
+      return next();
+    }
+  }
+
+  public DocIterator iterator() {
+    return new DocIterator() {
+      private final ChunkIterator iter = new ChunkIterator();
+      private int next = iter.next();
+
+      public boolean hasNext() {
+        return next != DocIdSetIterator.NO_MORE_DOCS;
+      }
+
+      public Integer next() {
+        return nextDoc();
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+
+      public int nextDoc() {
+        int doc = next;
+        next = iter.next();
+        return doc;
+      }
+
+      public float score() {
+        return 0.0f;
+      }
+    };
+  }
+
+  @Override
+  public OpenBitSet getBits() {
+    int numWords = keys.length == 0 ? 0 : (keys[keys.length-1] + 1) * WORDS_PER_CHUNK;
+    OpenBitSet bits = new OpenBitSet(numWords << 6);
+    orInto(bits);
+    return bits;
+  }
+
+  /** Sets the bits of this set's documents in <code>bits</code>, which must be large enough. */
+  void orInto(OpenBitSet bits) {
+    long[] words = bits.getBits();
+    for (int i = 0; i < keys.length; i++) {
+      int base = keys[i] << CHUNK_SHIFT;
+      char[] array = arrays[i];
+      if (array != null) {
+        for (char low : array) bits.fastSet(base | low);
+      } else {
+        long[] bitmap = bitmaps[i];
+        int offset = keys[i] * WORDS_PER_CHUNK;
+        int n = Math.min(WORDS_PER_CHUNK, words.length - offset);
+        for (int w = 0; w < n; w++) words[offset + w] |= bitmap[w];
+      }
+    }
+  }
+
+  private static int intersectionCount(char[] a, char[] b) {
+    int count = 0;
+    int i = 0, j = 0;
+    while (i < a.length && j < b.length) {
+      char x = a[i], y = b[j];
+      if (x < y) i++;
+      else if (x > y) j++;
+      else {
+        count++;
+        i++;
+        j++;
+      }
+    }
+    return count;
+  }
+
+  private static int intersectionCount(char[] a, long[] words, int offset, int numWords) {
+    int count = 0;
+    for (char low : a) {
+      int w = offset + (low >> 6);
+      if (w < numWords && (words[w] & (1L << low)) != 0) count++;
+    }
+    return count;
+  }
+
+  @Override
+  public int intersectionSize(DocSet other) {
+    if (other instanceof ChunkedDocSet) {
+      ChunkedDocSet o = (ChunkedDocSet)other;
+      int count = 0;
+      int i = 0, j = 0;
+      while (i < keys.length && j < o.keys.length) {
+        if (keys[i] < o.keys[j]) i++;
+        else if (keys[i] > o.keys[j]) j++;
+        else {
+          if (arrays[i] != null && o.arrays[j] != null) {
+            count += intersectionCount(arrays[i], o.arrays[j]);
+          } else if (arrays[i] != null) {
+            count += intersectionCount(arrays[i], o.bitmaps[j], 0, WORDS_PER_CHUNK);
+          } else if (o.arrays[j] != null) {
+            count += intersectionCount(o.arrays[j], bitmaps[i], 0, WORDS_PER_CHUNK);
+          } else {
+            count += (int)BitUtil.pop_intersect(bitmaps[i], o.bitmaps[j], 0, WORDS_PER_CHUNK);
+          }
+          i++;
+          j++;
+        }
+      }
+      return count;
+    } else if (other instanceof BitDocSet) {
+      OpenBitSet obs = ((BitDocSet)other).getBits();
+      long[] words = obs.getBits();
+      int numWords = obs.getNumWords();
+      int count = 0;
+      for (int i = 0; i < keys.length; i++) {
+        int offset = keys[i] * WORDS_PER_CHUNK;
+        if (offset >= numWords) break;
+        if (arrays[i] != null) {
+          count += intersectionCount(arrays[i], words, offset, numWords);
+        } else {
+          long[] bitmap = bitmaps[i];
+          int n = Math.min(WORDS_PER_CHUNK, numWords - offset);
+          for (int w = 0; w < n; w++) count += BitUtil.pop(bitmap[w] & words[offset + w]);
+        }
+      }
+      return count;
+    } else if (other instanceof SortedIntDocSet || other instanceof HashDocSet) {
+      // they iterate themselves and call exists()
+      return other.intersectionSize(this);
+    } else {
+      // probe the larger set with the documents of the smaller one
+      DocSet a = other.size() < size ? other : this;
+      DocSet b = a == this ? other : this;
+      int count = 0;
+      for (DocIterator iter = a.iterator(); iter.hasNext();) {
+        if (b.exists(iter.nextDoc())) count++;
+      }
+      return count;
+    }
+  }
+
+  @Override
+  public int unionSize(DocSet other) {
+    return size + other.size() - intersectionSize(other);
+  }
+
+  @Override
+  public int andNotSize(DocSet other) {
+    return size - intersectionSize(other);
+  }
+
+  /** Adds the documents of chunk <code>idx</code> that <code>other</code> does (or does not) contain to <code>builder</code>. */
+  private void filterChunk(int idx, DocSet other, boolean keep, Builder builder) {
+    int base = keys[idx] << CHUNK_SHIFT;
+    char[] array = arrays[idx];
+    if (array != null) {
+      for (char low : array) {
+        if (other.exists(base | low) == keep) builder.add(base | low);
+      }
+    } else {
+      long[] bitmap = bitmaps[idx];
+      for (int bit = nextSetBit(bitmap, 0); bit >= 0; bit = nextSetBit(bitmap, bit + 1)) {
+        if (other.exists(base | bit) == keep) builder.add(base | bit);
+      }
+    }
+  }
+
+  /** Adds the words of chunk <code>idx</code> combined with <code>words</code> to <code>builder</code> */
+  private void combineChunk(int idx, long[] words, int offset, int numWords, boolean and, Builder builder) {
+    long[] result = new long[WORDS_PER_CHUNK];
+    long[] bitmap = bitmaps[idx];
+    int card = 0;
+    for (int w = 0; w < WORDS_PER_CHUNK; w++) {
+      long other = offset + w < numWords ? words[offset + w] : 0;
+      long word = and ? bitmap[w] & other : bitmap[w] & ~other;
+      result[w] = word;
+      card += BitUtil.pop(word);
+    }
+    builder.addBitmap(keys[idx], result, card);
+  }
+
+  @Override
+  public DocSet intersection(DocSet other) {
+    if (other instanceof ChunkedDocSet) {
+      ChunkedDocSet o = (ChunkedDocSet)other;
+      Builder builder = new Builder();
+      int i = 0, j = 0;
+      while (i < keys.length && j < o.keys.length) {
+        if (keys[i] < o.keys[j]) i++;
+        else if (keys[i] > o.keys[j]) j++;
+        else {
+          if (arrays[i] == null && o.arrays[j] == null) {
+            combineChunk(i, o.bitmaps[j], 0, WORDS_PER_CHUNK, true, builder);
+          } else if (arrays[i] != null) {
+            filterChunk(i, o, true, builder);
+          } else {
+            o.filterChunk(j, this, true, builder);
+          }
+          i++;
+          j++;
+        }
+      }
+      return builder.build();
+    } else if (other instanceof BitDocSet) {
+      OpenBitSet obs = ((BitDocSet)other).getBits();
+      Builder builder = new Builder();
+      for (int i = 0; i < keys.length; i++) {
+        if (arrays[i] != null) {
+          filterChunk(i, other, true, builder);
+        } else {
+          combineChunk(i, obs.getBits(), keys[i] * WORDS_PER_CHUNK, obs.getNumWords(), true, builder);
+        }
+      }
+      return builder.build();
+    } else if (other instanceof SortedIntDocSet || other instanceof HashDocSet) {
+      return other.intersection(this);
+    } else {
+      Builder builder = new Builder();
+      for (int i = 0; i < keys.length; i++) {
+        filterChunk(i, other, true, builder);
+      }
+      return builder.build();
+    }
+  }
+
+  @Override
+  public DocSet andNot(DocSet other) {
+    Builder builder = new Builder();
+    if (other instanceof BitDocSet) {
+      OpenBitSet obs = ((BitDocSet)other).getBits();
+      for (int i = 0; i < keys.length; i++) {
+        if (arrays[i] != null) {
+          filterChunk(i, other, false, builder);
+        } else {
+          combineChunk(i, obs.getBits(), keys[i] * WORDS_PER_CHUNK, obs.getNumWords(), false, builder);
+        }
+      }
+    } else if (other instanceof ChunkedDocSet) {
+      ChunkedDocSet o = (ChunkedDocSet)other;
+      for (int i = 0; i < keys.length; i++) {
+        int j = o.chunkIndex(keys[i]);
+        if (j < 0) {
+          builder.addChunk(this, i);
+        } else if (arrays[i] == null && o.arrays[j] == null) {
+          combineChunk(i, o.bitmaps[j], 0, WORDS_PER_CHUNK, false, builder);
+        } else {
+          filterChunk(i, o, false, builder);
+        }
+      }
+    } else {
+      for (int i = 0; i < keys.length; i++) {
+        filterChunk(i, other, false, builder);
+      }
+    }
+    return builder.build();
+  }
+
+  @Override
+  public DocSet union(DocSet other) {
+    // unions tend to be dense
+    OpenBitSet newbits;
+    if (other instanceof BitDocSet) {
+      newbits = (OpenBitSet)((BitDocSet)other).getBits().clone();
+      if (keys.length > 0) {
+        newbits.ensureCapacityWords((keys[keys.length-1] + 1) * WORDS_PER_CHUNK);
+        newbits.setNumWords(Math.max(newbits.getNumWords(), (keys[keys.length-1] + 1) * WORDS_PER_CHUNK));
+      }
+      orInto(newbits);
+    } else {
+      newbits = getBits();
+      if (other instanceof ChunkedDocSet) {
+        ChunkedDocSet o = (ChunkedDocSet)other;
+        if (o.keys.length > 0) {
+          int numWords = (o.keys[o.keys.length-1] + 1) * WORDS_PER_CHUNK;
+          newbits.ensureCapacityWords(numWords);
+          newbits.setNumWords(Math.max(newbits.getNumWords(), numWords));
+        }
+        o.orInto(newbits);
+      } else {
+        DocIterator iter = other.iterator();
+        while (iter.hasNext()) newbits.set(iter.nextDoc());
+      }
+    }
+    return new BitDocSet(newbits);
+  }
+
+  public long memSize() {
+    long sz = 16 + keys.length * (4 + 4 + 8 + 8);
+    for (int i = 0; i < keys.length; i++) {
+      sz += arrays[i] != null ? (arrays[i].length << 1) : (WORDS_PER_CHUNK << 3);
+    }
+    return sz;
+  }
+
+  /**
+   * Returns a DocIdSet with the documents of this set between <code>base</code>
+   * (inclusive) and <code>max</code> (exclusive), relative to <code>base</code>.
+   */
+  public DocIdSet getDocIdSet(final int base, final int max) {
+    return new DocIdSet() {
+      @Override
+      public DocIdSetIterator iterator() throws IOException {
+        return new DocIdSetIterator() {
+          private final ChunkIterator iter = new ChunkIterator();
+          private boolean started;
+          int adjustedDoc=-1;
+
+          @Override
+          public int docID() {
+            return adjustedDoc;
+          }
+
+          @Override
+          public int nextDoc() throws IOException {
+            if (!started) return advance(0);
+            return adjust(iter.next());
+          }
+
+          @Override
+          public int advance(int target) throws IOException {
+            if (target==NO_MORE_DOCS) return adjustedDoc=NO_MORE_DOCS;
+            started = true;
+            return adjust(iter.advance(target + base));
+          }
+
+          private int adjust(int pos) {
+            return adjustedDoc = (pos!=NO_MORE_DOCS && pos<max) ? pos-base : NO_MORE_DOCS;
+          }
+        };
+      }
+
+      @Override
+      public boolean isCacheable() {
+        return true;
+      }
+    };
+  }
+
+  @Override
+  public Filter getTopFilter() {
+    return new Filter() {
+      @Override
+      public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+        int offset = 0;
+        SolrIndexReader r = (SolrIndexReader)reader;
+        while (r.getParent() != null) {
+          offset += r.getBase();
+          r = r.getParent();
+        }
+        return ChunkedDocSet.this.getDocIdSet(offset, offset + reader.maxDoc());
+      }
+    };
+  }
+
+  /** Builds a ChunkedDocSet from documents added in increasing order. */
+  static final class Builder {
+    private int[] keys = new int[8];
+    private char[][] arrays = new char[8][];
+    private long[][] bitmaps = new long[8][];
+    private int[] cardinalities = new int[8];
+    private int numChunks;
+    private int size;
+
+    // the chunk being built
+    private int key = -1;
+    private final char[] buffer = new char[MAX_ARRAY_SIZE];
+    private long[] bitmap;
+    private int card;
+
+    /** Adds a document greater than all documents added before. */
+    void add(int doc) {
+      int k = doc >>> CHUNK_SHIFT;
+      if (k != key) {
+        flush();
+        key = k;
+      }
+      int low = doc & 0xffff;
+      if (bitmap != null) {
+        bitmap[low >> 6] |= 1L << low;
+      } else if (card < MAX_ARRAY_SIZE) {
+        buffer[card] = (char)low;
+      } else {
+        bitmap = new long[WORDS_PER_CHUNK];
+        for (int i = 0; i < card; i++) {
+          bitmap[buffer[i] >> 6] |= 1L << buffer[i];
+        }
+        bitmap[low >> 6] |= 1L << low;
+      }
+      card++;
+    }
+
+    /** Adds all the set bits of <code>bits</code>; no documents may have been added yet. */
+    void addAll(OpenBitSet bits) {
+      long[] words = bits.getBits();
+      int numWords = bits.getNumWords();
+      for (int offset = 0; offset < numWords; offset += WORDS_PER_CHUNK) {
+        int n = Math.min(WORDS_PER_CHUNK, numWords - offset);
+        int c = (int)BitUtil.pop_array(words, offset, n);
+        if (c == 0) continue;
+        long[] chunk = new long[WORDS_PER_CHUNK];
+        System.arraycopy(words, offset, chunk, 0, n);
+        addBitmap(offset / WORDS_PER_CHUNK, chunk, c);
+      }
+    }
+
+    /** Adds a whole chunk, given as a bitmap with <code>c</code> set bits, that this builder may keep. */
+    void addBitmap(int k, long[] chunk, int c) {
+      flush();
+      if (c == 0) return;
+      if (c <= MAX_ARRAY_SIZE) {
+        key = k;
+        int base = k << CHUNK_SHIFT;
+        for (int bit = nextSetBit(chunk, 0); bit >= 0; bit = nextSetBit(chunk, bit + 1)) {
+          add(base | bit);
+        }
+        flush();
+      } else {
+        append(k, null, chunk, c);
+      }
+    }
+
+    /** Adds chunk <code>idx</code> of <code>set</code> as is; chunks are immutable, so they may be shared. */
+    void addChunk(ChunkedDocSet set, int idx) {
+      flush();
+      append(set.keys[idx], set.arrays[idx], set.bitmaps[idx], set.cardinalities[idx]);
+    }
+
+    private void flush() {
+      if (card > 0) {
+        if (bitmap != null) {
+          append(key, null, bitmap, card);
+        } else {
+          append(key, Arrays.copyOf(buffer, card), null, card);
+        }
+      }
+      key = -1;
+      bitmap = null;
+      card = 0;
+    }
+
+    private void append(int k, char[] array, long[] chunk, int c) {
+      if (numChunks == keys.length) {
+        int newSize = numChunks << 1;
+        keys = Arrays.copyOf(keys, newSize);
+        arrays = Arrays.copyOf(arrays, newSize);
+        bitmaps = Arrays.copyOf(bitmaps, newSize);
+        cardinalities = Arrays.copyOf(cardinalities, newSize);
+      }
+      keys[numChunks] = k;
+      arrays[numChunks] = array;
+      bitmaps[numChunks] = chunk;
+      cardinalities[numChunks] = c;
+      numChunks++;
+      size += c;
+    }
+
+    ChunkedDocSet build() {
+      flush();
+      return new ChunkedDocSet(Arrays.copyOf(keys, numChunks), Arrays.copyOf(arrays, numChunks),
+                               Arrays.copyOf(bitmaps, numChunks), Arrays.copyOf(cardinalities, numChunks), size);
+    }
+  }
+}
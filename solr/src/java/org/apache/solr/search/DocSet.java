@@ -18,6 +18,8 @@
 package org.apache.solr.search;
 
 import org.apache.solr.common.SolrException;
+import org.apache.lucene.util.BitUtil;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.OpenBitSet;
 import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.Filter;
@@ -286,6 +288,28 @@ abstract class DocSetBase implements DocSet {
                 pos = bs.nextSetBit(target+base);
                 return adjustedDoc = (pos>=0 && pos<max) ? pos-base : NO_MORE_DOCS;
               }
+
+              @Override
+              public long cost() {
+                // counts the words of this segment, so may include a
+                // few docs of the neighbouring segments
+                int start = base >>> 6;
+                int end = Math.min(((max-1) >>> 6) + 1, bs.getNumWords());
+                return start < end ? BitUtil.pop_array(bs.getBits(), start, end - start) : 0;
+              }
+            };
+          }
+
+          @Override
+          public Bits bits() {
+            return new Bits() {
+              public boolean get(int doc) {
+                return bs.get(doc+base);
+              }
+
+              public int length() {
+                return maxDoc;
+              }
             };
           }
 
@@ -0,0 +1,265 @@
+package org.apache.solr.search;
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.solr.common.util.ConcurrentLFUCache;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.core.SolrCore;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * SolrCache based on the ConcurrentLFUCache implementation.
+ * <p/>
+ * Evicts the least frequently used entries instead of the least recently
+ * used ones, and once full only admits new entries that are requested more
+ * often than the entries it evicts, which protects frequently used entries
+ * against bursts of one-off requests.  Besides <code>size</code>, the cache
+ * can be bounded by the memory used by its {@link DocSet} values with
+ * <code>maxRamMB</code>; other values are not counted.
+ * <p/>
+ * When autowarming, the most frequently used entries are regenerated and
+ * the access frequencies carry over to the new cache.
+ *
+ * @version $Id$
+ * @see org.apache.solr.common.util.ConcurrentLFUCache
+ * @see org.apache.solr.search.SolrCache
+ */
+public class FastLFUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
+
+  private static final ConcurrentLFUCache.RamSizeEstimator DOCSET_ESTIMATOR = new ConcurrentLFUCache.RamSizeEstimator() {
+    public long ramBytes(Object value) {
+      return value instanceof DocSet ? ((DocSet)value).memSize() : 0;
+    }
+  };
+
+  // contains the statistics objects for all open caches of the same type
+  private List<ConcurrentLFUCache.Stats> statsList;
+
+  private String name;
+  private AutoWarmCountRef autowarm;
+  private State state;
+  private CacheRegenerator regenerator;
+  private String description = "Concurrent LFU Cache";
+  private ConcurrentLFUCache<K,V> cache;
+
+  public Object init(Map args, Object persistence, CacheRegenerator regenerator) {
+    state = State.CREATED;
+    this.regenerator = regenerator;
+    name = (String) args.get("name");
+    String str = (String) args.get("size");
+    int limit = str == null ? 1024 : Integer.parseInt(str);
+    int minLimit;
+    str = (String) args.get("minSize");
+    if (str == null) {
+      minLimit = (int) (limit * 0.9);
+    } else {
+      minLimit = Integer.parseInt(str);
+    }
+    if (minLimit==0) minLimit=1;
+    if (limit <= minLimit) limit=minLimit+1;
+
+    final String maxRamMB = (String) args.get("maxRamMB");
+    long maxRamBytes = maxRamMB == null ? 0 : (long) (Double.parseDouble(maxRamMB) * 1024 * 1024);
+
+    str = (String) args.get("initialSize");
+    final int initialSize = str == null ? limit : Integer.parseInt(str);
+    autowarm = new AutoWarmCountRef((String)args.get("autowarmCount"));
+    initWarmTime(args);
+
+    description = "Concurrent LFU Cache(maxSize=" + limit + ", initialSize=" + initialSize +
+            ", minSize="+minLimit;
+    if (maxRamBytes > 0) {
+      description += ", maxRamMB=" + maxRamMB;
+    }
+    if (autowarm.isAutoWarmingOn()) {
+      description += ", autowarmCount=" + autowarm + ", regenerator=" + regenerator;
+      if (maxWarmTime > 0) {
+        description += ", autowarmTime=" + maxWarmTime;
+      }
+    }
+    description += ')';
+
+    cache = new ConcurrentLFUCache<K,V>(limit, minLimit, maxRamBytes, initialSize,
+        maxRamBytes > 0 ? (ConcurrentLFUCache.RamSizeEstimator<V>) DOCSET_ESTIMATOR : null);
+    cache.setAlive(false);
+
+    statsList = (List<ConcurrentLFUCache.Stats>) persistence;
+    if (statsList == null) {
+      // must be the first time a cache of this type is being created
+      // Use a CopyOnWriteArrayList since puts are very rare and iteration may be a frequent operation
+      // because it is used in getStatistics()
+      statsList = new CopyOnWriteArrayList<ConcurrentLFUCache.Stats>();
+
+      // the first entry will be for cumulative stats of caches that have been closed.
+      statsList.add(new ConcurrentLFUCache.Stats());
+    }
+    statsList.add(cache.getStats());
+    return statsList;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  public int size() {
+    return cache.size();
+  }
+
+  public V put(K key, V value) {
+    return cache.put(key, value);
+  }
+
+  public V get(K key) {
+    return cache.get(key);
+  }
+
+  public void clear() {
+    cache.clear();
+  }
+
+  public void setState(State state) {
+    this.state = state;
+    cache.setAlive(state == State.LIVE);
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  public void warm(SolrIndexSearcher searcher, SolrCache old) throws IOException {
+    if (regenerator == null) return;
+    long warmingStartTime = System.currentTimeMillis();
+    FastLFUCache other = (FastLFUCache) old;
+    cache.inheritFrequencies(other.cache);
+    // warm entries
+    if (autowarm.isAutoWarmingOn()) {
+      int sz = autowarm.getWarmCount(other.size());
+      Map items = other.cache.getMostUsedItems(sz);
+      Object[] keys = new Object[items.size()];
+      Object[] vals = new Object[items.size()];
+      int counter = 0;
+      for (Object mapEntry : items.entrySet()) {
+        keys[counter] = ((Map.Entry) mapEntry).getKey();
+        vals[counter] = ((Map.Entry) mapEntry).getValue();
+        counter++;
+      }
+      // the most used items first, in case the warm time runs out
+      regenerateItems(searcher, this, old, regenerator, keys, vals, log);
+    }
+    warmupTime = System.currentTimeMillis() - warmingStartTime;
+  }
+
+
+  public void close() {
+    // add the stats to the cumulative stats object (the first in the statsList)
+    statsList.get(0).add(cache.getStats());
+    statsList.remove(cache.getStats());
+  }
+
+  //////////////////////// SolrInfoMBeans methods //////////////////////
+  public String getName() {
+    return FastLFUCache.class.getName();
+  }
+
+  public String getVersion() {
+    return SolrCore.version;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  public Category getCategory() {
+    return Category.CACHE;
+  }
+
+  public String getSourceId() {
+    return "$Id$";
+  }
+
+  public String getSource() {
+    return "$URL$";
+  }
+
+  public URL[] getDocs() {
+    return null;
+  }
+
+  // returns a ratio, not a percent.
+  private static String calcHitRatio(long lookups, long hits) {
+    if (lookups == 0) return "0.00";
+    if (lookups == hits) return "1.00";
+    int hundredths = (int) (hits * 100 / lookups);   // rounded down
+    if (hundredths < 10) return "0.0" + hundredths;
+    return "0." + hundredths;
+  }
+
+  public NamedList getStatistics() {
+    NamedList<Serializable> lst = new SimpleOrderedMap<Serializable>();
+    if (cache == null)  return lst;
+    ConcurrentLFUCache.Stats stats = cache.getStats();
+    long lookups = stats.getCumulativeLookups();
+    long hits = stats.getCumulativeHits();
+
+    lst.add("lookups", lookups);
+    lst.add("hits", hits);
+    lst.add("hitratio", calcHitRatio(lookups, hits));
+    lst.add("inserts", stats.getCumulativePuts());
+    lst.add("evictions", stats.getCumulativeEvictions());
+    lst.add("evictionsSize", stats.getCumulativeSizeEvictions());
+    lst.add("evictionsRam", stats.getCumulativeRamEvictions());
+    lst.add("admissionRejects", stats.getCumulativeRejects());
+    lst.add("size", stats.getCurrentSize());
+    lst.add("ramBytesUsed", stats.getCurrentRamBytes());
+
+    addWarmStatistics(lst);
+
+    long clookups = 0;
+    long chits = 0;
+    long cinserts = 0;
+    long cevictions = 0;
+    long crejects = 0;
+
+    // NOTE: It is safe to iterate on a CopyOnWriteArrayList
+    for (ConcurrentLFUCache.Stats statistics : statsList) {
+      clookups += statistics.getCumulativeLookups();
+      chits += statistics.getCumulativeHits();
+      cinserts += statistics.getCumulativePuts();
+      cevictions += statistics.getCumulativeEvictions();
+      crejects += statistics.getCumulativeRejects();
+    }
+    lst.add("cumulative_lookups", clookups);
+    lst.add("cumulative_hits", chits);
+    lst.add("cumulative_hitratio", calcHitRatio(clookups, chits));
+    lst.add("cumulative_inserts", cinserts);
+    lst.add("cumulative_evictions", cevictions);
+    lst.add("cumulative_admissionRejects", crejects);
+
+    return lst;
+  }
+
+  public String toString() {
+    return name + getStatistics().toString();
+  }
+}
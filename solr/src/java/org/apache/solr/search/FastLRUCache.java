@@ -48,8 +48,6 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
   // contains the statistics objects for all open caches of the same type
   private List<ConcurrentLRUCache.Stats> statsList;
 
-  private long warmupTime = 0;
-
   private String name;
   private AutoWarmCountRef autowarm;
   private State state;
@@ -87,6 +85,7 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
     str = (String) args.get("initialSize");
     final int initialSize = str == null ? limit : Integer.parseInt(str);
     autowarm = new AutoWarmCountRef((String)args.get("autowarmCount"));
+    initWarmTime(args);
     str = (String) args.get("cleanupThread");
     boolean newThread = str == null ? false : Boolean.parseBoolean(str);
 
@@ -98,6 +97,9 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
             ", minSize="+minLimit + ", acceptableSize="+acceptableLimit+", cleanupThread="+newThread;
     if (autowarm.isAutoWarmingOn()) {
       description += ", autowarmCount=" + autowarm + ", regenerator=" + regenerator;
+      if (maxWarmTime > 0) {
+        description += ", autowarmTime=" + maxWarmTime;
+      }
     }
     description += ')';
 
@@ -156,21 +158,17 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
     if (autowarm.isAutoWarmingOn()) {
       int sz = autowarm.getWarmCount(other.size());
       Map items = other.cache.getLatestAccessedItems(sz);
-      Map.Entry[] itemsArr = new Map.Entry[items.size()];
-      int counter = 0;
+      // getLatestAccessedItems returns the most recently accessed items
+      // first, so reverse them to regenerate from the oldest to the newest
+      Object[] keys = new Object[items.size()];
+      Object[] vals = new Object[items.size()];
+      int counter = items.size();
       for (Object mapEntry : items.entrySet()) {
-        itemsArr[counter++] = (Map.Entry) mapEntry;
-      }
-      for (int i = itemsArr.length - 1; i >= 0; i--) {
-        try {
-          boolean continueRegen = regenerator.regenerateItem(searcher,
-                  this, old, itemsArr[i].getKey(), itemsArr[i].getValue());
-          if (!continueRegen) break;
-        }
-        catch (Throwable e) {
-          SolrException.log(log, "Error during auto-warming of key:" + itemsArr[i].getKey(), e);
-        }
+        counter--;
+        keys[counter] = ((Map.Entry) mapEntry).getKey();
+        vals[counter] = ((Map.Entry) mapEntry).getValue();
       }
+      regenerateItems(searcher, this, old, regenerator, keys, vals, log);
     }
     warmupTime = System.currentTimeMillis() - warmingStartTime;
   }
@@ -238,7 +236,7 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
     lst.add("evictions", evictions);
     lst.add("size", size);
 
-    lst.add("warmupTime", warmupTime);
+    addWarmStatistics(lst);
 
     long clookups = 0;
     long chits = 0;
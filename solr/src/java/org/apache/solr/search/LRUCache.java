@@ -52,8 +52,6 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
   private long inserts;
   private long evictions;
 
-  private long warmupTime = 0;
-
   private Map<K,V> map;
   private String name;
   private AutoWarmCountRef autowarm;
@@ -70,9 +68,13 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
     str = (String)args.get("initialSize");
     final int initialSize = Math.min(str==null ? 1024 : Integer.parseInt(str), limit);
     autowarm = new AutoWarmCountRef((String)args.get("autowarmCount"));
+    initWarmTime(args);
     description = "LRU Cache(maxSize=" + limit + ", initialSize=" + initialSize;
     if (autowarm.isAutoWarmingOn()) {
       description += ", autowarmCount=" + autowarm + ", regenerator=" + regenerator;
+      if (maxWarmTime > 0) {
+        description += ", autowarmTime=" + maxWarmTime;
+      }
     }
     description += ')';
 
@@ -187,15 +189,7 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
 
       // autowarm from the oldest to the newest entries so that the ordering will be
       // correct in the new cache.
-      for (int i=0; i<keys.length; i++) {
-        try {
-          boolean continueRegen = regenerator.regenerateItem(searcher, this, old, keys[i], vals[i]);
-          if (!continueRegen) break;
-        }
-        catch (Throwable e) {
-          SolrException.log(log,"Error during auto-warming of key:" + keys[i], e);
-        }
-      }
+      regenerateItems(searcher, this, old, regenerator, keys, vals, log);
     }
 
     warmupTime = System.currentTimeMillis() - warmingStartTime;
@@ -264,7 +258,7 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
       lst.add("size", map.size());
     }
 
-    lst.add("warmupTime", warmupTime);
+    addWarmStatistics(lst);
 
     long clookups = stats.lookups.get();
     long chits = stats.hits.get();
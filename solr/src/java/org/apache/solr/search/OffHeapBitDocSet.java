@@ -0,0 +1,315 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.BitUtil;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.OpenBitSet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * An immutable bit set <code>DocSet</code> whose bits are kept in direct
+ * (off-heap) memory, so that large cached filters do not add to the
+ * garbage collector's workload.  Set operations against {@link BitDocSet}s and
+ * other <code>OffHeapBitDocSet</code>s work directly on the off-heap words;
+ * their results are ordinary on-heap DocSets.
+ *
+ * <p>The direct memory is released when this object is garbage collected,
+ * the total amount is bounded by the JVM's <code>-XX:MaxDirectMemorySize</code>.
+ *
+ * @see OffHeapCache
+ * @version $Id$
+ */
+public class OffHeapBitDocSet extends DocSetBase {
+  private final LongBuffer words;
+  private final int numWords;
+  private final int size;
+
+  /** Copies the bits of <code>bits</code> into direct memory. */
+  public OffHeapBitDocSet(OpenBitSet bits) {
+    this(bits, (int)bits.cardinality());
+  }
+
+  /** Copies the bits of <code>bits</code>, which has <code>size</code> set bits, into direct memory. */
+  public OffHeapBitDocSet(OpenBitSet bits, int size) {
+    // trailing zero words need not be stored
+    int n = bits.getNumWords();
+    long[] arr = bits.getBits();
+    while (n > 0 && arr[n-1] == 0) n--;
+    numWords = n;
+    words = ByteBuffer.allocateDirect(Math.max(1, n) << 3).order(ByteOrder.nativeOrder()).asLongBuffer();
+    words.put(arr, 0, n);
+    this.size = size;
+  }
+
+  /** Copies the bits of a BitDocSet into direct memory. */
+  public OffHeapBitDocSet(BitDocSet set) {
+    this(set.getBits(), set.size());
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean exists(int doc) {
+    int i = doc >> 6;
+    return i < numWords && (words.get(i) & (1L << doc)) != 0;
+  }
+
+  /** Returns the first set bit at or after <code>index</code>, or -1 if there is none. */
+  public int nextSetBit(int index) {
+    int i = index >> 6;
+    if (i >= numWords) return -1;
+    long word = words.get(i) >>> (index & 0x3f);
+    if (word != 0) {
+      return index + BitUtil.ntz(word);
+    }
+    while (++i < numWords) {
+      word = words.get(i);
+      if (word != 0) return (i << 6) + BitUtil.ntz(word);
+    }
+    return -1;
+  }
+
+  public DocIterator iterator() {
+    return new DocIterator() {
+      int pos = nextSetBit(0);
+
+      public boolean hasNext() {
+        return pos >= 0;
+      }
+
+      public Integer next() {
+        return nextDoc();
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+
+      public int nextDoc() {
+        int old = pos;
+        pos = nextSetBit(old + 1);
+        return old;
+      }
+
+      public float score() {
+        return 0.0f;
+      }
+    };
+  }
+
+  /**
+   * Returns an on-heap copy of the bits.
+   */
+  @Override
+  public OpenBitSet getBits() {
+    long[] arr = new long[numWords];
+    for (int i = 0; i < numWords; i++) arr[i] = words.get(i);
+    return new OpenBitSet(arr, numWords);
+  }
+
+  /** ORs the bits of this set into <code>target</code>. */
+  void orInto(OpenBitSet target) {
+    if (target.getNumWords() < numWords) {
+      target.ensureCapacityWords(numWords);
+      target.setNumWords(numWords);
+    }
+    long[] arr = target.getBits();
+    for (int i = 0; i < numWords; i++) arr[i] |= words.get(i);
+  }
+
+  /** Clears the bits of this set from <code>target</code>. */
+  void andNotInto(OpenBitSet target) {
+    long[] arr = target.getBits();
+    int n = Math.min(numWords, target.getNumWords());
+    for (int i = 0; i < n; i++) arr[i] &= ~words.get(i);
+  }
+
+  @Override
+  public int intersectionSize(DocSet other) {
+    if (other instanceof BitDocSet) {
+      OpenBitSet obs = ((BitDocSet)other).bits;
+      long[] arr = obs.getBits();
+      int n = Math.min(numWords, obs.getNumWords());
+      int count = 0;
+      for (int i = 0; i < n; i++) count += BitUtil.pop(words.get(i) & arr[i]);
+      return count;
+    } else if (other instanceof OffHeapBitDocSet) {
+      OffHeapBitDocSet o = (OffHeapBitDocSet)other;
+      int n = Math.min(numWords, o.numWords);
+      int count = 0;
+      for (int i = 0; i < n; i++) count += BitUtil.pop(words.get(i) & o.words.get(i));
+      return count;
+    } else {
+      // the smaller sets iterate themselves and call exists()
+      return other.intersectionSize(this);
+    }
+  }
+
+  @Override
+  public int unionSize(DocSet other) {
+    return size + other.size() - intersectionSize(other);
+  }
+
+  @Override
+  public int andNotSize(DocSet other) {
+    return size - intersectionSize(other);
+  }
+
+  @Override
+  public DocSet intersection(DocSet other) {
+    if (other instanceof BitDocSet) {
+      OpenBitSet obs = ((BitDocSet)other).bits;
+      long[] arr = obs.getBits();
+      int n = Math.min(numWords, obs.getNumWords());
+      long[] result = new long[n];
+      for (int i = 0; i < n; i++) result[i] = words.get(i) & arr[i];
+      return new BitDocSet(new OpenBitSet(result, n));
+    } else if (other instanceof OffHeapBitDocSet) {
+      OffHeapBitDocSet o = (OffHeapBitDocSet)other;
+      int n = Math.min(numWords, o.numWords);
+      long[] result = new long[n];
+      for (int i = 0; i < n; i++) result[i] = words.get(i) & o.words.get(i);
+      return new BitDocSet(new OpenBitSet(result, n));
+    } else {
+      return other.intersection(this);
+    }
+  }
+
+  @Override
+  public DocSet union(DocSet other) {
+    OpenBitSet newbits;
+    if (other instanceof BitDocSet) {
+      newbits = (OpenBitSet)((BitDocSet)other).bits.clone();
+      orInto(newbits);
+    } else {
+      newbits = getBits();
+      if (other instanceof OffHeapBitDocSet) {
+        ((OffHeapBitDocSet)other).orInto(newbits);
+      } else {
+        DocIterator iter = other.iterator();
+        while (iter.hasNext()) newbits.set(iter.nextDoc());
+      }
+    }
+    return new BitDocSet(newbits);
+  }
+
+  @Override
+  public DocSet andNot(DocSet other) {
+    OpenBitSet newbits = getBits();
+    if (other instanceof BitDocSet) {
+      newbits.andNot(((BitDocSet)other).bits);
+    } else if (other instanceof OffHeapBitDocSet) {
+      ((OffHeapBitDocSet)other).andNotInto(newbits);
+    } else {
+      DocIterator iter = other.iterator();
+      while (iter.hasNext()) newbits.clear(iter.nextDoc());
+    }
+    return new BitDocSet(newbits);
+  }
+
+  /** Returns the number of bytes of direct memory used by this set, plus a small overhead. */
+  public long memSize() {
+    return ((long)words.capacity() << 3) + 16;
+  }
+
+  @Override
+  public Filter getTopFilter() {
+    return new Filter() {
+      @Override
+      public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+        int offset = 0;
+        SolrIndexReader r = (SolrIndexReader)reader;
+        while (r.getParent() != null) {
+          offset += r.getBase();
+          r = r.getParent();
+        }
+
+        final int base = offset;
+        final int max = base + reader.maxDoc();   // one past the max doc in this segment.
+
+        return new DocIdSet() {
+          @Override
+          public DocIdSetIterator iterator() throws IOException {
+            return new DocIdSetIterator() {
+              int pos=base-1;
+              int adjustedDoc=-1;
+
+              @Override
+              public int docID() {
+                return adjustedDoc;
+              }
+
+              @Override
+              public int nextDoc() throws IOException {
+                pos = nextSetBit(pos+1);
+                return adjustedDoc = (pos>=0 && pos<max) ? pos-base : NO_MORE_DOCS;
+              }
+
+              @Override
+              public int advance(int target) throws IOException {
+                if (target==NO_MORE_DOCS) return adjustedDoc=NO_MORE_DOCS;
+                pos = nextSetBit(target+base);
+                return adjustedDoc = (pos>=0 && pos<max) ? pos-base : NO_MORE_DOCS;
+              }
+
+              @Override
+              public long cost() {
+                // counts the words of this segment, so may include a
+                // few docs of the neighbouring segments
+                long cost = 0;
+                int end = Math.min(((max-1) >>> 6) + 1, numWords);
+                for (int i = base >>> 6; i < end; i++) {
+                  cost += BitUtil.pop(words.get(i));
+                }
+                return cost;
+              }
+            };
+          }
+
+          @Override
+          public Bits bits() {
+            return new Bits() {
+              public boolean get(int doc) {
+                return exists(doc+base);
+              }
+
+              public int length() {
+                return max - base;
+              }
+            };
+          }
+
+          @Override
+          public boolean isCacheable() {
+            return true;
+          }
+        };
+      }
+    };
+  }
+}
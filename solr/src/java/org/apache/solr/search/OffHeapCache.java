@@ -0,0 +1,327 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search;
+
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.core.SolrCore;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * An LRU cache for {@link DocSet}s, intended as the <code>filterCache</code>
+ * of large indexes, that moves {@link BitDocSet} values to direct memory
+ * ({@link OffHeapBitDocSet}) and evicts by the memory used by its values
+ * instead of by the number of entries.
+ *
+ * <p>Configuration attributes, besides those common to all caches:
+ * <ul>
+ *   <li><code>maxRamMB</code> - the maximum memory, in megabytes, the cached
+ *   DocSets may use, both on and off heap (default 64).</li>
+ *   <li><code>size</code> - an optional maximum number of entries.</li>
+ *   <li><code>minOffHeapSize</code> - BitDocSets smaller than this many bytes
+ *   stay on the heap (default 1024).</li>
+ * </ul>
+ *
+ * @version $Id$
+ */
+public class OffHeapCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
+
+  /* An instance of this class will be shared across multiple instances
+   * of an OffHeapCache at the same time.  Make sure everything is thread safe.
+   */
+  private static class CumulativeStats {
+    AtomicLong lookups = new AtomicLong();
+    AtomicLong hits = new AtomicLong();
+    AtomicLong inserts = new AtomicLong();
+    AtomicLong evictions = new AtomicLong();
+  }
+
+  private CumulativeStats stats;
+
+  // per instance stats, guarded by the map's lock
+  private long lookups;
+  private long hits;
+  private long inserts;
+  private long evictions;
+  private long ramBytesUsed;
+  private long offHeapBytesUsed;
+
+  private LinkedHashMap<K,V> map;
+  private long maxRamBytes;
+  private int limit;
+  private long minOffHeapSize;
+  private String name;
+  private AutoWarmCountRef autowarm;
+  private State state;
+  private CacheRegenerator regenerator;
+  private String description="Off-Heap Cache";
+
+  public Object init(Map args, Object persistence, CacheRegenerator regenerator) {
+    state=State.CREATED;
+    this.regenerator = regenerator;
+    name = (String)args.get("name");
+    String str = (String)args.get("maxRamMB");
+    maxRamBytes = (long)((str==null ? 64 : Double.parseDouble(str)) * 1024 * 1024);
+    str = (String)args.get("size");
+    limit = str==null ? Integer.MAX_VALUE : Integer.parseInt(str);
+    str = (String)args.get("minOffHeapSize");
+    minOffHeapSize = str==null ? 1024 : Long.parseLong(str);
+    str = (String)args.get("initialSize");
+    final int initialSize = Math.min(str==null ? 1024 : Integer.parseInt(str), limit);
+    autowarm = new AutoWarmCountRef((String)args.get("autowarmCount"));
+    initWarmTime(args);
+    description = "Off-Heap Cache(maxRamMB=" + (maxRamBytes >> 20);
+    if (limit != Integer.MAX_VALUE) {
+      description += ", maxSize=" + limit;
+    }
+    if (autowarm.isAutoWarmingOn()) {
+      description += ", autowarmCount=" + autowarm + ", regenerator=" + regenerator;
+      if (maxWarmTime > 0) {
+        description += ", autowarmTime=" + maxWarmTime;
+      }
+    }
+    description += ')';
+
+    // access ordered, evictions are done by put()
+    map = new LinkedHashMap<K,V>(initialSize, 0.75f, true);
+
+    if (persistence==null) {
+      // must be the first time a cache of this type is being created
+      persistence = new CumulativeStats();
+    }
+
+    stats = (CumulativeStats)persistence;
+
+    return persistence;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  public int size() {
+    synchronized(map) {
+      return map.size();
+    }
+  }
+
+  /** Returns the memory used by the cached values, in bytes. */
+  public long ramBytesUsed() {
+    synchronized(map) {
+      return ramBytesUsed;
+    }
+  }
+
+  /** Moves large BitDocSets off the heap; other values are cached as they are. */
+  @SuppressWarnings("unchecked")
+  private V toCachedValue(V value) {
+    if (value instanceof BitDocSet && ((BitDocSet)value).memSize() >= minOffHeapSize) {
+      return (V) new OffHeapBitDocSet((BitDocSet)value);
+    }
+    return value;
+  }
+
+  private static long sizeOf(Object value) {
+    return value instanceof DocSet ? ((DocSet)value).memSize() : 0;
+  }
+
+  private void removed(V value) {
+    long sz = sizeOf(value);
+    ramBytesUsed -= sz;
+    if (value instanceof OffHeapBitDocSet) offHeapBytesUsed -= sz;
+  }
+
+  public V put(K key, V value) {
+    // copy outside of the lock
+    V cached = toCachedValue(value);
+    long sz = sizeOf(cached);
+    synchronized (map) {
+      if (state == State.LIVE) {
+        stats.inserts.incrementAndGet();
+      }
+      inserts++;
+
+      V old = map.put(key, cached);
+      if (old != null) removed(old);
+      ramBytesUsed += sz;
+      if (cached instanceof OffHeapBitDocSet) offHeapBytesUsed += sz;
+
+      // evict the least recently used entries, but always keep the newest one
+      Iterator<Map.Entry<K,V>> iter = map.entrySet().iterator();
+      while ((ramBytesUsed > maxRamBytes || map.size() > limit) && map.size() > 1) {
+        Map.Entry<K,V> eldest = iter.next();
+        if (eldest.getKey().equals(key)) continue;
+        removed(eldest.getValue());
+        iter.remove();
+        evictions++;
+        stats.evictions.incrementAndGet();
+      }
+      return old;
+    }
+  }
+
+  public V get(K key) {
+    synchronized (map) {
+      V val = map.get(key);
+      if (state == State.LIVE) {
+        // only increment lookups and hits if we are live.
+        lookups++;
+        stats.lookups.incrementAndGet();
+        if (val!=null) {
+          hits++;
+          stats.hits.incrementAndGet();
+        }
+      }
+      return val;
+    }
+  }
+
+  public void clear() {
+    synchronized(map) {
+      map.clear();
+      ramBytesUsed = 0;
+      offHeapBytesUsed = 0;
+    }
+  }
+
+  public void setState(State state) {
+    this.state = state;
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  public void warm(SolrIndexSearcher searcher, SolrCache<K,V> old) throws IOException {
+    if (regenerator==null) return;
+    long warmingStartTime = System.currentTimeMillis();
+    OffHeapCache<K,V> other = (OffHeapCache<K,V>)old;
+
+    // warm entries
+    if (autowarm.isAutoWarmingOn()) {
+      Object[] keys,vals = null;
+
+      // Don't do the autowarming in the synchronized block, just pull out the keys and values.
+      synchronized (other.map) {
+        int sz = autowarm.getWarmCount(other.map.size());
+
+        keys = new Object[sz];
+        vals = new Object[sz];
+
+        Iterator<Map.Entry<K, V>> iter = other.map.entrySet().iterator();
+
+        // iteration goes from oldest (least recently used) to most recently used,
+        // so we need to skip over the oldest entries.
+        int skip = other.map.size() - sz;
+        for (int i=0; i<skip; i++) iter.next();
+
+        for (int i=0; i<sz; i++) {
+          Map.Entry<K,V> entry = iter.next();
+          keys[i]=entry.getKey();
+          vals[i]=entry.getValue();
+        }
+      }
+
+      // autowarm from the oldest to the newest entries so that the ordering will be
+      // correct in the new cache.
+      regenerateItems(searcher, this, old, regenerator, keys, vals, log);
+    }
+
+    warmupTime = System.currentTimeMillis() - warmingStartTime;
+  }
+
+  public void close() {
+  }
+
+
+  //////////////////////// SolrInfoMBeans methods //////////////////////
+
+
+  public String getName() {
+    return OffHeapCache.class.getName();
+  }
+
+  public String getVersion() {
+    return SolrCore.version;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  public Category getCategory() {
+    return Category.CACHE;
+  }
+
+  public String getSourceId() {
+    return "$Id$";
+  }
+
+  public String getSource() {
+    return "$URL$";
+  }
+
+  public URL[] getDocs() {
+    return null;
+  }
+
+
+  // returns a ratio, not a percent.
+  private static String calcHitRatio(long lookups, long hits) {
+    if (lookups==0) return "0.00";
+    if (lookups==hits) return "1.00";
+    int hundredths = (int)(hits*100/lookups);   // rounded down
+    if (hundredths < 10) return "0.0" + hundredths;
+    return "0." + hundredths;
+  }
+
+  public NamedList getStatistics() {
+    NamedList lst = new SimpleOrderedMap();
+    if (map == null) return lst;
+    synchronized (map) {
+      lst.add("lookups", lookups);
+      lst.add("hits", hits);
+      lst.add("hitratio", calcHitRatio(lookups,hits));
+      lst.add("inserts", inserts);
+      lst.add("evictions", evictions);
+      lst.add("size", map.size());
+      lst.add("ramBytesUsed", ramBytesUsed);
+      lst.add("offHeapBytesUsed", offHeapBytesUsed);
+    }
+
+    addWarmStatistics(lst);
+
+    long clookups = stats.lookups.get();
+    long chits = stats.hits.get();
+    lst.add("cumulative_lookups", clookups);
+    lst.add("cumulative_hits", chits);
+    lst.add("cumulative_hitratio", calcHitRatio(clookups,chits));
+    lst.add("cumulative_inserts", stats.inserts.get());
+    lst.add("cumulative_evictions", stats.evictions.get());
+
+    return lst;
+  }
+
+  public String toString() {
+    return name + getStatistics().toString();
+  }
+}
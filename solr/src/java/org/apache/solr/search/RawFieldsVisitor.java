@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.document.AbstractField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.index.StoredFieldVisitor;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A reusable {@link StoredFieldVisitor} that collects the stored fields
+ * of a document, in order, without decoding them: string values are kept
+ * as UTF-8 bytes in {@link Utf8Field}s, binary values in binary
+ * {@link Field}s.  Response writers can write the bytes as is, and call
+ * {@link Fieldable#stringValue()} only for the field types that need it.
+ * <p>
+ * String values are copied, once, into a buffer that is reused by the
+ * next documents, so the collected fields are only valid until the next
+ * {@link #reset}.
+ *
+ * @see SolrIndexSearcher#doc(int, StoredFieldVisitor)
+ * @version $Id$
+ */
+public class RawFieldsVisitor extends StoredFieldVisitor {
+  private static final int BUFFER_SIZE = 4096;
+
+  private final Set<String> fields;
+  private final List<Fieldable> values = new ArrayList<Fieldable>();
+  private byte[] buffer = new byte[BUFFER_SIZE];
+  private int upto;
+
+  /**
+   * @param fields the names of the fields to collect, or null for all
+   *        stored fields
+   */
+  public RawFieldsVisitor(Set<String> fields) {
+    this.fields = fields;
+  }
+
+  /** Clear the fields collected for the previous document. */
+  public void reset() {
+    values.clear();
+    upto = 0;
+  }
+
+  /** The fields collected since the last {@link #reset}, in stored order;
+   *  they must not be used after the next {@link #reset}. */
+  public List<Fieldable> getFields() {
+    return values;
+  }
+
+  @Override
+  public Status needsField(String field) {
+    return fields == null || fields.contains(field) ? Status.YES : Status.NO;
+  }
+
+  @Override
+  public void stringField(String field, byte[] utf8, int offset, int length, boolean tokenized) {
+    final int start = copy(utf8, offset, length);
+    values.add(new Utf8Field(field, new BytesRef(buffer, start, length)));
+  }
+
+  @Override
+  public void binaryField(String field, byte[] value, int offset, int length) {
+    // binary values get their own array: field types read the whole
+    // array returned by getBinaryValue()
+    byte[] copy = new byte[length];
+    System.arraycopy(value, offset, copy, 0, length);
+    values.add(new Field(field, copy));
+  }
+
+  /** Copies the UTF-8 bytes to the buffer, and returns their offset there. */
+  private int copy(byte[] bytes, int offset, int length) {
+    if (length > buffer.length - upto) {
+      // the values collected so far keep the full buffer
+      buffer = new byte[ArrayUtil.oversize(Math.max(length, BUFFER_SIZE), 1)];
+      upto = 0;
+    }
+    final int start = upto;
+    System.arraycopy(bytes, offset, buffer, start, length);
+    upto += length;
+    return start;
+  }
+
+  /**
+   * A stored string field holding its value as UTF-8 bytes; the String
+   * is only created by {@link #stringValue()}.
+   */
+  public static final class Utf8Field extends AbstractField {
+    private final BytesRef utf8;
+
+    Utf8Field(String name, BytesRef utf8) {
+      super(name, Field.Store.YES, Field.Index.NO, Field.TermVector.NO);
+      this.utf8 = utf8;
+    }
+
+    /** The UTF-8 bytes of the value; must not be modified. */
+    public BytesRef getUTF8() {
+      return utf8;
+    }
+
+    public String stringValue() {
+      return utf8.utf8ToString();
+    }
+
+    public Reader readerValue() {
+      return null;
+    }
+
+    public TokenStream tokenStreamValue() {
+      return null;
+    }
+  }
+}
@@ -23,10 +23,16 @@ import org.apache.solr.common.util.SimpleOrderedMap;
 import org.apache.solr.core.SolrCore;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.io.IOException;
 import java.net.URL;
 
+import org.slf4j.Logger;
+
 /**
  * Common base class of reusable functionality for SolrCaches
  */
@@ -77,5 +83,166 @@ public abstract class SolrCacheBase {
         Math.min(previousCacheSize, autoWarmCount);
     }
   }
+
+  /** Time spent autowarming this cache, in milliseconds */
+  protected volatile long warmupTime = 0;
+  /** Number of items regenerated by the last autowarming */
+  protected volatile int warmupItems = 0;
+  /** Number of items not regenerated because the warm time budget was used up */
+  protected volatile int warmupSkipped = 0;
+  /** Number of items whose regeneration failed */
+  protected volatile int warmupErrors = 0;
+  /** Maximum time in milliseconds to spend autowarming, or 0 for no limit.
+   *  Set with the <code>autowarmTime</code> cache attribute. */
+  protected long maxWarmTime = 0;
+
+  /** Reads the autowarming options that are common to all caches. */
+  protected void initWarmTime(Map args) {
+    String str = (String) args.get("autowarmTime");
+    maxWarmTime = str == null ? 0 : Long.parseLong(str);
+  }
+
+  /**
+   * Regenerates the given items of <code>old</code> into <code>newCache</code>,
+   * from the first to the last.  If the core has an autowarm executor (see the
+   * <code>autowarmThreads</code> option in solrconfig.xml) the items are
+   * regenerated concurrently, in which case the order they are inserted in is only
+   * roughly preserved.  Regeneration stops when the regenerator returns false or
+   * when the <code>autowarmTime</code> budget has been used up.
+   */
+  protected void regenerateItems(final SolrIndexSearcher searcher, final SolrCache newCache, final SolrCache old,
+                                 final CacheRegenerator regenerator, final Object[] keys, final Object[] vals,
+                                 final Logger log) {
+    ExecutorService executor = searcher == null || searcher.getCore() == null
+        ? null : searcher.getCore().getAutowarmExecutor();
+    int nThreads = executor == null ? 1 : searcher.getCore().getSolrConfig().autowarmThreads;
+    regenerateItems(searcher, newCache, old, regenerator, keys, vals, log, executor, nThreads);
+  }
+
+  /**
+   * Regenerates the given items on up to <code>nThreads</code> threads of
+   * <code>executor</code>, or on the calling thread if <code>executor</code> is null.
+   * If the calling thread is interrupted the workers are cancelled, and the items
+   * they did not regenerate are counted as skipped; nothing is put in
+   * <code>newCache</code> once this method has returned.
+   */
+  void regenerateItems(final SolrIndexSearcher searcher, final SolrCache newCache, final SolrCache old,
+                       final CacheRegenerator regenerator, final Object[] keys, final Object[] vals,
+                       final Logger log, ExecutorService executor, int nThreads) {
+    final long warmingStartTime = System.currentTimeMillis();
+    final long deadline = maxWarmTime > 0 ? warmingStartTime + maxWarmTime : Long.MAX_VALUE;
+    final AtomicInteger next = new AtomicInteger();
+    final AtomicInteger regenerated = new AtomicInteger();
+    final AtomicInteger errors = new AtomicInteger();
+    // guarded by itself: whether warming was cancelled, and how many workers are running
+    final int[] running = new int[1];
+    final boolean[] cancelled = new boolean[1];
+
+    Runnable worker = new Runnable() {
+      public void run() {
+        synchronized (running) {
+          if (cancelled[0]) return;
+          running[0]++;
+        }
+        try {
+          regenerate();
+        } finally {
+          synchronized (running) {
+            running[0]--;
+            running.notifyAll();
+          }
+        }
+      }
+
+      private void regenerate() {
+        for (;;) {
+          if (System.currentTimeMillis() > deadline) return;
+          int i = next.getAndIncrement();
+          if (i >= keys.length) return;
+          try {
+            boolean continueRegen = regenerator.regenerateItem(searcher, newCache, old, keys[i], vals[i]);
+            regenerated.incrementAndGet();
+            if (!continueRegen) {
+              // make the other workers stop too
+              next.set(keys.length);
+              return;
+            }
+          }
+          catch (Throwable e) {
+            synchronized (running) {
+              // the item was interrupted by the cancellation, so it is skipped
+              if (cancelled[0]) return;
+            }
+            errors.incrementAndGet();
+            SolrException.log(log,"Error during auto-warming of key:" + keys[i], e);
+          }
+        }
+      }
+    };
+
+    boolean interrupted = false;
+    if (executor == null || nThreads <= 1 || keys.length <= 1) {
+      worker.run();
+    } else {
+      nThreads = Math.min(nThreads, keys.length);
+      List<Future<?>> futures = new ArrayList<Future<?>>(nThreads);
+      for (int i=0; i<nThreads; i++) {
+        futures.add(executor.submit(worker));
+      }
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (InterruptedException e) {
+          interrupted = true;
+          break;
+        } catch (ExecutionException e) {
+          SolrException.log(log, "Error during auto-warming", e.getCause());
+        }
+      }
+      if (interrupted) {
+        synchronized (running) {
+          cancelled[0] = true;
+        }
+        // stop handing out items, and interrupt the items being regenerated
+        next.set(keys.length);
+        for (Future<?> future : futures) {
+          future.cancel(true);
+        }
+        // wait for the running workers, so that nothing is put in newCache once we return
+        synchronized (running) {
+          while (running[0] > 0) {
+            try {
+              running.wait();
+            } catch (InterruptedException e) {
+              // keep waiting, the interrupt is restored below
+            }
+          }
+        }
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    warmupItems = regenerated.get();
+    warmupErrors = errors.get();
+    if (interrupted) {
+      warmupSkipped = keys.length - warmupItems - warmupErrors;
+      log.warn("Autowarming of " + newCache.name() + " was interrupted, "
+               + warmupSkipped + " of " + keys.length + " items were not regenerated");
+    } else {
+      warmupSkipped = Math.max(0, keys.length - next.get());
+      if (warmupSkipped > 0) {
+        log.warn("Autowarming of " + newCache.name() + " stopped after " + maxWarmTime + " ms, "
+                 + warmupSkipped + " of " + keys.length + " items were not regenerated");
+      }
+    }
+  }
+
+  /** Adds the autowarming statistics to <code>lst</code>. */
+  protected void addWarmStatistics(NamedList lst) {
+    lst.add("warmupTime", warmupTime);
+    lst.add("warmupItems", warmupItems);
+    lst.add("warmupSkipped", warmupSkipped);
+    lst.add("warmupErrors", warmupErrors);
+  }
 }
 
@@ -67,7 +67,9 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
   private final int queryResultWindowSize;
   private final int queryResultMaxDocsCached;
   private final boolean useFilterForSortedQuery;
+  private final boolean compressedDocSets;
   public final boolean enableLazyFieldLoading;
+  private final boolean cacheResponseDocuments;
   
   private final boolean cachingEnabled;
   private final SolrCache<Query,DocSet> filterCache;
@@ -151,7 +153,9 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
     queryResultWindowSize = solrConfig.queryResultWindowSize;
     queryResultMaxDocsCached = solrConfig.queryResultMaxDocsCached;
     useFilterForSortedQuery = solrConfig.useFilterForSortedQuery;
+    compressedDocSets = solrConfig.compressedDocSets;
     enableLazyFieldLoading = solrConfig.enableLazyFieldLoading;
+    cacheResponseDocuments = solrConfig.cacheResponseDocuments;
     
     cachingEnabled=enableCache;
     if (cachingEnabled) {
@@ -243,6 +247,9 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
 
   /** Direct access to the IndexReader used by this searcher */
   public SolrIndexReader getReader() { return reader; }
+
+  /** the core this searcher was opened for */
+  public SolrCore getCore() { return core; }
   /** Direct access to the IndexSchema for use with this searcher */
   public IndexSchema getSchema() { return schema; }
   
@@ -411,6 +418,36 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
     return getIndexReader().document(n, fieldSelector);
   }
 
+  /**
+   * Visit the stored fields of a document without creating a
+   * {@link Document}: the stored bytes are visited directly.  The
+   * document cache is neither consulted nor populated, see
+   * {@link #cachedDoc(int, Set)}.
+   *
+   * @see IndexReader#document(int, StoredFieldVisitor)
+   */
+  public void doc(int i, StoredFieldVisitor visitor) throws IOException {
+    getIndexReader().document(i, visitor);
+  }
+
+  /**
+   * Returns the {@link Document} if it is in the document cache, else null,
+   * in which case callers visit its stored fields with
+   * {@link #doc(int, StoredFieldVisitor)}.  If <code>cacheResponseDocuments</code>
+   * is enabled in solrconfig.xml, a missing document is instead retrieved and
+   * cached like {@link #doc(int, Set)}.
+   */
+  public Document cachedDoc(int i, Set<String> fields) throws IOException {
+    if (documentCache == null) {
+      return null;
+    }
+    Document d = documentCache.get(i);
+    if (d == null && cacheResponseDocuments) {
+      d = doc(i, fields);
+    }
+    return d;
+  }
+
   /**
    * Retrieve the {@link Document} instance corresponding to the document id.
    *
@@ -511,7 +548,7 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
     // or OS disk cache.
     if (optionalAnswer != null) {
       if (filterCache!=null) {
-        filterCache.put(query,optionalAnswer);
+        putFilter(query,optionalAnswer);
       }
       return;
     }
@@ -524,6 +561,18 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
     getDocSet(query);
   }
 
+  /**
+   * Adds a DocSet to the filterCache, first converting bit sets to the smaller
+   * {@link ChunkedDocSet} when <code>compressedDocSets</code> is enabled and
+   * the set is sparse enough.
+   */
+  private void putFilter(Query query, DocSet set) {
+    if (compressedDocSets && set instanceof BitDocSet) {
+      set = ChunkedDocSet.compress((BitDocSet)set);
+    }
+    filterCache.put(query, set);
+  }
+
   /**
    * Returns the set of document ids matching a query.
    * This method is cache-aware and attempts to retrieve the answer from the cache if possible.
@@ -551,7 +600,7 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
 
     if (filterCache != null) {
       // cache negative queries as positive
-      filterCache.put(absQ, absAnswer);
+      putFilter(absQ, absAnswer);
     }
 
     return answer;
@@ -577,7 +626,7 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
 
     if (filterCache != null) {
       // cache negative queries as positive
-      filterCache.put(absQ, absAnswer);
+      putFilter(absQ, absAnswer);
     }
 
     return answer;
@@ -591,7 +640,7 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
       if (answer!=null) return answer;
     }
     answer = getDocSetNC(q,null);
-    if (filterCache != null) filterCache.put(q,answer);
+    if (filterCache != null) putFilter(q,answer);
     return answer;
   }
 
@@ -603,7 +652,7 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
       if (answer!=null) return answer;
     }
     answer = getDocSetNC(q,null,deState);
-    if (filterCache != null) filterCache.put(q,answer);
+    if (filterCache != null) putFilter(q,answer);
     return answer;
   }
 
@@ -810,7 +859,7 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
       first = (DocSet)filterCache.get(absQ);
       if (first==null) {
         first = getDocSetNC(absQ,null);
-        filterCache.put(absQ,first);
+        putFilter(absQ,first);
       }
       return positive ? first.intersection(filter) : filter.andNot(first);
     }
@@ -1135,7 +1184,7 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
         // the base query and all filters.
         DocSet qDocSet = getDocListAndSetNC(qr,cmd);
         // cache the docSet matching the query w/o filtering
-        if (qDocSet!=null && filterCache!=null && !qr.isPartialResults()) filterCache.put(cmd.getQuery(),qDocSet);
+        if (qDocSet!=null && filterCache!=null && !qr.isPartialResults()) putFilter(cmd.getQuery(),qDocSet);
       } else {
         getDocListNC(qr,cmd);
         //Parameters: cmd.getQuery(),theFilt,cmd.getSort(),0,supersetMaxDoc,cmd.getFlags(),cmd.getTimeAllowed(),responseHeader);
@@ -1624,7 +1673,8 @@ public class SolrIndexSearcher extends IndexSearcher implements SolrInfoMBean {
 
   protected DocList sortDocSet(DocSet set, Sort sort, int nDocs) throws IOException {
     // bit of a hack to tell if a set is sorted - do it better in the futute.
-    boolean inOrder = set instanceof BitDocSet || set instanceof SortedIntDocSet;
+    boolean inOrder = set instanceof BitDocSet || set instanceof SortedIntDocSet || set instanceof OffHeapBitDocSet
+        || set instanceof ChunkedDocSet;
 
     TopDocsCollector topCollector = TopFieldCollector.create(sort, nDocs, false, false, false, inOrder);
 
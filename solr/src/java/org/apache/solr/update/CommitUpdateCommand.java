@@ -25,6 +25,14 @@ public class CommitUpdateCommand extends UpdateCommand {
   public boolean waitSearcher=true;
   public boolean expungeDeletes = false;
 
+  /**
+   * If true, only open a new searcher on the pending changes, without
+   * flushing them to stable storage.  Ignored when optimizing.
+   *
+   * @see org.apache.lucene.index.IndexWriter#getReader()
+   */
+  public boolean softCommit = false;
+
   /**
    * During optimize, optimize down to <= this many segments.  Must be >= 1
    *
@@ -41,6 +49,7 @@ public class CommitUpdateCommand extends UpdateCommand {
             +",waitFlush="+waitFlush
             +",waitSearcher="+waitSearcher
             +",expungeDeletes="+expungeDeletes
+            +",softCommit="+softCommit
             +')';
   }
 }
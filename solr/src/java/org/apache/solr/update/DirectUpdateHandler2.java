@@ -48,6 +48,7 @@ import org.apache.solr.search.QueryParsing;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.core.SolrConfig;
 import org.apache.solr.core.SolrCore;
 
 /**
@@ -133,6 +134,7 @@ public class DirectUpdateHandler2 extends UpdateHandler {
   AtomicLong expungeDeleteCommands = new AtomicLong();
   AtomicLong mergeIndexesCommands = new AtomicLong();
   AtomicLong commitCommands= new AtomicLong();
+  AtomicLong softCommitCommands= new AtomicLong();
   AtomicLong optimizeCommands= new AtomicLong();
   AtomicLong rollbackCommands= new AtomicLong();
   AtomicLong numDocsPending= new AtomicLong();
@@ -141,6 +143,8 @@ public class DirectUpdateHandler2 extends UpdateHandler {
 
   // tracks when auto-commit should occur
   protected final CommitTracker tracker;
+  // tracks when auto-soft-commit should occur
+  protected final CommitTracker softTracker;
 
   // iwCommit protects internal data and open/close of the IndexWriter and
   // is a mutex. Any use of the index writer should be protected by iwAccess, 
@@ -157,7 +161,11 @@ public class DirectUpdateHandler2 extends UpdateHandler {
     iwAccess = rwl.readLock();
     iwCommit = rwl.writeLock();
 
-    tracker = new CommitTracker();
+    SolrConfig.UpdateHandlerInfo updateHandlerInfo = core.getSolrConfig().getUpdateHandlerInfo();
+    tracker = new CommitTracker("AutoCommit", updateHandlerInfo.autoCommmitMaxDocs,
+        updateHandlerInfo.autoCommmitMaxTime, false);
+    softTracker = new CommitTracker("AutoSoftCommit", updateHandlerInfo.autoSoftCommitMaxDocs,
+        updateHandlerInfo.autoSoftCommitMaxTime, true);
   }
 
   // must only be called when iwCommit lock held
@@ -219,6 +227,7 @@ public class DirectUpdateHandler2 extends UpdateHandler {
         // adding document -- prep writer
         openWriter();
         tracker.addedDocument( cmd.commitWithin );
+        softTracker.addedDocument( -1 );
       } // end synchronized block
 
       // this is the only unsynchronized code in the iwAccess block, which
@@ -292,6 +301,9 @@ public class DirectUpdateHandler2 extends UpdateHandler {
     if( tracker.timeUpperBound > 0 ) {
       tracker.scheduleCommitWithin( tracker.timeUpperBound );
     }
+    if( softTracker.timeUpperBound > 0 ) {
+      softTracker.scheduleCommitWithin( softTracker.timeUpperBound );
+    }
   }
 
   // why not return number of docs deleted?
@@ -334,6 +346,9 @@ public class DirectUpdateHandler2 extends UpdateHandler {
      if( tracker.timeUpperBound > 0 ) {
        tracker.scheduleCommitWithin( tracker.timeUpperBound );
      }
+     if( softTracker.timeUpperBound > 0 ) {
+       softTracker.scheduleCommitWithin( softTracker.timeUpperBound );
+     }
     } finally {
       if (!madeIt) {
         numErrors.incrementAndGet();
@@ -381,6 +396,11 @@ public class DirectUpdateHandler2 extends UpdateHandler {
 
   public void commit(CommitUpdateCommand cmd) throws IOException {
 
+    if (cmd.softCommit && !cmd.optimize) {
+      softCommit(cmd);
+      return;
+    }
+
     if (cmd.optimize) {
       optimizeCommands.incrementAndGet();
     } else {
@@ -417,8 +437,9 @@ public class DirectUpdateHandler2 extends UpdateHandler {
       // and adds of another commit being done.
       core.getSearcher(true,false,waitSearcher);
 
-      // reset commit tracking
+      // reset commit tracking, a commit also makes everything visible
       tracker.didCommit();
+      softTracker.didCommit();
 
       log.info("end_commit_flush");
 
@@ -445,6 +466,45 @@ public class DirectUpdateHandler2 extends UpdateHandler {
     }
   }
 
+  /**
+   * Opens a new searcher on the IndexWriter's near real-time reader, which sees
+   * the pending changes without them being flushed to stable storage, and keeps
+   * the writer open.  The changes only become durable with the next regular commit.
+   */
+  protected void softCommit(CommitUpdateCommand cmd) throws IOException {
+    softCommitCommands.incrementAndGet();
+
+    Future[] waitSearcher = null;
+    if (cmd.waitSearcher) {
+      waitSearcher = new Future[1];
+    }
+
+    iwCommit.lock();
+    try {
+      log.info("start "+cmd);
+
+      openWriter();
+      // open the searcher in the sync block, for the same reasons as commit()
+      core.getSearcher(true,false,waitSearcher,writer);
+
+      softTracker.didCommit();
+
+      log.info("end_soft_commit");
+    } finally {
+      iwCommit.unlock();
+    }
+
+    if (waitSearcher!=null && waitSearcher[0] != null) {
+       try {
+        waitSearcher[0].get();
+      } catch (InterruptedException e) {
+        SolrException.log(log,e);
+      } catch (ExecutionException e) {
+        SolrException.log(log,e);
+      }
+    }
+  }
+
   /**
    * @since Solr 1.4
    */
@@ -463,6 +523,7 @@ public class DirectUpdateHandler2 extends UpdateHandler {
 
       // reset commit tracking
       tracker.didRollback();
+      softTracker.didRollback();
 
       log.info("end_rollback");
 
@@ -486,11 +547,8 @@ public class DirectUpdateHandler2 extends UpdateHandler {
     iwCommit.lock();
     try{
       // cancel any pending operations
-      if( tracker.pending != null ) {
-        tracker.pending.cancel( true );
-        tracker.pending = null;
-      }
-      tracker.scheduler.shutdown();
+      tracker.close();
+      softTracker.close();
       closeWriter();
     } finally {
       iwCommit.unlock();
@@ -511,6 +569,10 @@ public class DirectUpdateHandler2 extends UpdateHandler {
     // scheduler delay for maxDoc-triggered autocommits
     public final int DOC_COMMIT_DELAY_MS = 250;
 
+    private final String name;
+    // if true, the scheduled commits are soft commits
+    private final boolean softCommit;
+
     // settings, not final so we can change them in testing
     int docsUpperBound;
     long timeUpperBound;
@@ -524,14 +586,16 @@ public class DirectUpdateHandler2 extends UpdateHandler {
     int autoCommitCount = 0;
     long lastAddedTime = -1;
 
-    public CommitTracker() {
+    public CommitTracker(String name, int docsUpperBound, long timeUpperBound, boolean softCommit) {
       docsSinceCommit = 0;
       pending = null;
 
-      docsUpperBound = core.getSolrConfig().getUpdateHandlerInfo().autoCommmitMaxDocs;   //getInt("updateHandler/autoCommit/maxDocs", -1);
-      timeUpperBound = core.getSolrConfig().getUpdateHandlerInfo().autoCommmitMaxTime;    //getInt("updateHandler/autoCommit/maxTime", -1);
+      this.name = name;
+      this.docsUpperBound = docsUpperBound;
+      this.timeUpperBound = timeUpperBound;
+      this.softCommit = softCommit;
 
-      SolrCore.log.info("AutoCommit: " + this);
+      SolrCore.log.info(name + ": " + this);
     }
 
     /** schedule individual commits */
@@ -598,12 +662,13 @@ public class DirectUpdateHandler2 extends UpdateHandler {
         CommitUpdateCommand command = new CommitUpdateCommand( false );
         command.waitFlush = true;
         command.waitSearcher = true;
+        command.softCommit = softCommit;
         //no need for command.maxOptimizeSegments = 1;  since it is not optimizing
         commit( command );
         autoCommitCount++;
       }
       catch (Exception e) {
-        log.error( "auto commit error..." );
+        log.error( name + " error..." );
         e.printStackTrace();
       }
       finally {
@@ -624,6 +689,15 @@ public class DirectUpdateHandler2 extends UpdateHandler {
     // to facilitate testing: blocks if called during commit
     public synchronized int getCommitCount() { return autoCommitCount; }
 
+    /** Cancels the pending commit, if any, and stops the scheduler */
+    public synchronized void close() {
+      if( pending != null ) {
+        pending.cancel( true );
+        pending = null;
+      }
+      scheduler.shutdown();
+    }
+
     public String toString() {
       if(timeUpperBound > 0 || docsUpperBound > 0) {
         return
@@ -679,6 +753,14 @@ public class DirectUpdateHandler2 extends UpdateHandler {
       lst.add("autocommit maxTime", "" + tracker.timeUpperBound + "ms");
     }
     lst.add("autocommits", tracker.autoCommitCount);
+    lst.add("soft commits", softCommitCommands.get());
+    if (softTracker.docsUpperBound > 0) {
+      lst.add("soft autocommit maxDocs", softTracker.docsUpperBound);
+    }
+    if (softTracker.timeUpperBound > 0) {
+      lst.add("soft autocommit maxTime", "" + softTracker.timeUpperBound + "ms");
+    }
+    lst.add("soft autocommits", softTracker.autoCommitCount);
     lst.add("optimizes", optimizeCommands.get());
     lst.add("rollbacks", rollbackCommands.get());
     lst.add("expungeDeletes", expungeDeleteCommands.get());
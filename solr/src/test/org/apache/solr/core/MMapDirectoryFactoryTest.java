@@ -0,0 +1,62 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.core;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.solr.common.util.NamedList;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Test-case for MMapDirectoryFactory
+ */
+public class MMapDirectoryFactoryTest extends LuceneTestCase {
+  public void testInitArgs() throws IOException {
+    NamedList<Object> args = new NamedList<Object>();
+    args.add("maxChunkSize", 1000);
+    args.add("unmap", false);
+    args.add("preload", "tii, nrm");
+    MMapDirectoryFactory factory = new MMapDirectoryFactory();
+    factory.init(args);
+
+    File path = new File(TEMP_DIR, "MMapDirectoryFactoryTest");
+    Directory dir = factory.open(path.getAbsolutePath());
+    assertTrue(dir instanceof MMapDirectory);
+    MMapDirectory mmapDir = (MMapDirectory) dir;
+    assertEquals(512, mmapDir.getMaxChunkSize());
+    assertFalse(mmapDir.getUseUnmap());
+    assertEquals(2, mmapDir.getPreloadExtensions().size());
+    assertTrue(mmapDir.getPreloadExtensions().contains("tii"));
+    assertTrue(mmapDir.getPreloadExtensions().contains("nrm"));
+    dir.close();
+  }
+
+  public void testDefaults() throws IOException {
+    MMapDirectoryFactory factory = new MMapDirectoryFactory();
+    factory.init(new NamedList());
+    Directory dir = factory.open(new File(TEMP_DIR, "MMapDirectoryFactoryTest").getAbsolutePath());
+    MMapDirectory mmapDir = (MMapDirectory) dir;
+    assertEquals(MMapDirectory.DEFAULT_MAX_BUFF, mmapDir.getMaxChunkSize());
+    assertEquals(MMapDirectory.UNMAP_SUPPORTED, mmapDir.getUseUnmap());
+    assertTrue(mmapDir.getPreloadExtensions().isEmpty());
+    dir.close();
+  }
+}
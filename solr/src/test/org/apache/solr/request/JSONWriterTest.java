@@ -98,5 +98,15 @@ public class JSONWriterTest extends SolrTestCaseJ4 {
     assertEquals(buf.toString(), "{\"nl\":[[\"data1\",\"hello\"],[null,42]]}");
 
   }
+
+  @Test
+  public void testStoredStrings() throws Exception {
+    // string values of documents are escaped from their stored UTF-8 bytes
+    assertU(adoc("id", "1", "subject", "caf\u00e9 \"quoted\" \\ \t\u2028\ud801\udc00", "foo_s", "plain"));
+    assertU(commit());
+    String out = h.query(req("q","id:1", "wt","json", "fl","subject,foo_s"));
+    assertTrue(out, out.contains("\"subject\":[\"caf\u00e9 \\\"quoted\\\" \\\\ \\t\\u2028\ud801\udc00\"]"));
+    assertTrue(out, out.contains("\"foo_s\":[\"plain\"]"));
+  }
   
 }
@@ -16,6 +16,7 @@
  */
 package org.apache.solr.request;
 
+import org.apache.lucene.index.Term;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.params.CommonParams;
@@ -23,10 +24,12 @@ import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.JavaBinCodec;
 import org.apache.solr.response.BinaryQueryResponseWriter;
 import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.search.SolrCache;
 import org.apache.solr.util.AbstractSolrTestCase;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
 import java.util.Locale;
 import java.util.UUID;
 
@@ -66,4 +69,65 @@ public class TestBinaryResponseWriter extends AbstractSolrTestCase {
       assertEquals("Wrong UUID string returned", s, document.getFieldValue("uuid"));
     }
   }
+
+  /**
+   * String values are written straight from the stored UTF-8 bytes; check
+   * they decode to the indexed Strings, and that other types still go
+   * through their field type
+   */
+  public void testStringFields() throws Exception {
+    String subject = "caf\u00e9 \"quoted\" \\ \ud801\udc00";
+    assertU(adoc("id", "102", "subject", subject, "foo_s", "a\tb", "foo_s", "\u2028", "foo_i", "42"));
+    assertU(commit());
+    LocalSolrQueryRequest req = lrf.makeRequest("q", "id:102");
+    SolrQueryResponse rsp = h.queryAndResponse(req.getParams().get(CommonParams.QT), req);
+    BinaryQueryResponseWriter writer = (BinaryQueryResponseWriter) h.getCore().getQueryResponseWriter("javabin");
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    writer.write(baos, req, rsp);
+    NamedList res = (NamedList) new JavaBinCodec().unmarshal(new ByteArrayInputStream(baos.toByteArray()));
+    SolrDocumentList docs = (SolrDocumentList) res.get("response");
+    assertEquals(1, docs.size());
+    SolrDocument document = docs.get(0);
+    assertEquals("102", document.getFieldValue("id"));
+    assertEquals(subject, document.getFieldValue("subject"));
+    assertEquals(Arrays.asList("a\tb", "\u2028"), document.getFieldValues("foo_s"));
+    assertEquals(42, document.getFieldValue("foo_i"));
+  }
+
+  /**
+   * Documents that are not cached are written from their stored fields,
+   * without being cached; cached documents are written as is, the same way
+   */
+  public void testDocumentCache() throws Exception {
+    String subject = "caf\u00e9";
+    assertU(adoc("id", "103", "subject", subject, "foo_i", "7"));
+    assertU(commit());
+    LocalSolrQueryRequest req = lrf.makeRequest("q", "id:103");
+    SolrQueryResponse rsp = h.queryAndResponse(req.getParams().get(CommonParams.QT), req);
+    BinaryQueryResponseWriter writer = (BinaryQueryResponseWriter) h.getCore().getQueryResponseWriter("javabin");
+    SolrCache cache = (SolrCache) h.getCore().getInfoRegistry().get("documentCache");
+    // the query may have cached the document
+    cache.clear();
+    for (int i = 0; i < 2; i++) {
+      long hits = (Long) cache.getStatistics().get("hits");
+      long inserts = (Long) cache.getStatistics().get("inserts");
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      writer.write(baos, req, rsp);
+      NamedList stats = cache.getStatistics();
+      if (i == 0) {
+        assertEquals(stats.toString(), hits, stats.get("hits"));
+        assertEquals(stats.toString(), inserts, stats.get("inserts"));
+        // cache the document
+        req.getSearcher().doc(req.getSearcher().getFirstMatch(new Term("id", "103")));
+      } else {
+        assertEquals(stats.toString(), hits + 1, stats.get("hits"));
+      }
+      NamedList res = (NamedList) new JavaBinCodec().unmarshal(new ByteArrayInputStream(baos.toByteArray()));
+      SolrDocument document = ((SolrDocumentList) res.get("response")).get(0);
+      assertEquals("103", document.getFieldValue("id"));
+      assertEquals(subject, document.getFieldValue("subject"));
+      assertEquals(7, document.getFieldValue("foo_i"));
+    }
+    req.close();
+  }
 }
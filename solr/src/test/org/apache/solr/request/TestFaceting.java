@@ -18,15 +18,29 @@
 package org.apache.solr.request;
 
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.util.BytesRef;
 import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.params.FacetParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.SolrIndexSearcher;
 import org.junit.After;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * @version $Id: TestFaceting.java 955257 2010-06-16 15:17:32Z mikemccand $
@@ -251,4 +265,121 @@ public class TestFaceting extends SolrTestCaseJ4 {
   }
 
 
+
+  @Test
+  public void testPerSegment() throws Exception {
+    Random r = newRandom();
+    String field = "perseg_ss";
+    Map<String,List<String>> model = new HashMap<String,List<String>>();
+    Set<String> even = new HashSet<String>();
+
+    assertU(delQ("*:*"));
+    assertU(commit());
+    int id = 0;
+    for (int seg=0; seg<5; seg++) {
+      int numDocs = 20 + r.nextInt(50);
+      for (int i=0; i<numDocs; i++) {
+        List<String> vals = new ArrayList<String>();
+        // a few values that are frequent in some segments only,
+        // so that they are big terms there but un-inverted elsewhere
+        if (seg % 2 == 0 && r.nextInt(4) != 0) vals.add("common" + seg);
+        int n = r.nextInt(4);
+        for (int j=0; j<n; j++) {
+          String v = "v" + r.nextInt(40);
+          if (!vals.contains(v)) vals.add(v);
+        }
+        String docId = Integer.toString(id++);
+        String[] fieldsAndValues = new String[4 + 2*vals.size()];
+        fieldsAndValues[0] = "id";
+        fieldsAndValues[1] = docId;
+        fieldsAndValues[2] = "parity_s";
+        fieldsAndValues[3] = (id % 2 == 0) ? "even" : "odd";
+        for (int j=0; j<vals.size(); j++) {
+          fieldsAndValues[4+2*j] = field;
+          fieldsAndValues[5+2*j] = vals.get(j);
+        }
+        assertU(adoc(fieldsAndValues));
+        model.put(docId, vals);
+        if (id % 2 == 0) even.add(docId);
+      }
+      assertU(commit());
+    }
+
+    // delete some docs, leaving the segments' cores shared
+    for (int i=0; i<10; i++) {
+      String docId = Integer.toString(r.nextInt(id));
+      assertU(delI(docId));
+      model.remove(docId);
+      even.remove(docId);
+    }
+    assertU(commit());
+    checkPerSegmentCounts(field, model, even);
+
+    // a new segment: the existing ones must not be un-inverted again
+    assertU(adoc("id", Integer.toString(id), "parity_s", "odd", field, "v1", field, "new"));
+    model.put(Integer.toString(id), Arrays.asList("v1", "new"));
+    assertU(commit());
+    UnInvertedField uif = checkPerSegmentCounts(field, model, even);
+    assertTrue(uif.toString(), uif.segmentsReused > 0);
+  }
+
+  @Test
+  public void testSegmentCacheEviction() throws Exception {
+    String field = "evict_ss";
+    assertU(delQ("*:*"));
+    assertU(commit());
+    for (int seg=0; seg<3; seg++) {
+      assertU(adoc("id", Integer.toString(seg), field, "a", field, "b" + seg));
+      assertU(commit());
+    }
+    SegmentUnInvertedFieldCache cache = h.getCore().getSegmentFieldValueCache();
+    SolrQueryRequest req = req("q", "*:*");
+    try {
+      UnInvertedField.getUnInvertedField(field, req.getSearcher());
+    } finally {
+      req.close();
+    }
+    NamedList stats = cache.getStatistics();
+    assertTrue(stats.toString(), (Integer)stats.get("size") >= 3);
+    long evictions = (Long)stats.get("evictions");
+
+    // the segments go away with the searchers that use them
+    assertU(delQ("*:*"));
+    assertU(adoc("id", "3", field, "c"));
+    assertU(optimize());
+    stats = cache.getStatistics();
+    assertTrue(stats.toString(), (Long)stats.get("evictions") >= evictions + 3);
+  }
+
+  private UnInvertedField checkPerSegmentCounts(String field, Map<String,List<String>> model, Set<String> even) throws Exception {
+    SolrQueryRequest req = req("q", "*:*");
+    try {
+      SolrIndexSearcher searcher = req.getSearcher();
+      UnInvertedField uif = UnInvertedField.getUnInvertedField(field, searcher);
+
+      for (String parity : new String[] {null, "even"}) {
+        Map<String,Integer> expected = new TreeMap<String,Integer>();
+        for (Map.Entry<String,List<String>> doc : model.entrySet()) {
+          if (parity != null && !even.contains(doc.getKey())) continue;
+          for (String v : doc.getValue()) {
+            Integer c = expected.get(v);
+            expected.put(v, c == null ? 1 : c+1);
+          }
+        }
+
+        DocSet docs = parity == null ? searcher.getDocSet(new MatchAllDocsQuery())
+                                     : searcher.getDocSet(new TermQuery(new Term("parity_s", parity)));
+        NamedList counts = uif.getCounts(searcher, docs, 0, -1, 1, false, FacetParams.FACET_SORT_INDEX, null);
+        Map<String,Integer> actual = new TreeMap<String,Integer>();
+        for (int i=0; i<counts.size(); i++) {
+          actual.put(counts.getName(i), (Integer)counts.getVal(i));
+        }
+        assertEquals(uif.toString(), expected, actual);
+      }
+      return uif;
+    } finally {
+      req.close();
+    }
+  }
+
 }
\ No newline at end of file
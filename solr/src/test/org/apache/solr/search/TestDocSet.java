@@ -21,6 +21,7 @@ import java.util.Random;
 import java.util.Arrays;
 import java.io.IOException;
 
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.LuceneTestCase;
 import org.apache.lucene.util.OpenBitSet;
 import org.apache.lucene.util.OpenBitSetIterator;
@@ -70,6 +71,14 @@ public class TestDocSet extends LuceneTestCase {
     return new BitDocSet(bs);
   }
 
+  public DocSet getOffHeapBitDocSet(OpenBitSet bs) {
+    return new OffHeapBitDocSet(bs);
+  }
+
+  public DocSet getChunkedDocSet(OpenBitSet bs) {
+    return ChunkedDocSet.create(new BitDocSet(bs));
+  }
+
   public DocSet getDocSlice(OpenBitSet bs) {
     int len = (int)bs.cardinality();
     int[] arr = new int[len+5];
@@ -88,7 +97,7 @@ public class TestDocSet extends LuceneTestCase {
 
 
   public DocSet getDocSet(OpenBitSet bs) {
-    switch(rand.nextInt(10)) {
+    switch(rand.nextInt(12)) {
       case 0: return getHashDocSet(bs);
 
       case 1: return getBitDocSet(bs);
@@ -102,6 +111,10 @@ public class TestDocSet extends LuceneTestCase {
       case 8: return getIntDocSet(bs);
 
       case 9: return getDocSlice(bs);
+
+      case 10: return getOffHeapBitDocSet(bs);
+
+      case 11: return getChunkedDocSet(bs);
     }
     return null;
   }
@@ -403,24 +416,48 @@ public class TestDocSet extends LuceneTestCase {
     }
   }
 
+  // random access, where supported, must agree with the iterator
+  public void doTestBits(DocIdSet a, int maxDoc) throws IOException {
+    Bits bits = a.bits();
+    if (bits == null) return;
+    DocIdSetIterator it = a.iterator();
+    int next = it.nextDoc();
+    for (int doc=0; doc<maxDoc; doc++) {
+      boolean expected = doc == next;
+      assertEquals(expected, bits.get(doc));
+      if (expected) next = it.nextDoc();
+    }
+  }
+
   public void doFilterTest(SolrIndexReader reader) throws IOException {
     OpenBitSet bs = getRandomSet(reader.maxDoc(), rand.nextInt(reader.maxDoc()+1));
     DocSet a = new BitDocSet(bs);
     DocSet b = getIntDocSet(bs);
+    DocSet c = getOffHeapBitDocSet(bs);
+    DocSet d = getChunkedDocSet(bs);
 
     Filter fa = a.getTopFilter();
     Filter fb = b.getTopFilter();
+    Filter fc = c.getTopFilter();
+    Filter fd = d.getTopFilter();
 
     // test top-level
     DocIdSet da = fa.getDocIdSet(reader);
     DocIdSet db = fb.getDocIdSet(reader);
     doTestIteratorEqual(da, db);
+    doTestIteratorEqual(da, fc.getDocIdSet(reader));
+    doTestIteratorEqual(da, fd.getDocIdSet(reader));
+    doTestBits(da, reader.maxDoc());
 
     // first test in-sequence sub readers
     for (SolrIndexReader sir : reader.getLeafReaders()) {
       da = fa.getDocIdSet(sir);
       db = fb.getDocIdSet(sir);
       doTestIteratorEqual(da, db);
+      doTestIteratorEqual(da, fc.getDocIdSet(sir));
+      doTestIteratorEqual(da, fd.getDocIdSet(sir));
+      doTestBits(da, sir.maxDoc());
+      doTestBits(fc.getDocIdSet(sir), sir.maxDoc());
     }  
 
     int nReaders = reader.getLeafReaders().length;
@@ -433,6 +470,60 @@ public class TestDocSet extends LuceneTestCase {
     }
   }
 
+  // sets spanning several chunks, with both sparse and dense chunks
+  private OpenBitSet getChunkyRandomSet(int maxDoc) {
+    OpenBitSet bs = new OpenBitSet(maxDoc);
+    for (int start = 0; start < maxDoc; start += 65536) {
+      int end = Math.min(maxDoc, start + 65536);
+      switch (rand.nextInt(4)) {
+        case 0: break;  // empty chunk
+        case 1: for (int i=0; i<rand.nextInt(100); i++) bs.fastSet(start + rand.nextInt(end-start)); break;
+        case 2: for (int i=0; i<5000; i++) bs.fastSet(start + rand.nextInt(end-start)); break;
+        case 3: for (int i=start; i<end; i++) if (rand.nextInt(3)==0) bs.fastSet(i); break;
+      }
+    }
+    return bs;
+  }
+
+  public void testChunkedDocSet() throws IOException {
+    for (int iter=0; iter<20; iter++) {
+      int maxDoc = rand.nextInt(300000) + 1;
+      OpenBitSet bs1 = getChunkyRandomSet(maxDoc);
+      OpenBitSet bs2 = getChunkyRandomSet(maxDoc);
+      DocSet c1 = getChunkedDocSet(bs1);
+      DocSet c2 = getChunkedDocSet(bs2);
+
+      checkEqual(bs1, c1);
+      iter(new BitDocSet(bs1), c1);
+      assertEquals(new BitDocSet(bs1), c1);
+
+      OpenBitSet a_and = (OpenBitSet) bs1.clone(); a_and.and(bs2);
+      OpenBitSet a_or = (OpenBitSet) bs1.clone(); a_or.or(bs2);
+      OpenBitSet a_andn = (OpenBitSet) bs1.clone(); a_andn.andNot(bs2);
+
+      DocSet[] others = new DocSet[] {c2, new BitDocSet(bs2), getIntDocSet(bs2), getHashDocSet(bs2), getOffHeapBitDocSet(bs2)};
+      for (DocSet b2 : others) {
+        checkEqual(a_and, c1.intersection(b2));
+        checkEqual(a_and, b2.intersection(c1));
+        checkEqual(a_or, c1.union(b2));
+        checkEqual(a_andn, c1.andNot(b2));
+        assertEquals(a_and.cardinality(), c1.intersectionSize(b2));
+        assertEquals(a_and.cardinality(), b2.intersectionSize(c1));
+        assertEquals(a_or.cardinality(), c1.unionSize(b2));
+        assertEquals(a_andn.cardinality(), c1.andNotSize(b2));
+      }
+
+      // a DocIdSet over part of the set
+      int base = rand.nextInt(maxDoc);
+      int max = base + rand.nextInt(maxDoc - base + 1);
+      OpenBitSet slice = new OpenBitSet(max - base);
+      for (int doc = bs1.nextSetBit(base); doc >= 0 && doc < max; doc = bs1.nextSetBit(doc+1)) {
+        slice.fastSet(doc - base);
+      }
+      doTestIteratorEqual(slice, ((ChunkedDocSet)c1).getDocIdSet(base, max));
+    }
+  }
+
   public void testFilter() throws IOException {
     // keeping these numbers smaller help hit more edge cases
     int maxSeg=4;
@@ -0,0 +1,159 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.solr.common.util.NamedList;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Test for FastLFUCache
+ *
+ * @version $Id$
+ * @see org.apache.solr.search.FastLFUCache
+ */
+public class TestFastLFUCache extends LuceneTestCase {
+
+  private static SortedIntDocSet docSet(int n) {
+    int[] docs = new int[n];
+    for (int i = 0; i < n; i++) docs[i] = i;
+    return new SortedIntDocSet(docs);
+  }
+
+  public void testScanResistance() throws IOException {
+    FastLFUCache<Object, Object> cache = new FastLFUCache<Object, Object>();
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("size", "10");
+    params.put("minSize", "9");
+    cache.init(params, null, null);
+    cache.setState(SolrCache.State.LIVE);
+
+    // a working set of frequently used entries
+    for (int i = 0; i < 9; i++) {
+      assertNull(cache.get(i));
+      cache.put(i, "" + i);
+    }
+    for (int j = 0; j < 4; j++) {
+      for (int i = 0; i < 9; i++) {
+        assertEquals("" + i, cache.get(i));
+      }
+    }
+
+    // a burst of one-off requests
+    for (int i = 100; i < 200; i++) {
+      assertNull(cache.get(i));
+      cache.put(i, "" + i);
+    }
+    for (int i = 0; i < 9; i++) {
+      assertEquals("" + i, cache.get(i));
+    }
+    assertTrue(cache.size() <= 10);
+
+    // the frequencies are estimates, so a few one-offs may get in
+    NamedList<Serializable> nl = cache.getStatistics();
+    long rejects = (Long) nl.get("admissionRejects");
+    assertTrue("rejects=" + rejects, rejects >= 90);
+    assertEquals(109L, rejects + (Long) nl.get("inserts"));
+    assertEquals(nl.get("evictions"), nl.get("evictionsSize"));
+
+    // a key that is requested often enough is admitted
+    for (int j = 0; j < 3; j++) {
+      assertNull(cache.get(500));
+    }
+    cache.put(500, "500");
+    assertEquals(rejects, cache.getStatistics().get("admissionRejects"));
+    cache.close();
+  }
+
+  public void testEvictionByRam() throws IOException {
+    FastLFUCache<Object, Object> cache = new FastLFUCache<Object, Object>();
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("size", "100");
+    params.put("maxRamMB", "0.01");
+    cache.init(params, null, null);
+    cache.setState(SolrCache.State.LIVE);
+
+    // each set takes 4008 bytes, so only two fit in 10485 bytes
+    cache.put(0, docSet(1000));
+    cache.put(1, docSet(1000));
+    assertNotNull(cache.get(1));
+    cache.put(2, docSet(1000));
+    assertEquals(2, cache.size());
+    assertNull(cache.get(0));
+    assertNotNull(cache.get(1));
+    assertNotNull(cache.get(2));
+
+    // values that are not DocSets take no room
+    cache.put("other", "other");
+    assertEquals(3, cache.size());
+
+    NamedList<Serializable> nl = cache.getStatistics();
+    assertEquals(1L, nl.get("evictions"));
+    assertEquals(1L, nl.get("evictionsRam"));
+    assertEquals(0L, nl.get("evictionsSize"));
+    assertEquals(8016L, nl.get("ramBytesUsed"));
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertEquals(0L, cache.getStatistics().get("ramBytesUsed"));
+    cache.close();
+  }
+
+  public void testAutowarm() throws IOException {
+    FastLFUCache<Object, Object> cache = new FastLFUCache<Object, Object>();
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("size", "20");
+    params.put("autowarmCount", "3");
+    CacheRegenerator cr = new CacheRegenerator() {
+      public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache,
+                                    SolrCache oldCache, Object oldKey, Object oldVal) throws IOException {
+        newCache.put(oldKey, oldVal);
+        return true;
+      }
+    };
+    Object o = cache.init(params, null, cr);
+    cache.setState(SolrCache.State.LIVE);
+    for (int i = 0; i < 10; i++) {
+      cache.put(i, "" + i);
+      // entry i is looked up i times
+      for (int j = 0; j < i; j++) {
+        cache.get(i);
+      }
+    }
+
+    FastLFUCache<Object, Object> cacheNew = new FastLFUCache<Object, Object>();
+    cacheNew.init(params, o, cr);
+    cacheNew.warm(null, cache);
+    cacheNew.setState(SolrCache.State.LIVE);
+    cache.close();
+    assertEquals(3, cacheNew.size());
+    assertEquals("9", cacheNew.get(9));
+    assertEquals("8", cacheNew.get(8));
+    assertEquals("7", cacheNew.get(7));
+    assertNull(cacheNew.get(6));
+
+    NamedList<Serializable> nl = cacheNew.getStatistics();
+    assertEquals(3, nl.get("warmupItems"));
+    assertEquals(4L, nl.get("lookups"));
+    assertEquals(49L, nl.get("cumulative_lookups"));
+    assertEquals(10L, nl.get("cumulative_inserts"));
+    cacheNew.close();
+  }
+}
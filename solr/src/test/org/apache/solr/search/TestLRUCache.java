@@ -4,9 +4,16 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.util.LuceneTestCase;
 import org.apache.solr.common.util.NamedList;
+import org.slf4j.LoggerFactory;
 
 /**
  * Test for <code>org.apache.solr.search.LRUCache</code>
@@ -105,6 +112,112 @@ public class TestLRUCache extends LuceneTestCase {
     lruCacheNew.close();
   }
   
+  @SuppressWarnings("unchecked")
+  public void testAutowarmTime() throws IOException {
+    LRUCache<Object, Object> lruCache = new LRUCache<Object, Object>();
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("size", "100");
+    params.put("autowarmCount", "100%");
+    params.put("autowarmTime", "50");
+    // a regenerator that is too slow to warm every item within the budget
+    CacheRegenerator cr = new CacheRegenerator() {
+      public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache,
+                                    SolrCache oldCache, Object oldKey, Object oldVal) throws IOException {
+        try {
+          Thread.sleep(10);
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        newCache.put(oldKey, oldVal);
+        return true;
+      }
+    };
+    Object o = lruCache.init(params, null, cr);
+    lruCache.setState(SolrCache.State.LIVE);
+    for (int i = 0; i < 100; i++) {
+      lruCache.put(i + 1, "" + (i + 1));
+    }
+    LRUCache<Object, Object> lruCacheNew = new LRUCache<Object, Object>();
+    lruCacheNew.init(params, o, cr);
+    lruCacheNew.warm(null, lruCache);
+    lruCacheNew.setState(SolrCache.State.LIVE);
+    lruCache.close();
+    NamedList<Serializable> nl = lruCacheNew.getStatistics();
+    int items = (Integer) nl.get("warmupItems");
+    int skipped = (Integer) nl.get("warmupSkipped");
+    assertTrue(items > 0);
+    assertTrue(skipped > 0);
+    assertEquals(100, items + skipped);
+    assertEquals(0, nl.get("warmupErrors"));
+    assertEquals(items, lruCacheNew.size());
+    // the oldest items are regenerated first
+    assertEquals("1", lruCacheNew.get(1));
+    assertEquals(null, lruCacheNew.get(100));
+    lruCacheNew.close();
+  }
+
+  @SuppressWarnings("unchecked")
+  public void testInterruptedAutowarm() throws Exception {
+    final int numItems = 100;
+    final CountDownLatch started = new CountDownLatch(2);
+    final AtomicBoolean returned = new AtomicBoolean();
+    final AtomicInteger latePuts = new AtomicInteger();
+    // a slow regenerator that records puts made after the warming returned
+    final CacheRegenerator cr = new CacheRegenerator() {
+      public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache,
+                                    SolrCache oldCache, Object oldKey, Object oldVal) throws IOException {
+        started.countDown();
+        try {
+          Thread.sleep(20);
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        if (returned.get()) {
+          latePuts.incrementAndGet();
+        }
+        newCache.put(oldKey, oldVal);
+        return true;
+      }
+    };
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("size", "" + numItems);
+    final LRUCache<Object, Object> lruCache = new LRUCache<Object, Object>();
+    lruCache.init(params, null, cr);
+    final Object[] keys = new Object[numItems];
+    for (int i = 0; i < numItems; i++) {
+      keys[i] = i;
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    final AtomicBoolean stillInterrupted = new AtomicBoolean();
+    Thread warmer = new Thread() {
+      @Override
+      public void run() {
+        lruCache.regenerateItems(null, lruCache, null, cr, keys, keys,
+                                 LoggerFactory.getLogger(TestLRUCache.class), executor, 2);
+        returned.set(true);
+        stillInterrupted.set(Thread.currentThread().isInterrupted());
+      }
+    };
+    warmer.start();
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    warmer.interrupt();
+    warmer.join();
+    assertTrue(stillInterrupted.get());
+    // give cancelled workers the chance to misbehave
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    assertEquals(0, latePuts.get());
+
+    NamedList<Serializable> nl = lruCache.getStatistics();
+    int items = (Integer) nl.get("warmupItems");
+    int skipped = (Integer) nl.get("warmupSkipped");
+    assertTrue(skipped > 0);
+    assertEquals(numItems, items + skipped);
+    assertEquals(0, nl.get("warmupErrors"));
+    assertEquals(items, lruCache.size());
+    lruCache.close();
+  }
+
   private CacheRegenerator createCodeRegenerator() {
     CacheRegenerator cr = new CacheRegenerator() {
       @SuppressWarnings("unchecked")
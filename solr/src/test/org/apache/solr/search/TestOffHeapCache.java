@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * Test for <code>org.apache.solr.search.OffHeapCache</code>
+ */
+public class TestOffHeapCache extends LuceneTestCase {
+
+  private static BitDocSet bitDocSet(int maxDoc, int doc) {
+    OpenBitSet bits = new OpenBitSet(maxDoc);
+    bits.set(doc);
+    bits.set(maxDoc - 1);
+    return new BitDocSet(bits);
+  }
+
+  @SuppressWarnings("unchecked")
+  public void testEvictionByRam() throws IOException {
+    OffHeapCache<Object, DocSet> cache = new OffHeapCache<Object, DocSet>();
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("maxRamMB", "1");
+    params.put("minOffHeapSize", "0");
+    cache.init(params, null, null);
+    cache.setState(SolrCache.State.LIVE);
+
+    // each set takes about 120KB, so only 8 fit
+    int maxDoc = 120000 * 8;
+    for (int i = 0; i < 10; i++) {
+      cache.put(i, bitDocSet(maxDoc, i));
+    }
+    assertEquals(8, cache.size());
+    assertTrue(cache.ramBytesUsed() <= 1024 * 1024);
+    assertNull(cache.get(0));
+    assertNull(cache.get(1));
+
+    DocSet set = cache.get(9);
+    assertTrue(set instanceof OffHeapBitDocSet);
+    assertEquals(2, set.size());
+    assertTrue(set.exists(9));
+    assertTrue(set.exists(maxDoc - 1));
+    assertFalse(set.exists(8));
+
+    // set operations against the on-heap representation
+    BitDocSet other = bitDocSet(maxDoc, 8);
+    assertEquals(1, set.intersectionSize(other));
+    assertEquals(1, other.intersectionSize(set));
+    assertEquals(3, set.union(other).size());
+    assertEquals(3, other.union(set).size());
+    assertEquals(1, set.andNot(other).size());
+    assertEquals(1, other.andNot(set).size());
+    assertTrue(other.andNot(set).exists(8));
+
+    // small sets stay on the heap
+    SortedIntDocSet small = new SortedIntDocSet(new int[] {1, 5, 7});
+    cache.put("small", small);
+    assertSame(small, cache.get("small"));
+
+    NamedList<Serializable> nl = cache.getStatistics();
+    assertEquals(11L, nl.get("inserts"));
+    assertEquals(2L, nl.get("evictions"));
+    assertEquals(cache.ramBytesUsed(), nl.get("ramBytesUsed"));
+    assertTrue((Long) nl.get("offHeapBytesUsed") > 0);
+
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.ramBytesUsed());
+    cache.close();
+  }
+
+  @SuppressWarnings("unchecked")
+  public void testAutowarm() throws IOException {
+    OffHeapCache<Object, DocSet> cache = new OffHeapCache<Object, DocSet>();
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("size", "10");
+    params.put("autowarmCount", "5");
+    CacheRegenerator cr = new CacheRegenerator() {
+      public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache,
+                                    SolrCache oldCache, Object oldKey, Object oldVal) throws IOException {
+        newCache.put(oldKey, oldVal);
+        return true;
+      }
+    };
+    Object o = cache.init(params, null, cr);
+    cache.setState(SolrCache.State.LIVE);
+    for (int i = 0; i < 20; i++) {
+      cache.put(i, bitDocSet(100000, i));
+    }
+    assertEquals(10, cache.size());
+
+    OffHeapCache<Object, DocSet> cacheNew = new OffHeapCache<Object, DocSet>();
+    cacheNew.init(params, o, cr);
+    cacheNew.warm(null, cache);
+    cacheNew.setState(SolrCache.State.LIVE);
+    cache.close();
+    assertEquals(5, cacheNew.size());
+    assertNull(cacheNew.get(14));
+    assertTrue(cacheNew.get(15).exists(15));
+    assertTrue(cacheNew.get(19).exists(19));
+    cacheNew.close();
+  }
+}
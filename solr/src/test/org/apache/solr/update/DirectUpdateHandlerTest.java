@@ -24,10 +24,12 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Field.Index;
 import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.index.IndexReader;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.MapSolrParams;
+import org.apache.solr.common.util.NamedList;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.request.LocalSolrQueryRequest;
 import org.apache.solr.request.SolrQueryRequest;
@@ -330,6 +332,52 @@ public class DirectUpdateHandlerTest extends SolrTestCaseJ4 {
     sr.close();
   }
   
+  @Test
+  public void testSoftCommit() throws Exception {
+    assertU(adoc("id","1"));
+    assertU(commit());
+    long version = committedVersion();
+
+    assertU(adoc("id","2"));
+    assertU(commit("softCommit","true"));
+    assertQ("soft committed doc must be found", req("q","id:2")
+            ,"//*[@numFound='1']"
+            );
+    // nothing was committed to the directory
+    assertEquals(version, committedVersion());
+
+    assertU(delI("1"));
+    assertU(adoc("id","3"));
+    assertU(commit("softCommit","true"));
+    assertQ("soft committed changes must be visible", req("q","*:*")
+            ,"//*[@numFound='2']"
+            ,"//result/doc/str[@name='id'][.='2']"
+            ,"//result/doc/str[@name='id'][.='3']"
+            );
+    assertEquals(version, committedVersion());
+
+    // a regular commit after soft commits
+    assertU(commit());
+    assertTrue(version != committedVersion());
+    assertQ(req("q","*:*"), "//*[@numFound='2']");
+
+    assertU(adoc("id","4"));
+    assertU(commit("softCommit","true"));
+    assertQ(req("q","*:*"), "//*[@numFound='3']");
+
+    NamedList stats = h.getCore().getUpdateHandler().getStatistics();
+    assertEquals(3L, stats.get("soft commits"));
+  }
+
+  private long committedVersion() throws Exception {
+    SolrQueryRequest sr = req("q","foo");
+    try {
+      return IndexReader.getCurrentVersion(sr.getSearcher().getReader().directory());
+    } finally {
+      sr.close();
+    }
+  }
+
   private void addSimpleDoc(String id) throws Exception {
     SolrCore core = h.getCore();
     